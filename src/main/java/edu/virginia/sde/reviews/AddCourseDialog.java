@@ -1,15 +1,23 @@
 package edu.virginia.sde.reviews;
 
+import edu.virginia.sde.reviews.analytics.CourseTitleIndex;
+import edu.virginia.sde.reviews.dao.ShardMap;
+import edu.virginia.sde.reviews.model.Course;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 import javafx.util.Callback;
 
+import java.util.List;
+
 /**
  * A simple dialog for adding a new course.
  */
 public class AddCourseDialog {
 
+    /** Number of likely duplicates listed under the title field */
+    private static final int MAX_DUPLICATES_SHOWN = 3;
+
     /**
      * Opens a dialog to add a new course and passes the result to a callback.
      * @param callback The action to perform with the course details
@@ -43,6 +51,29 @@ public class AddCourseDialog {
         grid.add(new Label("Title:"), 0, 2);
         grid.add(titleField, 1, 2);
 
+        // Warn about likely duplicates of existing courses as the title is typed.
+        // The title index is not built with sharded storage, so no warning is offered there.
+        Label duplicateWarning = new Label();
+        duplicateWarning.setWrapText(true);
+        duplicateWarning.setVisible(false);
+        grid.add(duplicateWarning, 0, 3, 2, 1);
+        if (!ShardMap.getInstance().isEnabled()) {
+            titleField.textProperty().addListener((observable, oldTitle, newTitle) -> {
+                List<Course> similar = CourseTitleIndex.getInstance()
+                        .findSimilar(newTitle.trim(), MAX_DUPLICATES_SHOWN);
+                if (similar.isEmpty()) {
+                    duplicateWarning.setVisible(false);
+                    return;
+                }
+                StringBuilder text = new StringBuilder("Similar courses already exist:");
+                for (Course course : similar) {
+                    text.append("\n  ").append(course);
+                }
+                duplicateWarning.setText(text.toString());
+                duplicateWarning.setVisible(true);
+            });
+        }
+
         dialog.getDialogPane().setContent(grid);
 
         dialog.setResultConverter(dialogButton -> {
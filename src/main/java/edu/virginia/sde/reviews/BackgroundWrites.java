@@ -0,0 +1,52 @@
+package edu.virginia.sde.reviews;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Runs database writes started from a screen away from the JavaFX application thread.
+ *
+ * A DAO write waits for the database lock and RetryPolicy retries it while
+ * another process holds it, which can take several seconds. Run on the
+ * application thread, that wait would freeze the whole window. Instead the
+ * write runs on a single background thread, so writes from the UI still
+ * happen in the order they were made, and its outcome is handed back on the
+ * application thread, where the screen can update its controls. Events the
+ * write publishes reach FX subscribers on the application thread as usual.
+ */
+final class BackgroundWrites {
+    /** Thread running the writes, one at a time */
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ui-database-write");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private BackgroundWrites() {
+    }
+
+    /**
+     * Runs a write in the background and reports whether it succeeded.
+     *
+     * @param write The DAO call to run; returns true if the write succeeded
+     * @param done Called on the JavaFX application thread with the write's result;
+     *             false if the write failed or threw
+     */
+    static void run(BooleanSupplier write, Consumer<Boolean> done) {
+        executor.execute(() -> {
+            boolean success;
+            try {
+                success = write.getAsBoolean();
+            } catch (RuntimeException e) {
+                System.out.println("Error writing to the database: " + e.getMessage());
+                success = false;
+            }
+            boolean result = success;
+            Platform.runLater(() -> done.accept(result));
+        });
+    }
+}
@@ -1,15 +1,25 @@
 package edu.virginia.sde.reviews;
 
+import edu.virginia.sde.reviews.analytics.CourseRecommender;
+import edu.virginia.sde.reviews.analytics.CourseTermAnalyzer;
+import edu.virginia.sde.reviews.dao.CourseDAO;
+import edu.virginia.sde.reviews.dao.Database;
 import edu.virginia.sde.reviews.dao.ReviewDAO;
+import edu.virginia.sde.reviews.dao.ShardMap;
 import edu.virginia.sde.reviews.model.Course;
+import edu.virginia.sde.reviews.model.RatingStats;
+import edu.virginia.sde.reviews.model.RatingTrend;
 import edu.virginia.sde.reviews.model.Review;
 import edu.virginia.sde.reviews.model.User;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
 import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.List;
 
 /**
@@ -19,12 +29,27 @@ import java.util.List;
  * Users can submit new reviews, edit their existing reviews, or delete their reviews.
  */
 public class CourseReviewController {
+    /** Number of months of reviews counted as recent (2 years) */
+    private static final int RECENT_MONTHS = 24;
+
     /** Label displaying the course information (subject, catalog number, title) */
     @FXML
     private Label courseInfoLabel;
     /** Label displaying the average rating for the course */
     @FXML
     private Label averageRatingLabel;
+    /** Label displaying the most distinctive terms in the course's reviews */
+    @FXML
+    private Label tagsLabel;
+    /** Label comparing recent ratings with the all-time average */
+    @FXML
+    private Label recentRatingLabel;
+    /** Bars showing how many reviews gave each star rating */
+    @FXML
+    private VBox ratingDistributionBox;
+    /** Row of links to courses related to this one */
+    @FXML
+    private HBox relatedCoursesBox;
     /** Container for displaying all reviews for the course */
     @FXML
     private VBox reviewsContainer;
@@ -72,6 +97,10 @@ public class CourseReviewController {
         submitReviewButton.setOnAction(event -> handleSubmitReview());
         editReviewButton.setOnAction(event -> handleEditReview());
         deleteReviewButton.setOnAction(event -> handleDeleteReview());
+
+        // Reviews can be read but not written on a read-only kiosk
+        ratingSpinner.setDisable(Database.isReadOnly());
+        commentTextArea.setDisable(Database.isReadOnly());
         
         System.out.println("CourseReviewController initialized");
     }
@@ -98,6 +127,19 @@ public class CourseReviewController {
             double rating = Double.parseDouble(avgRating);
             averageRatingLabel.setText(String.format("Average Rating: %.2f/5.00", rating));
         }
+        showRatingDistribution();
+        showRecentRating();
+        
+        // Show the course's review tags, if the analyzer has computed any; it does not run on shards,
+        // where the shared file's tables only hold what it computed before the migration
+        List<String> tags = ShardMap.getInstance().isEnabled()
+                ? List.of()
+                : CourseTermAnalyzer.getInstance().getTopTerms(course.getId());
+        tagsLabel.setText("Tags: " + String.join(", ", tags));
+        tagsLabel.setVisible(!tags.isEmpty());
+        tagsLabel.setManaged(!tags.isEmpty());
+        
+        loadRelatedCourses();
         
         // Load reviews for this course
         loadReviews();
@@ -106,6 +148,38 @@ public class CourseReviewController {
         checkUserReview();
     }
 
+    /**
+     * Shows links to the courses most related to the current course.
+     * The row is hidden if the recommender has no related courses for it,
+     * and always with sharded storage, where the recommender does not run.
+     */
+    private void loadRelatedCourses() {
+        List<Course> related = ShardMap.getInstance().isEnabled()
+                ? List.of()
+                : CourseRecommender.getInstance().getRelatedCourses(course.getId());
+        for (Course relatedCourse : related) {
+            Hyperlink link = new Hyperlink(relatedCourse.getSubject() + " " + relatedCourse.getNumber());
+            link.setTooltip(new Tooltip(relatedCourse.getTitle()));
+            link.setOnAction(event -> openRelatedCourse(relatedCourse.getId()));
+            relatedCoursesBox.getChildren().add(link);
+        }
+        relatedCoursesBox.setVisible(!related.isEmpty());
+        relatedCoursesBox.setManaged(!related.isEmpty());
+    }
+
+    /**
+     * Opens the review page of a related course, loaded with its current average rating.
+     *
+     * @param courseId The ID of the related course
+     */
+    private void openRelatedCourse(int courseId) {
+        Course relatedCourse = new CourseDAO().getCourseById(courseId);
+        if (relatedCourse != null) {
+            Stage stage = (Stage) relatedCoursesBox.getScene().getWindow();
+            SceneManager.switchToCourseReviewScene(stage, relatedCourse);
+        }
+    }
+
     /**
      * Loads and displays all reviews for the current course.
      * If no reviews exist, displays a message indicating there are no reviews.
@@ -163,11 +237,17 @@ public class CourseReviewController {
     /**
      * Checks if the current user has already submitted a review for this course.
      * Updates the UI accordingly to show either submission or edit/delete options.
+     * On a read-only kiosk no options are shown.
      */
     private void checkUserReview() {
         User currentUser = SessionManager.getInstance().getCurrentUser();
-        if (currentUser != null) {
-            userReview = reviewDAO.getUserReviewForCourse(currentUser.getId(), course.getId());
+        if (currentUser != null && !Database.isReadOnly()) {
+            // Skip the lookup only when the session knows for certain there is no review
+            if (SessionManager.getInstance().hasReviewedCourse(course.getId())) {
+                userReview = reviewDAO.getUserReviewForCourse(currentUser.getId(), course.getId());
+            } else {
+                userReview = null;
+            }
             
             if (userReview != null) {
                 // User already has a review - show edit mode
@@ -184,7 +264,7 @@ public class CourseReviewController {
                 deleteReviewButton.setVisible(false);
             }
         } else {
-            // No user logged in (shouldn't happen)
+            // No user logged in (shouldn't happen), or a read-only kiosk
             submitReviewButton.setVisible(false);
             editReviewButton.setVisible(false);
             deleteReviewButton.setVisible(false);
@@ -202,7 +282,8 @@ public class CourseReviewController {
 
     /**
      * Handles the submit review button action.
-     * Creates a new review with the current user's input and saves it to the database.
+     * Creates a new review with the current user's input and saves it to the database
+     * in the background, with the button disabled until the write finishes.
      * Updates the UI to reflect the new review and refreshes the course rating.
      */
     private void handleSubmitReview() {
@@ -220,18 +301,22 @@ public class CourseReviewController {
                 new Timestamp(System.currentTimeMillis())
         );
         
-        if (reviewDAO.createReview(newReview)) {
-            loadReviews();
-            checkUserReview();
-            refreshCourseRating();
-        } else {
-            showAlert("Error", "Could not create review. Please try again.");
-        }
+        setReviewButtonsDisabled(true);
+        BackgroundWrites.run(() -> reviewDAO.createReview(newReview), success -> {
+            setReviewButtonsDisabled(false);
+            if (success) {
+                loadReviews();
+                checkUserReview();
+                refreshCourseRating();
+            } else {
+                showAlert("Error", "Could not create review. Please try again.");
+            }
+        });
     }
 
     /**
      * Handles the edit review button action.
-     * Updates the current user's existing review with new input values.
+     * Updates the current user's existing review with new input values, in the background.
      * Refreshes the UI to display the updated review and course rating.
      */
     private void handleEditReview() {
@@ -244,32 +329,51 @@ public class CourseReviewController {
         userReview.setComment(comment);
         userReview.setTimestamp(new Timestamp(System.currentTimeMillis()));
         
-        if (reviewDAO.updateReview(userReview)) {
-            loadReviews();
-            refreshCourseRating();
-        } else {
-            showAlert("Error", "Could not update review. Please try again.");
-        }
+        Review review = userReview;
+        setReviewButtonsDisabled(true);
+        BackgroundWrites.run(() -> reviewDAO.updateReview(review), success -> {
+            setReviewButtonsDisabled(false);
+            if (success) {
+                loadReviews();
+                refreshCourseRating();
+            } else {
+                showAlert("Error", "Could not update review. Please try again.");
+            }
+        });
     }
 
     /**
      * Handles the delete review button action.
-     * Removes the current user's review from the database.
+     * Removes the current user's review from the database, in the background.
      * Resets the review form and updates the UI accordingly.
      */
     private void handleDeleteReview() {
         if (userReview == null) return;
         
-        if (reviewDAO.deleteReview(userReview.getId())) {
-            userReview = null;
-            commentTextArea.clear();
-            ratingSpinner.getValueFactory().setValue(3);
-            loadReviews();
-            checkUserReview();
-            refreshCourseRating();
-        } else {
-            showAlert("Error", "Could not delete review. Please try again.");
-        }
+        int reviewId = userReview.getId();
+        setReviewButtonsDisabled(true);
+        BackgroundWrites.run(() -> reviewDAO.deleteReview(reviewId), success -> {
+            setReviewButtonsDisabled(false);
+            if (success) {
+                userReview = null;
+                commentTextArea.clear();
+                ratingSpinner.getValueFactory().setValue(3);
+                loadReviews();
+                checkUserReview();
+                refreshCourseRating();
+            } else {
+                showAlert("Error", "Could not delete review. Please try again.");
+            }
+        });
+    }
+
+    /**
+     * Disables the review buttons while a write is running, so it cannot be started twice.
+     */
+    private void setReviewButtonsDisabled(boolean disabled) {
+        submitReviewButton.setDisable(disabled);
+        editReviewButton.setDisable(disabled);
+        deleteReviewButton.setDisable(disabled);
     }
 
     /**
@@ -290,6 +394,62 @@ public class CourseReviewController {
                 averageRatingLabel.setText(String.format("Average Rating: %.2f/5.00", rating));
             }
         }
+        showRatingDistribution();
+        showRecentRating();
+    }
+
+    /**
+     * Shows one bar per star rating with the number of reviews that gave it,
+     * followed by the standard deviation of the ratings.
+     * The statistics are maintained on write, so no reviews are read here.
+     * The bars are hidden if the course has no reviews.
+     */
+    private void showRatingDistribution() {
+        RatingStats stats = new CourseDAO().getRatingStats(course.getId());
+        ratingDistributionBox.getChildren().clear();
+        boolean hasReviews = stats != null && stats.getReviewCount() > 0;
+        ratingDistributionBox.setVisible(hasReviews);
+        ratingDistributionBox.setManaged(hasReviews);
+        if (!hasReviews) {
+            return;
+        }
+
+        for (int rating = 5; rating >= 1; rating--) {
+            ProgressBar bar = new ProgressBar(stats.getShare(rating));
+            bar.setPrefWidth(200.0);
+            HBox row = new HBox(8.0, new Label(rating + " stars"), bar, new Label(String.valueOf(stats.getCount(rating))));
+            ratingDistributionBox.getChildren().add(row);
+        }
+        ratingDistributionBox.getChildren().add(new Label(String.format("Standard deviation: %.2f across %d review%s",
+                stats.getStandardDeviation(), stats.getReviewCount(), stats.getReviewCount() == 1 ? "" : "s")));
+    }
+
+    /**
+     * Shows the average of the last RECENT_MONTHS months of reviews next to the
+     * all-time average, from the course's monthly rating series.
+     * The label is hidden if the course has no reviews.
+     */
+    private void showRecentRating() {
+        RatingTrend trend = new CourseDAO().getRatingTrend(course.getId());
+        boolean hasReviews = trend != null && trend.size() > 0;
+        recentRatingLabel.setVisible(hasReviews);
+        recentRatingLabel.setManaged(hasReviews);
+        if (!hasReviews) {
+            return;
+        }
+
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        int currentMonth = today.getYear() * 100 + today.getMonthValue();
+        // The current month counts as one of the recent months
+        int fromMonth = RatingTrend.monthsBefore(currentMonth, RECENT_MONTHS - 1);
+        int recentCount = trend.countSince(fromMonth);
+        double allTime = trend.averageSince(0);
+        if (recentCount == 0) {
+            recentRatingLabel.setText(String.format("No reviews in the last 2 years (all time: %.2f)", allTime));
+        } else {
+            recentRatingLabel.setText(String.format("Last 2 years: %.2f from %d review%s (all time: %.2f)",
+                    trend.averageSince(fromMonth), recentCount, recentCount == 1 ? "" : "s", allTime));
+        }
     }
 
     /**
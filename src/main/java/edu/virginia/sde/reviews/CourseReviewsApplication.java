@@ -1,22 +1,55 @@
 package edu.virginia.sde.reviews;
 
+import edu.virginia.sde.reviews.analytics.CatalogSnapshot;
+import edu.virginia.sde.reviews.analytics.CourseFacets;
+import edu.virginia.sde.reviews.analytics.CourseRecommender;
+import edu.virginia.sde.reviews.analytics.CourseTermAnalyzer;
+import edu.virginia.sde.reviews.analytics.CourseTitleIndex;
+import edu.virginia.sde.reviews.analytics.FuzzyTitleSearch;
+import edu.virginia.sde.reviews.analytics.LeaderboardService;
+import edu.virginia.sde.reviews.analytics.RatingTrendBackfill;
+import edu.virginia.sde.reviews.analytics.SubjectAutocomplete;
+import edu.virginia.sde.reviews.analytics.TrendingService;
+import edu.virginia.sde.reviews.dao.BackupService;
+import edu.virginia.sde.reviews.dao.ChangeWatcher;
+import edu.virginia.sde.reviews.dao.ContentionMetrics;
+import edu.virginia.sde.reviews.dao.CourseDAO;
+import edu.virginia.sde.reviews.dao.Database;
+import edu.virginia.sde.reviews.dao.MaintenanceScheduler;
+import edu.virginia.sde.reviews.dao.ShardMap;
+import edu.virginia.sde.reviews.dao.UserDAO;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 public class CourseReviewsApplication extends Application {
-    private static final String DB_URL = "jdbc:sqlite:course_reviews.db";
+    /** Triggers made by createChangeLogTrigger, which shard files must not have */
+    private static final String[] CHANGE_LOG_TRIGGERS = {
+            "trg_courses_insert_log", "trg_reviews_insert_log", "trg_reviews_update_log", "trg_reviews_delete_log"};
 
     @Override
     public void start(Stage stage) throws Exception {
-        // Initialize database
-        initializeDatabase();
+        // Initialize database; a read-only kiosk uses the schema it was published with
+        if (Database.isReadOnly()) {
+            System.out.println("Kiosk mode: course_reviews.db is opened read-only"
+                    + (Database.isImmutable() ? " and immutable" : ""));
+        } else {
+            initializeDatabase(ShardMap.SHARED);
+            // With sharded storage each shard file gets the course and review schema too
+            ShardMap shards = ShardMap.getInstance();
+            for (int shard = 0; shard < shards.getShardCount(); shard++) {
+                initializeDatabase(shard);
+            }
+        }
+
+        // Build in-memory analytics structures without delaying the first scene
+        startBackgroundServices();
         
         // Load the login scene
         FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("login-scene.fxml"));
@@ -30,10 +63,18 @@ public class CourseReviewsApplication extends Application {
         stage.show();
     }
 
-    private void initializeDatabase() {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+    private void initializeDatabase(int shard) {
+        try (Connection conn = Database.connect(shard);
              Statement stmt = conn.createStatement()) {
-            
+
+            // Let idle-time maintenance hand free pages back a slice at a time;
+            // this only takes effect on a new file, before anything is written
+            stmt.execute("PRAGMA auto_vacuum=INCREMENTAL");
+
+            // Use write-ahead logging so long-running readers (such as the
+            // review exporter) see a stable snapshot without blocking writers
+            stmt.execute("PRAGMA journal_mode=WAL");
+
             // Create Users table
             stmt.execute("CREATE TABLE IF NOT EXISTS users (" +
                     "id INTEGER PRIMARY KEY AUTOINCREMENT," +
@@ -59,6 +100,75 @@ public class CourseReviewsApplication extends Application {
                     "FOREIGN KEY(user_id) REFERENCES users(id)," +
                     "FOREIGN KEY(course_id) REFERENCES courses(id)," +
                     "UNIQUE(user_id, course_id))");
+
+            // Covering indexes for sorted, paged course listings. Their column
+            // order matches the ORDER BY terms in CourseSort.
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_courses_title " +
+                    "ON courses(title COLLATE NOCASE, subject, number)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_courses_subject_number " +
+                    "ON courses(subject COLLATE NOCASE, number, title)");
+
+            // Range scans for course number filters without a subject, e.g. all 3000-level courses
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_courses_number_subject " +
+                    "ON courses(number, subject COLLATE NOCASE, title)");
+
+            // Lets per-course rating aggregates read only the index
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_reviews_course_rating " +
+                    "ON reviews(course_id, rating)");
+
+            if (shard == ShardMap.SHARED) {
+                createChangeLog(stmt);
+            } else {
+                // Only ChangeWatcher and the background services read the change log, and they
+                // watch the shared file alone; shard files made by older versions still have one
+                for (String trigger : CHANGE_LOG_TRIGGERS) {
+                    stmt.execute("DROP TRIGGER IF EXISTS " + trigger);
+                }
+                stmt.execute("DROP TABLE IF EXISTS change_log");
+            }
+
+            createReviewSearchIndex(stmt);
+            createRatingStats(stmt);
+            createRatingTrends(stmt);
+
+            // Term statistics maintained by CourseTermAnalyzer
+            stmt.execute("CREATE TABLE IF NOT EXISTS analytics_state (" +
+                    "name TEXT PRIMARY KEY," +
+                    "value INTEGER NOT NULL)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS course_term_counts (" +
+                    "course_id INTEGER NOT NULL," +
+                    "term TEXT NOT NULL," +
+                    "count INTEGER NOT NULL," +
+                    "PRIMARY KEY(course_id, term)) WITHOUT ROWID");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_course_term_counts_term " +
+                    "ON course_term_counts(term)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS course_top_terms (" +
+                    "course_id INTEGER NOT NULL," +
+                    "position INTEGER NOT NULL," +
+                    "term TEXT NOT NULL," +
+                    "score REAL NOT NULL," +
+                    "PRIMARY KEY(course_id, position)) WITHOUT ROWID");
+
+            // Decayed view and review counts maintained by TrendingService
+            stmt.execute("CREATE TABLE IF NOT EXISTS course_popularity (" +
+                    "course_id INTEGER PRIMARY KEY," +
+                    "views INTEGER NOT NULL," +
+                    "reviews INTEGER NOT NULL," +
+                    "score REAL NOT NULL)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_course_popularity_score " +
+                    "ON course_popularity(score)");
+
+            // Related-course lists maintained by CourseRecommender
+            stmt.execute("CREATE TABLE IF NOT EXISTS course_similarity (" +
+                    "course_id INTEGER NOT NULL," +
+                    "position INTEGER NOT NULL," +
+                    "similar_course_id INTEGER NOT NULL," +
+                    "score REAL NOT NULL," +
+                    "PRIMARY KEY(course_id, position)) WITHOUT ROWID");
+
+            if (shard != ShardMap.SHARED) {
+                ShardMap.getInstance().reserveIds(conn, shard);
+            }
             
         } catch (SQLException e) {
             System.err.println("Database initialization error: " + e.getMessage());
@@ -66,6 +176,316 @@ public class CourseReviewsApplication extends Application {
         }
     }
 
+    /**
+     * Creates the full-text index over review comments used by ReviewDAO.searchComments.
+     * It is an external-content FTS5 table, so it stores only the index and reads
+     * comment text from the reviews table. Triggers keep it in step with every
+     * write to reviews. The index is populated from existing reviews when it is
+     * first created.
+     *
+     * @param stmt The statement to execute on
+     * @throws SQLException If the index cannot be created
+     */
+    private void createReviewSearchIndex(Statement stmt) throws SQLException {
+        ResultSet rs = stmt.executeQuery(
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'reviews_fts'");
+        boolean exists = rs.next() && rs.getInt(1) > 0;
+        rs.close();
+
+        stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS reviews_fts USING fts5(" +
+                "comment, content='reviews', content_rowid='id', tokenize='porter unicode61')");
+
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_reviews_insert_fts AFTER INSERT ON reviews BEGIN " +
+                "INSERT INTO reviews_fts(rowid, comment) VALUES(NEW.id, NEW.comment); END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_reviews_delete_fts AFTER DELETE ON reviews BEGIN " +
+                "INSERT INTO reviews_fts(reviews_fts, rowid, comment) VALUES('delete', OLD.id, OLD.comment); END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_reviews_update_fts AFTER UPDATE OF comment ON reviews BEGIN " +
+                "INSERT INTO reviews_fts(reviews_fts, rowid, comment) VALUES('delete', OLD.id, OLD.comment); " +
+                "INSERT INTO reviews_fts(rowid, comment) VALUES(NEW.id, NEW.comment); END");
+
+        if (!exists) {
+            stmt.execute("INSERT INTO reviews_fts(reviews_fts) VALUES('rebuild')");
+        }
+    }
+
+    /**
+     * Creates the per-course rating statistics read by CourseDAO: the number of
+     * reviews for each star rating plus a running mean and M2 (Welford). Triggers
+     * update a course's row inside the same transaction as every insert, update
+     * and delete on reviews, so reading the distribution never scans reviews.
+     * The table is filled from existing reviews when it is first created.
+     * Package-private so the triggers can be tested on their own database.
+     *
+     * @param stmt The statement to execute on
+     * @throws SQLException If the table or its triggers cannot be created
+     */
+    static void createRatingStats(Statement stmt) throws SQLException {
+        ResultSet rs = stmt.executeQuery(
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'course_rating_stats'");
+        boolean exists = rs.next() && rs.getInt(1) > 0;
+        rs.close();
+
+        stmt.execute("CREATE TABLE IF NOT EXISTS course_rating_stats (" +
+                "course_id INTEGER PRIMARY KEY," +
+                "review_count INTEGER NOT NULL DEFAULT 0," +
+                "count1 INTEGER NOT NULL DEFAULT 0," +
+                "count2 INTEGER NOT NULL DEFAULT 0," +
+                "count3 INTEGER NOT NULL DEFAULT 0," +
+                "count4 INTEGER NOT NULL DEFAULT 0," +
+                "count5 INTEGER NOT NULL DEFAULT 0," +
+                "mean REAL NOT NULL DEFAULT 0," +
+                "m2 REAL NOT NULL DEFAULT 0)");
+
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_reviews_insert_stats AFTER INSERT ON reviews BEGIN " +
+                "INSERT OR IGNORE INTO course_rating_stats(course_id) VALUES(NEW.course_id); " +
+                addRatingSql("NEW.course_id", "NEW.rating") + " END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_reviews_delete_stats AFTER DELETE ON reviews BEGIN " +
+                removeRatingSql("OLD.course_id", "OLD.rating") + " END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_reviews_update_stats " +
+                "AFTER UPDATE OF rating, course_id ON reviews BEGIN " +
+                removeRatingSql("OLD.course_id", "OLD.rating") + " " +
+                "INSERT OR IGNORE INTO course_rating_stats(course_id) VALUES(NEW.course_id); " +
+                addRatingSql("NEW.course_id", "NEW.rating") + " END");
+
+        if (!exists) {
+            stmt.execute("INSERT INTO course_rating_stats" +
+                    "(course_id, review_count, count1, count2, count3, count4, count5, mean, m2) " +
+                    "SELECT course_id, COUNT(*), SUM(rating = 1), SUM(rating = 2), SUM(rating = 3), " +
+                    "SUM(rating = 4), SUM(rating = 5), AVG(rating), " +
+                    "SUM(rating * rating) - 1.0 * SUM(rating) * SUM(rating) / COUNT(*) " +
+                    "FROM reviews GROUP BY course_id");
+        }
+    }
+
+    /**
+     * Creates the per-course, per-month review counts and rating sums read by
+     * CourseDAO.getRatingTrend. Months are yyyymm integers taken from the review
+     * timestamp in UTC. Triggers keep the table current on every write; reviews
+     * written before the table existed are filled in by RatingTrendBackfill.
+     *
+     * @param stmt The statement to execute on
+     * @throws SQLException If the table or its triggers cannot be created
+     */
+    private void createRatingTrends(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS course_rating_months (" +
+                "course_id INTEGER NOT NULL," +
+                "month INTEGER NOT NULL," +
+                "review_count INTEGER NOT NULL," +
+                "rating_sum INTEGER NOT NULL," +
+                "PRIMARY KEY(course_id, month)) WITHOUT ROWID");
+
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_reviews_insert_months AFTER INSERT ON reviews BEGIN " +
+                addMonthSql("NEW") + " END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_reviews_delete_months AFTER DELETE ON reviews BEGIN " +
+                removeMonthSql("OLD") + " END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_reviews_update_months " +
+                "AFTER UPDATE OF rating, course_id, timestamp ON reviews BEGIN " +
+                removeMonthSql("OLD") + " " + addMonthSql("NEW") + " END");
+    }
+
+    /**
+     * Builds the upsert that adds a review to its course's month.
+     *
+     * @param row NEW or OLD
+     */
+    private static String addMonthSql(String row) {
+        return "INSERT INTO course_rating_months(course_id, month, review_count, rating_sum) " +
+                "VALUES(" + row + ".course_id, " + monthSql(row) + ", 1, " + row + ".rating) " +
+                "ON CONFLICT(course_id, month) DO UPDATE SET " +
+                "review_count = review_count + 1, rating_sum = rating_sum + excluded.rating_sum;";
+    }
+
+    /**
+     * Builds the statements that remove a review from its course's month,
+     * dropping the month once it has no reviews left.
+     *
+     * @param row NEW or OLD
+     */
+    private static String removeMonthSql(String row) {
+        String key = "WHERE course_id = " + row + ".course_id AND month = " + monthSql(row);
+        return "UPDATE course_rating_months SET review_count = review_count - 1, " +
+                "rating_sum = rating_sum - " + row + ".rating " + key + "; " +
+                "DELETE FROM course_rating_months " + key + " AND review_count <= 0;";
+    }
+
+    /**
+     * Builds the yyyymm month of a review's epoch-millisecond timestamp, in UTC.
+     *
+     * @param row NEW or OLD, or a table alias
+     */
+    private static String monthSql(String row) {
+        return "CAST(strftime('%Y%m', " + row + ".timestamp / 1000, 'unixepoch') AS INTEGER)";
+    }
+
+    /**
+     * Builds the UPDATE that adds one rating to a course's statistics.
+     * All SET expressions see the old row, so the new mean is written out in the M2 term.
+     */
+    private static String addRatingSql(String courseId, String rating) {
+        String newMean = "(mean + (" + rating + " - mean) / (review_count + 1))";
+        return "UPDATE course_rating_stats SET " +
+                "review_count = review_count + 1, " +
+                ratingCountsSql(rating, "+") +
+                "mean = " + newMean + ", " +
+                "m2 = m2 + (" + rating + " - mean) * (" + rating + " - " + newMean + ") " +
+                "WHERE course_id = " + courseId + ";";
+    }
+
+    /**
+     * Builds the UPDATE that removes one rating from a course's statistics,
+     * reversing the Welford step. The mean and M2 are reset once no reviews remain,
+     * so rounding errors cannot build up.
+     */
+    private static String removeRatingSql(String courseId, String rating) {
+        String newMean = "((mean * review_count - " + rating + ") / (review_count - 1))";
+        return "UPDATE course_rating_stats SET " +
+                "review_count = review_count - 1, " +
+                ratingCountsSql(rating, "-") +
+                "mean = CASE WHEN review_count <= 1 THEN 0 ELSE " + newMean + " END, " +
+                "m2 = CASE WHEN review_count <= 1 THEN 0 " +
+                "ELSE MAX(0, m2 - (" + rating + " - mean) * (" + rating + " - " + newMean + ")) END " +
+                "WHERE course_id = " + courseId + ";";
+    }
+
+    private static String ratingCountsSql(String rating, String sign) {
+        StringBuilder sql = new StringBuilder();
+        for (int star = 1; star <= 5; star++) {
+            sql.append("count").append(star).append(" = count").append(star)
+                    .append(" ").append(sign).append(" (").append(rating).append(" = ").append(star).append("), ");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Creates the change log used by ChangeWatcher to see writes made by
+     * other processes. Triggers fill it, so every writer is covered.
+     *
+     * @param stmt The statement to execute on
+     * @throws SQLException If the table or its triggers cannot be created
+     */
+    private void createChangeLog(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS change_log (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "table_name TEXT NOT NULL," +
+                "row_id INTEGER NOT NULL," +
+                "course_id INTEGER," +
+                "user_id INTEGER," +
+                "operation TEXT NOT NULL," +
+                "changed_at INTEGER NOT NULL)");
+        createChangeLogTrigger(stmt, "courses", "INSERT", "NEW.id", "NEW.id", "NULL");
+        createChangeLogTrigger(stmt, "reviews", "INSERT", "NEW.id", "NEW.course_id", "NEW.user_id");
+        createChangeLogTrigger(stmt, "reviews", "UPDATE", "NEW.id", "NEW.course_id", "NEW.user_id");
+        createChangeLogTrigger(stmt, "reviews", "DELETE", "OLD.id", "OLD.course_id", "OLD.user_id");
+    }
+
+    /**
+     * Creates a trigger that appends a row to change_log after a write.
+     *
+     * @param stmt The statement to execute on
+     * @param table The table to watch
+     * @param operation INSERT, UPDATE or DELETE
+     * @param rowId Expression for the changed row's ID
+     * @param courseId Expression for the affected course ID
+     * @param userId Expression for the affected user ID
+     * @throws SQLException If the trigger cannot be created
+     */
+    private void createChangeLogTrigger(Statement stmt, String table, String operation,
+                                        String rowId, String courseId, String userId) throws SQLException {
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_" + operation.toLowerCase() + "_log " +
+                "AFTER " + operation + " ON " + table + " BEGIN " +
+                "INSERT INTO change_log(table_name, row_id, course_id, user_id, operation, changed_at) " +
+                "VALUES('" + table + "', " + rowId + ", " + courseId + ", " + userId + ", '" + operation + "', " +
+                "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)); END");
+    }
+
+    /**
+     * Builds in-memory structures that require a full scan of the database
+     * on a daemon thread, so the login scene appears immediately.
+     *
+     * A read-only kiosk only loads the in-memory indexes. The jobs that write
+     * derived tables are skipped, since the published database already holds
+     * their results, and so are the change watcher and the trending flush:
+     * nothing writes to the kiosk's database, so its caches are never
+     * invalidated.
+     *
+     * With sharded storage only backups and maintenance run, for the shared
+     * file and every shard file. The analytics services each scan and
+     * maintain tables of a single database file, so they are off; the search,
+     * listing and review screens fall back to querying the shards through the
+     * DAOs, and hide the features that need the services.
+     */
+    private void startBackgroundServices() {
+        if (ShardMap.getInstance().isEnabled()) {
+            System.out.println("WARNING: sharded storage across " + ShardMap.getInstance().getShardCount()
+                    + " files. Background analytics are off, so Top Rated, fuzzy title search, facets, subject"
+                    + " suggestions, duplicate course warnings, review tags, related courses and trending courses"
+                    + " are hidden.");
+            if (!Database.isReadOnly()) {
+                BackupService.getInstance().start();
+                MaintenanceScheduler.getInstance().start();
+            }
+            return;
+        }
+
+        boolean readOnly = Database.isReadOnly();
+        Thread warmup = new Thread(() -> {
+            // The catalog snapshot fills the facets at once; it is then checked against the database
+            CatalogSnapshot snapshot = CatalogSnapshot.getInstance();
+            if (!(snapshot.load() && snapshot.validate())) {
+                CourseFacets.getInstance().rebuild();
+            }
+            LeaderboardService.getInstance().rebuild();
+            CourseTitleIndex.getInstance().rebuild();
+            FuzzyTitleSearch.getInstance().rebuild();
+            SubjectAutocomplete.getInstance().rebuild();
+            if (!readOnly) {
+                RatingTrendBackfill.getInstance().run();
+                CourseTermAnalyzer.getInstance().run();
+                CourseRecommender.getInstance().refresh();
+            }
+        }, "analytics-warmup");
+        warmup.setDaemon(true);
+        warmup.start();
+
+        if (readOnly) {
+            return;
+        }
+
+        // Pick up writes made by other processes sharing the database file
+        ChangeWatcher.getInstance().start();
+
+        TrendingService.getInstance().start();
+        CatalogSnapshot.getInstance().start();
+        BackupService.getInstance().start();
+        MaintenanceScheduler.getInstance().start();
+    }
+
+    /**
+     * Writes out buffered view counts and the catalog snapshot, and reports
+     * any write contention, before the application exits.
+     * A read-only kiosk reports how well its caches served lookups instead.
+     */
+    @Override
+    public void stop() {
+        if (Database.isReadOnly()) {
+            System.out.println("Kiosk cache hit rates: courses " + CourseDAO.getCacheHits()
+                    + ", users " + UserDAO.getCacheHits());
+            return;
+        }
+
+        MaintenanceScheduler.getInstance().stop();
+        BackupService.getInstance().stop();
+        if (!ShardMap.getInstance().isEnabled()) {
+            TrendingService.getInstance().stop();
+            CatalogSnapshot.getInstance().stop();
+        }
+
+        ContentionMetrics contention = ContentionMetrics.getInstance();
+        if (contention.hasContention()) {
+            System.out.println(contention.report());
+        }
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
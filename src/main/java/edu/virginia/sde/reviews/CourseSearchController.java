@@ -1,21 +1,58 @@
 package edu.virginia.sde.reviews;
 
+import edu.virginia.sde.reviews.analytics.CatalogSnapshot;
+import edu.virginia.sde.reviews.analytics.CourseFacets;
+import edu.virginia.sde.reviews.analytics.FuzzyTitleSearch;
+import edu.virginia.sde.reviews.analytics.LeaderboardService;
+import edu.virginia.sde.reviews.analytics.SubjectAutocomplete;
 import edu.virginia.sde.reviews.dao.CourseDAO;
+import edu.virginia.sde.reviews.dao.CourseSort;
+import edu.virginia.sde.reviews.dao.Database;
+import edu.virginia.sde.reviews.dao.ShardMap;
+import edu.virginia.sde.reviews.event.ChangeEvent;
+import edu.virginia.sde.reviews.event.CourseCreated;
+import edu.virginia.sde.reviews.event.EventBus;
+import edu.virginia.sde.reviews.event.ExternalChanges;
+import edu.virginia.sde.reviews.event.ReviewCreated;
+import edu.virginia.sde.reviews.event.ReviewDeleted;
+import edu.virginia.sde.reviews.event.ReviewUpdated;
 import edu.virginia.sde.reviews.model.Course;
+import edu.virginia.sde.reviews.model.CourseNumberRange;
+import edu.virginia.sde.reviews.util.IntHashSet;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
+import javafx.geometry.Side;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.HBox;
 import javafx.stage.Stage;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 public class CourseSearchController {
 
+    /** Number of courses shown by the Top Rated button */
+    private static final int LEADERBOARD_SIZE = 25;
+
+    /** Number of courses fetched from the database per page */
+    private static final int PAGE_SIZE = 100;
+
+    /** Number of typeahead suggestions shown under the subject field */
+    private static final int MAX_SUGGESTIONS = 8;
+
+    /** Number of subjects offered as facets, largest first */
+    private static final int MAX_SUBJECT_FACETS = 8;
+
     @FXML private Button backButton;
     @FXML private Button searchButton;
     @FXML private Button addCourseButton;
+    @FXML private Button topRatedButton;
+    @FXML private Button loadMoreButton;
+    @FXML private CheckBox fuzzyCheckBox;
 
     @FXML private TextField subjectField;
     @FXML private TextField numberField;
@@ -28,12 +65,45 @@ public class CourseSearchController {
     @FXML private TableColumn<Course, Double> averageColumn;
 
     @FXML private Label noResultsLabel;
+    @FXML private HBox subjectFacetBox;
+    @FXML private HBox levelFacetBox;
+    @FXML private HBox ratingFacetBox;
 
     private CourseDAO courseDAO;
     private ObservableList<Course> searchResults;
 
+    // Filters and sort order of the listing currently shown, used to fetch further pages
+    private String subjectFilter = "";
+    private CourseNumberRange numberFilter = null;
+    private String titleFilter = "";
+    private CourseSort sort = CourseSort.TITLE;
+    private boolean ascending = true;
+
+    /** Rating band chosen from the facets, or null for any rating */
+    private CourseFacets.RatingBand ratingFilter = null;
+
+    /** All courses of a rating band listing in sort order, or null when the listing comes from SQL */
+    private List<Course> facetMatches = null;
+
+    /** Whether the table shows the Top Rated leaderboard instead of a listing */
+    private boolean showingLeaderboard = false;
+
+    /** Whether the table shows typo-tolerant title matches instead of a listing */
+    private boolean showingFuzzyResults = false;
+
+    /** Typeahead popup for the subject field */
+    private ContextMenu subjectSuggestions;
+
+    /** Set while a suggestion is being applied, so the field change does not reopen the popup */
+    private boolean applyingSuggestion = false;
+
+    /** Whether the in-memory analytics behind facets, Top Rated, fuzzy search and suggestions are built */
+    private boolean analyticsAvailable;
+
     public void initialize() {
         courseDAO = new CourseDAO();
+        // With sharded storage the background analytics do not run, so their indexes stay empty
+        analyticsAvailable = !ShardMap.getInstance().isEnabled();
         searchResults = FXCollections.observableArrayList();
         resultsTableView.setItems(searchResults);
 
@@ -54,10 +124,36 @@ public class CourseSearchController {
             }
         });
 
-        loadAllCoursesSortedByTitle();
+        // Column header clicks re-query the database in the new order
+        // instead of sorting the loaded rows in memory
+        resultsTableView.setSortPolicy(table -> {
+            applyColumnSort();
+            return true;
+        });
+
+        loadFirstPage();
+
+        subjectSuggestions = new ContextMenu();
+        if (analyticsAvailable) {
+            subjectField.textProperty().addListener((observable, oldText, newText) -> showSubjectSuggestions(newText));
+        }
+        subjectField.focusedProperty().addListener((observable, wasFocused, focused) -> {
+            if (!focused) {
+                subjectSuggestions.hide();
+            }
+        });
 
         searchButton.setOnAction(e -> performSearch());
+        loadMoreButton.setOnAction(e -> loadNextPage());
         addCourseButton.setOnAction(e -> openAddCourseDialog());
+        // A read-only kiosk cannot add courses
+        addCourseButton.setVisible(!Database.isReadOnly());
+        addCourseButton.setManaged(!Database.isReadOnly());
+        topRatedButton.setOnAction(e -> showTopRated());
+        topRatedButton.setVisible(analyticsAvailable);
+        topRatedButton.setManaged(analyticsAvailable);
+        fuzzyCheckBox.setVisible(analyticsAvailable);
+        fuzzyCheckBox.setManaged(analyticsAvailable);
         backButton.setOnAction(e -> handleBackButton());
 
         resultsTableView.setOnMouseClicked(event -> {
@@ -66,16 +162,255 @@ public class CourseSearchController {
                 handleCourseSelection(selectedCourse);
             }
         });
+
+        // Patch the table when courses or reviews change while this screen is open
+        EventBus.Subscription subscription = EventBus.getInstance().subscribeOnFxThread(this::applyChanges);
+        SceneManager.unsubscribeWhenClosed(resultsTableView, subscription);
+    }
+
+    /**
+     * Replaces the listing with the first page of courses for the current
+     * filters and sort order, and refreshes the facet counts.
+     */
+    private void loadFirstPage() {
+        CourseFacets.Result facets = analyticsAvailable
+                ? CourseFacets.getInstance().search(subjectFilter, numberFilter, titleFilter, ratingFilter)
+                : null;
+        showingLeaderboard = false;
+        showingFuzzyResults = false;
+
+        List<Course> page;
+        if (ratingFilter != null) {
+            // SQL has no cheap rating band filter, so the listing comes from the facet index
+            facetMatches = new ArrayList<>(facets.getCourses());
+            facetMatches.sort(listingComparator());
+            page = facetMatches.subList(0, Math.min(PAGE_SIZE, facetMatches.size()));
+            loadMoreButton.setVisible(facetMatches.size() > PAGE_SIZE);
+        } else {
+            facetMatches = null;
+            // The unfiltered listing can come straight from the catalog snapshot at startup
+            page = isDefaultListing() ? CatalogSnapshot.getInstance().getFirstPage(PAGE_SIZE) : null;
+            if (page == null) {
+                page = courseDAO.searchCourses(subjectFilter, numberFilter, titleFilter,
+                        sort, ascending, 0, PAGE_SIZE);
+            }
+            loadMoreButton.setVisible(page.size() == PAGE_SIZE);
+        }
+        searchResults.setAll(page);
+        noResultsLabel.setVisible(page.isEmpty());
+        if (facets != null) {
+            showFacets(facets);
+        } else {
+            hideFacets();
+        }
+    }
+
+    private boolean isDefaultListing() {
+        return subjectFilter.isEmpty() && numberFilter == null && titleFilter.isEmpty()
+                && sort == CourseSort.TITLE && ascending;
+    }
+
+    /**
+     * Appends the next page of courses to the listing.
+     */
+    private void loadNextPage() {
+        if (facetMatches != null) {
+            int from = searchResults.size();
+            int to = Math.min(from + PAGE_SIZE, facetMatches.size());
+            searchResults.addAll(facetMatches.subList(from, to));
+            loadMoreButton.setVisible(to < facetMatches.size());
+            return;
+        }
+        // Continue after the last course shown, which also stays correct when courses were patched in
+        Course last = searchResults.isEmpty() ? null : searchResults.get(searchResults.size() - 1);
+        List<Course> page = courseDAO.searchCoursesAfter(subjectFilter, numberFilter, titleFilter,
+                sort, ascending, last, PAGE_SIZE);
+        searchResults.addAll(page);
+        loadMoreButton.setVisible(page.size() == PAGE_SIZE);
+    }
+
+    /**
+     * Shows how the courses matching the current filters break down by subject,
+     * level and rating band, as links that narrow the listing to one value.
+     *
+     * @param facets The facet counts for the current filters
+     */
+    private void showFacets(CourseFacets.Result facets) {
+        List<Hyperlink> subjectLinks = new ArrayList<>();
+        if (!subjectFilter.isEmpty()) {
+            subjectLinks.add(facetLink("All subjects", false, () -> selectSubject("")));
+        }
+        int subjectsShown = 0;
+        for (Map.Entry<String, Integer> entry : facets.getSubjectCounts().entrySet()) {
+            if (subjectsShown++ == MAX_SUBJECT_FACETS) {
+                break;
+            }
+            String subject = entry.getKey();
+            subjectLinks.add(facetLink(subject + " (" + entry.getValue() + ")",
+                    subject.equalsIgnoreCase(subjectFilter), () -> selectSubject(subject)));
+        }
+        fillFacetBox(subjectFacetBox, subjectLinks, !subjectFilter.isEmpty());
+
+        List<Hyperlink> levelLinks = new ArrayList<>();
+        if (numberFilter != null) {
+            levelLinks.add(facetLink("All levels", false, () -> selectLevel(null)));
+        }
+        for (Map.Entry<Integer, Integer> entry : facets.getLevelCounts().entrySet()) {
+            CourseNumberRange level = CourseNumberRange.level(entry.getKey());
+            boolean selected = numberFilter != null && numberFilter.getFrom() == level.getFrom()
+                    && numberFilter.getTo() == level.getTo();
+            levelLinks.add(facetLink(entry.getKey() + "-level (" + entry.getValue() + ")",
+                    selected, () -> selectLevel(level)));
+        }
+        fillFacetBox(levelFacetBox, levelLinks, numberFilter != null);
+
+        List<Hyperlink> ratingLinks = new ArrayList<>();
+        if (ratingFilter != null) {
+            ratingLinks.add(facetLink("Any rating", false, () -> selectRating(null)));
+        }
+        for (Map.Entry<CourseFacets.RatingBand, Integer> entry : facets.getRatingCounts().entrySet()) {
+            CourseFacets.RatingBand band = entry.getKey();
+            if (entry.getValue() > 0) {
+                ratingLinks.add(facetLink(band + " (" + entry.getValue() + ")",
+                        band == ratingFilter, () -> selectRating(band)));
+            }
+        }
+        fillFacetBox(ratingFacetBox, ratingLinks, ratingFilter != null);
+    }
+
+    /**
+     * Creates a facet link. The currently selected value is shown as visited.
+     */
+    private static Hyperlink facetLink(String text, boolean selected, Runnable action) {
+        Hyperlink link = new Hyperlink(text);
+        link.setVisited(selected);
+        link.setOnAction(e -> action.run());
+        return link;
+    }
+
+    /**
+     * Shows a row of facet links, hiding it when it offers nothing to narrow down.
+     */
+    private static void fillFacetBox(HBox box, List<Hyperlink> links, boolean filtered) {
+        box.getChildren().setAll(links);
+        boolean visible = links.size() > 1 || filtered;
+        box.setVisible(visible);
+        box.setManaged(visible);
+    }
+
+    private void hideFacets() {
+        for (HBox box : List.of(subjectFacetBox, levelFacetBox, ratingFacetBox)) {
+            box.setVisible(false);
+            box.setManaged(false);
+        }
+    }
+
+    /**
+     * Narrows the listing to one subject, or clears the subject filter.
+     *
+     * @param subject The subject to show, or an empty string for all subjects
+     */
+    private void selectSubject(String subject) {
+        applyingSuggestion = true;
+        subjectField.setText(subject);
+        applyingSuggestion = false;
+        performSearch();
+    }
+
+    /**
+     * Narrows the listing to one level, or clears the number filter.
+     *
+     * @param level The level to show, or null for all levels
+     */
+    private void selectLevel(CourseNumberRange level) {
+        numberField.setText(level == null ? "" : level.getFrom() / CourseNumberRange.LEVEL_SIZE + "xxx");
+        performSearch();
+    }
+
+    /**
+     * Narrows the listing to one rating band, or clears the rating filter.
+     *
+     * @param band The band to show, or null for any rating
+     */
+    private void selectRating(CourseFacets.RatingBand band) {
+        ratingFilter = band;
+        loadFirstPage();
+    }
+
+    /**
+     * Shows subject and course code suggestions for the text typed in the subject field.
+     *
+     * @param text The current contents of the subject field
+     */
+    private void showSubjectSuggestions(String text) {
+        if (applyingSuggestion) {
+            return;
+        }
+        List<SubjectAutocomplete.Suggestion> suggestions =
+                SubjectAutocomplete.getInstance().suggest(text, MAX_SUGGESTIONS);
+        if (suggestions.isEmpty()) {
+            subjectSuggestions.hide();
+            return;
+        }
+
+        List<MenuItem> items = new ArrayList<>(suggestions.size());
+        for (SubjectAutocomplete.Suggestion suggestion : suggestions) {
+            MenuItem item = new MenuItem(suggestion.toString());
+            item.setOnAction(e -> applySuggestion(suggestion));
+            items.add(item);
+        }
+        subjectSuggestions.getItems().setAll(items);
+        if (!subjectSuggestions.isShowing()) {
+            subjectSuggestions.show(subjectField, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    /**
+     * Fills the search fields from a chosen suggestion and runs the search.
+     *
+     * @param suggestion The chosen suggestion
+     */
+    private void applySuggestion(SubjectAutocomplete.Suggestion suggestion) {
+        applyingSuggestion = true;
+        subjectField.setText(suggestion.getSubject());
+        if (suggestion.getNumber() != null) {
+            numberField.setText(String.valueOf(suggestion.getNumber()));
+        }
+        applyingSuggestion = false;
+        subjectSuggestions.hide();
+        performSearch();
     }
 
-    private void loadAllCoursesSortedByTitle() {
-        List<Course> courses = courseDAO.getAllCourses();
+    /**
+     * Maps the table's current sort column to a database sort order and
+     * reloads the listing if the order changed.
+     */
+    private void applyColumnSort() {
+        CourseSort newSort = CourseSort.TITLE;
+        boolean newAscending = true;
 
-        // Sort by title (case-insensitive)
-        courses.sort((a, b) -> a.getTitle().compareToIgnoreCase(b.getTitle()));
+        if (!resultsTableView.getSortOrder().isEmpty()) {
+            TableColumn<Course, ?> column = resultsTableView.getSortOrder().get(0);
+            if (column == subjectColumn || column == numberColumn) {
+                newSort = CourseSort.SUBJECT_NUMBER;
+            } else if (column == averageColumn) {
+                newSort = CourseSort.RATING;
+            }
+            newAscending = column.getSortType() == TableColumn.SortType.ASCENDING;
+        }
 
-        resultsTableView.getItems().setAll(courses);
-        noResultsLabel.setVisible(courses.isEmpty());
+        // The table also invokes the sort policy when its items change, so
+        // only go back to the database when the order actually changed
+        if (newSort != sort || newAscending != ascending) {
+            sort = newSort;
+            ascending = newAscending;
+            if (showingFuzzyResults) {
+                // Fuzzy results are a single in-memory page, so re-sort them in place
+                FXCollections.sort(searchResults, listingComparator());
+            } else {
+                loadFirstPage();
+            }
+        }
     }
 
     private void performSearch() {
@@ -83,21 +418,175 @@ public class CourseSearchController {
         String numberText = numberField.getText().trim();
         String title = titleField.getText().trim();
 
-        Integer number = null;
+        CourseNumberRange number = null;
         if (!numberText.isEmpty()) {
             try {
-                number = Integer.parseInt(numberText);
+                number = CourseNumberRange.parse(numberText);
             } catch (NumberFormatException e) {
-                showErrorAlert("Course number must be numeric.");
+                showErrorAlert("Course number must be a number (2130), a range (3000-3999) or a level (3xxx).");
                 return;
             }
         }
 
-        List<Course> results = courseDAO.searchCourses(subject, number, title);
+        subjectFilter = subject;
+        numberFilter = number;
+        titleFilter = title;
+        if (analyticsAvailable && fuzzyCheckBox.isSelected() && !title.isEmpty()) {
+            showFuzzyResults();
+        } else {
+            loadFirstPage();
+        }
+    }
+
+    /**
+     * Shows courses whose titles match the title filter allowing for typos,
+     * closest matches first.
+     */
+    private void showFuzzyResults() {
+        List<Course> results = FuzzyTitleSearch.getInstance().search(titleFilter, subjectFilter, numberFilter, PAGE_SIZE);
+        showingLeaderboard = false;
+        showingFuzzyResults = true;
+        searchResults.setAll(results);
+        loadMoreButton.setVisible(false);
+        // Facet counts use the exact title filter, so they would not match fuzzy results
+        hideFacets();
+        noResultsLabel.setVisible(results.isEmpty());
+    }
+
+    /**
+     * Shows the best-rated courses in the subject typed in the subject field,
+     * or across all subjects if it is empty.
+     */
+    private void showTopRated() {
+        String subject = subjectField.getText().trim();
+        List<Course> results = LeaderboardService.getInstance().topCourses(subject, LEADERBOARD_SIZE);
+        showingLeaderboard = true;
+        showingFuzzyResults = false;
         searchResults.setAll(results);
+        loadMoreButton.setVisible(false);
+        hideFacets();
         noResultsLabel.setVisible(results.isEmpty());
     }
 
+    /**
+     * Applies a batch of change events to the rows on screen.
+     * New courses are inserted in sort order if they match the current filters,
+     * and courses whose reviews changed are reloaded individually.
+     *
+     * @param events The events published since the last batch
+     */
+    private void applyChanges(List<ChangeEvent> events) {
+        if (showingLeaderboard) {
+            // The leaderboard is small and kept in memory, so just re-read it
+            showTopRated();
+            return;
+        }
+        if (showingFuzzyResults) {
+            // Likewise for fuzzy matches, which are ranked by the in-memory index
+            showFuzzyResults();
+            return;
+        }
+        if (facetMatches != null) {
+            // And for rating band listings, which come from the facet index
+            loadFirstPage();
+            return;
+        }
+
+        IntHashSet changedCourseIds = new IntHashSet();
+        for (ChangeEvent event : events) {
+            if (event instanceof CourseCreated) {
+                insertInOrder(((CourseCreated) event).getCourse());
+            } else if (event instanceof ReviewCreated) {
+                changedCourseIds.add(((ReviewCreated) event).getReview().getCourseId());
+            } else if (event instanceof ReviewUpdated) {
+                changedCourseIds.add(((ReviewUpdated) event).getAfter().getCourseId());
+            } else if (event instanceof ReviewDeleted) {
+                changedCourseIds.add(((ReviewDeleted) event).getReview().getCourseId());
+            } else if (event instanceof ExternalChanges) {
+                ExternalChanges changes = (ExternalChanges) event;
+                for (int courseId : changes.getCreatedCourseIds()) {
+                    Course course = courseDAO.getCourseById(courseId);
+                    if (course != null) {
+                        insertInOrder(course);
+                    }
+                }
+                for (int courseId : changes.getReviewedCourseIds()) {
+                    changedCourseIds.add(courseId);
+                }
+            }
+        }
+
+        // The facet index applies review events on its reload thread and then
+        // publishes RatingsReloaded, so a later batch shows the updated counts
+        if (analyticsAvailable) {
+            showFacets(CourseFacets.getInstance().search(subjectFilter, numberFilter, titleFilter, ratingFilter));
+        }
+
+        if (changedCourseIds.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < searchResults.size(); i++) {
+            Course row = searchResults.get(i);
+            if (changedCourseIds.contains(row.getId())) {
+                Course updated = courseDAO.getCourseById(row.getId());
+                if (updated != null) {
+                    searchResults.set(i, updated);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts a new course at its sorted position if it matches the current filters.
+     * A course that sorts after the last loaded row is left for a later page.
+     *
+     * @param course The new course
+     */
+    private void insertInOrder(Course course) {
+        if (!matchesFilters(course)) {
+            return;
+        }
+        // The change watcher can still report this process's own inserts
+        for (Course row : searchResults) {
+            if (row.getId() == course.getId()) {
+                return;
+            }
+        }
+
+        Comparator<Course> order = listingComparator();
+        int index = 0;
+        while (index < searchResults.size() && order.compare(searchResults.get(index), course) <= 0) {
+            index++;
+        }
+        if (index == searchResults.size() && loadMoreButton.isVisible()) {
+            return;
+        }
+
+        searchResults.add(index, course);
+        noResultsLabel.setVisible(false);
+    }
+
+    /**
+     * Checks a course against the filters of the current listing, mirroring CourseDAO.searchCourses.
+     */
+    private boolean matchesFilters(Course course) {
+        if (!subjectFilter.isEmpty() && !course.getSubject().equalsIgnoreCase(subjectFilter)) {
+            return false;
+        }
+        if (numberFilter != null && !numberFilter.contains(course.getNumber())) {
+            return false;
+        }
+        return titleFilter.isEmpty()
+                || course.getTitle().toLowerCase().contains(titleFilter.toLowerCase());
+    }
+
+    /**
+     * Builds an in-memory comparator equivalent to the current CourseSort order.
+     */
+    private Comparator<Course> listingComparator() {
+        return sort.comparator(ascending);
+    }
+
     private void openAddCourseDialog() {
         AddCourseDialog.showAndWait(result -> {
             if (result != null) {
@@ -106,13 +595,16 @@ public class CourseSearchController {
                         result.getNumber(),
                         result.getTitle()
                 );
-                boolean success = courseDAO.createCourse(newCourse);
-                if (success) {
-                    showInfoAlert("Course Added", "The course was added successfully.");
-                    loadAllCoursesSortedByTitle();
-                } else {
-                    showErrorAlert("Failed to add course. Please try again.");
-                }
+                addCourseButton.setDisable(true);
+                BackgroundWrites.run(() -> courseDAO.createCourse(newCourse), success -> {
+                    addCourseButton.setDisable(false);
+                    if (success) {
+                        // The table picks up the new course from its CourseCreated event
+                        showInfoAlert("Course Added", "The course was added successfully.");
+                    } else {
+                        showErrorAlert("Failed to add course. Please try again.");
+                    }
+                });
             }
             return null;
         });
@@ -1,18 +1,30 @@
 package edu.virginia.sde.reviews;
 
+import edu.virginia.sde.reviews.analytics.TrendingService;
+import edu.virginia.sde.reviews.dao.ShardMap;
+import edu.virginia.sde.reviews.model.Course;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
+import javafx.scene.control.Hyperlink;
 import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
+import java.util.List;
+
 /**
  * Controller for the home page scene of the UVA Course Reviews application.
  * This page serves as the main navigation hub after login, providing access to:
  * - Course Search
  * - Course Reviews
  * - My Reviews
+ * It also lists the courses trending right now.
  */
 public class HomeController {
+    /** Number of courses in the trending list */
+    private static final int TRENDING_SIZE = 5;
+
     @FXML
     public Button exitButton;
     /** Label displaying welcome message with current username */
@@ -31,6 +43,10 @@ public class HomeController {
     @FXML
     private Button logoutButton;
 
+    /** Links to the most popular courses right now */
+    @FXML
+    private VBox trendingBox;
+
     /**
      * Initializes the controller.
      * This method is automatically called after the FXML is loaded.
@@ -50,6 +66,32 @@ public class HomeController {
         myReviewsButton.setOnAction(event -> handleMyReviewsButton());
         logoutButton.setOnAction(event -> handleLogoutButton());
         exitButton.setOnAction(event -> handleExitButton());
+
+        loadTrendingCourses();
+    }
+
+    /**
+     * Shows links to the courses most viewed and reviewed recently.
+     * The list is hidden until there is some activity to rank, and always
+     * with sharded storage, where the trending service does not run.
+     */
+    private void loadTrendingCourses() {
+        List<Course> trending = ShardMap.getInstance().isEnabled()
+                ? List.of()
+                : TrendingService.getInstance().topCourses(TRENDING_SIZE);
+        for (Course course : trending) {
+            Hyperlink link = new Hyperlink(course.getSubject() + " " + course.getNumber() + " - " + course.getTitle());
+            link.setTooltip(new Tooltip(course.getAverageRating() == 0.0
+                    ? "No ratings yet"
+                    : "Average rating " + course.getFormattedAverageRating()));
+            link.setOnAction(event -> {
+                Stage stage = (Stage) trendingBox.getScene().getWindow();
+                SceneManager.switchToCourseReviewScene(stage, course);
+            });
+            trendingBox.getChildren().add(link);
+        }
+        trendingBox.setVisible(!trending.isEmpty());
+        trendingBox.setManaged(!trending.isEmpty());
     }
     
     /**
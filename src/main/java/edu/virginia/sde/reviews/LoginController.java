@@ -1,5 +1,6 @@
 package edu.virginia.sde.reviews;
 
+import edu.virginia.sde.reviews.dao.Database;
 import edu.virginia.sde.reviews.dao.UserDAO;
 import edu.virginia.sde.reviews.model.User;
 import javafx.fxml.FXML;
@@ -58,6 +59,12 @@ public class LoginController {
         loginButton.setOnAction(event -> handleLogin());
         createAccountButton.setOnAction(event -> handleCreateAccount());
         closeButton.setOnAction(event -> handleClose());
+
+        // A read-only kiosk only lets existing users log in
+        if (Database.isReadOnly()) {
+            createAccountButton.setDisable(true);
+            createAccountErrorLabel.setText("New accounts cannot be created on this kiosk.");
+        }
     }
 
     /**
@@ -132,12 +139,16 @@ public class LoginController {
         
         // Create the user account
         User newUser = new User(username, password);
-        if (userDAO.createUser(newUser)) {
-            showAlert("Account Created", "Your account has been created successfully. Please log in.");
-            clearCreateAccountFields();
-        } else {
-            createAccountErrorLabel.setText("Failed to create account. Please try again.");
-        }
+        createAccountButton.setDisable(true);
+        BackgroundWrites.run(() -> userDAO.createUser(newUser), success -> {
+            createAccountButton.setDisable(false);
+            if (success) {
+                showAlert("Account Created", "Your account has been created successfully. Please log in.");
+                clearCreateAccountFields();
+            } else {
+                createAccountErrorLabel.setText("Failed to create account. Please try again.");
+            }
+        });
     }
 
     /**
@@ -1,7 +1,14 @@
 package edu.virginia.sde.reviews;
 
 import edu.virginia.sde.reviews.dao.CourseDAO;
+import edu.virginia.sde.reviews.event.ChangeEvent;
+import edu.virginia.sde.reviews.event.EventBus;
+import edu.virginia.sde.reviews.event.ExternalChanges;
+import edu.virginia.sde.reviews.event.ReviewCreated;
+import edu.virginia.sde.reviews.event.ReviewDeleted;
+import edu.virginia.sde.reviews.event.ReviewUpdated;
 import edu.virginia.sde.reviews.model.Course;
+import edu.virginia.sde.reviews.model.Review;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -70,6 +77,10 @@ public class MyReviewsController {
                 handleCourseSelection(selectedCourse);
             }
         });
+
+        // Keep the list current when the user's reviews change elsewhere
+        EventBus.Subscription subscription = EventBus.getInstance().subscribeOnFxThread(this::applyChanges);
+        SceneManager.unsubscribeWhenClosed(reviewedCoursesListView, subscription);
     }
 
     /**
@@ -85,16 +96,73 @@ public class MyReviewsController {
             
             reviewedCourses.clear();
             reviewedCourses.addAll(courses);
-            
-            if (courses.isEmpty()) {
-                noReviewsLabel.setText("You haven't reviewed any courses yet.");
-                noReviewsLabel.setVisible(true);
-                reviewedCoursesListView.setVisible(false);
-            } else {
-                noReviewsLabel.setVisible(false);
-                reviewedCoursesListView.setVisible(true);
+            updateEmptyState();
+        }
+    }
+
+    /**
+     * Shows either the list of reviewed courses or the "no reviews" message.
+     */
+    private void updateEmptyState() {
+        if (reviewedCourses.isEmpty()) {
+            noReviewsLabel.setText("You haven't reviewed any courses yet.");
+            noReviewsLabel.setVisible(true);
+            reviewedCoursesListView.setVisible(false);
+        } else {
+            noReviewsLabel.setVisible(false);
+            reviewedCoursesListView.setVisible(true);
+        }
+    }
+
+    /**
+     * Applies a batch of change events to the list, adding, updating or
+     * removing only the courses whose reviews by the current user changed.
+     *
+     * @param events The events published since the last batch
+     */
+    private void applyChanges(List<ChangeEvent> events) {
+        if (!SessionManager.getInstance().isLoggedIn()) {
+            return;
+        }
+        int userId = SessionManager.getInstance().getCurrentUser().getId();
+
+        for (ChangeEvent event : events) {
+            if (event instanceof ReviewCreated) {
+                Review review = ((ReviewCreated) event).getReview();
+                if (review.getUserId() == userId) {
+                    Course course = courseDAO.getCourseById(review.getCourseId());
+                    if (course != null) {
+                        // This list shows the user's own rating, as in getCoursesForUserReviews
+                        course.setAverageRating(review.getRating());
+                        reviewedCourses.add(course);
+                    }
+                }
+            } else if (event instanceof ReviewUpdated) {
+                Review review = ((ReviewUpdated) event).getAfter();
+                if (review.getUserId() == userId) {
+                    for (Course course : reviewedCourses) {
+                        if (course.getId() == review.getCourseId()) {
+                            course.setAverageRating(review.getRating());
+                        }
+                    }
+                }
+            } else if (event instanceof ReviewDeleted) {
+                Review review = ((ReviewDeleted) event).getReview();
+                if (review.getUserId() == userId) {
+                    reviewedCourses.removeIf(course -> course.getId() == review.getCourseId());
+                }
+            } else if (event instanceof ExternalChanges) {
+                // Only IDs are known, so reload the (short) list if it is affected
+                for (int changedUserId : ((ExternalChanges) event).getUserIds()) {
+                    if (changedUserId == userId) {
+                        loadReviewedCourses();
+                        return;
+                    }
+                }
             }
         }
+
+        updateEmptyState();
     }
 
     /**
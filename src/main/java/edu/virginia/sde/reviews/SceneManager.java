@@ -1,7 +1,10 @@
 package edu.virginia.sde.reviews;
 
+import edu.virginia.sde.reviews.analytics.TrendingService;
+import edu.virginia.sde.reviews.event.EventBus;
 import edu.virginia.sde.reviews.model.Course;
 import javafx.fxml.FXMLLoader;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
@@ -128,6 +131,7 @@ public class SceneManager {
             
             CourseReviewController controller = loader.getController();
             controller.initData(course);
+            TrendingService.getInstance().recordView(course.getId());
 
             stage.setScene(scene);
             stage.setTitle("UVA Course Reviews - " + course.toString());
@@ -192,6 +196,28 @@ public class SceneManager {
         }
     }
     
+    /**
+     * Ties an event subscription to the scene containing a node.
+     * Scenes are replaced (not reused) on every navigation, so once the
+     * node's scene is detached from its window the subscription is cancelled.
+     * Controllers call this from initialize(), before the scene exists.
+     *
+     * @param node A node of the controller's scene
+     * @param subscription The subscription to cancel when the scene is closed
+     */
+    public static void unsubscribeWhenClosed(Node node, EventBus.Subscription subscription) {
+        node.sceneProperty().addListener((sceneObs, oldScene, newScene) -> {
+            if (newScene == null) {
+                return;
+            }
+            newScene.windowProperty().addListener((windowObs, oldWindow, newWindow) -> {
+                if (oldWindow != null && newWindow == null) {
+                    subscription.unsubscribe();
+                }
+            });
+        });
+    }
+
     /**
      * Pushes the current scene information to the navigation history stack.
      * 
@@ -1,6 +1,15 @@
 package edu.virginia.sde.reviews;
 
+import edu.virginia.sde.reviews.dao.ReviewDAO;
+import edu.virginia.sde.reviews.event.EventBus;
+import edu.virginia.sde.reviews.event.ExternalChanges;
+import edu.virginia.sde.reviews.event.ReviewCreated;
+import edu.virginia.sde.reviews.event.ReviewDeleted;
+import edu.virginia.sde.reviews.model.Review;
 import edu.virginia.sde.reviews.model.User;
+import edu.virginia.sde.reviews.util.IntHashSet;
+
+import java.util.List;
 
 /**
  * Session Manager for the UVA Course Reviews application.
@@ -12,6 +21,7 @@ import edu.virginia.sde.reviews.model.User;
  * Key responsibilities:
  * - Store the currently authenticated user
  * - Provide access to the current user information
+ * - Track which courses the current user has reviewed
  * - Handle user logout
  */
 public class SessionManager {
@@ -21,12 +31,22 @@ public class SessionManager {
     /** The currently logged-in user, or null if no user is logged in */
     private User currentUser;
 
+    /** IDs of the courses the current user has reviewed */
+    private final IntHashSet reviewedCourseIds = new IntHashSet();
+
+    /** Whether reviewedCourseIds was loaded; if not, it cannot rule out a review */
+    private boolean reviewedCourseIdsLoaded;
+
     /**
      * Private constructor to enforce singleton pattern.
      * Use getInstance() to access the SessionManager.
      */
     private SessionManager() {
-        // Private constructor to enforce singleton pattern
+        // Keep the reviewed-course set in sync with the user's own writes
+        EventBus bus = EventBus.getInstance();
+        bus.subscribe(ReviewCreated.class, e -> reviewCreated(e.getReview()));
+        bus.subscribe(ReviewDeleted.class, e -> reviewDeleted(e.getReview()));
+        bus.subscribe(ExternalChanges.class, this::externalChanges);
     }
 
     /**
@@ -54,11 +74,80 @@ public class SessionManager {
     /**
      * Sets the currently logged-in user.
      * Called after successful authentication.
+     * Also loads the set of courses the user has reviewed. If that fails,
+     * hasReviewedCourse() answers true so callers check the database instead.
      * 
      * @param currentUser The authenticated user to set as current
      */
     public void setCurrentUser(User currentUser) {
         this.currentUser = currentUser;
+        synchronized (reviewedCourseIds) {
+            reviewedCourseIds.clear();
+            reviewedCourseIdsLoaded = true;
+            if (currentUser != null) {
+                List<Review> reviews = new ReviewDAO().getReviewsByUser(currentUser.getId());
+                if (reviews == null) {
+                    reviewedCourseIdsLoaded = false;
+                    return;
+                }
+                for (Review review : reviews) {
+                    reviewedCourseIds.add(review.getCourseId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reloads the reviewed-course set if another process changed the current user's reviews.
+     */
+    private void externalChanges(ExternalChanges changes) {
+        User user = currentUser;
+        if (user == null) {
+            return;
+        }
+        for (int userId : changes.getUserIds()) {
+            if (userId == user.getId()) {
+                setCurrentUser(user);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the current user may have reviewed a course, without a
+     * database query. A false answer is definite. If the user's reviews could
+     * not be loaded at login, the answer is always true, so callers look the
+     * review up in the database rather than hide one that exists.
+     *
+     * @param courseId The ID of the course
+     * @return true if the current user has or may have a review for the course, false otherwise
+     */
+    public boolean hasReviewedCourse(int courseId) {
+        synchronized (reviewedCourseIds) {
+            return !reviewedCourseIdsLoaded || reviewedCourseIds.contains(courseId);
+        }
+    }
+
+    /**
+     * Records a new review if it belongs to the current user.
+     */
+    private void reviewCreated(Review review) {
+        if (currentUser != null && review.getUserId() == currentUser.getId()) {
+            synchronized (reviewedCourseIds) {
+                reviewedCourseIds.add(review.getCourseId());
+            }
+        }
+    }
+
+    /**
+     * Forgets a deleted review if it belonged to the current user.
+     */
+    private void reviewDeleted(Review before) {
+        if (currentUser != null && before.getUserId() == currentUser.getId()) {
+            synchronized (reviewedCourseIds) {
+                reviewedCourseIds.remove(before.getCourseId());
+            }
+        }
     }
 
     /**
@@ -76,6 +165,9 @@ public class SessionManager {
      */
     public void logout() {
         currentUser = null;
+        synchronized (reviewedCourseIds) {
+            reviewedCourseIds.clear();
+        }
     }
     
     /**
@@ -0,0 +1,552 @@
+package edu.virginia.sde.reviews.analytics;
+
+import edu.virginia.sde.reviews.dao.Database;
+import edu.virginia.sde.reviews.event.CourseCreated;
+import edu.virginia.sde.reviews.event.EventBus;
+import edu.virginia.sde.reviews.event.ExternalChanges;
+import edu.virginia.sde.reviews.event.ReviewCreated;
+import edu.virginia.sde.reviews.event.ReviewDeleted;
+import edu.virginia.sde.reviews.event.ReviewUpdated;
+import edu.virginia.sde.reviews.model.Course;
+import edu.virginia.sde.reviews.util.IntHashSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of the course catalog, for a warm start without scanning the database.
+ *
+ * The snapshot file holds every course's ID, subject, number, title, review
+ * count and rating sum, stored column by column. Subjects are
+ * dictionary-encoded as a two-byte index into a table of distinct subjects,
+ * and titles are one UTF-8 blob with an end offset per course. Courses are in
+ * the default listing order (title, then subject and number), so the first
+ * screen of the course search is a prefix of the file. The file ends with a
+ * CRC32 of its contents, and a file with another version or a bad checksum is
+ * ignored.
+ *
+ * The snapshot is written on clean shutdown and every WRITE_INTERVAL_MINUTES.
+ * It records the change_log sequence it reflects. At startup the file is
+ * memory-mapped and decoded into CourseFacets, and the first page of the
+ * course search is served from it. Then validate() compares the recorded
+ * sequence with the database in the background. Changes made since the
+ * snapshot are replayed as an ExternalChanges event, which every cache already
+ * knows how to apply. If the change log no longer reaches back that far, the
+ * caller falls back to a full rebuild.
+ */
+public class CatalogSnapshot {
+    /** Location of the snapshot file, next to the database */
+    private static final Path FILE = Paths.get("course_catalog.snapshot");
+
+    /** "CRCS", marking a course catalog snapshot */
+    private static final int MAGIC = 0x43524353;
+
+    /** Format version; bumped whenever the layout changes */
+    private static final int VERSION = 1;
+
+    /** How often the snapshot is rewritten while the application runs */
+    private static final long WRITE_INTERVAL_MINUTES = 10;
+
+    /** Number of courses kept in memory to serve the first screen */
+    private static final int FIRST_SCREEN_SIZE = 100;
+
+    /** Singleton instance of the snapshot */
+    private static CatalogSnapshot instance;
+
+    /** First courses in listing order, while they are known to match the database; null otherwise */
+    private volatile List<Course> firstScreen;
+
+    /** change_log sequence of the last snapshot loaded or written, or -1 if none */
+    private long watermark = -1;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the snapshot.
+     */
+    private CatalogSnapshot() {
+    }
+
+    /**
+     * Gets the singleton snapshot. The first screen stops being served as
+     * soon as any course or review changes.
+     *
+     * @return The singleton CatalogSnapshot instance
+     */
+    public static synchronized CatalogSnapshot getInstance() {
+        if (instance == null) {
+            instance = new CatalogSnapshot();
+            EventBus bus = EventBus.getInstance();
+            bus.subscribe(CourseCreated.class, e -> instance.firstScreen = null);
+            bus.subscribe(ReviewCreated.class, e -> instance.firstScreen = null);
+            bus.subscribe(ReviewUpdated.class, e -> instance.firstScreen = null);
+            bus.subscribe(ReviewDeleted.class, e -> instance.firstScreen = null);
+            bus.subscribe(ExternalChanges.class, e -> instance.firstScreen = null);
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the first page of the default course listing from the snapshot.
+     *
+     * @param limit The maximum number of courses to return
+     * @return Copies of the first courses by title, or null if the snapshot
+     *         is not loaded or the catalog has changed since
+     */
+    public List<Course> getFirstPage(int limit) {
+        List<Course> courses = firstScreen;
+        if (courses == null || (limit > courses.size() && courses.size() == FIRST_SCREEN_SIZE)) {
+            return null;
+        }
+        List<Course> page = new ArrayList<>();
+        for (Course course : courses.subList(0, Math.min(limit, courses.size()))) {
+            Course copy = new Course(course.getId(), course.getSubject(), course.getNumber(), course.getTitle());
+            copy.setAverageRating(course.getAverageRating());
+            page.add(copy);
+        }
+        return page;
+    }
+
+    /**
+     * Memory-maps the snapshot file and loads it into CourseFacets.
+     *
+     * @return true if a valid snapshot was loaded, false if there is none or it is unreadable
+     */
+    public synchronized boolean load() {
+        if (!Files.exists(FILE)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            Contents contents = readFile(FILE);
+            if (contents == null) {
+                System.out.println("Ignoring catalog snapshot with an unknown format or bad checksum");
+                return false;
+            }
+
+            List<Course> courses = contents.courses;
+            CourseFacets.getInstance().load(courses, contents.ratingSums, contents.reviewCounts);
+            firstScreen = new ArrayList<>(courses.subList(0, Math.min(FIRST_SCREEN_SIZE, courses.size())));
+            watermark = contents.sequence;
+            System.out.println("Loaded catalog snapshot (" + courses.size() + " courses) in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return true;
+
+        } catch (IOException | RuntimeException e) {
+            // A truncated or hand-edited file shows up as a buffer underflow or bad index
+            System.out.println("Error loading catalog snapshot: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Brings a loaded snapshot up to date with the database by publishing the
+     * changes made since it was written as an ExternalChanges event.
+     *
+     * @return true if the loaded data is now current, false if there is no
+     *         snapshot, the change log has been pruned past it, or the check
+     *         failed; the caller must then rebuild from the database
+     */
+    public synchronized boolean validate() {
+        if (watermark < 0) {
+            return false;
+        }
+
+        IntHashSet createdCourseIds = new IntHashSet();
+        IntHashSet reviewedCourseIds = new IntHashSet();
+        IntHashSet reviewIds = new IntHashSet();
+        IntHashSet userIds = new IntHashSet();
+
+        try (Connection conn = Database.connect()) {
+            // One read transaction, so the sequence and the rows read agree
+            conn.setAutoCommit(false);
+            try {
+                long sequence = readSequence(conn);
+                if (sequence == watermark) {
+                    return true;
+                }
+                long oldest = queryLong(conn, "SELECT IFNULL(MIN(id), 0) FROM change_log");
+                if (sequence < watermark || oldest == 0 || oldest > watermark + 1) {
+                    System.out.println("Catalog snapshot is older than the change log; rebuilding");
+                    firstScreen = null;
+                    watermark = -1;
+                    return false;
+                }
+
+                String sql = "SELECT table_name, row_id, course_id, user_id FROM change_log WHERE id > ?";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setLong(1, watermark);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        if ("courses".equals(rs.getString("table_name"))) {
+                            createdCourseIds.add(rs.getInt("row_id"));
+                        } else {
+                            reviewIds.add(rs.getInt("row_id"));
+                            reviewedCourseIds.add(rs.getInt("course_id"));
+                            userIds.add(rs.getInt("user_id"));
+                        }
+                    }
+                }
+                watermark = sequence;
+            } finally {
+                conn.rollback();
+            }
+
+        } catch (SQLException e) {
+            System.out.println("Error validating catalog snapshot: " + e.getMessage());
+            firstScreen = null;
+            watermark = -1;
+            return false;
+        }
+
+        System.out.println("Catalog snapshot replayed " + (createdCourseIds.size() + reviewIds.size())
+                + " changes made since it was written");
+        EventBus.getInstance().publish(new ExternalChanges(
+                createdCourseIds.toArray(),
+                reviewedCourseIds.toArray(),
+                reviewIds.toArray(),
+                userIds.toArray()));
+        return true;
+    }
+
+    /**
+     * Starts rewriting the snapshot periodically on a background daemon thread.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalog-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::write, WRITE_INTERVAL_MINUTES, WRITE_INTERVAL_MINUTES,
+                TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the background thread and writes a final snapshot.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        write();
+    }
+
+    /**
+     * Writes the catalog to the snapshot file, unless nothing has changed
+     * since the last snapshot. The file is written to a temporary file
+     * first and moved into place, so readers never see a partial snapshot.
+     *
+     * @return true if the snapshot is current, false if an error occurred
+     */
+    public synchronized boolean write() {
+        String sql = "SELECT c.id, c.subject, c.number, c.title, IFNULL(s.review_count, 0) AS review_count, " +
+                     "IFNULL(s.count1 + 2 * s.count2 + 3 * s.count3 + 4 * s.count4 + 5 * s.count5, 0) AS rating_sum " +
+                     "FROM courses c " +
+                     "LEFT JOIN course_rating_stats s ON s.course_id = c.id " +
+                     "ORDER BY c.title COLLATE NOCASE, c.subject, c.number, c.id";
+
+        List<Course> courses = new ArrayList<>();
+        List<Integer> reviewCounts = new ArrayList<>();
+        List<Long> ratingSums = new ArrayList<>();
+        long sequence;
+
+        try (Connection conn = Database.connect()) {
+            // One read transaction, so the catalog matches the recorded sequence
+            conn.setAutoCommit(false);
+            try {
+                sequence = readSequence(conn);
+                if (sequence == watermark && Files.exists(FILE)) {
+                    return true;
+                }
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery(sql)) {
+                    while (rs.next()) {
+                        courses.add(new Course(
+                                rs.getInt("id"),
+                                rs.getString("subject"),
+                                rs.getInt("number"),
+                                rs.getString("title")
+                        ));
+                        reviewCounts.add(rs.getInt("review_count"));
+                        ratingSums.add(rs.getLong("rating_sum"));
+                    }
+                }
+            } finally {
+                conn.rollback();
+            }
+        } catch (SQLException e) {
+            System.out.println("Error reading catalog for snapshot: " + e.getMessage());
+            return false;
+        }
+
+        ByteBuffer buffer;
+        try {
+            buffer = encode(sequence, courses,
+                    reviewCounts.stream().mapToInt(Integer::intValue).toArray(),
+                    ratingSums.stream().mapToLong(Long::longValue).toArray());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error writing catalog snapshot: " + e.getMessage());
+            return false;
+        }
+        if (!writeFile(FILE, buffer)) {
+            return false;
+        }
+        watermark = sequence;
+        return true;
+    }
+
+    /**
+     * The decoded contents of a snapshot.
+     */
+    static final class Contents {
+        /** change_log sequence the snapshot reflects */
+        final long sequence;
+        /** Courses in listing order, with their average ratings */
+        final List<Course> courses;
+        /** Number of reviews of each course, by list index */
+        final int[] reviewCounts;
+        /** Sum of each course's ratings, by list index */
+        final long[] ratingSums;
+
+        private Contents(long sequence, List<Course> courses, int[] reviewCounts, long[] ratingSums) {
+            this.sequence = sequence;
+            this.courses = courses;
+            this.reviewCounts = reviewCounts;
+            this.ratingSums = ratingSums;
+        }
+    }
+
+    /**
+     * Writes an encoded snapshot to a temporary file and moves it into place,
+     * so readers never see a partial snapshot.
+     *
+     * @param file The snapshot file
+     * @param buffer The encoded snapshot
+     * @return true if the file was replaced, false if an error occurred
+     */
+    static boolean writeFile(Path file, ByteBuffer buffer) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            System.out.println("Error writing catalog snapshot: " + e.getMessage());
+            return false;
+        }
+
+        try {
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.out.println("Error replacing catalog snapshot: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Memory-maps a snapshot file and decodes it.
+     *
+     * @param file The snapshot file
+     * @return The snapshot's contents, or null if it has another format or a bad checksum
+     * @throws IOException If the file cannot be read
+     * @throws RuntimeException If the file is truncated or otherwise malformed
+     */
+    static Contents readFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Lays out a snapshot: header, subject dictionary, one column per field,
+     * the title blob and a CRC32 of everything before it.
+     *
+     * @param sequence The change_log sequence the courses reflect
+     * @param courses The courses, in listing order
+     * @param reviewCounts The number of reviews of each course, by list index
+     * @param ratingSums The sum of each course's ratings, by list index
+     * @return The encoded snapshot, ready to be written
+     * @throws IllegalArgumentException If there are too many subjects for the two-byte index
+     */
+    static ByteBuffer encode(long sequence, List<Course> courses, int[] reviewCounts, long[] ratingSums) {
+        List<byte[]> subjectBytes = new ArrayList<>();
+        Map<String, Integer> subjectIndexes = new HashMap<>();
+        char[] courseSubjects = new char[courses.size()];
+        List<byte[]> titles = new ArrayList<>(courses.size());
+        int dictionaryBytes = 0;
+        int titleBytes = 0;
+        for (int i = 0; i < courses.size(); i++) {
+            Course course = courses.get(i);
+            Integer subjectIndex = subjectIndexes.get(course.getSubject());
+            if (subjectIndex == null) {
+                subjectIndex = subjectBytes.size();
+                if (subjectIndex > Character.MAX_VALUE) {
+                    throw new IllegalArgumentException("Too many subjects for a catalog snapshot");
+                }
+                byte[] bytes = course.getSubject().getBytes(StandardCharsets.UTF_8);
+                subjectIndexes.put(course.getSubject(), subjectIndex);
+                subjectBytes.add(bytes);
+                dictionaryBytes += Short.BYTES + bytes.length;
+            }
+            courseSubjects[i] = (char) (int) subjectIndex;
+            byte[] title = course.getTitle().getBytes(StandardCharsets.UTF_8);
+            titles.add(title);
+            titleBytes += title.length;
+        }
+
+        int count = courses.size();
+        int size = 4 * Integer.BYTES + Long.BYTES + Integer.BYTES
+                + dictionaryBytes
+                + count * (4 * Integer.BYTES + Character.BYTES + Long.BYTES)
+                + titleBytes
+                + Integer.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sequence)
+                .putInt(count).putInt(subjectBytes.size()).putInt(titleBytes);
+        for (byte[] bytes : subjectBytes) {
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+        for (Course course : courses) {
+            buffer.putInt(course.getId());
+        }
+        for (char subjectIndex : courseSubjects) {
+            buffer.putChar(subjectIndex);
+        }
+        for (Course course : courses) {
+            buffer.putInt(course.getNumber());
+        }
+        for (int reviewCount : reviewCounts) {
+            buffer.putInt(reviewCount);
+        }
+        for (long ratingSum : ratingSums) {
+            buffer.putLong(ratingSum);
+        }
+        int titleEnd = 0;
+        for (byte[] title : titles) {
+            titleEnd += title.length;
+            buffer.putInt(titleEnd);
+        }
+        for (byte[] title : titles) {
+            buffer.put(title);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Decodes a snapshot laid out by encode().
+     *
+     * @param buffer The snapshot, from its first byte to its last
+     * @return The snapshot's contents, or null if it has another format or a bad checksum
+     * @throws RuntimeException If the snapshot is truncated or otherwise malformed
+     */
+    static Contents decode(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        ByteBuffer contents = buffer.duplicate();
+        contents.limit(buffer.capacity() - Integer.BYTES);
+        crc.update(contents);
+        if (buffer.getInt(buffer.capacity() - Integer.BYTES) != (int) crc.getValue()
+                || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+
+        long sequence = buffer.getLong();
+        int count = buffer.getInt();
+        String[] subjects = new String[buffer.getInt()];
+        int titleBytes = buffer.getInt();
+        for (int i = 0; i < subjects.length; i++) {
+            byte[] bytes = new byte[buffer.getShort() & 0xffff];
+            buffer.get(bytes);
+            subjects[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int[] ids = new int[count];
+        char[] subjectIndexes = new char[count];
+        int[] numbers = new int[count];
+        int[] reviewCounts = new int[count];
+        long[] ratingSums = new long[count];
+        int[] titleEnds = new int[count];
+        byte[] titles = new byte[titleBytes];
+        getInts(buffer, ids);
+        buffer.asCharBuffer().get(subjectIndexes);
+        buffer.position(buffer.position() + count * Character.BYTES);
+        getInts(buffer, numbers);
+        getInts(buffer, reviewCounts);
+        buffer.asLongBuffer().get(ratingSums);
+        buffer.position(buffer.position() + count * Long.BYTES);
+        getInts(buffer, titleEnds);
+        buffer.get(titles);
+
+        List<Course> courses = new ArrayList<>(count);
+        int titleStart = 0;
+        for (int i = 0; i < count; i++) {
+            Course course = new Course(ids[i], subjects[subjectIndexes[i]], numbers[i],
+                    new String(titles, titleStart, titleEnds[i] - titleStart, StandardCharsets.UTF_8));
+            if (reviewCounts[i] > 0) {
+                course.setAverageRating((double) ratingSums[i] / reviewCounts[i]);
+            }
+            courses.add(course);
+            titleStart = titleEnds[i];
+        }
+        return new Contents(sequence, courses, reviewCounts, ratingSums);
+    }
+
+    private static void getInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Integer.BYTES);
+    }
+
+    /**
+     * Reads the last ID handed out to change_log. Unlike MAX(id), this
+     * survives the watcher deleting old entries.
+     */
+    private static long readSequence(Connection conn) throws SQLException {
+        return queryLong(conn, "SELECT IFNULL((SELECT seq FROM sqlite_sequence WHERE name = 'change_log'), 0)");
+    }
+
+    private static long queryLong(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
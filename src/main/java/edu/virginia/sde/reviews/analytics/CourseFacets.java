@@ -0,0 +1,544 @@
+package edu.virginia.sde.reviews.analytics;
+
+import edu.virginia.sde.reviews.dao.Database;
+import edu.virginia.sde.reviews.event.CourseCreated;
+import edu.virginia.sde.reviews.event.EventBus;
+import edu.virginia.sde.reviews.event.ExternalChanges;
+import edu.virginia.sde.reviews.event.ReviewCreated;
+import edu.virginia.sde.reviews.event.ReviewDeleted;
+import edu.virginia.sde.reviews.event.ReviewUpdated;
+import edu.virginia.sde.reviews.model.Course;
+import edu.virginia.sde.reviews.model.CourseNumberRange;
+import edu.virginia.sde.reviews.util.IntHashSet;
+import edu.virginia.sde.reviews.util.IntIntMap;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory faceted search over the course catalog.
+ *
+ * Every course gets a dense position, and the index keeps one bitmap of
+ * positions per subject, per course level and per average-rating band. A
+ * search turns its filters into bitmaps and intersects them. Facet counts
+ * are the sizes of further intersections, one per facet value. As usual for
+ * facets, the counts for a dimension ignore that dimension's own filter, so
+ * picking the 3000 level still shows how many courses every other level has.
+ *
+ * A catalog of n courses needs n / 8 bytes per bitmap, and an intersection
+ * processes 64 courses per word, so a search with counts for a few hundred
+ * subjects takes about a millisecond and runs no SQL at all.
+ *
+ * The index is built from the database by rebuild(). After that, courses are
+ * added as course events arrive. A review event re-reads its course's rating
+ * totals from course_rating_stats on a reload thread (see RatingReloadQueue),
+ * so the write that published it is not held up and the counts catch up
+ * shortly after. It reads totals rather than applying the event's delta,
+ * because the ChangeWatcher can still report one of this process's own
+ * commits, if it reads the change before the DAO's event arrives, and a
+ * delta would then count twice.
+ */
+public class CourseFacets {
+    /** Singleton instance of the facet index */
+    private static CourseFacets instance;
+
+    /** The indexed catalog; replaced as a whole by rebuild() */
+    private Catalog catalog = new Catalog();
+
+    /** Held while re-reading and applying totals, so an older read never overwrites a newer one */
+    private final Object reloadLock = new Object();
+
+    /** Runs the reloads that review events ask for */
+    private final RatingReloadQueue reloads = new RatingReloadQueue("facet-reload", this::reloadRatings);
+
+    /** Courses added or re-rated while a rebuild is scanning, or null when no rebuild is running */
+    private IntHashSet pendingCourses;
+
+    /**
+     * Bands of average rating offered as a facet.
+     */
+    public enum RatingBand {
+        UNRATED("Unrated"),
+        ONE_TO_TWO("1-2 stars"),
+        TWO_TO_THREE("2-3 stars"),
+        THREE_TO_FOUR("3-4 stars"),
+        FOUR_TO_FIVE("4-5 stars");
+
+        private final String label;
+
+        RatingBand(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Gets the band a course belongs to. Each band includes its lower bound,
+         * and the top band also includes 5.
+         *
+         * @param sum The sum of the course's ratings
+         * @param count The number of ratings
+         * @return The course's rating band
+         */
+        public static RatingBand of(long sum, int count) {
+            if (count == 0) {
+                return UNRATED;
+            }
+            double average = (double) sum / count;
+            if (average < 2) {
+                return ONE_TO_TWO;
+            } else if (average < 3) {
+                return TWO_TO_THREE;
+            } else if (average < 4) {
+                return THREE_TO_FOUR;
+            }
+            return FOUR_TO_FIVE;
+        }
+
+        /**
+         * Provides the text shown for the band, e.g. "3-4 stars".
+         * @return The band's label
+         */
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Matching courses and facet counts for one combination of filters.
+     */
+    public static class Result {
+        private final List<Course> courses;
+        private final Map<String, Integer> subjectCounts;
+        private final Map<Integer, Integer> levelCounts;
+        private final Map<RatingBand, Integer> ratingCounts;
+
+        private Result(List<Course> courses, Map<String, Integer> subjectCounts,
+                       Map<Integer, Integer> levelCounts, Map<RatingBand, Integer> ratingCounts) {
+            this.courses = courses;
+            this.subjectCounts = subjectCounts;
+            this.levelCounts = levelCounts;
+            this.ratingCounts = ratingCounts;
+        }
+
+        /**
+         * Gets the courses matching every filter, with their average ratings, in no particular order.
+         * @return The matching courses
+         */
+        public List<Course> getCourses() {
+            return courses;
+        }
+
+        /**
+         * Gets the number of matches per subject, ignoring the subject filter.
+         * @return Counts keyed by upper-case subject, largest first, omitting subjects with no matches
+         */
+        public Map<String, Integer> getSubjectCounts() {
+            return subjectCounts;
+        }
+
+        /**
+         * Gets the number of matches per course level, ignoring the number filter.
+         * @return Counts keyed by the first number of each level (1000, 2000, ...), in level order
+         */
+        public Map<Integer, Integer> getLevelCounts() {
+            return levelCounts;
+        }
+
+        /**
+         * Gets the number of matches per rating band, ignoring the rating filter.
+         * @return Counts for every band, in band order
+         */
+        public Map<RatingBand, Integer> getRatingCounts() {
+            return ratingCounts;
+        }
+    }
+
+    /**
+     * Courses by position, with their rating totals and the facet bitmaps.
+     * Positions are assigned in insertion order and never reused.
+     */
+    private static class Catalog {
+        /** Position + 1 of each course, by course ID; 0 means not indexed */
+        private final IntIntMap positions = new IntIntMap();
+        private Course[] courses = new Course[1024];
+        /** Lower-case titles by position, so a title search does not convert every title */
+        private String[] titles = new String[1024];
+        private long[] ratingSums = new long[1024];
+        private int[] ratingCounts = new int[1024];
+        private int size;
+
+        private final Map<String, BitSet> bySubject = new HashMap<>();
+        private final TreeMap<Integer, BitSet> byLevel = new TreeMap<>();
+        private final BitSet[] byRating = new BitSet[RatingBand.values().length];
+
+        /** Reused by intersection counts, so counting allocates nothing */
+        private final BitSet scratch = new BitSet();
+
+        private Catalog() {
+            for (int i = 0; i < byRating.length; i++) {
+                byRating[i] = new BitSet();
+            }
+        }
+
+        /**
+         * Adds a course unless it is already indexed.
+         */
+        private void add(Course course, long ratingSum, int ratingCount) {
+            if (positions.get(course.getId()) != 0) {
+                return;
+            }
+            if (size == courses.length) {
+                int capacity = size * 2;
+                courses = Arrays.copyOf(courses, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+                ratingSums = Arrays.copyOf(ratingSums, capacity);
+                ratingCounts = Arrays.copyOf(ratingCounts, capacity);
+            }
+            int position = size++;
+            positions.put(course.getId(), position + 1);
+            courses[position] = course;
+            titles[position] = course.getTitle().toLowerCase();
+            ratingSums[position] = ratingSum;
+            ratingCounts[position] = ratingCount;
+
+            bySubject.computeIfAbsent(course.getSubject().toUpperCase(), s -> new BitSet()).set(position);
+            byLevel.computeIfAbsent(levelOf(course.getNumber()), l -> new BitSet()).set(position);
+            byRating[RatingBand.of(ratingSum, ratingCount).ordinal()].set(position);
+        }
+
+        /**
+         * Replaces a course's rating totals, moving it to its new rating band.
+         */
+        private void setRatings(int position, long ratingSum, int ratingCount) {
+            byRating[RatingBand.of(ratingSums[position], ratingCounts[position]).ordinal()].clear(position);
+            ratingSums[position] = ratingSum;
+            ratingCounts[position] = ratingCount;
+            byRating[RatingBand.of(ratingSum, ratingCount).ordinal()].set(position);
+        }
+
+        /**
+         * Finds the courses with a number in a range. Levels entirely inside
+         * the range contribute their whole bitmap; only the courses of the
+         * levels at the range's ends are checked one by one.
+         */
+        private BitSet numberMatches(CourseNumberRange range) {
+            BitSet matches = new BitSet(size);
+            for (Map.Entry<Integer, BitSet> entry
+                    : byLevel.subMap(levelOf(range.getFrom()), true, levelOf(range.getTo()), true).entrySet()) {
+                int level = entry.getKey();
+                BitSet levelBits = entry.getValue();
+                if (range.getFrom() <= level && (long) level + CourseNumberRange.LEVEL_SIZE - 1 <= range.getTo()) {
+                    matches.or(levelBits);
+                    continue;
+                }
+                for (int position = levelBits.nextSetBit(0); position >= 0;
+                     position = levelBits.nextSetBit(position + 1)) {
+                    if (range.contains(courses[position].getNumber())) {
+                        matches.set(position);
+                    }
+                }
+            }
+            return matches;
+        }
+
+        private int intersectionCount(BitSet a, BitSet b) {
+            scratch.clear();
+            scratch.or(a);
+            scratch.and(b);
+            return scratch.cardinality();
+        }
+    }
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the index.
+     */
+    private CourseFacets() {
+    }
+
+    /**
+     * Gets the singleton index, subscribing it to course and review events on first use.
+     * The index is empty until rebuild() has been called.
+     *
+     * @return The singleton CourseFacets instance
+     */
+    public static synchronized CourseFacets getInstance() {
+        if (instance == null) {
+            instance = new CourseFacets();
+            EventBus bus = EventBus.getInstance();
+            bus.subscribe(CourseCreated.class, e -> instance.add(e.getCourse()));
+            bus.subscribe(ReviewCreated.class, e -> instance.reloads.add(new int[] {e.getReview().getCourseId()}));
+            bus.subscribe(ReviewUpdated.class, e -> instance.reloads.add(new int[] {e.getAfter().getCourseId()}));
+            bus.subscribe(ReviewDeleted.class, e -> instance.reloads.add(new int[] {e.getReview().getCourseId()}));
+            bus.subscribe(ExternalChanges.class, e -> {
+                instance.addFromDatabase(e.getCreatedCourseIds());
+                instance.reloads.add(e.getReviewedCourseIds());
+            });
+        }
+        return instance;
+    }
+
+    /**
+     * Rebuilds the index from all courses and their rating totals.
+     *
+     * The scan runs without the lock, so course and review events keep being
+     * applied to the old catalog meanwhile. The courses they touch are
+     * remembered, and after the swap any of them missing from the new catalog
+     * are added and all of them have their totals re-read, so nothing that
+     * happened during the scan is lost.
+     *
+     * @return true if the index was rebuilt, false if the query failed
+     */
+    public boolean rebuild() {
+        String sql = "SELECT c.id, c.subject, c.number, c.title, " +
+                     "COUNT(r.id) AS review_count, IFNULL(SUM(r.rating), 0) AS rating_sum " +
+                     "FROM courses c " +
+                     "LEFT JOIN reviews r ON c.id = r.course_id " +
+                     "GROUP BY c.id";
+
+        Catalog loaded = new Catalog();
+        synchronized (this) {
+            pendingCourses = new IntHashSet();
+        }
+
+        try (Connection conn = Database.connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            while (rs.next()) {
+                Course course = new Course(
+                        rs.getInt("id"),
+                        rs.getString("subject"),
+                        rs.getInt("number"),
+                        rs.getString("title")
+                );
+                loaded.add(course, rs.getLong("rating_sum"), rs.getInt("review_count"));
+            }
+
+        } catch (SQLException e) {
+            synchronized (this) {
+                pendingCourses = null;
+            }
+            System.out.println("Error building course facets: " + e.getMessage());
+            return false;
+        }
+
+        int[] changed;
+        synchronized (this) {
+            catalog = loaded;
+            changed = pendingCourses.toArray();
+            pendingCourses = null;
+        }
+        if (changed.length > 0) {
+            addFromDatabase(changed);
+            reloadRatings(changed);
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the index with courses read from a CatalogSnapshot, so facets
+     * are available before rebuild() could finish.
+     *
+     * @param courses The courses to index
+     * @param ratingSums The sum of each course's ratings, by list index
+     * @param ratingCounts The number of each course's ratings, by list index
+     */
+    public void load(List<Course> courses, long[] ratingSums, int[] ratingCounts) {
+        Catalog loaded = new Catalog();
+        for (int i = 0; i < courses.size(); i++) {
+            Course course = courses.get(i);
+            loaded.add(new Course(course.getId(), course.getSubject(), course.getNumber(), course.getTitle()),
+                    ratingSums[i], ratingCounts[i]);
+        }
+
+        synchronized (this) {
+            catalog = loaded;
+        }
+    }
+
+    /**
+     * Finds the courses matching a combination of filters, along with facet counts.
+     * All filters are optional - if null/empty, that filter is not applied.
+     *
+     * @param subject Filter by subject mnemonic (case-insensitive)
+     * @param numberRange Filter by course number range
+     * @param title Filter by course title containing text (case-insensitive)
+     * @param rating Filter by average rating band
+     * @return The matching courses and the counts for each facet value
+     */
+    public synchronized Result search(String subject, CourseNumberRange numberRange, String title, RatingBand rating) {
+        Catalog c = catalog;
+
+        // The title filter has no bitmap, so it is checked against every course's lower-case title
+        String needle = title == null ? "" : title.toLowerCase();
+        BitSet titleMatches = new BitSet(c.size);
+        if (needle.isEmpty()) {
+            titleMatches.set(0, c.size);
+        } else {
+            for (int position = 0; position < c.size; position++) {
+                if (c.titles[position].contains(needle)) {
+                    titleMatches.set(position);
+                }
+            }
+        }
+        BitSet numberMatches = and(titleMatches, numberRange == null ? null : c.numberMatches(numberRange));
+
+        BitSet subjectBits = null;
+        if (subject != null && !subject.isEmpty()) {
+            subjectBits = c.bySubject.getOrDefault(subject.toUpperCase(), new BitSet());
+        }
+        BitSet ratingBits = rating == null ? null : c.byRating[rating.ordinal()];
+
+        // Each dimension is counted against the other dimensions' filters only
+        BitSet forSubjects = and(numberMatches, ratingBits);
+        BitSet forLevels = and(and(titleMatches, subjectBits), ratingBits);
+        BitSet forRatings = and(numberMatches, subjectBits);
+        BitSet matches = and(forRatings, ratingBits);
+
+        List<Map.Entry<String, Integer>> subjects = new ArrayList<>();
+        for (Map.Entry<String, BitSet> entry : c.bySubject.entrySet()) {
+            int count = c.intersectionCount(forSubjects, entry.getValue());
+            if (count > 0) {
+                subjects.add(Map.entry(entry.getKey(), count));
+            }
+        }
+        subjects.sort(Map.Entry.<String, Integer>comparingByValue(Collections.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Integer> subjectCounts = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : subjects) {
+            subjectCounts.put(entry.getKey(), entry.getValue());
+        }
+
+        Map<Integer, Integer> levelCounts = new LinkedHashMap<>();
+        for (Map.Entry<Integer, BitSet> entry : c.byLevel.entrySet()) {
+            int count = c.intersectionCount(forLevels, entry.getValue());
+            if (count > 0) {
+                levelCounts.put(entry.getKey(), count);
+            }
+        }
+
+        Map<RatingBand, Integer> ratingCounts = new EnumMap<>(RatingBand.class);
+        for (RatingBand band : RatingBand.values()) {
+            ratingCounts.put(band, c.intersectionCount(forRatings, c.byRating[band.ordinal()]));
+        }
+
+        List<Course> courses = new ArrayList<>(matches.cardinality());
+        for (int position = matches.nextSetBit(0); position >= 0; position = matches.nextSetBit(position + 1)) {
+            Course indexed = c.courses[position];
+            Course course = new Course(indexed.getId(), indexed.getSubject(), indexed.getNumber(), indexed.getTitle());
+            int count = c.ratingCounts[position];
+            course.setAverageRating(count == 0 ? 0.0 : (double) c.ratingSums[position] / count);
+            courses.add(course);
+        }
+
+        return new Result(courses, subjectCounts, levelCounts, ratingCounts);
+    }
+
+    /**
+     * Intersects two bitmaps into a new one, treating null as "all courses".
+     */
+    private static BitSet and(BitSet a, BitSet b) {
+        BitSet result = (BitSet) a.clone();
+        if (b != null) {
+            result.and(b);
+        }
+        return result;
+    }
+
+    private static int levelOf(int number) {
+        return Math.floorDiv(number, CourseNumberRange.LEVEL_SIZE) * CourseNumberRange.LEVEL_SIZE;
+    }
+
+    /**
+     * Adds a newly created course, which has no reviews yet.
+     */
+    private synchronized void add(Course course) {
+        if (pendingCourses != null) {
+            pendingCourses.add(course.getId());
+        }
+        catalog.add(new Course(course.getId(), course.getSubject(), course.getNumber(), course.getTitle()), 0, 0);
+    }
+
+    /**
+     * Loads courses created by another process and adds them.
+     */
+    private void addFromDatabase(int[] courseIds) {
+        String sql = "SELECT id, subject, number, title FROM courses WHERE id = ?";
+
+        try (Connection conn = Database.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (int courseId : courseIds) {
+                pstmt.setInt(1, courseId);
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    add(new Course(
+                            rs.getInt("id"),
+                            rs.getString("subject"),
+                            rs.getInt("number"),
+                            rs.getString("title")
+                    ));
+                }
+            }
+
+        } catch (SQLException e) {
+            System.out.println("Error updating course facets: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Re-reads the rating totals of courses whose reviews changed from
+     * course_rating_stats. Courses not yet indexed are skipped; they are
+     * picked up with their totals by the next rebuild. Reloads run one at a
+     * time, so the last one applied read the newest totals.
+     */
+    private void reloadRatings(int[] courseIds) {
+        String sql = "SELECT review_count, count1 + 2 * count2 + 3 * count3 + 4 * count4 + 5 * count5 " +
+                     "FROM course_rating_stats WHERE course_id = ?";
+
+        synchronized (reloadLock) {
+            reload(sql, courseIds);
+        }
+    }
+
+    private void reload(String sql, int[] courseIds) {
+        try (Connection conn = Database.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (int courseId : courseIds) {
+                pstmt.setInt(1, courseId);
+                ResultSet rs = pstmt.executeQuery();
+                // A course that has never been reviewed has no statistics row
+                boolean found = rs.next();
+                int count = found ? rs.getInt(1) : 0;
+                long sum = found ? rs.getLong(2) : 0;
+                synchronized (this) {
+                    if (pendingCourses != null) {
+                        pendingCourses.add(courseId);
+                    }
+                    int position = catalog.positions.get(courseId) - 1;
+                    if (position >= 0) {
+                        catalog.setRatings(position, sum, count);
+                    }
+                }
+            }
+
+        } catch (SQLException e) {
+            System.out.println("Error refreshing course facets: " + e.getMessage());
+        }
+    }
+}
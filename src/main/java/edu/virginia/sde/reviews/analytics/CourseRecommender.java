@@ -0,0 +1,610 @@
+package edu.virginia.sde.reviews.analytics;
+
+import edu.virginia.sde.reviews.dao.Database;
+import edu.virginia.sde.reviews.model.Course;
+import edu.virginia.sde.reviews.util.IntHashSet;
+import edu.virginia.sde.reviews.util.IntIntMap;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputes "students who reviewed this course also rated these highly" lists.
+ *
+ * The reviews table is a sparse user-by-course rating matrix. A build loads it
+ * into compressed sparse row (CSR) arrays: one copy grouped by user and one
+ * grouped by course. Each rating is centered on its user's mean, so "highly"
+ * means above what that student usually gives. Courses are compared by
+ * adjusted cosine similarity over the students who reviewed both. The score
+ * is shrunk towards zero when few students are shared. The top
+ * RELATED_COURSES per course are written to course_similarity.
+ *
+ * Similarities for different courses are computed in parallel. Each worker
+ * thread accumulates into its own dense scratch arrays and clears only the
+ * entries it touched.
+ *
+ * Refreshes are incremental. The matrix is always reloaded, since it is cheap
+ * compared with the similarity step. Only the lists that can have changed are
+ * recomputed: those of courses with changed reviews, and of every course
+ * rated by a student whose reviews changed or who reviewed a changed course.
+ */
+public class CourseRecommender {
+    /** Number of related courses stored per course */
+    private static final int RELATED_COURSES = 10;
+
+    /** Pairs of courses need at least this many shared reviewers to be related */
+    private static final int MIN_SHARED_REVIEWERS = 2;
+
+    /** Shared-reviewer count at which a similarity is shrunk by half */
+    private static final double SHRINKAGE = 5.0;
+
+    /** Number of rows the driver is asked to fetch per round trip */
+    private static final int FETCH_SIZE = 1000;
+
+    /** Key of the processed change_log ID in analytics_state */
+    private static final String WATERMARK_KEY = "recommender_change_id";
+
+    /** Singleton instance of the recommender */
+    private static CourseRecommender instance;
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the recommender.
+     */
+    private CourseRecommender() {
+    }
+
+    /**
+     * Gets the singleton recommender.
+     *
+     * @return The singleton CourseRecommender instance
+     */
+    public static synchronized CourseRecommender getInstance() {
+        if (instance == null) {
+            instance = new CourseRecommender();
+        }
+        return instance;
+    }
+
+    /**
+     * Refreshes the stored lists from the database, or with "benchmark N [M]" times
+     * the similarity build on a synthetic matrix of N reviews (default 1,000,000
+     * and 10,000,000) without touching the database.
+     *
+     * @param args Optional "benchmark" followed by review counts
+     */
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("benchmark")) {
+            long[] sizes = args.length > 1
+                    ? Arrays.stream(args, 1, args.length).mapToLong(Long::parseLong).toArray()
+                    : new long[] {1_000_000, 10_000_000};
+            for (long size : sizes) {
+                benchmark((int) size);
+            }
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean success = getInstance().refresh();
+        System.out.println((success ? "Recommendations refreshed in " : "Recommendation refresh failed after ")
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Gets the courses most related to a course, best first.
+     * Reads only course_similarity's primary key and the courses table.
+     *
+     * @param courseId The ID of the course
+     * @return The related courses, or an empty list if none have been computed
+     */
+    public List<Course> getRelatedCourses(int courseId) {
+        String sql = "SELECT c.id, c.subject, c.number, c.title " +
+                     "FROM course_similarity s " +
+                     "JOIN courses c ON c.id = s.similar_course_id " +
+                     "WHERE s.course_id = ? ORDER BY s.position";
+
+        List<Course> courses = new ArrayList<>();
+
+        try (Connection conn = Database.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, courseId);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                courses.add(new Course(
+                        rs.getInt("id"),
+                        rs.getString("subject"),
+                        rs.getInt("number"),
+                        rs.getString("title")
+                ));
+            }
+
+        } catch (SQLException e) {
+            System.out.println("Error retrieving related courses: " + e.getMessage());
+        }
+
+        return courses;
+    }
+
+    /**
+     * Recomputes the related-course lists affected by review changes since the
+     * last refresh, or all lists on the first refresh.
+     *
+     * @return true if the refresh completed, false if a database error occurred
+     */
+    public synchronized boolean refresh() {
+        try (Connection conn = Database.connect()) {
+            // Read the log position first so changes made during the refresh are picked up next time
+            long processed = readState(conn, -1);
+            long latest = queryLong(conn, "SELECT IFNULL(MAX(id), 0) FROM change_log");
+
+            IntHashSet changedCourses = new IntHashSet();
+            IntHashSet changedUsers = new IntHashSet();
+            boolean full = processed < 0 || changesPruned(conn, processed);
+            if (!full) {
+                readChanges(conn, processed, latest, changedCourses, changedUsers);
+                if (changedCourses.isEmpty()) {
+                    writeState(conn, latest);
+                    return true;
+                }
+            }
+
+            long start = System.nanoTime();
+            RatingMatrix matrix = loadMatrix(conn);
+            long loaded = System.nanoTime();
+
+            int[] targets = full ? IntStream.range(0, matrix.courseCount()).toArray()
+                                 : matrix.affectedCourses(changedCourses, changedUsers);
+            Related[] related = matrix.computeRelated(targets);
+            long computed = System.nanoTime();
+
+            conn.setAutoCommit(false);
+            try {
+                writeRelated(conn, matrix, targets, related, full ? null : changedCourses.toArray());
+                writeState(conn, latest);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+
+            System.out.println("Recommendations: " + matrix.reviewCount() + " reviews loaded in "
+                    + (loaded - start) / 1_000_000 + " ms, " + targets.length + " of "
+                    + matrix.courseCount() + " courses computed in " + (computed - loaded) / 1_000_000
+                    + " ms, written in " + (System.nanoTime() - computed) / 1_000_000 + " ms");
+            return true;
+
+        } catch (SQLException e) {
+            System.out.println("Error refreshing recommendations: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether change_log entries after the watermark were deleted before
+     * being processed, in which case a full refresh is needed.
+     */
+    private boolean changesPruned(Connection conn, long processed) throws SQLException {
+        long oldest = queryLong(conn, "SELECT IFNULL(MIN(id), 0) FROM change_log");
+        long assigned = queryLong(conn,
+                "SELECT IFNULL((SELECT seq FROM sqlite_sequence WHERE name = 'change_log'), 0)");
+        return assigned > processed && (oldest == 0 || oldest > processed + 1);
+    }
+
+    private void readChanges(Connection conn, long after, long upTo,
+                             IntHashSet courseIds, IntHashSet userIds) throws SQLException {
+        String sql = "SELECT course_id, user_id FROM change_log " +
+                     "WHERE table_name = 'reviews' AND id > ? AND id <= ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, after);
+            pstmt.setLong(2, upTo);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                courseIds.add(rs.getInt(1));
+                userIds.add(rs.getInt(2));
+            }
+        }
+    }
+
+    /**
+     * Streams the reviews table into a RatingMatrix.
+     */
+    private RatingMatrix loadMatrix(Connection conn) throws SQLException {
+        String sql = "SELECT user_id, course_id, rating FROM reviews";
+
+        RatingMatrix.Builder builder = new RatingMatrix.Builder();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(FETCH_SIZE);
+            ResultSet rs = stmt.executeQuery(sql);
+            while (rs.next()) {
+                builder.add(rs.getInt(1), rs.getInt(2), rs.getInt(3));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Replaces the stored lists of the computed courses.
+     *
+     * @param removed Courses whose lists are deleted even if they are no longer in the matrix,
+     *                or null to clear the whole table first
+     */
+    private void writeRelated(Connection conn, RatingMatrix matrix, int[] targets, Related[] related,
+                              int[] removed) throws SQLException {
+        try (PreparedStatement delete = conn.prepareStatement("DELETE FROM course_similarity WHERE course_id = ?");
+             PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO course_similarity(course_id, position, similar_course_id, score) " +
+                     "VALUES(?, ?, ?, ?)")) {
+
+            if (removed == null) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("DELETE FROM course_similarity");
+                }
+            } else {
+                for (int courseId : removed) {
+                    delete.setInt(1, courseId);
+                    delete.addBatch();
+                }
+                for (int target : targets) {
+                    delete.setInt(1, matrix.courseId(target));
+                    delete.addBatch();
+                }
+                delete.executeBatch();
+            }
+
+            for (int t = 0; t < targets.length; t++) {
+                int courseId = matrix.courseId(targets[t]);
+                Related list = related[t];
+                for (int i = 0; i < list.size; i++) {
+                    insert.setInt(1, courseId);
+                    insert.setInt(2, i);
+                    insert.setInt(3, matrix.courseId(list.courses[i]));
+                    insert.setDouble(4, list.scores[i]);
+                    insert.addBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Times the similarity build on a synthetic matrix. Course popularity and
+     * reviews per student are skewed, as in real data, so that a few popular
+     * courses and heavy reviewers dominate the work.
+     */
+    private static void benchmark(int reviews) {
+        int courses = Math.max(RELATED_COURSES + 1, reviews / 200);
+        Random random = new Random(42);
+
+        long start = System.nanoTime();
+        RatingMatrix.Builder builder = new RatingMatrix.Builder();
+        IntHashSet seen = new IntHashSet();
+        for (int user = 1, added = 0; added < reviews; user++) {
+            int count = 1 + (int) (random.nextDouble() * random.nextDouble() * 40);
+            seen.clear();
+            for (int i = 0; i < count && added < reviews; i++) {
+                int course = 1 + (int) (courses * Math.pow(random.nextDouble(), 2));
+                if (seen.add(course)) {
+                    builder.add(user, course, 1 + random.nextInt(5));
+                    added++;
+                }
+            }
+        }
+        RatingMatrix matrix = builder.build();
+        long built = System.nanoTime();
+
+        Related[] related = matrix.computeRelated(IntStream.range(0, matrix.courseCount()).toArray());
+        long computed = System.nanoTime();
+
+        long pairs = 0;
+        for (Related list : related) {
+            pairs += list.size;
+        }
+        System.out.println(String.format("%,d reviews (%,d courses): matrix built in %d ms, "
+                        + "similarities computed in %d ms on %d threads, %,d related pairs",
+                matrix.reviewCount(), matrix.courseCount(), (built - start) / 1_000_000,
+                (computed - built) / 1_000_000, Runtime.getRuntime().availableProcessors(), pairs));
+    }
+
+    private static long readState(Connection conn, long defaultValue) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT value FROM analytics_state WHERE name = ?")) {
+            pstmt.setString(1, WATERMARK_KEY);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : defaultValue;
+        }
+    }
+
+    private static void writeState(Connection conn, long value) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT OR REPLACE INTO analytics_state(name, value) VALUES(?, ?)")) {
+            pstmt.setString(1, WATERMARK_KEY);
+            pstmt.setLong(2, value);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static long queryLong(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * The best related courses of one course, by dense course index, best first.
+     */
+    private static class Related {
+        private final int[] courses = new int[RELATED_COURSES];
+        private final float[] scores = new float[RELATED_COURSES];
+        private int size;
+
+        /**
+         * Inserts a candidate if it is among the best seen so far.
+         */
+        private void offer(int course, float score) {
+            int position = size;
+            while (position > 0 && scores[position - 1] < score) {
+                position--;
+            }
+            if (position >= RELATED_COURSES) {
+                return;
+            }
+            int last = Math.min(size, RELATED_COURSES - 1);
+            System.arraycopy(courses, position, courses, position + 1, last - position);
+            System.arraycopy(scores, position, scores, position + 1, last - position);
+            courses[position] = course;
+            scores[position] = score;
+            if (size < RELATED_COURSES) {
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Mean-centered ratings in CSR form, indexed both by user and by course.
+     * Users and courses are renumbered to dense indices 0..n-1.
+     */
+    private static class RatingMatrix {
+        private final int[] courseIds;
+
+        private final int[] userOffsets;
+        private final int[] userCourses;
+        private final float[] userValues;
+
+        private final int[] courseOffsets;
+        private final int[] courseUsers;
+        private final float[] courseValues;
+
+        /** Euclidean norm of each course's centered ratings */
+        private final double[] courseNorms;
+
+        /** Original user ID to dense index + 1 (0 means absent) */
+        private final IntIntMap userIndex;
+        /** Original course ID to dense index + 1 (0 means absent) */
+        private final IntIntMap courseIndex;
+
+        private RatingMatrix(int[] courseIds, IntIntMap userIndex, IntIntMap courseIndex,
+                             int[] userOffsets, int[] userCourses, float[] userValues,
+                             int[] courseOffsets, int[] courseUsers, float[] courseValues) {
+            this.courseIds = courseIds;
+            this.userIndex = userIndex;
+            this.courseIndex = courseIndex;
+            this.userOffsets = userOffsets;
+            this.userCourses = userCourses;
+            this.userValues = userValues;
+            this.courseOffsets = courseOffsets;
+            this.courseUsers = courseUsers;
+            this.courseValues = courseValues;
+
+            courseNorms = new double[courseIds.length];
+            for (int c = 0; c < courseIds.length; c++) {
+                double sum = 0;
+                for (int p = courseOffsets[c]; p < courseOffsets[c + 1]; p++) {
+                    sum += (double) courseValues[p] * courseValues[p];
+                }
+                courseNorms[c] = Math.sqrt(sum);
+            }
+        }
+
+        private int courseCount() {
+            return courseIds.length;
+        }
+
+        private int reviewCount() {
+            return userCourses.length;
+        }
+
+        private int courseId(int index) {
+            return courseIds[index];
+        }
+
+        /**
+         * Finds the courses whose lists can change when the given courses and users change:
+         * the changed courses themselves and every course rated by an affected user.
+         */
+        private int[] affectedCourses(IntHashSet changedCourses, IntHashSet changedUsers) {
+            IntHashSet users = new IntHashSet();
+            for (int userId : changedUsers.toArray()) {
+                int u = userIndex.get(userId) - 1;
+                if (u >= 0) {
+                    users.add(u);
+                }
+            }
+
+            IntHashSet affected = new IntHashSet();
+            for (int courseId : changedCourses.toArray()) {
+                int c = courseIndex.get(courseId) - 1;
+                if (c < 0) {
+                    continue;
+                }
+                affected.add(c);
+                for (int p = courseOffsets[c]; p < courseOffsets[c + 1]; p++) {
+                    users.add(courseUsers[p]);
+                }
+            }
+
+            for (int u : users.toArray()) {
+                for (int q = userOffsets[u]; q < userOffsets[u + 1]; q++) {
+                    affected.add(userCourses[q]);
+                }
+            }
+            return affected.toArray();
+        }
+
+        /**
+         * Computes the related list of each target course in parallel.
+         */
+        private Related[] computeRelated(int[] targets) {
+            Related[] results = new Related[targets.length];
+            ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(courseIds.length));
+            IntStream.range(0, targets.length).parallel()
+                    .forEach(t -> results[t] = related(targets[t], scratch.get()));
+            return results;
+        }
+
+        private Related related(int course, Scratch scratch) {
+            double[] dot = scratch.dot;
+            int[] shared = scratch.shared;
+            int[] touched = scratch.touched;
+            int touchedCount = 0;
+
+            // Walk every (co-reviewer, other course) pair reachable from this course
+            for (int p = courseOffsets[course]; p < courseOffsets[course + 1]; p++) {
+                int user = courseUsers[p];
+                float value = courseValues[p];
+                for (int q = userOffsets[user]; q < userOffsets[user + 1]; q++) {
+                    int other = userCourses[q];
+                    if (other == course) {
+                        continue;
+                    }
+                    if (shared[other]++ == 0) {
+                        touched[touchedCount++] = other;
+                    }
+                    dot[other] += (double) value * userValues[q];
+                }
+            }
+
+            Related related = new Related();
+            double norm = courseNorms[course];
+            for (int i = 0; i < touchedCount; i++) {
+                int other = touched[i];
+                double denominator = norm * courseNorms[other];
+                if (shared[other] >= MIN_SHARED_REVIEWERS && dot[other] > 0 && denominator > 0) {
+                    double similarity = dot[other] / denominator * shared[other] / (shared[other] + SHRINKAGE);
+                    related.offer(other, (float) similarity);
+                }
+                dot[other] = 0;
+                shared[other] = 0;
+            }
+            return related;
+        }
+
+        /**
+         * Per-thread dense accumulators, one slot per course.
+         */
+        private static class Scratch {
+            private final double[] dot;
+            private final int[] shared;
+            private final int[] touched;
+
+            private Scratch(int courses) {
+                dot = new double[courses];
+                shared = new int[courses];
+                touched = new int[courses];
+            }
+        }
+
+        /**
+         * Collects (user, course, rating) triples and sorts them into CSR arrays.
+         */
+        private static class Builder {
+            private final IntIntMap userIndex = new IntIntMap();
+            private final IntIntMap courseIndex = new IntIntMap();
+            private int[] courseIdsByIndex = new int[1024];
+            private int userCount;
+            private int courseCount;
+
+            private int[] users = new int[1024];
+            private int[] courses = new int[1024];
+            private byte[] ratings = new byte[1024];
+            private int size;
+
+            private void add(int userId, int courseId, int rating) {
+                int u = userIndex.get(userId) - 1;
+                if (u < 0) {
+                    u = userCount++;
+                    userIndex.put(userId, u + 1);
+                }
+                int c = courseIndex.get(courseId) - 1;
+                if (c < 0) {
+                    c = courseCount++;
+                    courseIndex.put(courseId, c + 1);
+                    if (c == courseIdsByIndex.length) {
+                        courseIdsByIndex = Arrays.copyOf(courseIdsByIndex, c * 2);
+                    }
+                    courseIdsByIndex[c] = courseId;
+                }
+
+                if (size == users.length) {
+                    users = Arrays.copyOf(users, size * 2);
+                    courses = Arrays.copyOf(courses, size * 2);
+                    ratings = Arrays.copyOf(ratings, size * 2);
+                }
+                users[size] = u;
+                courses[size] = c;
+                ratings[size] = (byte) rating;
+                size++;
+            }
+
+            private RatingMatrix build() {
+                // Per-user means, used to center ratings
+                double[] sums = new double[userCount];
+                int[] userOffsets = new int[userCount + 1];
+                int[] courseOffsets = new int[courseCount + 1];
+                for (int i = 0; i < size; i++) {
+                    sums[users[i]] += ratings[i];
+                    userOffsets[users[i] + 1]++;
+                    courseOffsets[courses[i] + 1]++;
+                }
+                for (int u = 0; u < userCount; u++) {
+                    userOffsets[u + 1] += userOffsets[u];
+                }
+                for (int c = 0; c < courseCount; c++) {
+                    courseOffsets[c + 1] += courseOffsets[c];
+                }
+
+                // Counting sort of the triples into both layouts
+                int[] userCourses = new int[size];
+                float[] userValues = new float[size];
+                int[] courseUsers = new int[size];
+                float[] courseValues = new float[size];
+                int[] userFill = Arrays.copyOf(userOffsets, userCount);
+                int[] courseFill = Arrays.copyOf(courseOffsets, courseCount);
+                for (int i = 0; i < size; i++) {
+                    int u = users[i];
+                    int c = courses[i];
+                    float value = (float) (ratings[i] - sums[u] / (userOffsets[u + 1] - userOffsets[u]));
+                    int up = userFill[u]++;
+                    userCourses[up] = c;
+                    userValues[up] = value;
+                    int cp = courseFill[c]++;
+                    courseUsers[cp] = u;
+                    courseValues[cp] = value;
+                }
+
+                return new RatingMatrix(Arrays.copyOf(courseIdsByIndex, courseCount), userIndex, courseIndex,
+                        userOffsets, userCourses, userValues, courseOffsets, courseUsers, courseValues);
+            }
+        }
+    }
+}
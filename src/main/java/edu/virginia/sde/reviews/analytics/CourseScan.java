@@ -0,0 +1,85 @@
+package edu.virginia.sde.reviews.analytics;
+
+import edu.virginia.sde.reviews.dao.Database;
+import edu.virginia.sde.reviews.model.Course;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Rebuilds an in-memory course index without losing courses created meanwhile.
+ *
+ * An index is rebuilt by scanning every course into fresh structures without
+ * holding its lock, so searches keep working, and then swapping them in. A
+ * course created during the scan is added by its CourseCreated event to the
+ * structures about to be replaced, and would be lost at the swap. So the
+ * scan remembers the highest course ID it saw, and under the index's lock
+ * the swap is followed by adding every course with a higher ID. Course IDs
+ * are handed out in commit order, so those are exactly the courses the scan
+ * missed. The index's add method must ignore a course it already has, since
+ * its event may arrive after the catch-up has added it.
+ */
+final class CourseScan {
+    private static final String SQL = "SELECT id, subject, number, title FROM courses WHERE id > ? ORDER BY id";
+
+    private CourseScan() {
+    }
+
+    /**
+     * Scans all courses into new structures, swaps them in and catches up.
+     *
+     * @param lock The lock guarding the index's live structures
+     * @param load Adds a scanned course to the new structures
+     * @param swap Replaces the live structures with the new ones
+     * @param add Adds a course to the live structures, ignoring one already indexed
+     * @param errorMessage The message printed, with the SQL error, if a query fails
+     * @return true if the index was rebuilt, false if the scan failed
+     */
+    static boolean rebuild(Object lock, Consumer<Course> load, Runnable swap, Consumer<Course> add,
+                           String errorMessage) {
+        int maxIdSeen;
+        try (Connection conn = Database.connect()) {
+            maxIdSeen = scan(conn, 0, load);
+        } catch (SQLException e) {
+            System.out.println(errorMessage + ": " + e.getMessage());
+            return false;
+        }
+
+        synchronized (lock) {
+            swap.run();
+            try (Connection conn = Database.connect()) {
+                scan(conn, maxIdSeen, add);
+            } catch (SQLException e) {
+                System.out.println(errorMessage + ": " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passes every course with an ID above a bound to a consumer.
+     *
+     * @return The highest ID passed, or the bound if there were none
+     */
+    private static int scan(Connection conn, int afterId, Consumer<Course> consumer) throws SQLException {
+        int maxId = afterId;
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL)) {
+            pstmt.setInt(1, afterId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                Course course = new Course(
+                        rs.getInt("id"),
+                        rs.getString("subject"),
+                        rs.getInt("number"),
+                        rs.getString("title")
+                );
+                consumer.accept(course);
+                maxId = course.getId();
+            }
+        }
+        return maxId;
+    }
+}
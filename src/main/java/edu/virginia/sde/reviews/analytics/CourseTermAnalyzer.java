@@ -0,0 +1,612 @@
+package edu.virginia.sde.reviews.analytics;
+
+import edu.virginia.sde.reviews.dao.Database;
+import edu.virginia.sde.reviews.util.IntHashSet;
+import edu.virginia.sde.reviews.util.IntIntMap;
+import edu.virginia.sde.reviews.util.IntObjectMap;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the most distinctive terms in each course's review comments, shown as
+ * tags on the course page.
+ *
+ * A run streams comments from the reviews table on the calling thread and
+ * hands them to a ForkJoinPool in batches. There they are tokenized and counted
+ * per course, using term IDs in IntIntMap counters so no counts are boxed.
+ * The partial counts are merged and written to course_term_counts. Each
+ * course's terms are then scored by TF-IDF (a term's share of the course's
+ * words, times log(courses / courses using the term)). The top TOP_TERMS
+ * are stored in course_top_terms.
+ *
+ * Runs are incremental. The analyzer records the last change_log entry it
+ * has processed, and later runs only re-count courses whose reviews changed
+ * since then. Document frequencies are read from course_term_counts, so
+ * unchanged courses keep their stored scores until the next full run. A
+ * full run happens on first use, or when change_log entries were pruned
+ * before the analyzer saw them.
+ */
+public class CourseTermAnalyzer {
+    /** Number of tags stored per course */
+    private static final int TOP_TERMS = 5;
+
+    /** Number of comments handed to the pool in one task */
+    private static final int BATCH_SIZE = 2000;
+
+    /** Tasks smaller than this tokenize sequentially instead of splitting */
+    private static final int SPLIT_THRESHOLD = 250;
+
+    /** Number of course IDs bound into one IN (...) query */
+    private static final int COURSE_ID_CHUNK = 500;
+
+    /** Number of rows the driver is asked to fetch per round trip */
+    private static final int FETCH_SIZE = 1000;
+
+    private static final int MIN_TERM_LENGTH = 3;
+    private static final int MAX_TERM_LENGTH = 30;
+
+    /** Key of the processed change_log ID in analytics_state */
+    private static final String WATERMARK_KEY = "term_analyzer_change_id";
+
+    /** Key of the number of courses with any counted terms in analytics_state */
+    private static final String COURSE_COUNT_KEY = "term_analyzer_courses";
+
+    /** Common words that would otherwise dominate every course */
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "the", "and", "for", "are", "but", "not", "you", "all", "any", "can", "had", "her",
+            "was", "one", "our", "out", "has", "him", "his", "how", "its", "who", "did", "get",
+            "got", "too", "very", "this", "that", "with", "have", "from", "they", "will", "would",
+            "there", "their", "what", "about", "which", "when", "your", "were", "been", "them",
+            "than", "then", "some", "just", "also", "into", "only", "more", "much", "really",
+            "class", "course", "professor", "take", "took", "lot", "lots", "because", "even",
+            "like", "well", "make", "makes", "made", "being", "does", "dont", "didn", "isn"));
+
+    /** Singleton instance of the analyzer */
+    private static CourseTermAnalyzer instance;
+
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /** Term-to-ID dictionary for the current run, shared by all tasks */
+    private ConcurrentHashMap<String, Integer> termIds;
+    private AtomicInteger nextTermId;
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the analyzer.
+     */
+    private CourseTermAnalyzer() {
+    }
+
+    /**
+     * Gets the singleton analyzer.
+     *
+     * @return The singleton CourseTermAnalyzer instance
+     */
+    public static synchronized CourseTermAnalyzer getInstance() {
+        if (instance == null) {
+            instance = new CourseTermAnalyzer();
+        }
+        return instance;
+    }
+
+    /**
+     * Runs the analyzer from the command line.
+     *
+     * @param args Unused
+     */
+    public static void main(String[] args) {
+        long start = System.nanoTime();
+        boolean success = getInstance().run();
+        System.out.println((success ? "Term analysis finished in " : "Term analysis failed after ")
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Gets the stored tags for a course, most distinctive first.
+     *
+     * @param courseId The ID of the course
+     * @return The course's top terms, or an empty list if none have been computed
+     */
+    public List<String> getTopTerms(int courseId) {
+        String sql = "SELECT term FROM course_top_terms WHERE course_id = ? ORDER BY position";
+
+        List<String> terms = new ArrayList<>();
+
+        try (Connection conn = Database.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, courseId);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                terms.add(rs.getString("term"));
+            }
+
+        } catch (SQLException e) {
+            System.out.println("Error retrieving course terms: " + e.getMessage());
+        }
+
+        return terms;
+    }
+
+    /**
+     * Recomputes term counts and tags for every course whose reviews changed
+     * since the last run, or for all courses if a full run is needed.
+     *
+     * @return true if the run completed, false if a database error occurred
+     */
+    public synchronized boolean run() {
+        termIds = new ConcurrentHashMap<>();
+        nextTermId = new AtomicInteger(1);
+
+        try (Connection conn = Database.connect()) {
+            // Read the log position first so changes made during the run are picked up next time
+            long processed = readState(conn, WATERMARK_KEY, -1);
+            long latest = queryLong(conn, "SELECT IFNULL(MAX(id), 0) FROM change_log");
+
+            boolean full = processed < 0 || changesPruned(conn, processed);
+            int[] courseIds = full ? null : changedCourses(conn, processed, latest);
+
+            if (!full && courseIds.length == 0) {
+                writeState(conn, WATERMARK_KEY, latest);
+                return true;
+            }
+
+            IntObjectMap<IntIntMap> counts = countTerms(conn, courseIds);
+            String[] terms = termsById();
+
+            conn.setAutoCommit(false);
+            try {
+                int courseCount;
+                IntIntMap documentFrequency;
+                if (full) {
+                    writeAllCounts(conn, counts, terms);
+                    courseCount = counts.size();
+                    documentFrequency = new IntIntMap(terms.length);
+                    IntIntMap frequency = documentFrequency;
+                    counts.forEach((courseId, courseCounts) ->
+                            courseCounts.forEach((termId, count) -> frequency.addTo(termId, 1)));
+                    clearTopTerms(conn);
+                } else {
+                    int before = (int) readState(conn, COURSE_COUNT_KEY, 0);
+                    courseCount = before + rewriteCounts(conn, courseIds, counts, terms);
+                    documentFrequency = readDocumentFrequencies(conn, counts, terms);
+                }
+
+                writeTopTerms(conn, full ? null : courseIds, counts, terms, documentFrequency, courseCount);
+                writeState(conn, COURSE_COUNT_KEY, courseCount);
+                writeState(conn, WATERMARK_KEY, latest);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+
+            System.out.println("Analyzed terms for " + (full ? "all" : String.valueOf(courseIds.length))
+                    + " courses (" + terms.length + " distinct terms)");
+            return true;
+
+        } catch (SQLException e) {
+            System.out.println("Error analyzing review terms: " + e.getMessage());
+            return false;
+        } finally {
+            termIds = null;
+        }
+    }
+
+    /**
+     * Checks whether change_log entries after the watermark were deleted before
+     * being processed, in which case a full run is needed.
+     */
+    private boolean changesPruned(Connection conn, long processed) throws SQLException {
+        long oldest = queryLong(conn, "SELECT IFNULL(MIN(id), 0) FROM change_log");
+        long assigned = queryLong(conn,
+                "SELECT IFNULL((SELECT seq FROM sqlite_sequence WHERE name = 'change_log'), 0)");
+        return assigned > processed && (oldest == 0 || oldest > processed + 1);
+    }
+
+    private int[] changedCourses(Connection conn, long after, long upTo) throws SQLException {
+        String sql = "SELECT DISTINCT course_id FROM change_log " +
+                     "WHERE table_name = 'reviews' AND id > ? AND id <= ?";
+
+        IntHashSet courseIds = new IntHashSet();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, after);
+            pstmt.setLong(2, upTo);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                courseIds.add(rs.getInt(1));
+            }
+        }
+        return courseIds.toArray();
+    }
+
+    /**
+     * Streams comments and counts their terms per course on the pool.
+     *
+     * @param courseIds The courses to read, or null for all courses
+     */
+    private IntObjectMap<IntIntMap> countTerms(Connection conn, int[] courseIds) throws SQLException {
+        String sql = "SELECT course_id, comment FROM reviews WHERE comment IS NOT NULL AND comment <> ''";
+
+        IntObjectMap<IntIntMap> totals = new IntObjectMap<>();
+        Deque<ForkJoinTask<IntObjectMap<IntIntMap>>> inFlight = new ArrayDeque<>();
+
+        if (courseIds == null) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.setFetchSize(FETCH_SIZE);
+                submitComments(stmt.executeQuery(sql), totals, inFlight);
+            }
+        } else {
+            for (int from = 0; from < courseIds.length; from += COURSE_ID_CHUNK) {
+                int to = Math.min(courseIds.length, from + COURSE_ID_CHUNK);
+                String placeholders = String.join(", ", Collections.nCopies(to - from, "?"));
+                try (PreparedStatement pstmt = conn.prepareStatement(sql + " AND course_id IN (" + placeholders + ")")) {
+                    pstmt.setFetchSize(FETCH_SIZE);
+                    for (int i = from; i < to; i++) {
+                        pstmt.setInt(i - from + 1, courseIds[i]);
+                    }
+                    submitComments(pstmt.executeQuery(), totals, inFlight);
+                }
+            }
+        }
+
+        while (!inFlight.isEmpty()) {
+            merge(totals, inFlight.removeFirst().join());
+        }
+        return totals;
+    }
+
+    /**
+     * Reads comments in batches and submits each batch to the pool. The number
+     * of unfinished batches is bounded, so memory use does not grow with the
+     * table when the pool falls behind the reader.
+     */
+    private void submitComments(ResultSet rs, IntObjectMap<IntIntMap> totals,
+                                Deque<ForkJoinTask<IntObjectMap<IntIntMap>>> inFlight) throws SQLException {
+        int maxInFlight = pool.getParallelism() * 2;
+        int[] batchCourses = new int[BATCH_SIZE];
+        String[] batchComments = new String[BATCH_SIZE];
+        int n = 0;
+
+        while (rs.next()) {
+            batchCourses[n] = rs.getInt(1);
+            batchComments[n] = rs.getString(2);
+            if (++n == BATCH_SIZE) {
+                inFlight.addLast(pool.submit(new TokenizeTask(batchCourses, batchComments, 0, n)));
+                batchCourses = new int[BATCH_SIZE];
+                batchComments = new String[BATCH_SIZE];
+                n = 0;
+                if (inFlight.size() >= maxInFlight) {
+                    merge(totals, inFlight.removeFirst().join());
+                }
+            }
+        }
+        if (n > 0) {
+            inFlight.addLast(pool.submit(new TokenizeTask(batchCourses, batchComments, 0, n)));
+        }
+    }
+
+    /**
+     * Tokenizes a range of comments, splitting in half until ranges are small.
+     */
+    private class TokenizeTask extends RecursiveTask<IntObjectMap<IntIntMap>> {
+        private final int[] courses;
+        private final String[] comments;
+        private final int from;
+        private final int to;
+
+        private TokenizeTask(int[] courses, String[] comments, int from, int to) {
+            this.courses = courses;
+            this.comments = comments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected IntObjectMap<IntIntMap> compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                IntObjectMap<IntIntMap> counts = new IntObjectMap<>();
+                for (int i = from; i < to; i++) {
+                    IntIntMap courseCounts = counts.get(courses[i]);
+                    if (courseCounts == null) {
+                        courseCounts = new IntIntMap();
+                        counts.put(courses[i], courseCounts);
+                    }
+                    tokenize(comments[i], courseCounts);
+                }
+                return counts;
+            }
+
+            int middle = (from + to) >>> 1;
+            TokenizeTask left = new TokenizeTask(courses, comments, from, middle);
+            left.fork();
+            IntObjectMap<IntIntMap> right = new TokenizeTask(courses, comments, middle, to).compute();
+            IntObjectMap<IntIntMap> merged = left.join();
+            merge(merged, right);
+            return merged;
+        }
+    }
+
+    /**
+     * Splits a comment into lower-case words and counts those worth tagging.
+     */
+    private void tokenize(String comment, IntIntMap counts) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0, n = comment.length(); i <= n; i++) {
+            char c = i < n ? comment.charAt(i) : ' ';
+            if (Character.isLetter(c)) {
+                word.append(Character.toLowerCase(c));
+                continue;
+            }
+            if (word.length() >= MIN_TERM_LENGTH && word.length() <= MAX_TERM_LENGTH) {
+                String term = word.toString();
+                if (!STOP_WORDS.contains(term)) {
+                    counts.addTo(termId(term), 1);
+                }
+            }
+            word.setLength(0);
+        }
+    }
+
+    private int termId(String term) {
+        Integer id = termIds.get(term);
+        if (id == null) {
+            id = termIds.computeIfAbsent(term, t -> nextTermId.getAndIncrement());
+        }
+        return id;
+    }
+
+    private String[] termsById() {
+        String[] terms = new String[nextTermId.get()];
+        termIds.forEach((term, id) -> terms[id] = term);
+        return terms;
+    }
+
+    /**
+     * Adds every course's counts from one partial result into another.
+     */
+    private static void merge(IntObjectMap<IntIntMap> into, IntObjectMap<IntIntMap> from) {
+        from.forEach((courseId, counts) -> {
+            IntIntMap existing = into.get(courseId);
+            if (existing == null) {
+                into.put(courseId, counts);
+            } else {
+                existing.addAll(counts);
+            }
+        });
+    }
+
+    private void writeAllCounts(Connection conn, IntObjectMap<IntIntMap> counts, String[] terms) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM course_term_counts");
+        }
+        try (PreparedStatement insert = conn.prepareStatement(
+                "INSERT INTO course_term_counts(course_id, term, count) VALUES(?, ?, ?)")) {
+            SQLException[] failure = new SQLException[1];
+            counts.forEach((courseId, courseCounts) -> {
+                if (failure[0] == null) {
+                    failure[0] = insertCounts(insert, courseId, courseCounts, terms);
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+    }
+
+    /**
+     * Replaces the stored counts of the changed courses.
+     *
+     * @return The change in the number of courses that have counted terms
+     */
+    private int rewriteCounts(Connection conn, int[] courseIds, IntObjectMap<IntIntMap> counts,
+                              String[] terms) throws SQLException {
+        int courseDelta = 0;
+        try (PreparedStatement delete = conn.prepareStatement("DELETE FROM course_term_counts WHERE course_id = ?");
+             PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO course_term_counts(course_id, term, count) VALUES(?, ?, ?)")) {
+            for (int courseId : courseIds) {
+                delete.setInt(1, courseId);
+                if (delete.executeUpdate() > 0) {
+                    courseDelta--;
+                }
+                IntIntMap courseCounts = counts.get(courseId);
+                if (courseCounts != null && !courseCounts.isEmpty()) {
+                    SQLException failure = insertCounts(insert, courseId, courseCounts, terms);
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    courseDelta++;
+                }
+            }
+        }
+        return courseDelta;
+    }
+
+    /**
+     * Inserts one course's counts as a batch. Returns the failure rather than
+     * throwing so it can be called from IntIntMap callbacks.
+     */
+    private static SQLException insertCounts(PreparedStatement insert, int courseId,
+                                             IntIntMap courseCounts, String[] terms) {
+        try {
+            SQLException[] failure = new SQLException[1];
+            courseCounts.forEach((termId, count) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    insert.setInt(1, courseId);
+                    insert.setString(2, terms[termId]);
+                    insert.setInt(3, count);
+                    insert.addBatch();
+                } catch (SQLException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                return failure[0];
+            }
+            insert.executeBatch();
+            return null;
+        } catch (SQLException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Looks up how many courses use each term of the re-counted courses.
+     * Uses the index on course_term_counts(term), so only those terms are read.
+     */
+    private IntIntMap readDocumentFrequencies(Connection conn, IntObjectMap<IntIntMap> counts,
+                                              String[] terms) throws SQLException {
+        IntHashSet needed = new IntHashSet();
+        counts.forEach((courseId, courseCounts) -> courseCounts.forEach((termId, count) -> needed.add(termId)));
+
+        IntIntMap frequencies = new IntIntMap(needed.size());
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT COUNT(*) FROM course_term_counts WHERE term = ?")) {
+            for (int termId : needed.toArray()) {
+                pstmt.setString(1, terms[termId]);
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    frequencies.put(termId, rs.getInt(1));
+                }
+            }
+        }
+        return frequencies;
+    }
+
+    private void clearTopTerms(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM course_top_terms");
+        }
+    }
+
+    /**
+     * Scores each course's terms by TF-IDF and stores the best TOP_TERMS.
+     *
+     * @param courseIds The courses whose stored tags are replaced, or null after a full clear
+     */
+    private void writeTopTerms(Connection conn, int[] courseIds, IntObjectMap<IntIntMap> counts, String[] terms,
+                               IntIntMap documentFrequency, int courseCount) throws SQLException {
+        try (PreparedStatement delete = conn.prepareStatement("DELETE FROM course_top_terms WHERE course_id = ?");
+             PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO course_top_terms(course_id, position, term, score) VALUES(?, ?, ?, ?)")) {
+
+            if (courseIds != null) {
+                for (int courseId : courseIds) {
+                    delete.setInt(1, courseId);
+                    delete.addBatch();
+                }
+                delete.executeBatch();
+            }
+
+            SQLException[] failure = new SQLException[1];
+            counts.forEach((courseId, courseCounts) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                int[] bestTerms = new int[TOP_TERMS];
+                double[] bestScores = new double[TOP_TERMS];
+                int found = selectTopTerms(courseCounts, documentFrequency, courseCount, bestTerms, bestScores);
+                try {
+                    for (int i = 0; i < found; i++) {
+                        insert.setInt(1, courseId);
+                        insert.setInt(2, i);
+                        insert.setString(3, terms[bestTerms[i]]);
+                        insert.setDouble(4, bestScores[i]);
+                        insert.addBatch();
+                    }
+                } catch (SQLException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Selects the highest-scoring terms of one course into the given arrays,
+     * best first. Terms used by every course score zero and are skipped.
+     *
+     * @return The number of terms selected
+     */
+    private static int selectTopTerms(IntIntMap courseCounts, IntIntMap documentFrequency, int courseCount,
+                                      int[] bestTerms, double[] bestScores) {
+        long[] total = new long[1];
+        courseCounts.forEach((termId, count) -> total[0] += count);
+
+        int[] found = new int[1];
+        courseCounts.forEach((termId, count) -> {
+            int df = Math.max(1, documentFrequency.get(termId));
+            double score = ((double) count / total[0]) * Math.log((double) courseCount / df);
+            if (score <= 0) {
+                return;
+            }
+
+            // Insertion into a small sorted array beats a heap for a handful of slots
+            int position = found[0];
+            while (position > 0 && bestScores[position - 1] < score) {
+                position--;
+            }
+            if (position >= bestTerms.length) {
+                return;
+            }
+            int last = Math.min(found[0], bestTerms.length - 1);
+            System.arraycopy(bestTerms, position, bestTerms, position + 1, last - position);
+            System.arraycopy(bestScores, position, bestScores, position + 1, last - position);
+            bestTerms[position] = termId;
+            bestScores[position] = score;
+            if (found[0] < bestTerms.length) {
+                found[0]++;
+            }
+        });
+        return found[0];
+    }
+
+    private static long readState(Connection conn, String name, long defaultValue) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT value FROM analytics_state WHERE name = ?")) {
+            pstmt.setString(1, name);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : defaultValue;
+        }
+    }
+
+    private static void writeState(Connection conn, String name, long value) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT OR REPLACE INTO analytics_state(name, value) VALUES(?, ?)")) {
+            pstmt.setString(1, name);
+            pstmt.setLong(2, value);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static long queryLong(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package edu.virginia.sde.reviews.analytics;
+
+import edu.virginia.sde.reviews.dao.Database;
+import edu.virginia.sde.reviews.event.CourseCreated;
+import edu.virginia.sde.reviews.event.EventBus;
+import edu.virginia.sde.reviews.event.ExternalChanges;
+import edu.virginia.sde.reviews.model.Course;
+import edu.virginia.sde.reviews.util.IntHashSet;
+import edu.virginia.sde.reviews.util.IntObjectMap;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * In-memory index for finding courses whose titles are near-duplicates, such as
+ * "Intro to Programming" and "Introduction to Programming".
+ *
+ * A title is normalized (lower case, common abbreviations expanded) and broken
+ * into overlapping 3-character shingles. Title similarity is the Jaccard
+ * similarity of the shingle sets.
+ *
+ * Comparing a new title with every course would be too slow for a large catalog,
+ * so each title also gets a MinHash signature of NUM_HASHES values. Two titles
+ * agree in any one value with probability equal to their Jaccard similarity.
+ * The signature is split into BANDS bands of ROWS values, and each band is
+ * hashed into a bucket (locality-sensitive hashing). Titles sharing any bucket
+ * become candidates, and only those are compared exactly. With 20 bands of 3,
+ * a pair at similarity 0.5 is found about 93% of the time, and one at 0.2
+ * only 15% of the time.
+ *
+ * The index is built from the database by rebuild(). After that, courses are
+ * added as CourseCreated and ExternalChanges events arrive.
+ */
+public class CourseTitleIndex {
+    /** Minimum Jaccard similarity for two titles to be reported as likely duplicates */
+    public static final double DUPLICATE_THRESHOLD = 0.5;
+
+    private static final int SHINGLE_LENGTH = 3;
+    private static final int BANDS = 20;
+    private static final int ROWS = 3;
+    private static final int NUM_HASHES = BANDS * ROWS;
+
+    /** Abbreviations expanded before shingling, so they match the full word */
+    private static final Map<String, String> ABBREVIATIONS = new HashMap<>();
+
+    static {
+        ABBREVIATIONS.put("intro", "introduction");
+        ABBREVIATIONS.put("adv", "advanced");
+        ABBREVIATIONS.put("math", "mathematics");
+        ABBREVIATIONS.put("eng", "engineering");
+        ABBREVIATIONS.put("&", "and");
+    }
+
+    /** Multipliers and offsets of the MinHash functions; odd multipliers keep them bijective */
+    private static final int[] HASH_MULTIPLIERS = new int[NUM_HASHES];
+    private static final int[] HASH_OFFSETS = new int[NUM_HASHES];
+
+    static {
+        // Fixed seed so signatures are comparable across runs
+        Random random = new Random(0x5eed);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            HASH_MULTIPLIERS[i] = random.nextInt() | 1;
+            HASH_OFFSETS[i] = random.nextInt();
+        }
+    }
+
+    /** Singleton instance of the index */
+    private static CourseTitleIndex instance;
+
+    /** Indexed courses and their sorted shingle hashes, by course ID */
+    private IntObjectMap<Course> courses = new IntObjectMap<>();
+    private IntObjectMap<int[]> shingles = new IntObjectMap<>();
+
+    /** One bucket table per band, from band hash to course IDs */
+    private List<IntObjectMap<Bucket>> bands = newBands();
+
+    /**
+     * A growable list of course IDs sharing one band hash.
+     */
+    private static class Bucket {
+        private int[] ids = new int[2];
+        private int size;
+
+        private void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the index.
+     */
+    private CourseTitleIndex() {
+    }
+
+    /**
+     * Gets the singleton index, subscribing it to course events on first use.
+     * The index is empty until rebuild() has been called.
+     *
+     * @return The singleton CourseTitleIndex instance
+     */
+    public static synchronized CourseTitleIndex getInstance() {
+        if (instance == null) {
+            instance = new CourseTitleIndex();
+            EventBus bus = EventBus.getInstance();
+            bus.subscribe(CourseCreated.class, e -> instance.add(e.getCourse()));
+            bus.subscribe(ExternalChanges.class, e -> instance.addFromDatabase(e.getCreatedCourseIds()));
+        }
+        return instance;
+    }
+
+    /**
+     * Reports the clusters of near-duplicate courses in the database.
+     *
+     * @param args Unused
+     */
+    public static void main(String[] args) {
+        CourseTitleIndex index = getInstance();
+        if (!index.rebuild()) {
+            return;
+        }
+        List<List<Course>> clusters = index.findDuplicateClusters();
+        for (List<Course> cluster : clusters) {
+            System.out.println("Possible duplicates:");
+            for (Course course : cluster) {
+                System.out.println("  " + course.getId() + "\t" + course);
+            }
+        }
+        System.out.println(clusters.size() + " clusters found");
+    }
+
+    /**
+     * Rebuilds the index from all courses in the database. Courses created
+     * while it runs are kept (see CourseScan).
+     *
+     * @return true if the index was rebuilt, false if the query failed
+     */
+    public boolean rebuild() {
+        IntObjectMap<Course> loadedCourses = new IntObjectMap<>();
+        IntObjectMap<int[]> loadedShingles = new IntObjectMap<>();
+        List<IntObjectMap<Bucket>> loadedBands = newBands();
+
+        return CourseScan.rebuild(this,
+                course -> insert(course, loadedCourses, loadedShingles, loadedBands),
+                () -> {
+                    courses = loadedCourses;
+                    shingles = loadedShingles;
+                    bands = loadedBands;
+                },
+                this::add,
+                "Error building course title index");
+    }
+
+    /**
+     * Finds indexed courses whose titles are likely duplicates of a title, most similar first.
+     *
+     * @param title The title to check
+     * @param limit The maximum number of courses to return
+     * @return Courses with title similarity of at least DUPLICATE_THRESHOLD
+     */
+    public synchronized List<Course> findSimilar(String title, int limit) {
+        int[] querySet = shingleHashes(title);
+        List<Course> result = new ArrayList<>();
+        if (querySet.length == 0) {
+            return result;
+        }
+
+        int[] signature = signature(querySet);
+        IntHashSet seen = new IntHashSet();
+        List<double[]> matches = new ArrayList<>();
+        for (int band = 0; band < BANDS; band++) {
+            Bucket bucket = bands.get(band).get(bandHash(signature, band));
+            if (bucket == null) {
+                continue;
+            }
+            for (int i = 0; i < bucket.size; i++) {
+                int id = bucket.ids[i];
+                if (seen.add(id)) {
+                    double similarity = jaccard(querySet, shingles.get(id));
+                    if (similarity >= DUPLICATE_THRESHOLD) {
+                        matches.add(new double[] {similarity, id});
+                    }
+                }
+            }
+        }
+
+        matches.sort(Comparator.comparingDouble((double[] m) -> m[0]).reversed());
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            Course course = courses.get((int) matches.get(i)[1]);
+            result.add(new Course(course.getId(), course.getSubject(), course.getNumber(), course.getTitle()));
+        }
+        return result;
+    }
+
+    /**
+     * Groups all indexed courses into clusters of likely duplicates.
+     * Two courses are in the same cluster if they are linked by a chain of
+     * pairs with title similarity of at least DUPLICATE_THRESHOLD.
+     *
+     * @return Clusters of two or more courses, largest first
+     */
+    public synchronized List<List<Course>> findDuplicateClusters() {
+        IntObjectMap<Integer> parent = new IntObjectMap<>(courses.size());
+
+        // Only pairs sharing a bucket are compared, rather than every pair in the catalog
+        for (IntObjectMap<Bucket> table : bands) {
+            table.forEach((hash, bucket) -> {
+                for (int i = 0; i < bucket.size; i++) {
+                    for (int j = i + 1; j < bucket.size; j++) {
+                        int a = bucket.ids[i];
+                        int b = bucket.ids[j];
+                        if (find(parent, a) != find(parent, b)
+                                && jaccard(shingles.get(a), shingles.get(b)) >= DUPLICATE_THRESHOLD) {
+                            parent.put(find(parent, a), find(parent, b));
+                        }
+                    }
+                }
+            });
+        }
+
+        IntObjectMap<List<Course>> clusters = new IntObjectMap<>();
+        courses.forEach((id, course) -> {
+            if (parent.containsKey(id)) {
+                int root = find(parent, id);
+                List<Course> cluster = clusters.get(root);
+                if (cluster == null) {
+                    cluster = new ArrayList<>();
+                    clusters.put(root, cluster);
+                }
+                cluster.add(course);
+            }
+        });
+
+        List<List<Course>> result = new ArrayList<>();
+        clusters.forEach((root, cluster) -> {
+            if (cluster.size() > 1) {
+                cluster.sort(Comparator.comparing(Course::getSubject).thenComparingInt(Course::getNumber));
+                result.add(cluster);
+            }
+        });
+        result.sort(Comparator.comparingInt((List<Course> cluster) -> cluster.size()).reversed());
+        return result;
+    }
+
+    /**
+     * Union-find lookup with path halving. Courses not yet in the forest are their own root.
+     */
+    private static int find(IntObjectMap<Integer> parent, int id) {
+        Integer next = parent.get(id);
+        if (next == null) {
+            parent.put(id, id);
+            return id;
+        }
+        while (next != id) {
+            Integer grandparent = parent.get(next);
+            parent.put(id, grandparent);
+            id = next;
+            next = parent.get(id);
+        }
+        return id;
+    }
+
+    /**
+     * Adds a newly created course to the index.
+     */
+    private synchronized void add(Course course) {
+        if (!courses.containsKey(course.getId())) {
+            insert(course, courses, shingles, bands);
+        }
+    }
+
+    /**
+     * Loads courses created by another process and adds them to the index.
+     */
+    private void addFromDatabase(int[] courseIds) {
+        String sql = "SELECT id, subject, number, title FROM courses WHERE id = ?";
+
+        try (Connection conn = Database.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (int courseId : courseIds) {
+                pstmt.setInt(1, courseId);
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    add(new Course(
+                            rs.getInt("id"),
+                            rs.getString("subject"),
+                            rs.getInt("number"),
+                            rs.getString("title")
+                    ));
+                }
+            }
+
+        } catch (SQLException e) {
+            System.out.println("Error updating course title index: " + e.getMessage());
+        }
+    }
+
+    private static void insert(Course course, IntObjectMap<Course> courses, IntObjectMap<int[]> shingles,
+                               List<IntObjectMap<Bucket>> bands) {
+        int[] set = shingleHashes(course.getTitle());
+        if (set.length == 0) {
+            return;
+        }
+        courses.put(course.getId(), course);
+        shingles.put(course.getId(), set);
+
+        int[] signature = signature(set);
+        for (int band = 0; band < BANDS; band++) {
+            IntObjectMap<Bucket> table = bands.get(band);
+            int hash = bandHash(signature, band);
+            Bucket bucket = table.get(hash);
+            if (bucket == null) {
+                bucket = new Bucket();
+                table.put(hash, bucket);
+            }
+            bucket.add(course.getId());
+        }
+    }
+
+    /**
+     * Normalizes a title and returns the sorted, distinct hashes of its shingles.
+     */
+    private static int[] shingleHashes(String title) {
+        StringBuilder normalized = new StringBuilder(" ");
+        for (String word : title.toLowerCase().split("[^a-z0-9&]+")) {
+            if (!word.isEmpty()) {
+                normalized.append(ABBREVIATIONS.getOrDefault(word, word)).append(' ');
+            }
+        }
+        if (normalized.length() < SHINGLE_LENGTH) {
+            return new int[0];
+        }
+
+        int[] hashes = new int[normalized.length() - SHINGLE_LENGTH + 1];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = normalized.substring(i, i + SHINGLE_LENGTH).hashCode();
+        }
+        return Arrays.stream(hashes).sorted().distinct().toArray();
+    }
+
+    private static int[] signature(int[] shingleSet) {
+        int[] signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int shingle : shingleSet) {
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int hash = mix(shingle * HASH_MULTIPLIERS[i] + HASH_OFFSETS[i]);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private static int bandHash(int[] signature, int band) {
+        int hash = band;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            hash = hash * 31 + signature[i];
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Exact Jaccard similarity of two sorted, distinct arrays.
+     */
+    private static double jaccard(int[] a, int[] b) {
+        int i = 0;
+        int j = 0;
+        int shared = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) shared / (a.length + b.length - shared);
+    }
+
+    /**
+     * Murmur3 finalizer, used to spread the linear MinHash functions.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static List<IntObjectMap<Bucket>> newBands() {
+        List<IntObjectMap<Bucket>> bands = new ArrayList<>(BANDS);
+        for (int i = 0; i < BANDS; i++) {
+            bands.add(new IntObjectMap<>());
+        }
+        return bands;
+    }
+}
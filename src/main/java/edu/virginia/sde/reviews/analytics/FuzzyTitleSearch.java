@@ -0,0 +1,243 @@
+package edu.virginia.sde.reviews.analytics;
+
+import edu.virginia.sde.reviews.dao.CourseDAO;
+import edu.virginia.sde.reviews.dao.Database;
+import edu.virginia.sde.reviews.event.CourseCreated;
+import edu.virginia.sde.reviews.event.EventBus;
+import edu.virginia.sde.reviews.event.ExternalChanges;
+import edu.virginia.sde.reviews.model.Course;
+import edu.virginia.sde.reviews.model.CourseNumberRange;
+import edu.virginia.sde.reviews.util.IntHashSet;
+import edu.virginia.sde.reviews.util.IntIntMap;
+import edu.virginia.sde.reviews.util.IntObjectMap;
+import edu.virginia.sde.reviews.util.Trie;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typo-tolerant course title search, so "algoritms" still finds "Algorithms".
+ *
+ * Every distinct word of every course title goes into a trie, along with
+ * the set of courses whose titles use it. A search looks up each query word
+ * in the trie within an edit distance that grows with the word's length.
+ * It then keeps the courses that matched every query word, ranked by the
+ * total edit distance of their best matches.
+ *
+ * The index is built from the database by rebuild(). After that, courses are
+ * added as CourseCreated and ExternalChanges events arrive.
+ */
+public class FuzzyTitleSearch {
+    /** Singleton instance of the search index */
+    private static FuzzyTitleSearch instance;
+
+    /** Distinct title words */
+    private Trie vocabulary = new Trie();
+
+    /** Courses using each title word */
+    private Map<String, IntHashSet> postings = new HashMap<>();
+
+    /** Indexed courses by ID, used for subject and number filters */
+    private IntObjectMap<Course> courses = new IntObjectMap<>();
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the index.
+     */
+    private FuzzyTitleSearch() {
+    }
+
+    /**
+     * Gets the singleton index, subscribing it to course events on first use.
+     * The index is empty until rebuild() has been called.
+     *
+     * @return The singleton FuzzyTitleSearch instance
+     */
+    public static synchronized FuzzyTitleSearch getInstance() {
+        if (instance == null) {
+            instance = new FuzzyTitleSearch();
+            EventBus bus = EventBus.getInstance();
+            bus.subscribe(CourseCreated.class, e -> instance.add(e.getCourse()));
+            bus.subscribe(ExternalChanges.class, e -> instance.addFromDatabase(e.getCreatedCourseIds()));
+        }
+        return instance;
+    }
+
+    /**
+     * Rebuilds the index from all courses in the database. Courses created
+     * while it runs are kept (see CourseScan).
+     *
+     * @return true if the index was rebuilt, false if the query failed
+     */
+    public boolean rebuild() {
+        Trie loadedVocabulary = new Trie();
+        Map<String, IntHashSet> loadedPostings = new HashMap<>();
+        IntObjectMap<Course> loadedCourses = new IntObjectMap<>();
+
+        return CourseScan.rebuild(this,
+                course -> insert(course, loadedVocabulary, loadedPostings, loadedCourses),
+                () -> {
+                    vocabulary = loadedVocabulary;
+                    postings = loadedPostings;
+                    courses = loadedCourses;
+                },
+                this::add,
+                "Error building fuzzy title index");
+    }
+
+    /**
+     * Searches course titles, tolerating typos in each word.
+     * All filters other than the title are optional - if null/empty, that filter is not applied.
+     *
+     * @param title The words to search for
+     * @param subject Only return courses with this subject (case-insensitive)
+     * @param numberRange Only return courses with a number in this range
+     * @param limit The maximum number of courses to return
+     * @return Matching courses with their average ratings, closest matches first
+     */
+    public List<Course> search(String title, String subject, CourseNumberRange numberRange, int limit) {
+        int[] ranked = rank(title, subject, numberRange, limit);
+
+        // Averages come from the DAO's cache rather than the index
+        CourseDAO courseDAO = new CourseDAO();
+        List<Course> results = new ArrayList<>(ranked.length);
+        for (int courseId : ranked) {
+            Course course = courseDAO.getCourseById(courseId);
+            if (course != null) {
+                results.add(course);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Finds the IDs of the best-matching courses, closest first.
+     */
+    private synchronized int[] rank(String title, String subject, CourseNumberRange numberRange, int limit) {
+        List<String> words = tokenize(title);
+        if (words.isEmpty()) {
+            return new int[0];
+        }
+
+        // Sum of each course's best distance per query word, and how many words it matched
+        IntIntMap totalDistance = new IntIntMap();
+        IntIntMap wordsMatched = new IntIntMap();
+        for (String word : words) {
+            IntIntMap best = new IntIntMap();
+            vocabulary.search(word, maxDistance(word), (match, distance) -> {
+                for (int courseId : postings.get(match).toArray()) {
+                    // Stored as distance + 1, since absent keys read as 0
+                    int current = best.get(courseId);
+                    if (current == 0 || distance + 1 < current) {
+                        best.put(courseId, distance + 1);
+                    }
+                }
+            });
+            best.forEach((courseId, distance) -> {
+                totalDistance.addTo(courseId, distance - 1);
+                wordsMatched.addTo(courseId, 1);
+            });
+        }
+
+        List<int[]> matches = new ArrayList<>();
+        wordsMatched.forEach((courseId, matched) -> {
+            if (matched == words.size() && matchesFilters(courses.get(courseId), subject, numberRange)) {
+                matches.add(new int[] {totalDistance.get(courseId), courseId});
+            }
+        });
+        matches.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+
+        int[] ranked = new int[Math.min(limit, matches.size())];
+        for (int i = 0; i < ranked.length; i++) {
+            ranked[i] = matches.get(i)[1];
+        }
+        return ranked;
+    }
+
+    private static boolean matchesFilters(Course course, String subject, CourseNumberRange numberRange) {
+        if (subject != null && !subject.isEmpty() && !course.getSubject().equalsIgnoreCase(subject)) {
+            return false;
+        }
+        return numberRange == null || numberRange.contains(course.getNumber());
+    }
+
+    /**
+     * Gets the number of typos tolerated in a word: none for very short words,
+     * since almost every short word is within one edit of many others.
+     */
+    private static int maxDistance(String word) {
+        if (word.length() <= 3) {
+            return 0;
+        }
+        return word.length() <= 5 ? 1 : 2;
+    }
+
+    /**
+     * Adds a newly created course to the index.
+     */
+    private synchronized void add(Course course) {
+        if (!courses.containsKey(course.getId())) {
+            insert(course, vocabulary, postings, courses);
+        }
+    }
+
+    /**
+     * Loads courses created by another process and adds them to the index.
+     */
+    private void addFromDatabase(int[] courseIds) {
+        String sql = "SELECT id, subject, number, title FROM courses WHERE id = ?";
+
+        try (Connection conn = Database.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (int courseId : courseIds) {
+                pstmt.setInt(1, courseId);
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    add(new Course(
+                            rs.getInt("id"),
+                            rs.getString("subject"),
+                            rs.getInt("number"),
+                            rs.getString("title")
+                    ));
+                }
+            }
+
+        } catch (SQLException e) {
+            System.out.println("Error updating fuzzy title index: " + e.getMessage());
+        }
+    }
+
+    private static void insert(Course course, Trie vocabulary, Map<String, IntHashSet> postings,
+                               IntObjectMap<Course> courses) {
+        courses.put(course.getId(), course);
+        for (String word : tokenize(course.getTitle())) {
+            IntHashSet courseIds = postings.get(word);
+            if (courseIds == null) {
+                courseIds = new IntHashSet();
+                postings.put(word, courseIds);
+                vocabulary.add(word);
+            }
+            courseIds.add(course.getId());
+        }
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        for (String word : text.toLowerCase().split("[^a-z0-9]+")) {
+            if (!word.isEmpty() && !words.contains(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
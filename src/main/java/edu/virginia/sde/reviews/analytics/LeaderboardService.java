@@ -0,0 +1,335 @@
+package edu.virginia.sde.reviews.analytics;
+
+import edu.virginia.sde.reviews.dao.CourseDAO;
+import edu.virginia.sde.reviews.dao.Database;
+import edu.virginia.sde.reviews.event.EventBus;
+import edu.virginia.sde.reviews.event.ExternalChanges;
+import edu.virginia.sde.reviews.event.ReviewCreated;
+import edu.virginia.sde.reviews.event.ReviewDeleted;
+import edu.virginia.sde.reviews.event.ReviewUpdated;
+import edu.virginia.sde.reviews.model.Course;
+import edu.virginia.sde.reviews.util.IntHashSet;
+import edu.virginia.sde.reviews.util.IntObjectMap;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Maintains "top rated" leaderboards per subject and across the whole catalog.
+ *
+ * Courses are ranked by a Bayesian-weighted average,
+ * (PRIOR_WEIGHT * priorMean + sum of ratings) / (PRIOR_WEIGHT + number of ratings),
+ * which pulls courses with only a handful of reviews towards the catalog-wide
+ * mean so a single 5-star review does not top the list.
+ *
+ * Each leaderboard is an ordered set of the reviewed courses in its scope.
+ * A review event re-reads the totals of its one course from the
+ * trigger-maintained course_rating_stats table and moves it within its sets
+ * in O(log n), and a query walks only the first N entries. The read runs on
+ * a reload thread (see RatingReloadQueue), not on the thread that made the
+ * write, so the leaderboards catch up shortly after the event. The
+ * totals are re-read rather than adjusted by the event's delta because the
+ * ChangeWatcher can still report one of this process's own commits if it
+ * reads the change before the DAO's event arrives; reading absolute values
+ * makes handling the same write twice harmless. The prior mean is fixed when the
+ * leaderboards are rebuilt, so a write never reorders other courses.
+ */
+public class LeaderboardService {
+    /** Number of "virtual" reviews at the prior mean added to every course */
+    private static final int PRIOR_WEIGHT = 5;
+
+    /** Prior mean used before any reviews exist */
+    private static final double DEFAULT_PRIOR_MEAN = 3.0;
+
+    /** Orders entries best first; ties go to the course with more reviews, then the lower ID */
+    private static final Comparator<Entry> RANKING = Comparator
+            .comparingDouble((Entry e) -> e.score).reversed()
+            .thenComparing(Comparator.comparingInt((Entry e) -> e.count).reversed())
+            .thenComparingInt(e -> e.course.getId());
+
+    /** Singleton instance of the service */
+    private static LeaderboardService instance;
+
+    /** Rating totals for every reviewed course, by course ID */
+    private IntObjectMap<Entry> entries = new IntObjectMap<>();
+
+    /** Leaderboard per upper-case subject mnemonic */
+    private Map<String, TreeSet<Entry>> bySubject = new HashMap<>();
+
+    /** Leaderboard across all subjects */
+    private TreeSet<Entry> global = new TreeSet<>(RANKING);
+
+    /** Catalog-wide mean rating used as the Bayesian prior */
+    private double priorMean = DEFAULT_PRIOR_MEAN;
+
+    /** Courses changed while a rebuild is scanning, or null when no rebuild is running */
+    private IntHashSet pendingCourses;
+
+    /** Held while re-reading and applying totals, so an older read never overwrites a newer one */
+    private final Object reloadLock = new Object();
+
+    /** Runs the reloads that review events ask for */
+    private final RatingReloadQueue reloads = new RatingReloadQueue("leaderboard-reload", this::reloadCourses);
+
+    /**
+     * Rating totals and current score for one course.
+     */
+    private static class Entry {
+        private final Course course;
+        private long sum;
+        private int count;
+        private double score;
+
+        private Entry(Course course) {
+            this.course = course;
+        }
+    }
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the service.
+     */
+    private LeaderboardService() {
+    }
+
+    /**
+     * Gets the singleton service, subscribing it to review events on first use.
+     * The leaderboards are empty until rebuild() has been called.
+     *
+     * @return The singleton LeaderboardService instance
+     */
+    public static synchronized LeaderboardService getInstance() {
+        if (instance == null) {
+            instance = new LeaderboardService();
+            EventBus bus = EventBus.getInstance();
+            bus.subscribe(ReviewCreated.class, e -> instance.reloads.add(new int[] {e.getReview().getCourseId()}));
+            bus.subscribe(ReviewUpdated.class, e -> instance.reloads.add(new int[] {e.getAfter().getCourseId()}));
+            bus.subscribe(ReviewDeleted.class, e -> instance.reloads.add(new int[] {e.getReview().getCourseId()}));
+            bus.subscribe(ExternalChanges.class, e -> instance.reloads.add(e.getReviewedCourseIds()));
+        }
+        return instance;
+    }
+
+    /**
+     * Rebuilds all leaderboards from the database and recomputes the prior mean.
+     *
+     * The scan runs without the lock, so review events keep being applied to
+     * the old leaderboards meanwhile. The courses they touch are remembered,
+     * and after the swap their totals are re-read from the database, so a
+     * write the scan missed is not lost and one it saw is not counted twice.
+     *
+     * @return true if the leaderboards were rebuilt, false if the query failed
+     */
+    public boolean rebuild() {
+        String sql = "SELECT c.id, c.subject, c.number, c.title, " +
+                     "COUNT(r.id) AS review_count, SUM(r.rating) AS rating_sum " +
+                     "FROM courses c " +
+                     "JOIN reviews r ON c.id = r.course_id " +
+                     "GROUP BY c.id";
+
+        IntObjectMap<Entry> loaded = new IntObjectMap<>();
+        long totalSum = 0;
+        long totalCount = 0;
+        synchronized (this) {
+            pendingCourses = new IntHashSet();
+        }
+
+        try (Connection conn = Database.connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            while (rs.next()) {
+                Entry entry = new Entry(new Course(
+                        rs.getInt("id"),
+                        rs.getString("subject"),
+                        rs.getInt("number"),
+                        rs.getString("title")
+                ));
+                entry.count = rs.getInt("review_count");
+                entry.sum = rs.getLong("rating_sum");
+                loaded.put(entry.course.getId(), entry);
+                totalSum += entry.sum;
+                totalCount += entry.count;
+            }
+
+        } catch (SQLException e) {
+            synchronized (this) {
+                pendingCourses = null;
+            }
+            System.out.println("Error building leaderboards: " + e.getMessage());
+            return false;
+        }
+
+        double mean = totalCount == 0 ? DEFAULT_PRIOR_MEAN : (double) totalSum / totalCount;
+        Map<String, TreeSet<Entry>> subjects = new HashMap<>();
+        TreeSet<Entry> all = new TreeSet<>(RANKING);
+        loaded.forEach((id, entry) -> {
+            entry.score = score(entry.sum, entry.count, mean);
+            subjects.computeIfAbsent(subjectKey(entry.course), s -> new TreeSet<>(RANKING)).add(entry);
+            all.add(entry);
+        });
+
+        int[] changed;
+        synchronized (this) {
+            entries = loaded;
+            bySubject = subjects;
+            global = all;
+            priorMean = mean;
+            changed = pendingCourses.toArray();
+            pendingCourses = null;
+        }
+        if (changed.length > 0) {
+            reloadCourses(changed);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the top-rated courses in a subject.
+     * Each returned course's average rating is its raw (unweighted) average.
+     *
+     * @param subject The subject mnemonic (case-insensitive), or null/empty for all subjects
+     * @param limit The maximum number of courses to return
+     * @return Courses ordered from best to worst, at most limit of them
+     */
+    public synchronized List<Course> topCourses(String subject, int limit) {
+        TreeSet<Entry> board = subject == null || subject.isEmpty()
+                ? global
+                : bySubject.get(subject.toUpperCase());
+
+        List<Course> result = new ArrayList<>(limit);
+        if (board == null) {
+            return result;
+        }
+
+        Iterator<Entry> it = board.iterator();
+        while (it.hasNext() && result.size() < limit) {
+            Entry entry = it.next();
+            Course course = new Course(entry.course.getId(), entry.course.getSubject(),
+                    entry.course.getNumber(), entry.course.getTitle());
+            course.setAverageRating((double) entry.sum / entry.count);
+            result.add(course);
+        }
+        return result;
+    }
+
+    /**
+     * Re-reads the rating totals of courses whose reviews changed from
+     * course_rating_stats, and applies the difference to each leaderboard
+     * entry. Reloads run one at a time, so the last one applied read the
+     * newest totals.
+     *
+     * @param courseIds The IDs of the affected courses
+     */
+    private void reloadCourses(int[] courseIds) {
+        String sql = "SELECT review_count, count1 + 2 * count2 + 3 * count3 + 4 * count4 + 5 * count5 " +
+                     "FROM course_rating_stats WHERE course_id = ?";
+
+        synchronized (reloadLock) {
+            reload(sql, courseIds);
+        }
+    }
+
+    private void reload(String sql, int[] courseIds) {
+        try (Connection conn = Database.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (int courseId : courseIds) {
+                pstmt.setInt(1, courseId);
+                ResultSet rs = pstmt.executeQuery();
+                // A course that has never been reviewed has no statistics row
+                boolean found = rs.next();
+                int count = found ? rs.getInt(1) : 0;
+                long sum = found ? rs.getLong(2) : 0;
+
+                long currentSum;
+                int currentCount;
+                synchronized (this) {
+                    Entry entry = entries.get(courseId);
+                    currentSum = entry == null ? 0 : entry.sum;
+                    currentCount = entry == null ? 0 : entry.count;
+                }
+                if (count != currentCount || sum != currentSum) {
+                    adjust(courseId, (int) (sum - currentSum), count - currentCount);
+                }
+            }
+
+        } catch (SQLException e) {
+            System.out.println("Error refreshing leaderboards: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies a change to a course's rating totals and moves it within its leaderboards.
+     */
+    private void adjust(int courseId, int sumDelta, int countDelta) {
+        Entry entry;
+        synchronized (this) {
+            if (pendingCourses != null) {
+                pendingCourses.add(courseId);
+            }
+            entry = entries.get(courseId);
+        }
+
+        if (entry == null) {
+            // First review of a course: look it up outside the lock
+            Course course = new CourseDAO().getCourseById(courseId);
+            if (course == null) {
+                return;
+            }
+            course.setAverageRating(0.0);
+            entry = new Entry(course);
+        }
+
+        synchronized (this) {
+            Entry current = entries.get(courseId);
+            if (current != null) {
+                entry = current;
+                detach(entry);
+            } else {
+                entries.put(courseId, entry);
+            }
+
+            entry.sum += sumDelta;
+            entry.count += countDelta;
+
+            if (entry.count <= 0) {
+                entries.remove(courseId);
+                return;
+            }
+            entry.score = score(entry.sum, entry.count, priorMean);
+            bySubject.computeIfAbsent(subjectKey(entry.course), s -> new TreeSet<>(RANKING)).add(entry);
+            global.add(entry);
+        }
+    }
+
+    /**
+     * Removes an entry from its leaderboards. Must be called before its score changes,
+     * since the ordered sets locate entries by score.
+     */
+    private void detach(Entry entry) {
+        TreeSet<Entry> board = bySubject.get(subjectKey(entry.course));
+        if (board != null) {
+            board.remove(entry);
+        }
+        global.remove(entry);
+    }
+
+    private static double score(long sum, int count, double priorMean) {
+        return (PRIOR_WEIGHT * priorMean + sum) / (PRIOR_WEIGHT + count);
+    }
+
+    private static String subjectKey(Course course) {
+        return course.getSubject().toUpperCase();
+    }
+}
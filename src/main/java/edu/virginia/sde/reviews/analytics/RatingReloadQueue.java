@@ -0,0 +1,74 @@
+package edu.virginia.sde.reviews.analytics;
+
+import edu.virginia.sde.reviews.event.EventBus;
+import edu.virginia.sde.reviews.event.RatingsReloaded;
+import edu.virginia.sde.reviews.util.IntHashSet;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Re-reads the rating totals of changed courses on a thread of its own.
+ *
+ * Review events are delivered on the thread that published them, which for
+ * a DAO write is the thread making the write, often BackgroundWrites'. A
+ * query there would hold up the next write, so subscribers only queue the
+ * course IDs here. A single daemon thread runs the reloads one at a time.
+ * Courses queued while one is running are merged into the next, so a burst
+ * of writes to the same course costs one query. After each reload a
+ * RatingsReloaded event tells screens to refresh what they show.
+ */
+final class RatingReloadQueue {
+    /** Courses waiting for the next reload; guarded by itself */
+    private final IntHashSet queued = new IntHashSet();
+
+    /** Reads and applies the totals of the given courses */
+    private final Consumer<int[]> reload;
+
+    /** Thread running the reloads */
+    private final ExecutorService executor;
+
+    /**
+     * Creates the queue and its thread.
+     *
+     * @param threadName The name of the reload thread
+     * @param reload Reads and applies the totals of the given courses
+     */
+    RatingReloadQueue(String threadName, Consumer<int[]> reload) {
+        this.reload = reload;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues courses for a reload, starting one unless one is already queued.
+     *
+     * @param courseIds The IDs of the affected courses
+     */
+    void add(int[] courseIds) {
+        synchronized (queued) {
+            boolean waiting = !queued.isEmpty();
+            for (int courseId : courseIds) {
+                queued.add(courseId);
+            }
+            if (waiting || queued.isEmpty()) {
+                return;
+            }
+        }
+        executor.execute(this::drain);
+    }
+
+    private void drain() {
+        int[] courseIds;
+        synchronized (queued) {
+            courseIds = queued.toArray();
+            queued.clear();
+        }
+        reload.accept(courseIds);
+        EventBus.getInstance().publish(new RatingsReloaded(courseIds));
+    }
+}
@@ -0,0 +1,278 @@
+package edu.virginia.sde.reviews.analytics;
+
+import edu.virginia.sde.reviews.dao.Database;
+import edu.virginia.sde.reviews.util.IntHashSet;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * One-off job that fills course_rating_months from the reviews written before
+ * the table's triggers existed.
+ *
+ * The reviews table is split into ranges of review IDs, and each range is
+ * aggregated by course and month on its own connection and thread. In WAL
+ * mode these readers run side by side. The partial sums are merged and the
+ * table is replaced in a single write transaction.
+ *
+ * Reviews may change while the readers run, and the triggers are already
+ * counting those changes. So the job notes the latest change_log entry before
+ * reading. Once it holds the write lock, it recounts every course that has
+ * changed since then directly from reviews, and all other courses come from
+ * the parallel aggregates. A completed backfill is recorded in analytics_state,
+ * so it runs once per database.
+ */
+public class RatingTrendBackfill {
+    /** Key recording a completed backfill in analytics_state */
+    private static final String DONE_KEY = "rating_trends_backfilled";
+
+    /** Number of review ID ranges per reader thread, so uneven ranges balance out */
+    private static final int RANGES_PER_THREAD = 4;
+
+    /** Month of a review, matching the course_rating_months triggers */
+    private static final String MONTH = "CAST(strftime('%Y%m', timestamp / 1000, 'unixepoch') AS INTEGER)";
+
+    /** Singleton instance of the job */
+    private static RatingTrendBackfill instance;
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the job.
+     */
+    private RatingTrendBackfill() {
+    }
+
+    /**
+     * Gets the singleton job.
+     *
+     * @return The singleton RatingTrendBackfill instance
+     */
+    public static synchronized RatingTrendBackfill getInstance() {
+        if (instance == null) {
+            instance = new RatingTrendBackfill();
+        }
+        return instance;
+    }
+
+    /**
+     * Runs the backfill from the command line, even if it has run before.
+     *
+     * @param args Unused
+     */
+    public static void main(String[] args) {
+        long start = System.nanoTime();
+        boolean success = getInstance().run(true);
+        System.out.println((success ? "Rating trend backfill finished in " : "Rating trend backfill failed after ")
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Runs the backfill unless it has already completed for this database.
+     *
+     * @return true if the table is backfilled, false if a database error occurred
+     */
+    public boolean run() {
+        return run(false);
+    }
+
+    /**
+     * Rebuilds course_rating_months from the reviews table.
+     *
+     * @param force true to run even if a backfill has already completed
+     * @return true if the table was backfilled or already was, false if a database error occurred
+     */
+    public synchronized boolean run(boolean force) {
+        try (Connection conn = Database.connect()) {
+            if (!force && readState(conn, DONE_KEY) != null) {
+                return true;
+            }
+
+            // Read the log position first; anything after it is recounted under the write lock
+            long watermark = queryLong(conn, "SELECT IFNULL(MAX(id), 0) FROM change_log");
+            long minId = queryLong(conn, "SELECT IFNULL(MIN(id), 0) FROM reviews");
+            long maxId = queryLong(conn, "SELECT IFNULL(MAX(id), 0) FROM reviews");
+
+            Map<Long, long[]> totals = aggregate(minId, maxId);
+
+            IntHashSet changed;
+            conn.setAutoCommit(false);
+            try {
+                // Writing first takes the write lock, so no review can change from here on
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("DELETE FROM course_rating_months");
+                }
+                changed = changedCourses(conn, watermark);
+                writeTotals(conn, totals, changed);
+                recount(conn, changed);
+                writeState(conn, DONE_KEY, 1);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+
+            System.out.println("Backfilled rating trends (" + totals.size() + " course months, "
+                    + changed.size() + " courses recounted)");
+            return true;
+
+        } catch (SQLException e) {
+            System.out.println("Error backfilling rating trends: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Aggregates reviews by course and month over ranges of review IDs in parallel.
+     *
+     * @return Review count and rating sum keyed by (course ID << 32 | month)
+     */
+    private Map<Long, long[]> aggregate(long minId, long maxId) throws SQLException {
+        Map<Long, long[]> totals = new HashMap<>();
+        if (maxId < minId || maxId == 0) {
+            return totals;
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        int rangeCount = threads * RANGES_PER_THREAD;
+        long rangeSize = Math.max(1, (maxId - minId + rangeCount) / rangeCount);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<long[]>>> parts = new ArrayList<>();
+            for (long from = minId; from <= maxId; from += rangeSize) {
+                long start = from;
+                long end = Math.min(maxId, from + rangeSize - 1);
+                parts.add(pool.submit(() -> aggregateRange(start, end)));
+            }
+
+            for (Future<List<long[]>> part : parts) {
+                for (long[] row : part.get()) {
+                    long key = (row[0] << 32) | row[1];
+                    long[] total = totals.computeIfAbsent(key, k -> new long[2]);
+                    total[0] += row[2];
+                    total[1] += row[3];
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Backfill interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return totals;
+    }
+
+    /**
+     * Aggregates one range of review IDs on its own connection.
+     *
+     * @return Rows of {course ID, month, review count, rating sum}
+     */
+    private static List<long[]> aggregateRange(long fromId, long toId) throws SQLException {
+        String sql = "SELECT course_id, " + MONTH + " AS month, COUNT(*), SUM(rating) " +
+                     "FROM reviews WHERE id BETWEEN ? AND ? GROUP BY course_id, month";
+
+        List<long[]> rows = new ArrayList<>();
+        try (Connection conn = Database.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, fromId);
+            pstmt.setLong(2, toId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                rows.add(new long[] {rs.getInt(1), rs.getInt(2), rs.getLong(3), rs.getLong(4)});
+            }
+        }
+        return rows;
+    }
+
+    private static IntHashSet changedCourses(Connection conn, long watermark) throws SQLException {
+        String sql = "SELECT DISTINCT course_id FROM change_log WHERE table_name = 'reviews' AND id > ?";
+
+        IntHashSet courseIds = new IntHashSet();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, watermark);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                courseIds.add(rs.getInt(1));
+            }
+        }
+        return courseIds;
+    }
+
+    /**
+     * Writes the parallel aggregates for courses that did not change while they were read.
+     */
+    private static void writeTotals(Connection conn, Map<Long, long[]> totals, IntHashSet changed) throws SQLException {
+        String sql = "INSERT INTO course_rating_months(course_id, month, review_count, rating_sum) VALUES(?, ?, ?, ?)";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<Long, long[]> entry : totals.entrySet()) {
+                int courseId = (int) (entry.getKey() >>> 32);
+                if (changed.contains(courseId)) {
+                    continue;
+                }
+                pstmt.setInt(1, courseId);
+                pstmt.setInt(2, (int) (long) entry.getKey());
+                pstmt.setLong(3, entry.getValue()[0]);
+                pstmt.setLong(4, entry.getValue()[1]);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Recounts courses whose reviews changed during the parallel read.
+     */
+    private static void recount(Connection conn, IntHashSet changed) throws SQLException {
+        String sql = "INSERT INTO course_rating_months(course_id, month, review_count, rating_sum) " +
+                     "SELECT course_id, " + MONTH + " AS month, COUNT(*), SUM(rating) " +
+                     "FROM reviews WHERE course_id = ? GROUP BY month";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int courseId : changed.toArray()) {
+                pstmt.setInt(1, courseId);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    private static Long readState(Connection conn, String name) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT value FROM analytics_state WHERE name = ?")) {
+            pstmt.setString(1, name);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : null;
+        }
+    }
+
+    private static void writeState(Connection conn, String name, long value) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT OR REPLACE INTO analytics_state(name, value) VALUES(?, ?)")) {
+            pstmt.setString(1, name);
+            pstmt.setLong(2, value);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static long queryLong(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
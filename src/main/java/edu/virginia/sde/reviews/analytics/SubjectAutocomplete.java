@@ -0,0 +1,223 @@
+package edu.virginia.sde.reviews.analytics;
+
+import edu.virginia.sde.reviews.dao.Database;
+import edu.virginia.sde.reviews.event.CourseCreated;
+import edu.virginia.sde.reviews.event.EventBus;
+import edu.virginia.sde.reviews.event.ExternalChanges;
+import edu.virginia.sde.reviews.model.Course;
+import edu.virginia.sde.reviews.util.IntHashSet;
+import edu.virginia.sde.reviews.util.Trie;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Typeahead suggestions for the subject field of the course search screen.
+ *
+ * Two prefix tries are built from the catalog: one of subject mnemonics
+ * ("CS") and one of course codes ("CS 2130"). Each word is counted once per
+ * course, so a suggestion can show how many courses it covers. While the user
+ * types only letters, subjects are suggested. Once a space or digit is typed,
+ * course codes are suggested. A lookup walks only the typed prefix and the
+ * suggestions returned, so it takes microseconds however large the catalog is.
+ *
+ * The tries are built from the database by rebuild(). After that, courses are
+ * added as CourseCreated and ExternalChanges events arrive.
+ */
+public class SubjectAutocomplete {
+    /** Singleton instance of the autocomplete index */
+    private static SubjectAutocomplete instance;
+
+    private Trie subjects = new Trie();
+    private Trie codes = new Trie();
+
+    /** IDs of the courses already counted, so a course seen twice is not counted twice */
+    private IntHashSet courseIds = new IntHashSet();
+
+    /**
+     * A single typeahead suggestion.
+     */
+    public static class Suggestion {
+        private final String subject;
+        private final Integer number;
+        private final int courseCount;
+
+        private Suggestion(String subject, Integer number, int courseCount) {
+            this.subject = subject;
+            this.number = number;
+            this.courseCount = courseCount;
+        }
+
+        /**
+         * Gets the suggested subject mnemonic.
+         * @return The subject
+         */
+        public String getSubject() {
+            return subject;
+        }
+
+        /**
+         * Gets the suggested course number, if this is a course code suggestion.
+         * @return The course number, or null for a subject suggestion
+         */
+        public Integer getNumber() {
+            return number;
+        }
+
+        /**
+         * Gets the number of courses the suggestion covers.
+         * @return The course count
+         */
+        public int getCourseCount() {
+            return courseCount;
+        }
+
+        /**
+         * Provides the text shown in the suggestion list, e.g. "CS (142 courses)".
+         * @return The display text
+         */
+        @Override
+        public String toString() {
+            String code = number == null ? subject : subject + " " + number;
+            return code + " (" + courseCount + (courseCount == 1 ? " course)" : " courses)");
+        }
+    }
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the index.
+     */
+    private SubjectAutocomplete() {
+    }
+
+    /**
+     * Gets the singleton index, subscribing it to course events on first use.
+     * The index is empty until rebuild() has been called.
+     *
+     * @return The singleton SubjectAutocomplete instance
+     */
+    public static synchronized SubjectAutocomplete getInstance() {
+        if (instance == null) {
+            instance = new SubjectAutocomplete();
+            EventBus bus = EventBus.getInstance();
+            bus.subscribe(CourseCreated.class, e -> instance.add(e.getCourse()));
+            bus.subscribe(ExternalChanges.class, e -> instance.addFromDatabase(e.getCreatedCourseIds()));
+        }
+        return instance;
+    }
+
+    /**
+     * Rebuilds the tries from all courses in the database. Courses created
+     * while it runs are kept (see CourseScan).
+     *
+     * @return true if the tries were rebuilt, false if the query failed
+     */
+    public boolean rebuild() {
+        Trie loadedSubjects = new Trie();
+        Trie loadedCodes = new Trie();
+        IntHashSet loadedIds = new IntHashSet();
+
+        return CourseScan.rebuild(this,
+                course -> {
+                    loadedIds.add(course.getId());
+                    insert(course.getSubject(), course.getNumber(), loadedSubjects, loadedCodes);
+                },
+                () -> {
+                    subjects = loadedSubjects;
+                    codes = loadedCodes;
+                    courseIds = loadedIds;
+                },
+                this::add,
+                "Error building subject autocomplete");
+    }
+
+    /**
+     * Suggests subjects, or course codes once the input contains a space or digit.
+     *
+     * @param input The text typed so far (case-insensitive)
+     * @param limit The maximum number of suggestions
+     * @return Suggestions in alphabetical order
+     */
+    public synchronized List<Suggestion> suggest(String input, int limit) {
+        List<Suggestion> suggestions = new ArrayList<>();
+        String prefix = normalize(input);
+        if (prefix.isEmpty()) {
+            return suggestions;
+        }
+
+        boolean codeQuery = prefix.indexOf(' ') >= 0 || Character.isDigit(prefix.charAt(prefix.length() - 1));
+        if (codeQuery) {
+            codes.complete(prefix, limit, (code, count) -> {
+                int space = code.indexOf(' ');
+                suggestions.add(new Suggestion(code.substring(0, space),
+                        Integer.parseInt(code.substring(space + 1)), count));
+            });
+        } else {
+            subjects.complete(prefix, limit, (subject, count) ->
+                    suggestions.add(new Suggestion(subject, null, count)));
+        }
+        return suggestions;
+    }
+
+    /**
+     * Upper-cases the input and puts a single space between a subject and a number,
+     * so "cs2130" and "cs  2130" both become "CS 2130".
+     */
+    private static String normalize(String input) {
+        String text = input.trim().toUpperCase().replaceAll("\\s+", " ");
+        int digit = 0;
+        while (digit < text.length() && Character.isLetter(text.charAt(digit))) {
+            digit++;
+        }
+        if (digit > 0 && digit < text.length() && Character.isDigit(text.charAt(digit))) {
+            text = text.substring(0, digit) + " " + text.substring(digit);
+        }
+        return text;
+    }
+
+    /**
+     * Adds a newly created course.
+     */
+    private synchronized void add(Course course) {
+        if (courseIds.add(course.getId())) {
+            insert(course.getSubject(), course.getNumber(), subjects, codes);
+        }
+    }
+
+    /**
+     * Loads courses created by another process and adds them.
+     */
+    private void addFromDatabase(int[] ids) {
+        String sql = "SELECT id, subject, number, title FROM courses WHERE id = ?";
+
+        try (Connection conn = Database.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (int courseId : ids) {
+                pstmt.setInt(1, courseId);
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    add(new Course(
+                            rs.getInt("id"),
+                            rs.getString("subject"),
+                            rs.getInt("number"),
+                            rs.getString("title")
+                    ));
+                }
+            }
+
+        } catch (SQLException e) {
+            System.out.println("Error updating subject autocomplete: " + e.getMessage());
+        }
+    }
+
+    private static void insert(String subject, int number, Trie subjects, Trie codes) {
+        String upper = subject.toUpperCase();
+        subjects.add(upper);
+        codes.add(upper + " " + number);
+    }
+}
@@ -0,0 +1,297 @@
+package edu.virginia.sde.reviews.analytics;
+
+import edu.virginia.sde.reviews.dao.Database;
+import edu.virginia.sde.reviews.dao.ShardMap;
+import edu.virginia.sde.reviews.event.EventBus;
+import edu.virginia.sde.reviews.event.ReviewCreated;
+import edu.virginia.sde.reviews.model.Course;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks which courses are trending, from how often they are opened and reviewed.
+ *
+ * Views and reviews are counted in memory, in a LongAdder per course. A
+ * LongAdder spreads concurrent increments over per-thread cells, so counting
+ * a view costs a few nanoseconds and never touches the database. A daemon
+ * thread flushes the counts every FLUSH_INTERVAL_SECONDS in one transaction,
+ * and again when the application stops.
+ *
+ * Popularity decays exponentially with a half-life of HALF_LIFE_HOURS. It is
+ * stored with forward decay: an event at time t adds exp(lambda * (t - L)) to
+ * its course's score, where L is a landmark time kept in analytics_state.
+ * Every score shrinks by the same factor as time passes, so the stored scores
+ * already rank courses correctly without being rewritten. A top-N query is a
+ * walk down the score index. Flushes only add to scores, so several processes
+ * can share the table. When the weights grow large, the landmark is moved
+ * forward and all scores are scaled down once.
+ */
+public class TrendingService {
+    /** How often buffered counts are written to the database */
+    private static final long FLUSH_INTERVAL_SECONDS = 30;
+
+    /** Time for a view's or review's contribution to halve */
+    private static final long HALF_LIFE_HOURS = 72;
+
+    /** Decay rate per millisecond */
+    private static final double LAMBDA = Math.log(2) / TimeUnit.HOURS.toMillis(HALF_LIFE_HOURS);
+
+    /** Popularity of one review, relative to one view */
+    private static final double REVIEW_WEIGHT = 10.0;
+
+    /** The landmark is moved once new weights would exceed exp(REBASE_EXPONENT) */
+    private static final double REBASE_EXPONENT = 30.0;
+
+    /** Key of the decay landmark (epoch milliseconds) in analytics_state */
+    private static final String LANDMARK_KEY = "trending_landmark";
+
+    /** Singleton instance of the service */
+    private static TrendingService instance;
+
+    /** Views and reviews not yet flushed, by course ID */
+    private final Map<Integer, Counter> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Buffered counts for one course.
+     */
+    private static class Counter {
+        private final LongAdder views = new LongAdder();
+        private final LongAdder reviews = new LongAdder();
+    }
+
+    /**
+     * Counts taken from a Counter by one flush.
+     */
+    private static class Drained {
+        private final int courseId;
+        private final long views;
+        private final long reviews;
+
+        private Drained(int courseId, long views, long reviews) {
+            this.courseId = courseId;
+            this.views = views;
+            this.reviews = reviews;
+        }
+    }
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the service.
+     */
+    private TrendingService() {
+    }
+
+    /**
+     * Gets the singleton service, subscribing it to review events on first use.
+     *
+     * @return The singleton TrendingService instance
+     */
+    public static synchronized TrendingService getInstance() {
+        if (instance == null) {
+            instance = new TrendingService();
+            // Other processes count and flush their own reviews, so ExternalChanges is not needed
+            EventBus.getInstance().subscribe(ReviewCreated.class,
+                    e -> instance.counter(e.getReview().getCourseId()).reviews.increment());
+        }
+        return instance;
+    }
+
+    /**
+     * Counts one view of a course's page. Views on a read-only kiosk or with
+     * sharded storage are not counted, as they could never be flushed.
+     *
+     * @param courseId The ID of the viewed course
+     */
+    public void recordView(int courseId) {
+        if (Database.isReadOnly() || ShardMap.getInstance().isEnabled()) {
+            return;
+        }
+        counter(courseId).views.increment();
+    }
+
+    private Counter counter(int courseId) {
+        return pending.computeIfAbsent(courseId, id -> new Counter());
+    }
+
+    /**
+     * Starts flushing buffered counts on a background daemon thread.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "trending-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the background thread and flushes whatever is still buffered.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        flush();
+    }
+
+    /**
+     * Gets the courses with the highest decayed popularity.
+     *
+     * @param limit The maximum number of courses to return
+     * @return Courses with their average ratings, most popular first
+     */
+    public List<Course> topCourses(int limit) {
+        String sql = "SELECT c.id, c.subject, c.number, c.title, IFNULL(s.mean, 0) AS avg_rating " +
+                     "FROM course_popularity p " +
+                     "JOIN courses c ON c.id = p.course_id " +
+                     "LEFT JOIN course_rating_stats s ON s.course_id = c.id " +
+                     "ORDER BY p.score DESC LIMIT ?";
+
+        List<Course> courses = new ArrayList<>();
+
+        try (Connection conn = Database.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, limit);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                Course course = new Course(
+                        rs.getInt("id"),
+                        rs.getString("subject"),
+                        rs.getInt("number"),
+                        rs.getString("title")
+                );
+                course.setAverageRating(rs.getDouble("avg_rating"));
+                courses.add(course);
+            }
+
+        } catch (SQLException e) {
+            System.out.println("Error retrieving trending courses: " + e.getMessage());
+        }
+
+        return courses;
+    }
+
+    /**
+     * Writes all buffered counts to course_popularity in one transaction.
+     * If the write fails, the counts are put back to be retried on the next flush.
+     *
+     * @return true if the counts were written, false if a database error occurred
+     */
+    public synchronized boolean flush() {
+        // Drain first; increments arriving meanwhile stay in the adders for next time
+        List<Drained> drained = new ArrayList<>();
+        for (Map.Entry<Integer, Counter> entry : pending.entrySet()) {
+            long views = entry.getValue().views.sumThenReset();
+            long reviews = entry.getValue().reviews.sumThenReset();
+            if (views != 0 || reviews != 0) {
+                drained.add(new Drained(entry.getKey(), views, reviews));
+            }
+        }
+        if (drained.isEmpty()) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        try (Connection conn = Database.connect()) {
+            conn.setAutoCommit(false);
+            try {
+                long landmark = lockLandmark(conn, now);
+                if (LAMBDA * (now - landmark) > REBASE_EXPONENT) {
+                    landmark = rebase(conn, landmark, now);
+                }
+                double weight = Math.exp(LAMBDA * (now - landmark));
+                writeCounts(conn, drained, weight);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            return true;
+
+        } catch (SQLException e) {
+            System.out.println("Error flushing trending counts: " + e.getMessage());
+            for (Drained counts : drained) {
+                Counter counter = counter(counts.courseId);
+                counter.views.add(counts.views);
+                counter.reviews.add(counts.reviews);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Reads the landmark, creating it if needed. The insert comes first so the
+     * transaction holds the write lock before anything is read.
+     */
+    private static long lockLandmark(Connection conn, long now) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT OR IGNORE INTO analytics_state(name, value) VALUES(?, ?)")) {
+            pstmt.setString(1, LANDMARK_KEY);
+            pstmt.setLong(2, now);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT value FROM analytics_state WHERE name = ?")) {
+            pstmt.setString(1, LANDMARK_KEY);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : now;
+        }
+    }
+
+    /**
+     * Moves the landmark to now, scaling every score by the decay since the old landmark.
+     *
+     * @return The new landmark
+     */
+    private static long rebase(Connection conn, long landmark, long now) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE course_popularity SET score = score * ?")) {
+            pstmt.setDouble(1, Math.exp(-LAMBDA * (now - landmark)));
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE analytics_state SET value = ? WHERE name = ?")) {
+            pstmt.setLong(1, now);
+            pstmt.setString(2, LANDMARK_KEY);
+            pstmt.executeUpdate();
+        }
+        return now;
+    }
+
+    private static void writeCounts(Connection conn, List<Drained> drained, double weight) throws SQLException {
+        String sql = "INSERT INTO course_popularity(course_id, views, reviews, score) VALUES(?, ?, ?, ?) " +
+                     "ON CONFLICT(course_id) DO UPDATE SET " +
+                     "views = views + excluded.views, " +
+                     "reviews = reviews + excluded.reviews, " +
+                     "score = score + excluded.score";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Drained counts : drained) {
+                pstmt.setInt(1, counts.courseId);
+                pstmt.setLong(2, counts.views);
+                pstmt.setLong(3, counts.reviews);
+                pstmt.setDouble(4, weight * (counts.views + REVIEW_WEIGHT * counts.reviews));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+}
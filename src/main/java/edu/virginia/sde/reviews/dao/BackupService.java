@@ -0,0 +1,465 @@
+package edu.virginia.sde.reviews.dao;
+
+import org.sqlite.SQLiteConnection;
+import org.sqlite.core.DB;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backs up course_reviews.db while the application keeps running. With
+ * sharded storage (see ShardMap) each scheduled run also backs up every
+ * shard file, one after another, each as a backup of its own.
+ *
+ * The copy is made with SQLite's online backup API, PAGES_PER_STEP pages at
+ * a time, and the backup sleeps STEP_PAUSE_MILLIS between steps. A file copy
+ * of a live database can catch it half-written, but the backup API always
+ * produces a consistent copy.
+ *
+ * The backup API restarts the copy from the start whenever another
+ * connection writes to the source, so under steady writes an unpinned backup
+ * would never finish. The backup's connection therefore holds one read
+ * transaction for the whole copy: in WAL mode that pins a snapshot, the copy
+ * reads only that snapshot and never restarts, and writers keep committing
+ * to the WAL. Checkpoints cannot pass the snapshot until the backup ends.
+ * Restarts are still counted, and a run that restarts more than MAX_RESTARTS
+ * times or is still copying after reviews.backup.maxMinutes stops pausing
+ * between steps, is discarded and is reported as failed.
+ *
+ * Each backup is written to a temporary file and checked with PRAGMA
+ * integrity_check. Only then is it renamed to
+ * backups/course_reviews-yyyyMMdd-HHmmss.db, or for a shard file to
+ * backups/NAME/course_reviews-NAME-yyyyMMdd-HHmmss.db. Each file's backups
+ * have a directory of their own, so pruning one file's backups cannot match
+ * another's. The newest RETAINED_BACKUPS backups of each file are kept and
+ * older ones are deleted, together with temporary files left by earlier runs
+ * that failed. Every run reports its
+ * throughput, its longest step (the longest a writer could have been held
+ * up by it), and the busy errors and backoff that DAO writes hit while it
+ * ran.
+ *
+ * The schedule can be changed with system properties:
+ * - reviews.backup.intervalHours: hours between scheduled backups, 0 to turn them off (default 24)
+ * - reviews.backup.retain: number of backups to keep (default 7)
+ * - reviews.backup.maxMinutes: minutes a backup may take before it is abandoned (default 30)
+ */
+public class BackupService {
+    /** Directory the backups of the shared file are written to; shard files get a subdirectory each */
+    private static final Path BACKUP_DIR = Paths.get("backups");
+
+    /** Hours between scheduled backups; 0 turns the schedule off */
+    private static final long INTERVAL_HOURS = Long.getLong("reviews.backup.intervalHours", 24);
+
+    /** Number of backups kept */
+    private static final int RETAINED_BACKUPS = Math.max(1, Integer.getInteger("reviews.backup.retain", 7));
+
+    /** Pages copied per backup step */
+    private static final int PAGES_PER_STEP = 256;
+
+    /** Pause between backup steps, which leaves the database to writers */
+    private static final long STEP_PAUSE_MILLIS = 20;
+
+    /** Wait before retrying a step that found the database locked */
+    private static final int BUSY_SLEEP_MILLIS = 100;
+
+    /** Number of locked steps tolerated before the backup gives up */
+    private static final int MAX_BUSY_STEPS = 50;
+
+    /** Number of times the copy may start over before the backup is abandoned */
+    private static final int MAX_RESTARTS = 3;
+
+    /** Time a backup may take before it is abandoned */
+    private static final long MAX_BACKUP_NANOS =
+            TimeUnit.MINUTES.toNanos(Math.max(1, Long.getLong("reviews.backup.maxMinutes", 30)));
+
+    /** SQLite result code for success */
+    private static final int SQLITE_OK = 0;
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /** Singleton instance of the service */
+    private static BackupService instance;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Measurements of one backup run.
+     */
+    public static class Report {
+        private final Path file;
+        private final long bytes;
+        private final long elapsedMillis;
+        private final int steps;
+        private final long longestStepMillis;
+        private final long writerBusyEvents;
+        private final long writerBackoffMillis;
+
+        private Report(Path file, long bytes, long elapsedMillis, int steps, long longestStepMillis,
+                       long writerBusyEvents, long writerBackoffMillis) {
+            this.file = file;
+            this.bytes = bytes;
+            this.elapsedMillis = elapsedMillis;
+            this.steps = steps;
+            this.longestStepMillis = longestStepMillis;
+            this.writerBusyEvents = writerBusyEvents;
+            this.writerBackoffMillis = writerBackoffMillis;
+        }
+
+        /**
+         * Gets the backup file.
+         * @return The path of the verified backup
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * Gets the size of the backup.
+         * @return The size in bytes
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Gets how long the backup took, including pauses and the integrity check.
+         * @return The elapsed time in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Gets the copy rate.
+         * @return Megabytes copied per second of elapsed time
+         */
+        public double getMegabytesPerSecond() {
+            return elapsedMillis == 0 ? 0.0 : bytes / 1_048_576.0 / (elapsedMillis / 1000.0);
+        }
+
+        /**
+         * Gets the number of backup steps taken, including steps repeated after a restart.
+         * @return The step count
+         */
+        public int getSteps() {
+            return steps;
+        }
+
+        /**
+         * Gets the longest time one step held the database, excluding pauses.
+         * @return The longest step in milliseconds
+         */
+        public long getLongestStepMillis() {
+            return longestStepMillis;
+        }
+
+        /**
+         * Gets the number of busy errors DAO writes hit while the backup ran.
+         * @return The busy error count
+         */
+        public long getWriterBusyEvents() {
+            return writerBusyEvents;
+        }
+
+        /**
+         * Gets the time DAO writes spent backing off while the backup ran.
+         * @return The backoff time in milliseconds
+         */
+        public long getWriterBackoffMillis() {
+            return writerBackoffMillis;
+        }
+
+        /**
+         * Summarizes the run for the log.
+         * @return A one-line description of the backup
+         */
+        @Override
+        public String toString() {
+            return String.format("Backed up to %s: %.1f MB in %d ms (%.1f MB/s, %d steps, longest step %d ms); "
+                            + "writers hit %d busy errors and backed off %d ms",
+                    file, bytes / 1_048_576.0, elapsedMillis, getMegabytesPerSecond(), steps,
+                    longestStepMillis, writerBusyEvents, writerBackoffMillis);
+        }
+    }
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the service.
+     */
+    private BackupService() {
+    }
+
+    /**
+     * Gets the singleton backup service.
+     *
+     * @return The singleton BackupService instance
+     */
+    public static synchronized BackupService getInstance() {
+        if (instance == null) {
+            instance = new BackupService();
+        }
+        return instance;
+    }
+
+    /**
+     * Backs up the database, and every shard file when sharding is on, from
+     * the command line.
+     *
+     * @param args Unused
+     */
+    public static void main(String[] args) {
+        if (!getInstance().backupAll()) {
+            System.out.println("Backup failed");
+        }
+    }
+
+    /**
+     * Starts scheduled backups on a background daemon thread.
+     * The first backup runs one interval after startup.
+     */
+    public synchronized void start() {
+        if (executor != null || INTERVAL_HOURS <= 0) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "database-backup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::backupAll, INTERVAL_HOURS, INTERVAL_HOURS, TimeUnit.HOURS);
+    }
+
+    /**
+     * Stops scheduled backups. A backup in progress is abandoned with the
+     * process, leaving only a temporary file that the next run replaces.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Backs up the shared file and then, with sharded storage, each shard
+     * file. A failed backup of one file does not stop the others.
+     *
+     * @return true if every file was backed up
+     */
+    public synchronized boolean backupAll() {
+        boolean ok = backup(ShardMap.SHARED) != null;
+        for (int shard = 0; shard < ShardMap.getInstance().getShardCount(); shard++) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            ok &= backup(shard) != null;
+        }
+        return ok;
+    }
+
+    /**
+     * Backs up one database file now, verifies the copy and prunes old backups.
+     *
+     * @param shard A shard number, or ShardMap.SHARED for course_reviews.db
+     * @return The run's measurements, or null if the backup failed or did not pass the integrity check
+     */
+    public synchronized Report backup(int shard) {
+        Path dir = backupDir(shard);
+        Path file = dir.resolve(filePrefix(shard) + LocalDateTime.now().format(TIMESTAMP) + ".db");
+        Path temp = dir.resolve(file.getFileName() + ".tmp");
+
+        ContentionTotals before = ContentionTotals.read();
+        long start = System.nanoTime();
+        int[] steps = {0};
+        long[] longestStep = {0};
+        int[] restarts = {0};
+        boolean[] abandoned = {false};
+
+        try {
+            Files.createDirectories(dir);
+            Files.deleteIfExists(temp);
+
+            try (Connection conn = Database.connect(shard)) {
+                pinSnapshot(conn);
+                DB db = conn.unwrap(SQLiteConnection.class).getDatabase();
+                long[] stepStart = {System.nanoTime()};
+                int[] lastRemaining = {Integer.MAX_VALUE};
+                int rc = db.backup("main", temp.toString(), (remaining, pageCount) -> {
+                    // Called after each step, on the backup's own thread
+                    long now = System.nanoTime();
+                    steps[0]++;
+                    longestStep[0] = Math.max(longestStep[0], (now - stepStart[0]) / 1_000_000);
+                    if (remaining > lastRemaining[0]) {
+                        restarts[0]++;
+                    }
+                    lastRemaining[0] = remaining;
+                    if (restarts[0] > MAX_RESTARTS || now - start > MAX_BACKUP_NANOS) {
+                        // The copy cannot be stopped from here; finish it without pauses and discard it
+                        abandoned[0] = true;
+                    } else if (remaining > 0) {
+                        sleepBetweenSteps();
+                    }
+                    stepStart[0] = System.nanoTime();
+                }, BUSY_SLEEP_MILLIS, MAX_BUSY_STEPS, PAGES_PER_STEP);
+                conn.rollback();
+                if (rc != SQLITE_OK) {
+                    throw new SQLException("Backup stopped with SQLite result code " + rc, null, rc);
+                }
+            }
+
+            if (abandoned[0]) {
+                Files.deleteIfExists(temp);
+                System.out.println("Backup abandoned after " + (System.nanoTime() - start) / 1_000_000
+                        + " ms and " + restarts[0] + " restarts; writes kept changing the database");
+                return null;
+            }
+            if (!passesIntegrityCheck(temp)) {
+                System.out.println("Backup failed integrity check; keeping it as " + temp
+                        + " for inspection until the next backup succeeds");
+                return null;
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            pruneOldBackups(shard);
+
+            ContentionTotals after = ContentionTotals.read();
+            Report report = new Report(file, Files.size(file), (System.nanoTime() - start) / 1_000_000,
+                    steps[0], longestStep[0], after.busyEvents - before.busyEvents,
+                    after.backoffMillis - before.backoffMillis);
+            System.out.println(report);
+            return report;
+
+        } catch (SQLException | IOException e) {
+            System.out.println("Error backing up " + ShardMap.getInstance().getFile(shard) + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Lists the backups of one database file on disk.
+     *
+     * @param shard A shard number, or ShardMap.SHARED for course_reviews.db
+     * @return Backup files, newest first
+     */
+    public List<Path> listBackups(int shard) {
+        List<Path> backups = new ArrayList<>();
+        Path dir = backupDir(shard);
+        if (!Files.isDirectory(dir)) {
+            return backups;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, filePrefix(shard) + "*.db")) {
+            for (Path file : files) {
+                backups.add(file);
+            }
+        } catch (IOException e) {
+            System.out.println("Error listing backups: " + e.getMessage());
+        }
+        // The timestamp in the name sorts chronologically
+        backups.sort(Collections.reverseOrder());
+        return backups;
+    }
+
+    /**
+     * Deletes a file's backups beyond the newest RETAINED_BACKUPS, and the temporary
+     * files of earlier runs that failed. Backups run one at a time, so no
+     * temporary file is still being written.
+     */
+    private void pruneOldBackups(int shard) throws IOException {
+        List<Path> backups = listBackups(shard);
+        for (Path old : backups.subList(Math.min(RETAINED_BACKUPS, backups.size()), backups.size())) {
+            Files.delete(old);
+        }
+        Path dir = backupDir(shard);
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(dir, filePrefix(shard) + "*.db.tmp")) {
+            for (Path stale : temps) {
+                Files.deleteIfExists(stale);
+            }
+        }
+    }
+
+    /**
+     * Gets the directory holding a database file's backups.
+     */
+    private static Path backupDir(int shard) {
+        return shard == ShardMap.SHARED ? BACKUP_DIR : BACKUP_DIR.resolve(ShardMap.getInstance().getName(shard));
+    }
+
+    /**
+     * Gets the start of a database file's backup names, which the timestamp follows:
+     * the file name without ".db", and a dash.
+     */
+    private static String filePrefix(int shard) {
+        String file = ShardMap.getInstance().getFile(shard);
+        return file.substring(0, file.length() - ".db".length()) + "-";
+    }
+
+    /**
+     * Opens a read transaction on the backup's connection, so that the backup
+     * copies one snapshot of the database and writes by other connections do
+     * not restart it. The caller ends the transaction after the backup.
+     */
+    private static void pinSnapshot(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master")) {
+            rs.next();
+        }
+    }
+
+    private static boolean passesIntegrityCheck(Path file) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA integrity_check")) {
+            boolean ok = true;
+            while (rs.next()) {
+                String result = rs.getString(1);
+                if (!"ok".equals(result)) {
+                    System.out.println("Backup integrity problem: " + result);
+                    ok = false;
+                }
+            }
+            return ok;
+        }
+    }
+
+    private static void sleepBetweenSteps() {
+        try {
+            Thread.sleep(STEP_PAUSE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Contention counted by ContentionMetrics over all operations, at one moment.
+     */
+    private static class ContentionTotals {
+        private long busyEvents;
+        private long backoffMillis;
+
+        private static ContentionTotals read() {
+            ContentionTotals totals = new ContentionTotals();
+            for (ContentionMetrics.OperationStats stats : ContentionMetrics.getInstance().snapshot()) {
+                totals.busyEvents += stats.getBusyEvents();
+                totals.backoffMillis += stats.getBackoffMillis();
+            }
+            return totals;
+        }
+    }
+}
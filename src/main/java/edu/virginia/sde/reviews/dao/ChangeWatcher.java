@@ -0,0 +1,333 @@
+package edu.virginia.sde.reviews.dao;
+
+import edu.virginia.sde.reviews.event.CourseCreated;
+import edu.virginia.sde.reviews.event.EventBus;
+import edu.virginia.sde.reviews.event.ExternalChanges;
+import edu.virginia.sde.reviews.event.ReviewCreated;
+import edu.virginia.sde.reviews.event.ReviewDeleted;
+import edu.virginia.sde.reviews.event.ReviewUpdated;
+import edu.virginia.sde.reviews.util.IntHashSet;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects writes made to the database by other processes.
+ *
+ * Several machines may open the same course_reviews.db, so in-memory caches
+ * in one process go stale when another process writes. The watcher keeps
+ * one connection open and polls PRAGMA data_version, which changes only
+ * when another connection commits. It is a cheap check that reads no
+ * table pages. When it changes, the watcher reads the new rows of the
+ * trigger-maintained change_log table past its watermark. It then publishes
+ * an ExternalChanges event naming just the affected courses, reviews and users.
+ *
+ * Every DAO call uses its own connection, so this process's own commits move
+ * data_version too. The DAOs have already published their own events for
+ * those writes, so the watcher remembers the row and operation of each one
+ * and skips the change_log entry it produced. An entry can still be reported
+ * if the watcher reads it before the DAO's event arrives, so subscribers
+ * should handle a change idempotently, by re-reading the affected rows.
+ *
+ * Once an hour the watcher also prunes change_log. An entry is deleted once
+ * it is older than CHANGE_LOG_RETENTION_MILLIS and every consumer has
+ * processed it: this watcher, and the background jobs that keep their own
+ * watermark in analytics_state under a name ending in "_change_id". A job
+ * that has not run for CHANGE_LOG_MAX_RETENTION_MILLIS no longer holds entries
+ * back; like any consumer that finds its entries pruned, it falls back to a
+ * full run.
+ */
+public class ChangeWatcher {
+    /** How often data_version is polled */
+    private static final long POLL_INTERVAL_MILLIS = 1000;
+
+    /** How often change_log is pruned */
+    private static final long PRUNE_INTERVAL_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    /** Change log rows older than this are deleted once every consumer has processed them */
+    private static final long CHANGE_LOG_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /** Change log rows older than this are deleted even if a consumer has not processed them */
+    private static final long CHANGE_LOG_MAX_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    /**
+     * How long an own write is remembered. Its change_log entry is visible
+     * by the next poll after the commit, so an older one was already read.
+     */
+    private static final long OWN_CHANGE_EXPIRY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /** Singleton instance of the watcher */
+    private static ChangeWatcher instance;
+
+    private ScheduledExecutorService executor;
+    private Connection conn;
+
+    /** Last data_version seen on the watcher's connection */
+    private long dataVersion = -1;
+
+    /** Highest change_log ID already processed */
+    private long watermark;
+
+    /** System.nanoTime() after which change_log is next pruned */
+    private long nextPruneNanos;
+
+    /**
+     * Writes made by this process and not yet seen in change_log, keyed by
+     * table, operation and row ID, with the System.nanoTime() of each write.
+     * Guarded by itself.
+     */
+    private final Map<String, ArrayDeque<Long>> ownChanges = new HashMap<>();
+
+    /** Subscriptions to the DAOs' events, which record own writes */
+    private final List<EventBus.Subscription> subscriptions = new ArrayList<>();
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the watcher.
+     */
+    private ChangeWatcher() {
+    }
+
+    /**
+     * Gets the singleton change watcher.
+     *
+     * @return The singleton ChangeWatcher instance
+     */
+    public static synchronized ChangeWatcher getInstance() {
+        if (instance == null) {
+            instance = new ChangeWatcher();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts polling on a background daemon thread.
+     * Changes committed before this call are not reported.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+
+        try {
+            conn = Database.connect();
+            try (Statement stmt = conn.createStatement()) {
+                ResultSet rs = stmt.executeQuery("SELECT IFNULL(MAX(id), 0) FROM change_log");
+                watermark = rs.next() ? rs.getLong(1) : 0;
+            }
+            dataVersion = readDataVersion();
+        } catch (SQLException e) {
+            System.out.println("Error starting change watcher: " + e.getMessage());
+            return;
+        }
+        // Prune on the first poll, then hourly
+        nextPruneNanos = System.nanoTime();
+
+        // DAO events are published only once their write has committed
+        EventBus bus = EventBus.getInstance();
+        subscriptions.add(bus.subscribe(CourseCreated.class,
+                e -> recordOwnChange("courses", "INSERT", e.getCourse().getId())));
+        subscriptions.add(bus.subscribe(ReviewCreated.class,
+                e -> recordOwnChange("reviews", "INSERT", e.getReview().getId())));
+        subscriptions.add(bus.subscribe(ReviewUpdated.class,
+                e -> recordOwnChange("reviews", "UPDATE", e.getAfter().getId())));
+        subscriptions.add(bus.subscribe(ReviewDeleted.class,
+                e -> recordOwnChange("reviews", "DELETE", e.getReview().getId())));
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::poll, POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling and closes the watcher's connection.
+     */
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        executor = null;
+        for (EventBus.Subscription subscription : subscriptions) {
+            subscription.unsubscribe();
+        }
+        subscriptions.clear();
+        synchronized (ownChanges) {
+            ownChanges.clear();
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            System.out.println("Error stopping change watcher: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Remembers a write made by this process, so its change_log entry is not
+     * reported back as an external change.
+     *
+     * @param table The table written to
+     * @param operation INSERT, UPDATE or DELETE
+     * @param rowId The ID of the written row
+     */
+    private void recordOwnChange(String table, String operation, int rowId) {
+        synchronized (ownChanges) {
+            ownChanges.computeIfAbsent(table + ":" + operation + ":" + rowId, key -> new ArrayDeque<>())
+                    .add(System.nanoTime());
+        }
+    }
+
+    /**
+     * Checks whether a change_log entry was written by this process, and
+     * forgets the write if so.
+     *
+     * @param table The entry's table_name
+     * @param operation The entry's operation
+     * @param rowId The entry's row_id
+     * @return true if the entry describes one of this process's own writes
+     */
+    private boolean isOwnChange(String table, String operation, int rowId) {
+        synchronized (ownChanges) {
+            String key = table + ":" + operation + ":" + rowId;
+            ArrayDeque<Long> writes = ownChanges.get(key);
+            if (writes == null) {
+                return false;
+            }
+            writes.poll();
+            if (writes.isEmpty()) {
+                ownChanges.remove(key);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Forgets own writes whose change_log entry was read before their event
+     * arrived, so they cannot hide a later external change to the same row.
+     */
+    private void expireOwnChanges() {
+        long cutoff = System.nanoTime() - OWN_CHANGE_EXPIRY_NANOS;
+        synchronized (ownChanges) {
+            Iterator<ArrayDeque<Long>> it = ownChanges.values().iterator();
+            while (it.hasNext()) {
+                ArrayDeque<Long> writes = it.next();
+                while (!writes.isEmpty() && writes.peek() - cutoff < 0) {
+                    writes.poll();
+                }
+                if (writes.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks data_version and, if it moved, reports the new change log
+     * entries. Prunes change_log when it is due.
+     */
+    private void poll() {
+        try {
+            if (System.nanoTime() - nextPruneNanos >= 0) {
+                nextPruneNanos = System.nanoTime() + PRUNE_INTERVAL_NANOS;
+                pruneChangeLog();
+            }
+            long version = readDataVersion();
+            if (version == dataVersion) {
+                return;
+            }
+            dataVersion = version;
+            readChanges();
+        } catch (SQLException e) {
+            System.out.println("Error polling for database changes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes change_log entries past the retention period that every
+     * consumer has processed, or past the maximum retention period.
+     *
+     * @throws SQLException If the delete fails
+     */
+    private void pruneChangeLog() throws SQLException {
+        long now = System.currentTimeMillis();
+        long processed = watermark;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(value) FROM analytics_state "
+                     + "WHERE name LIKE '%\\_change\\_id' ESCAPE '\\'")) {
+            if (rs.next() && rs.getObject(1) != null) {
+                processed = Math.min(processed, rs.getLong(1));
+            }
+        }
+
+        String sql = "DELETE FROM change_log WHERE changed_at < ? AND (id <= ? OR changed_at < ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, now - CHANGE_LOG_RETENTION_MILLIS);
+            pstmt.setLong(2, processed);
+            pstmt.setLong(3, now - CHANGE_LOG_MAX_RETENTION_MILLIS);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private long readDataVersion() throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA data_version")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private void readChanges() throws SQLException {
+        String sql = "SELECT id, table_name, row_id, course_id, user_id, operation " +
+                     "FROM change_log WHERE id > ? ORDER BY id";
+
+        IntHashSet createdCourseIds = new IntHashSet();
+        IntHashSet reviewedCourseIds = new IntHashSet();
+        IntHashSet reviewIds = new IntHashSet();
+        IntHashSet userIds = new IntHashSet();
+        expireOwnChanges();
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, watermark);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                watermark = rs.getLong("id");
+                String table = rs.getString("table_name");
+                if (isOwnChange(table, rs.getString("operation"), rs.getInt("row_id"))) {
+                    continue;
+                }
+                if ("courses".equals(table)) {
+                    createdCourseIds.add(rs.getInt("row_id"));
+                } else {
+                    reviewIds.add(rs.getInt("row_id"));
+                    reviewedCourseIds.add(rs.getInt("course_id"));
+                    userIds.add(rs.getInt("user_id"));
+                }
+            }
+        }
+
+        if (createdCourseIds.isEmpty() && reviewIds.isEmpty()) {
+            return;
+        }
+        EventBus.getInstance().publish(new ExternalChanges(
+                createdCourseIds.toArray(),
+                reviewedCourseIds.toArray(),
+                reviewIds.toArray(),
+                userIds.toArray()));
+    }
+}
@@ -0,0 +1,198 @@
+package edu.virginia.sde.reviews.dao;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts write lock contention per DAO operation.
+ *
+ * RetryPolicy records every guarded write, every SQLITE_BUSY error, every
+ * retry with the time spent backing off, and every write that still failed
+ * after its last attempt. A busy rate that keeps growing, or any final
+ * failures, show that concurrent writers have outgrown the single database
+ * file. The report is printed when the application stops.
+ */
+public class ContentionMetrics {
+    /** Singleton instance of the metrics */
+    private static ContentionMetrics instance;
+
+    /** Counters by operation name */
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Live counters for one operation.
+     */
+    private static class Counters {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder busyEvents = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder backoffMillis = new LongAdder();
+    }
+
+    /**
+     * Counts for one operation at the time of a snapshot.
+     */
+    public static class OperationStats {
+        private final String operation;
+        private final long calls;
+        private final long busyEvents;
+        private final long retries;
+        private final long failures;
+        private final long backoffMillis;
+
+        private OperationStats(String operation, Counters counters) {
+            this.operation = operation;
+            this.calls = counters.calls.sum();
+            this.busyEvents = counters.busyEvents.sum();
+            this.retries = counters.retries.sum();
+            this.failures = counters.failures.sum();
+            this.backoffMillis = counters.backoffMillis.sum();
+        }
+
+        /**
+         * Gets the name of the operation.
+         * @return The operation name, such as "createReview"
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * Gets the number of times the operation was called.
+         * @return The call count
+         */
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * Gets the number of attempts that failed because the database was locked.
+         * @return The busy error count
+         */
+        public long getBusyEvents() {
+            return busyEvents;
+        }
+
+        /**
+         * Gets the number of attempts made after a busy error.
+         * @return The retry count
+         */
+        public long getRetries() {
+            return retries;
+        }
+
+        /**
+         * Gets the number of calls that were still busy after their last attempt.
+         * @return The final failure count
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * Gets the total time spent waiting between attempts.
+         * @return The backoff time in milliseconds
+         */
+        public long getBackoffMillis() {
+            return backoffMillis;
+        }
+
+        /**
+         * Gets the average number of busy errors per call.
+         * @return Busy errors per call, or 0 if there were no calls
+         */
+        public double getBusyRate() {
+            return calls == 0 ? 0.0 : (double) busyEvents / calls;
+        }
+    }
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the metrics.
+     */
+    private ContentionMetrics() {
+    }
+
+    /**
+     * Gets the singleton metrics.
+     *
+     * @return The singleton ContentionMetrics instance
+     */
+    public static synchronized ContentionMetrics getInstance() {
+        if (instance == null) {
+            instance = new ContentionMetrics();
+        }
+        return instance;
+    }
+
+    void recordCall(String operation) {
+        counters(operation).calls.increment();
+    }
+
+    void recordBusy(String operation) {
+        counters(operation).busyEvents.increment();
+    }
+
+    void recordRetry(String operation, long backoffMillis) {
+        Counters counters = counters(operation);
+        counters.retries.increment();
+        counters.backoffMillis.add(backoffMillis);
+    }
+
+    void recordFailure(String operation) {
+        counters(operation).failures.increment();
+    }
+
+    private Counters counters(String operation) {
+        return counters.computeIfAbsent(operation, name -> new Counters());
+    }
+
+    /**
+     * Takes a snapshot of the counters.
+     *
+     * @return Counts for every operation called so far, most busy errors first
+     */
+    public List<OperationStats> snapshot() {
+        List<OperationStats> stats = new ArrayList<>();
+        for (Map.Entry<String, Counters> entry : counters.entrySet()) {
+            stats.add(new OperationStats(entry.getKey(), entry.getValue()));
+        }
+        stats.sort(Comparator.comparingLong(OperationStats::getBusyEvents).reversed()
+                .thenComparing(OperationStats::getOperation));
+        return stats;
+    }
+
+    /**
+     * Checks whether any write has hit a locked database.
+     *
+     * @return true if at least one busy error was recorded
+     */
+    public boolean hasContention() {
+        for (Counters counters : counters.values()) {
+            if (counters.busyEvents.sum() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Formats the counters as a table, one line per operation.
+     *
+     * @return The report text
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder("Write contention (operation: calls, busy, retries, failures, backoff ms)");
+        for (OperationStats stats : snapshot()) {
+            report.append(String.format("%n  %s: %d, %d (%.1f%%), %d, %d, %d",
+                    stats.getOperation(), stats.getCalls(), stats.getBusyEvents(), stats.getBusyRate() * 100,
+                    stats.getRetries(), stats.getFailures(), stats.getBackoffMillis()));
+        }
+        return report.toString();
+    }
+}
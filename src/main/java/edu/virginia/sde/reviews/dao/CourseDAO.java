@@ -1,9 +1,19 @@
 package edu.virginia.sde.reviews.dao;
 
+import edu.virginia.sde.reviews.event.CourseCreated;
+import edu.virginia.sde.reviews.event.EventBus;
+import edu.virginia.sde.reviews.event.ExternalChanges;
+import edu.virginia.sde.reviews.event.ReviewCreated;
+import edu.virginia.sde.reviews.event.ReviewDeleted;
+import edu.virginia.sde.reviews.event.ReviewUpdated;
 import edu.virginia.sde.reviews.model.Course;
+import edu.virginia.sde.reviews.model.CourseNumberRange;
+import edu.virginia.sde.reviews.model.RatingStats;
+import edu.virginia.sde.reviews.model.RatingTrend;
+import edu.virginia.sde.reviews.util.HitCounter;
+import edu.virginia.sde.reviews.util.IntObjectMap;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -17,14 +27,58 @@ import java.util.List;
  * This class provides methods for:
  * - Retrieving courses from the database with various filters
  * - Creating new courses
- * - Calculating average ratings for courses based on reviews
+ * - Reading average ratings and rating distributions, which triggers on the
+ *   reviews table keep in course_rating_stats
  * 
  * It manages the database connection and translates between database records
- * and Course model objects.
+ * and Course model objects. Calls made inside a UnitOfWork share its transaction.
+ * With sharded storage, lookups by ID or subject go to the shard holding the
+ * course, and reads across all courses query every shard in parallel
+ * (see ShardMap and ShardFanOut).
  */
 public class CourseDAO {
-    /** SQLite database connection URL */
-    private static final String DB_URL = "jdbc:sqlite:course_reviews.db";
+    /** Courses loaded by getCourseById, shared by all CourseDAO instances */
+    private static final IntObjectMap<Course> courseCache = new IntObjectMap<>();
+
+    /** Hits and misses of courseCache */
+    private static final HitCounter cacheHits = new HitCounter();
+
+    /** Incremented on every invalidation so a lookup racing a write does not cache stale data */
+    private static long cacheGeneration;
+
+    static {
+        // A cached course's average rating is stale as soon as one of its reviews changes
+        EventBus bus = EventBus.getInstance();
+        bus.subscribe(ReviewCreated.class, e -> invalidateCachedCourse(e.getReview().getCourseId()));
+        bus.subscribe(ReviewUpdated.class, e -> invalidateCachedCourse(e.getAfter().getCourseId()));
+        bus.subscribe(ReviewDeleted.class, e -> invalidateCachedCourse(e.getReview().getCourseId()));
+        bus.subscribe(ExternalChanges.class, e -> {
+            for (int courseId : e.getReviewedCourseIds()) {
+                invalidateCachedCourse(courseId);
+            }
+        });
+    }
+
+    /**
+     * Removes a course from the getCourseById cache so the next lookup reloads it.
+     *
+     * @param id The ID of the course to invalidate
+     */
+    public static void invalidateCachedCourse(int id) {
+        synchronized (courseCache) {
+            courseCache.remove(id);
+            cacheGeneration++;
+        }
+    }
+
+    /**
+     * Gets the hit rate of the getCourseById cache since startup.
+     *
+     * @return The cache's hit and miss counts
+     */
+    public static HitCounter getCacheHits() {
+        return cacheHits;
+    }
 
     /**
      * Retrieves all courses from the database with their average ratings.
@@ -34,32 +88,30 @@ public class CourseDAO {
      */
     public List<Course> getAllCourses() {
         String sql = "SELECT c.id, c.subject, c.number, c.title, " +
-                     "IFNULL(AVG(r.rating), 0) as avg_rating " +
+                     "IFNULL(s.mean, 0) as avg_rating " +
                      "FROM courses c " +
-                     "LEFT JOIN reviews r ON c.id = r.course_id " +
-                     "GROUP BY c.id";
+                     "LEFT JOIN course_rating_stats s ON c.id = s.course_id";
         
-        List<Course> courses = new ArrayList<>();
-        
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            while (rs.next()) {
-                Course course = extractCourseFromResultSet(rs);
-                courses.add(course);
+        return ShardFanOut.query("Error retrieving courses", conn -> {
+            List<Course> courses = new ArrayList<>();
+
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+
+                while (rs.next()) {
+                    Course course = extractCourseFromResultSet(rs);
+                    courses.add(course);
+                }
             }
-            
-        } catch (SQLException e) {
-            System.out.println("Error retrieving courses: " + e.getMessage());
-        }
-        
-        return courses;
+
+            return courses;
+        });
     }
 
     /**
      * Searches for courses matching the provided criteria.
      * All parameters are optional - if null/empty, that filter is not applied.
+     * Results are ordered by title.
      *
      * @param subjectFilter Filter by subject mnemonic (case-insensitive)
      * @param numberFilter Filter by exact course number
@@ -67,114 +119,339 @@ public class CourseDAO {
      * @return List of matching courses with calculated average ratings
      */
     public List<Course> searchCourses(String subjectFilter, Integer numberFilter, String titleFilter) {
+        return searchCourses(subjectFilter, numberFilter, titleFilter, CourseSort.TITLE, true, 0, -1);
+    }
+
+    /**
+     * Searches for courses matching the provided criteria and returns one sorted page.
+     * All filters are optional - if null/empty, that filter is not applied.
+     *
+     * Sorting and paging are done by SQLite. For title and subject/number
+     * order the courses table is read through a covering index in sort
+     * order, and average ratings are read from course_rating_stats only for
+     * the rows on the page.
+     *
+     * @param subjectFilter Filter by subject mnemonic (case-insensitive)
+     * @param numberFilter Filter by exact course number
+     * @param titleFilter Filter by course title containing text (case-insensitive)
+     * @param sort The order to return courses in
+     * @param ascending true for ascending order, false for descending
+     * @param offset Number of matching courses to skip
+     * @param limit Maximum number of courses to return, or -1 for no limit
+     * @return List of matching courses with calculated average ratings
+     */
+    public List<Course> searchCourses(String subjectFilter, Integer numberFilter, String titleFilter,
+                                      CourseSort sort, boolean ascending, int offset, int limit) {
+        CourseNumberRange numberRange = numberFilter == null ? null : CourseNumberRange.exactly(numberFilter);
+        return searchCourses(subjectFilter, numberRange, titleFilter, sort, ascending, offset, limit);
+    }
+
+    /**
+     * Searches for courses whose number falls in a range and returns one sorted page.
+     * All filters are optional - if null/empty, that filter is not applied.
+     *
+     * The number range becomes a BETWEEN condition. With a subject filter it is
+     * a range scan of the (subject, number) index; without one, of the
+     * (number, subject) index. Either way only matching courses are read.
+     *
+     * With sharded storage, a subject filter picks the one shard to search.
+     * Without one, every shard returns its first offset + limit matches and
+     * the merged, re-sorted rows are paged in memory, so later pages should
+     * be read with searchCoursesAfter, which asks each shard for one page.
+     *
+     * @param subjectFilter Filter by subject mnemonic (case-insensitive)
+     * @param numberRange Filter by course number range, e.g. 3000-3999
+     * @param titleFilter Filter by course title containing text (case-insensitive)
+     * @param sort The order to return courses in
+     * @param ascending true for ascending order, false for descending
+     * @param offset Number of matching courses to skip
+     * @param limit Maximum number of courses to return, or -1 for no limit
+     * @return List of matching courses with calculated average ratings
+     */
+    public List<Course> searchCourses(String subjectFilter, CourseNumberRange numberRange, String titleFilter,
+                                      CourseSort sort, boolean ascending, int offset, int limit) {
+        return search(subjectFilter, numberRange, titleFilter, sort, ascending, null, offset, limit);
+    }
+
+    /**
+     * Searches for courses matching the provided criteria and returns the
+     * page that follows a course already shown.
+     * All filters are optional - if null/empty, that filter is not applied.
+     *
+     * The query starts right after the given course's sort key instead of
+     * skipping an offset, so SQLite starts its index scan there. With sharded
+     * storage every shard is asked for one page after the same key, and the
+     * first limit of the merged rows are the next page overall.
+     *
+     * @param subjectFilter Filter by subject mnemonic (case-insensitive)
+     * @param numberRange Filter by course number range, e.g. 3000-3999
+     * @param titleFilter Filter by course title containing text (case-insensitive)
+     * @param sort The order to return courses in
+     * @param ascending true for ascending order, false for descending
+     * @param after The last course of the previous page, or null for the first page
+     * @param limit Maximum number of courses to return, or -1 for no limit
+     * @return List of matching courses with calculated average ratings
+     */
+    public List<Course> searchCoursesAfter(String subjectFilter, CourseNumberRange numberRange, String titleFilter,
+                                           CourseSort sort, boolean ascending, Course after, int limit) {
+        return search(subjectFilter, numberRange, titleFilter, sort, ascending, after, 0, limit);
+    }
+
+    /**
+     * Runs a course search on the shard that holds the subject, or on every shard.
+     *
+     * @param after The course the results start after, or null to start at the first match
+     */
+    private List<Course> search(String subjectFilter, CourseNumberRange numberRange, String titleFilter,
+                                CourseSort sort, boolean ascending, Course after, int offset, int limit) {
         StringBuilder sqlBuilder = new StringBuilder(
                 "SELECT c.id, c.subject, c.number, c.title, " +
-                "IFNULL(AVG(r.rating), 0) as avg_rating " +
-                "FROM courses c " +
-                "LEFT JOIN reviews r ON c.id = r.course_id WHERE 1=1");
+                "IFNULL((SELECT s.mean FROM course_rating_stats s WHERE s.course_id = c.id), 0) as avg_rating " +
+                "FROM courses c WHERE 1=1");
         
         List<Object> params = new ArrayList<>();
         
         if (subjectFilter != null && !subjectFilter.isEmpty()) {
-            sqlBuilder.append(" AND UPPER(c.subject) = UPPER(?)");
+            sqlBuilder.append(" AND c.subject = ? COLLATE NOCASE");
             params.add(subjectFilter);
         }
         
-        if (numberFilter != null) {
-            sqlBuilder.append(" AND c.number = ?");
-            params.add(numberFilter);
+        if (numberRange != null) {
+            sqlBuilder.append(" AND c.number BETWEEN ? AND ?");
+            params.add(numberRange.getFrom());
+            params.add(numberRange.getTo());
         }
         
         if (titleFilter != null && !titleFilter.isEmpty()) {
-            sqlBuilder.append(" AND UPPER(c.title) LIKE UPPER(?)");
+            sqlBuilder.append(" AND c.title LIKE ?");
             params.add("%" + titleFilter + "%");
         }
         
-        sqlBuilder.append(" GROUP BY c.id");
+        if (after != null) {
+            sqlBuilder.append(sort.toKeysetCondition(ascending));
+            params.addAll(sort.keyOf(after));
+        }
+
+        sqlBuilder.append(sort.toOrderByClause(ascending));
+        sqlBuilder.append(" LIMIT ? OFFSET ?");
         String sql = sqlBuilder.toString();
-        
+
+        ShardMap shards = ShardMap.getInstance();
+        boolean singleShard = !shards.isEnabled() || (subjectFilter != null && !subjectFilter.isEmpty());
+        if (!singleShard) {
+            // Any of the first offset + limit matches overall may come from any one shard
+            params.add(limit < 0 ? -1 : offset + limit);
+            params.add(0);
+            List<Course> merged = ShardFanOut.query("Error searching courses",
+                    conn -> runSearch(conn, sql, params));
+            merged.sort(sort.comparator(ascending));
+            int from = Math.min(offset, merged.size());
+            int to = limit < 0 ? merged.size() : Math.min(from + limit, merged.size());
+            return new ArrayList<>(merged.subList(from, to));
+        }
+
+        params.add(limit);
+        params.add(offset);
+        int shard = shards.shardForSubject(subjectFilter);
+
+        try (Connection conn = UnitOfWork.getConnection(shard)) {
+            return runSearch(conn, sql, params);
+        } catch (SQLException e) {
+            UnitOfWork.report("Error searching courses", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Helper method to run a course search query on one database file.
+     *
+     * @param conn The connection to query on
+     * @param sql The search query
+     * @param params The query's parameter values, in order
+     * @return The matching courses, in the query's order
+     * @throws SQLException If a database access error occurs
+     */
+    private List<Course> runSearch(Connection conn, String sql, List<Object> params) throws SQLException {
         List<Course> courses = new ArrayList<>();
-        
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            for (int i = 0; i < params.size(); i++) {
-                Object param = params.get(i);
-                if (param instanceof String) {
-                    pstmt.setString(i + 1, (String) param);
-                } else if (param instanceof Integer) {
-                    pstmt.setInt(i + 1, (Integer) param);
-                }
-            }
-            
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            bindParameters(pstmt, params);
             ResultSet rs = pstmt.executeQuery();
-            
+
             while (rs.next()) {
                 Course course = extractCourseFromResultSet(rs);
                 courses.add(course);
             }
-            
-        } catch (SQLException e) {
-            System.out.println("Error searching courses: " + e.getMessage());
         }
-        
+
         return courses;
     }
 
     /**
      * Retrieves a specific course by its ID.
      * Includes the calculated average rating from all reviews.
+     * Results are cached until one of the course's reviews changes.
      *
      * @param id The course ID to retrieve
      * @return The course if found, null otherwise
      */
     public Course getCourseById(int id) {
+        long generation;
+        synchronized (courseCache) {
+            Course cached = courseCache.get(id);
+            if (cached != null) {
+                cacheHits.hit();
+                return copyOf(cached);
+            }
+            generation = cacheGeneration;
+        }
+        cacheHits.miss();
+
         String sql = "SELECT c.id, c.subject, c.number, c.title, " +
-                     "IFNULL(AVG(r.rating), 0) as avg_rating " +
+                     "IFNULL(s.mean, 0) as avg_rating " +
                      "FROM courses c " +
-                     "LEFT JOIN reviews r ON c.id = r.course_id " +
-                     "WHERE c.id = ? " +
-                     "GROUP BY c.id";
+                     "LEFT JOIN course_rating_stats s ON c.id = s.course_id " +
+                     "WHERE c.id = ?";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = UnitOfWork.getConnection(ShardMap.getInstance().shardForId(id));
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setInt(1, id);
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                return extractCourseFromResultSet(rs);
+                Course course = extractCourseFromResultSet(rs);
+                synchronized (courseCache) {
+                    // Inside a unit of work the row may yet be rolled back
+                    if (generation == cacheGeneration && !UnitOfWork.isActive()) {
+                        courseCache.put(id, copyOf(course));
+                    }
+                }
+                return course;
             }
             
         } catch (SQLException e) {
-            System.out.println("Error retrieving course: " + e.getMessage());
+            UnitOfWork.report("Error retrieving course", e);
         }
         
         return null;
     }
 
+    /**
+     * Retrieves the rating distribution of a course from course_rating_stats.
+     * The row is kept up to date by triggers on reviews, so this is a single
+     * primary key lookup however many reviews the course has.
+     *
+     * @param courseId The ID of the course
+     * @return The course's rating statistics (empty if it has no reviews), or null if the query failed
+     */
+    public RatingStats getRatingStats(int courseId) {
+        String sql = "SELECT review_count, count1, count2, count3, count4, count5, mean, m2 " +
+                     "FROM course_rating_stats WHERE course_id = ?";
+
+        try (Connection conn = UnitOfWork.getConnection(ShardMap.getInstance().shardForId(courseId));
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, courseId);
+            ResultSet rs = pstmt.executeQuery();
+
+            if (!rs.next()) {
+                return RatingStats.empty();
+            }
+            int[] counts = new int[6];
+            for (int rating = 1; rating <= 5; rating++) {
+                counts[rating] = rs.getInt("count" + rating);
+            }
+            return new RatingStats(counts, rs.getInt("review_count"), rs.getDouble("mean"), rs.getDouble("m2"));
+
+        } catch (SQLException e) {
+            UnitOfWork.report("Error retrieving rating statistics", e);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves a course's review counts and rating sums per month from
+     * course_rating_months. Triggers on reviews keep the table current, so this
+     * reads one short primary key range instead of the course's reviews.
+     *
+     * @param courseId The ID of the course
+     * @return The course's monthly rating series, or null if the query failed
+     */
+    public RatingTrend getRatingTrend(int courseId) {
+        String sql = "SELECT month, review_count, rating_sum FROM course_rating_months " +
+                     "WHERE course_id = ? ORDER BY month";
+
+        List<int[]> rows = new ArrayList<>();
+        List<Long> sums = new ArrayList<>();
+
+        try (Connection conn = UnitOfWork.getConnection(ShardMap.getInstance().shardForId(courseId));
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, courseId);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                rows.add(new int[] {rs.getInt("month"), rs.getInt("review_count")});
+                sums.add(rs.getLong("rating_sum"));
+            }
+
+        } catch (SQLException e) {
+            UnitOfWork.report("Error retrieving rating trend", e);
+            return null;
+        }
+
+        int[] months = new int[rows.size()];
+        int[] counts = new int[rows.size()];
+        long[] ratingSums = new long[rows.size()];
+        for (int i = 0; i < months.length; i++) {
+            months[i] = rows.get(i)[0];
+            counts[i] = rows.get(i)[1];
+            ratingSums[i] = sums.get(i);
+        }
+        return new RatingTrend(months, counts, ratingSums);
+    }
+
     /**
      * Creates a new course in the database.
      * Stores the subject in uppercase for consistency.
+     * On success the course's ID is set to the database-assigned value
+     * and a CourseCreated event is published. With sharded storage the course
+     * is written to its subject's shard.
      *
      * @param course The course object containing data to insert
      * @return true if course was created successfully, false otherwise
+     * @throws DataAccessException If the subject's shard has used up its course IDs (see ShardMap)
      */
     public boolean createCourse(Course course) {
         String sql = "INSERT INTO courses(subject, number, title) VALUES(?, ?, ?)";
+        int shard = ShardMap.getInstance().shardForSubject(course.getSubject());
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setString(1, course.getSubject().toUpperCase());
-            pstmt.setInt(2, course.getNumber());
-            pstmt.setString(3, course.getTitle());
-            
-            pstmt.executeUpdate();
-            return true;
-            
+        try {
+            return RetryPolicy.run("createCourse", () -> {
+                try (Connection conn = UnitOfWork.getWriteConnection(shard);
+                     PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+                    pstmt.setString(1, course.getSubject().toUpperCase());
+                    pstmt.setInt(2, course.getNumber());
+                    pstmt.setString(3, course.getTitle());
+
+                    pstmt.executeUpdate();
+
+                    ResultSet keys = pstmt.getGeneratedKeys();
+                    if (keys.next()) {
+                        course.setId(keys.getInt(1));
+                    }
+                    ShardMap.getInstance().checkNewId(conn, shard, "courses", course.getId());
+                    course.setSubject(course.getSubject().toUpperCase());
+
+                    UnitOfWork.publish(new CourseCreated(course));
+                    return true;
+                }
+            });
         } catch (SQLException e) {
-            System.out.println("Error creating course: " + e.getMessage());
+            UnitOfWork.report("Error creating course", e);
             return false;
         }
     }
@@ -192,30 +469,60 @@ public class CourseDAO {
                      "JOIN reviews r ON c.id = r.course_id " +
                      "WHERE r.user_id = ?";
         
-        List<Course> courses = new ArrayList<>();
-        
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setInt(1, userId);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                Course course = new Course(
-                        rs.getInt("id"),
-                        rs.getString("subject"),
-                        rs.getInt("number"),
-                        rs.getString("title")
-                );
-                course.setAverageRating(rs.getDouble("avg_rating"));
-                courses.add(course);
+        return ShardFanOut.query("Error retrieving user courses", conn -> {
+            List<Course> courses = new ArrayList<>();
+
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+                pstmt.setInt(1, userId);
+                ResultSet rs = pstmt.executeQuery();
+
+                while (rs.next()) {
+                    Course course = new Course(
+                            rs.getInt("id"),
+                            rs.getString("subject"),
+                            rs.getInt("number"),
+                            rs.getString("title")
+                    );
+                    course.setAverageRating(rs.getDouble("avg_rating"));
+                    courses.add(course);
+                }
+            }
+
+            return courses;
+        });
+    }
+
+    /**
+     * Helper method to bind positional parameters to a prepared statement.
+     *
+     * @param pstmt The statement to bind to
+     * @param params The parameter values, in order
+     * @throws SQLException If a database access error occurs
+     */
+    private void bindParameters(PreparedStatement pstmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            Object param = params.get(i);
+            if (param instanceof String) {
+                pstmt.setString(i + 1, (String) param);
+            } else if (param instanceof Integer) {
+                pstmt.setInt(i + 1, (Integer) param);
+            } else if (param instanceof Double) {
+                pstmt.setDouble(i + 1, (Double) param);
             }
-            
-        } catch (SQLException e) {
-            System.out.println("Error retrieving user courses: " + e.getMessage());
         }
-        
-        return courses;
+    }
+
+    /**
+     * Helper method to copy a course, so cached instances are never shared with callers.
+     *
+     * @param course The course to copy
+     * @return A new Course with the same values
+     */
+    private static Course copyOf(Course course) {
+        Course copy = new Course(course.getId(), course.getSubject(), course.getNumber(), course.getTitle());
+        copy.setAverageRating(course.getAverageRating());
+        return copy;
     }
 
     /**
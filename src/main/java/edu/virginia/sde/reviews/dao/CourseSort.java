@@ -0,0 +1,171 @@
+package edu.virginia.sde.reviews.dao;
+
+import edu.virginia.sde.reviews.model.Course;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sort orders supported by CourseDAO.searchCourses.
+ *
+ * Title and subject/number orders match the columns of the COLLATE NOCASE
+ * covering indexes on the courses table, so SQLite can return the first
+ * page by walking the index instead of sorting the whole catalog. Every
+ * order ends with the course ID, which those indexes hold implicitly, so no
+ * two courses tie and a page can start right after a given course.
+ */
+public enum CourseSort {
+    /** By title (case-insensitive), then subject, number and ID */
+    TITLE("c.title COLLATE NOCASE", "c.subject", "c.number", "c.id"),
+
+    /** By subject mnemonic (case-insensitive), then number, title and ID */
+    SUBJECT_NUMBER("c.subject COLLATE NOCASE", "c.number", "c.title", "c.id"),
+
+    /** By average rating, then ID */
+    RATING("avg_rating", "c.id");
+
+    /** ORDER BY terms, most significant first */
+    private final String[] columns;
+
+    CourseSort(String... columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Builds the ORDER BY clause for this sort order.
+     *
+     * @param ascending true for ascending order, false for descending
+     * @return The clause, including the ORDER BY keywords
+     */
+    String toOrderByClause(boolean ascending) {
+        StringBuilder clause = new StringBuilder(" ORDER BY ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                clause.append(", ");
+            }
+            clause.append(columns[i]).append(ascending ? " ASC" : " DESC");
+        }
+        return clause.toString();
+    }
+
+    /**
+     * Builds a WHERE condition matching the courses that come after a given
+     * course in this order. The bound on the first term alone lets SQLite
+     * start its index scan at that course; the row value comparison then
+     * breaks ties on the remaining terms.
+     *
+     * @param ascending true for ascending order, false for descending
+     * @return The condition, starting with AND; bind keyOf(course) to its parameters
+     */
+    String toKeysetCondition(boolean ascending) {
+        String operator = ascending ? ">" : "<";
+        StringBuilder condition = new StringBuilder(" AND ").append(columns[0])
+                .append(' ').append(operator).append("= ? AND (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                condition.append(", ");
+            }
+            condition.append(columns[i]);
+        }
+        condition.append(") ").append(operator).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            condition.append(i > 0 ? ", ?" : "?");
+        }
+        return condition.append(')').toString();
+    }
+
+    /**
+     * Gets the parameter values of toKeysetCondition for a course.
+     *
+     * @param course The course the page starts after
+     * @return The first sort term, then every sort term, in order
+     */
+    List<Object> keyOf(Course course) {
+        List<Object> key;
+        switch (this) {
+            case SUBJECT_NUMBER:
+                key = List.of(course.getSubject(), course.getNumber(), course.getTitle(), course.getId());
+                break;
+            case RATING:
+                key = List.of(course.getAverageRating(), course.getId());
+                break;
+            default:
+                key = List.of(course.getTitle(), course.getSubject(), course.getNumber(), course.getId());
+                break;
+        }
+        List<Object> values = new ArrayList<>(key.size() + 1);
+        values.add(key.get(0));
+        values.addAll(key);
+        return values;
+    }
+
+    /**
+     * Builds an in-memory comparator equivalent to this sort order, for
+     * ordering courses that did not come from a single ORDER BY query.
+     * Strings compare as SQLite compares them: by code point, which is the
+     * order of their UTF-8 bytes, with NOCASE columns folding only the ASCII
+     * letters A to Z. String.CASE_INSENSITIVE_ORDER would also fold accented
+     * letters, treating U+00C9 and U+00E9 as equal, and so disagree with the
+     * database about their order.
+     *
+     * @param ascending true for ascending order, false for descending
+     * @return The comparator
+     */
+    public Comparator<Course> comparator(boolean ascending) {
+        Comparator<Course> order;
+        switch (this) {
+            case SUBJECT_NUMBER:
+                order = Comparator.comparing(Course::getSubject, CourseSort::compareNoCase)
+                        .thenComparingInt(Course::getNumber)
+                        .thenComparing(Course::getTitle, CourseSort::compareBinary)
+                        .thenComparingInt(Course::getId);
+                break;
+            case RATING:
+                order = Comparator.comparingDouble(Course::getAverageRating)
+                        .thenComparingInt(Course::getId);
+                break;
+            default:
+                order = Comparator.comparing(Course::getTitle, CourseSort::compareNoCase)
+                        .thenComparing(Course::getSubject, CourseSort::compareBinary)
+                        .thenComparingInt(Course::getNumber)
+                        .thenComparingInt(Course::getId);
+                break;
+        }
+        return ascending ? order : order.reversed();
+    }
+
+    /**
+     * Compares two strings like SQLite's NOCASE collation.
+     */
+    private static int compareNoCase(String a, String b) {
+        return compareCodePoints(a, b, true);
+    }
+
+    /**
+     * Compares two strings like SQLite's default BINARY collation.
+     */
+    private static int compareBinary(String a, String b) {
+        return compareCodePoints(a, b, false);
+    }
+
+    private static int compareCodePoints(String a, String b, boolean foldAscii) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+            if (foldAscii) {
+                x = x >= 'A' && x <= 'Z' ? x + ('a' - 'A') : x;
+                y = y >= 'A' && y <= 'Z' ? y + ('a' - 'A') : y;
+            }
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+        }
+        // Whichever string has characters left sorts after the other
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+}
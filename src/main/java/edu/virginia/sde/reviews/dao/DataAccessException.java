@@ -0,0 +1,20 @@
+package edu.virginia.sde.reviews.dao;
+
+/**
+ * Unchecked exception thrown when a database operation inside a UnitOfWork fails.
+ *
+ * Outside a unit of work the DAOs report errors and return false, null or an
+ * empty list. Inside one, a failed call must not let the rest of the work
+ * commit, so the DAOs throw this instead and the unit of work rolls back.
+ */
+public class DataAccessException extends RuntimeException {
+    /**
+     * Creates an exception wrapping the database error that caused it.
+     *
+     * @param message A description of the failed operation
+     * @param cause The underlying database error
+     */
+    public DataAccessException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
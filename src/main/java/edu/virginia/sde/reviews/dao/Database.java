@@ -0,0 +1,98 @@
+package edu.virginia.sde.reviews.dao;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Opens connections to course_reviews.db for the DAOs and analytics services,
+ * and to the shard files when sharded storage is on (see ShardMap).
+ *
+ * Normally connections are read-write and wait up to RetryPolicy's busy
+ * timeout for locks. In kiosk mode, for public lab machines that only browse
+ * courses and reviews, every connection is opened read-only with a large
+ * memory map instead, so pages are read straight from the OS page cache and
+ * the kiosk never takes a write lock or creates a journal.
+ *
+ * Kiosk mode is turned on with system properties:
+ * - reviews.kiosk=true: open the database read-only and disable all writes
+ * - reviews.kiosk.immutable=true: also open it as immutable, which skips all
+ *   locking and change detection. Only use this when course_reviews.db is a
+ *   published copy that nothing writes to while the kiosk is running.
+ * - reviews.kiosk.mmapBytes: size of the memory map (default 256 MiB)
+ */
+public final class Database {
+    /** The shared database file, relative to the working directory */
+    static final String DB_FILE = "course_reviews.db";
+
+    /** Whether this process runs as a read-only kiosk */
+    private static final boolean READ_ONLY = Boolean.getBoolean("reviews.kiosk");
+
+    /** Whether the kiosk's database file never changes while it runs */
+    private static final boolean IMMUTABLE = READ_ONLY && Boolean.getBoolean("reviews.kiosk.immutable");
+
+    /** Bytes of the database file to memory-map in kiosk mode */
+    private static final long KIOSK_MMAP_BYTES = Long.getLong("reviews.kiosk.mmapBytes", 256L * 1024 * 1024);
+
+    /** SQLITE_OPEN_READONLY | SQLITE_OPEN_URI, so the immutable URI parameter is honoured */
+    private static final int READ_ONLY_OPEN_FLAGS = 0x01 | 0x40;
+
+    private Database() {
+    }
+
+    /**
+     * Checks whether this process is a read-only kiosk. Write paths and write
+     * controls check this to turn themselves off.
+     *
+     * @return true if the database is opened read-only
+     */
+    public static boolean isReadOnly() {
+        return READ_ONLY;
+    }
+
+    /**
+     * Checks whether the kiosk's database is opened as an immutable published copy.
+     *
+     * @return true if SQLite treats the file as never changing
+     */
+    public static boolean isImmutable() {
+        return IMMUTABLE;
+    }
+
+    /**
+     * Opens a new connection to the shared database. The caller closes it.
+     * DAO methods use UnitOfWork.getConnection() instead, which shares a
+     * connection with any unit of work in progress.
+     *
+     * @return A new connection
+     * @throws SQLException If the database cannot be opened
+     */
+    public static Connection connect() throws SQLException {
+        return open(DB_FILE);
+    }
+
+    /**
+     * Opens a new connection to one shard's database file. The caller closes it.
+     *
+     * @param shard A shard number from ShardMap, or ShardMap.SHARED for the shared file
+     * @return A new connection
+     * @throws SQLException If the database cannot be opened
+     */
+    public static Connection connect(int shard) throws SQLException {
+        return open(ShardMap.getInstance().getFile(shard));
+    }
+
+    private static Connection open(String file) throws SQLException {
+        Properties properties = new Properties();
+        if (!READ_ONLY) {
+            properties.setProperty("busy_timeout", String.valueOf(RetryPolicy.BUSY_TIMEOUT_MILLIS));
+            return DriverManager.getConnection("jdbc:sqlite:" + file, properties);
+        }
+
+        properties.setProperty("open_mode", String.valueOf(READ_ONLY_OPEN_FLAGS));
+        properties.setProperty("mmap_size", String.valueOf(KIOSK_MMAP_BYTES));
+        String url = "jdbc:sqlite:file:" + file + (IMMUTABLE ? "?immutable=1" : "");
+        return DriverManager.getConnection(url, properties);
+    }
+}
@@ -0,0 +1,607 @@
+package edu.virginia.sde.reviews.dao;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs database housekeeping while the application is idle.
+ *
+ * Every DAO call marks the database as in use. Once no DAO call has been made
+ * for IDLE_SECONDS, the scheduler runs whichever of these tasks are due, once
+ * per idle period; it then waits for the next DAO call and the idle period
+ * after it:
+ * - checkpoint: copies the write-ahead log back into the database
+ *   (PRAGMA wal_checkpoint(PASSIVE)), every idle period
+ * - analyze: refreshes the query planner's statistics one table at a time,
+ *   with PRAGMA analysis_limit bounding the rows sampled, once a day
+ * - optimize: PRAGMA optimize, once a day
+ * - vacuum: returns free pages to the file system with
+ *   PRAGMA incremental_vacuum, VACUUM_PAGES_PER_SLICE pages at a time, when
+ *   at least MIN_FREE_PAGES are free
+ *
+ * Every task is split into short slices of one statement each, except that a
+ * vacuum slice is one transaction of VACUUM_PAGES_PER_SLICE single-page
+ * incremental_vacuum statements. The pragma frees one page each time it is
+ * stepped but declares no result columns, so JDBC steps it only once and
+ * incremental_vacuum(N) would free a single page. Traffic is checked before
+ * each statement. A DAO call made while a slice runs interrupts
+ * that statement, so the task stops the moment the application is used
+ * again. SQLite rolls back an interrupted statement, so a task that is cut
+ * short loses only its last slice. The task is picked up again in the next
+ * idle period.
+ *
+ * Databases created before incremental vacuuming was turned on have
+ * auto_vacuum set to NONE, and incremental_vacuum does nothing on them. The
+ * mode only takes effect once a full VACUUM rewrites the file, which cannot
+ * be split into slices, so the scheduler never does it: the vacuum task is
+ * skipped there, and the file is converted offline by running this class's
+ * main method while the application is closed.
+ *
+ * With sharded storage (see ShardMap) every idle period services the shared
+ * file and then each shard file in turn, each with its own connection and its
+ * own daily schedule. Idleness is judged across all files, so a DAO call to
+ * any of them stops the run.
+ *
+ * Each run records which file it ran on, how long the task took and the
+ * file's size and free pages before and after. The idle threshold can be
+ * changed with the reviews.maintenance.idleSeconds system property.
+ */
+public class MaintenanceScheduler {
+    /** Seconds without DAO calls after which the application counts as idle */
+    private static final long IDLE_SECONDS = Long.getLong("reviews.maintenance.idleSeconds", 60);
+
+    /** How often the scheduler checks for an idle period */
+    private static final long CHECK_INTERVAL_SECONDS = 5;
+
+    /** Minimum time between runs of the analyze and optimize tasks */
+    private static final long DAILY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /** Rows sampled per index by ANALYZE, which bounds each analyze slice */
+    private static final int ANALYSIS_LIMIT = 1000;
+
+    /** Free pages released by each incremental vacuum slice */
+    private static final int VACUUM_PAGES_PER_SLICE = 256;
+
+    /** Free pages needed before vacuuming is worthwhile */
+    private static final long MIN_FREE_PAGES = 512;
+
+    /** Number of task runs kept in the history */
+    private static final int HISTORY_SIZE = 50;
+
+    /** SQLite's auto_vacuum setting for incremental vacuuming */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /** Time of the most recent DAO call, from System.nanoTime() */
+    private static volatile long lastActivityNanos = System.nanoTime();
+
+    /** The maintenance statement being executed, interrupted by DAO calls; null between slices */
+    private static volatile Statement runningStatement;
+
+    /** Singleton instance of the scheduler */
+    private static MaintenanceScheduler instance;
+
+    private final Deque<TaskRun> history = new ArrayDeque<>();
+
+    private ScheduledExecutorService executor;
+
+    /** The idle period, identified by the time of its last DAO call, that maintenance has already run in */
+    private long servicedIdleSince = lastActivityNanos - 1;
+
+    /** Schedule state of each database file, the shared file first; created by start() */
+    private final List<FileState> files = new ArrayList<>();
+
+    /**
+     * Schedule state of one database file.
+     */
+    private static class FileState {
+        /** The file's shard number, or ShardMap.SHARED */
+        private final int shard;
+
+        /** Wall-clock time each daily task last completed */
+        private long lastAnalyzed;
+        private long lastOptimized;
+
+        /** Whether the log has already said that the vacuum task needs the offline conversion */
+        private boolean conversionNoted;
+
+        private FileState(int shard) {
+            this.shard = shard;
+        }
+    }
+
+    /**
+     * Size and free space of the database at one moment.
+     */
+    public static class FileStats {
+        private final long pageSize;
+        private final long pageCount;
+        private final long freePages;
+        private final long walBytes;
+
+        private FileStats(long pageSize, long pageCount, long freePages, long walBytes) {
+            this.pageSize = pageSize;
+            this.pageCount = pageCount;
+            this.freePages = freePages;
+            this.walBytes = walBytes;
+        }
+
+        /**
+         * Gets the size of the database file.
+         * @return The size in bytes, excluding the write-ahead log
+         */
+        public long getFileBytes() {
+            return pageSize * pageCount;
+        }
+
+        /**
+         * Gets the number of unused pages inside the file.
+         * @return The freelist page count
+         */
+        public long getFreePages() {
+            return freePages;
+        }
+
+        /**
+         * Gets the share of the file taken up by unused pages.
+         * @return The fragmentation between 0 and 1
+         */
+        public double getFragmentation() {
+            return pageCount == 0 ? 0.0 : (double) freePages / pageCount;
+        }
+
+        /**
+         * Gets the size of the write-ahead log.
+         * @return The size in bytes, or 0 if there is no log
+         */
+        public long getWalBytes() {
+            return walBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d KB, %.1f%% free, WAL %d KB",
+                    getFileBytes() / 1024, getFragmentation() * 100, walBytes / 1024);
+        }
+    }
+
+    /**
+     * The outcome of running one task.
+     */
+    public static class TaskRun {
+        private final String task;
+        private final String file;
+        private final long startedAt;
+        private final long durationMillis;
+        private final boolean completed;
+        private final FileStats before;
+        private final FileStats after;
+
+        private TaskRun(String task, String file, long startedAt, long durationMillis, boolean completed,
+                        FileStats before, FileStats after) {
+            this.task = task;
+            this.file = file;
+            this.startedAt = startedAt;
+            this.durationMillis = durationMillis;
+            this.completed = completed;
+            this.before = before;
+            this.after = after;
+        }
+
+        /**
+         * Gets the task's name.
+         * @return "checkpoint", "analyze", "optimize" or "vacuum"
+         */
+        public String getTask() {
+            return task;
+        }
+
+        /**
+         * Gets the database file the task ran on.
+         * @return The file name, relative to the working directory
+         */
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * Gets when the task started.
+         * @return The start time in epoch milliseconds
+         */
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        /**
+         * Gets how long the task ran.
+         * @return The duration in milliseconds
+         */
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        /**
+         * Checks whether the task finished, rather than stopping for traffic or an error.
+         * @return true if the task completed
+         */
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        /**
+         * Gets the database's size and free space before the task.
+         * @return The file statistics
+         */
+        public FileStats getBefore() {
+            return before;
+        }
+
+        /**
+         * Gets the database's size and free space after the task.
+         * @return The file statistics
+         */
+        public FileStats getAfter() {
+            return after;
+        }
+
+        @Override
+        public String toString() {
+            return "Maintenance " + task + " on " + file + (completed ? " finished" : " stopped") + " after " + durationMillis
+                    + " ms: " + before + " -> " + after;
+        }
+    }
+
+    /**
+     * One unit of maintenance, run as a series of slices.
+     */
+    private interface Task {
+        /**
+         * Runs the task's slices until it is done or traffic resumes.
+         *
+         * @param conn The maintenance connection
+         * @param idleSince The time of the last DAO call before the task started
+         * @return true if the task completed
+         * @throws SQLException If a slice fails for a reason other than an interruption
+         */
+        boolean run(Connection conn, long idleSince) throws SQLException;
+    }
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the scheduler.
+     */
+    private MaintenanceScheduler() {
+    }
+
+    /**
+     * Gets the singleton maintenance scheduler.
+     *
+     * @return The singleton MaintenanceScheduler instance
+     */
+    public static synchronized MaintenanceScheduler getInstance() {
+        if (instance == null) {
+            instance = new MaintenanceScheduler();
+        }
+        return instance;
+    }
+
+    /**
+     * Marks the database as in use, interrupting any maintenance statement.
+     * Called on every DAO call, so it only touches two volatile fields.
+     */
+    static void recordActivity() {
+        lastActivityNanos = System.nanoTime();
+        Statement statement = runningStatement;
+        if (statement != null) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                // The slice has already finished
+            }
+        }
+    }
+
+    /**
+     * Converts the database to incremental auto-vacuuming from the command
+     * line, including every shard file when sharding is on. VACUUM rewrites
+     * the whole file and locks it throughout, so run this only while the
+     * application is closed.
+     *
+     * @param args Unused
+     */
+    public static void main(String[] args) {
+        for (int shard : shardsToService()) {
+            convert(shard);
+        }
+    }
+
+    private static void convert(int shard) {
+        String file = ShardMap.getInstance().getFile(shard);
+        try (Connection conn = Database.connect(shard)) {
+            if (queryLong(conn, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+                System.out.println(file + " already uses incremental auto-vacuuming: " + readStats(conn, shard));
+                return;
+            }
+            FileStats before = readStats(conn, shard);
+            long start = System.nanoTime();
+            try (Statement stmt = conn.createStatement()) {
+                // The mode only takes effect once VACUUM rebuilds the file
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                stmt.execute("VACUUM");
+            }
+            System.out.println("Converted " + file + " to incremental auto-vacuuming in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms: " + before + " -> " + readStats(conn, shard));
+        } catch (SQLException e) {
+            System.out.println("Error converting " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lists the database files to maintain: the shared file, then each shard.
+     */
+    private static List<Integer> shardsToService() {
+        List<Integer> shards = new ArrayList<>();
+        shards.add(ShardMap.SHARED);
+        for (int shard = 0; shard < ShardMap.getInstance().getShardCount(); shard++) {
+            shards.add(shard);
+        }
+        return shards;
+    }
+
+    /**
+     * Starts watching for idle periods on a background daemon thread.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        if (files.isEmpty()) {
+            for (int shard : shardsToService()) {
+                files.add(new FileState(shard));
+            }
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "database-maintenance");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::runIfIdle, CHECK_INTERVAL_SECONDS, CHECK_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the scheduler, interrupting a task in progress.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        recordActivity();
+    }
+
+    /**
+     * Gets the most recent task runs.
+     *
+     * @return Up to HISTORY_SIZE runs, oldest first
+     */
+    public List<TaskRun> getHistory() {
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
+    }
+
+    private void runIfIdle() {
+        long idleSince = lastActivityNanos;
+        if (idleSince == servicedIdleSince
+                || System.nanoTime() - idleSince < TimeUnit.SECONDS.toNanos(IDLE_SECONDS)) {
+            return;
+        }
+        // Whatever happens below, nothing more is done until the database is used again
+        servicedIdleSince = idleSince;
+
+        for (FileState file : files) {
+            if (trafficResumed(idleSince)) {
+                return;
+            }
+            runFile(file, idleSince);
+        }
+    }
+
+    /**
+     * Runs the tasks that are due on one database file.
+     */
+    private void runFile(FileState file, long idleSince) {
+        int shard = file.shard;
+        try (Connection conn = Database.connect(shard)) {
+            runTask("checkpoint", conn, shard, idleSince, this::checkpoint);
+
+            long now = System.currentTimeMillis();
+            if (now - file.lastAnalyzed >= DAILY_MILLIS
+                    && runTask("analyze", conn, shard, idleSince, this::analyze)) {
+                file.lastAnalyzed = now;
+            }
+            if (now - file.lastOptimized >= DAILY_MILLIS
+                    && runTask("optimize", conn, shard, idleSince, (c, since) -> slice(c, since, "PRAGMA optimize"))) {
+                file.lastOptimized = now;
+            }
+            if (readStats(conn, shard).getFreePages() >= MIN_FREE_PAGES) {
+                if (queryLong(conn, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+                    runTask("vacuum", conn, shard, idleSince, this::vacuum);
+                } else if (!file.conversionNoted) {
+                    file.conversionNoted = true;
+                    System.out.println("Skipping maintenance vacuum: " + ShardMap.getInstance().getFile(shard)
+                            + " does not use incremental auto-vacuuming; run " + MaintenanceScheduler.class.getName()
+                            + " with the application closed to convert it");
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error running database maintenance on " + ShardMap.getInstance().getFile(shard)
+                    + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a task unless traffic has resumed, and records its duration and effect.
+     *
+     * @return true if the task completed
+     */
+    private boolean runTask(String name, Connection conn, int shard, long idleSince, Task task) throws SQLException {
+        if (trafficResumed(idleSince)) {
+            return false;
+        }
+
+        FileStats before = readStats(conn, shard);
+        long startedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        boolean completed;
+        try {
+            completed = task.run(conn, idleSince);
+        } catch (SQLException e) {
+            System.out.println("Error in maintenance task " + name + ": " + e.getMessage());
+            completed = false;
+        }
+        TaskRun run = new TaskRun(name, ShardMap.getInstance().getFile(shard), startedAt,
+                (System.nanoTime() - start) / 1_000_000, completed, before, readStats(conn, shard));
+
+        System.out.println(run);
+        synchronized (history) {
+            history.addLast(run);
+            if (history.size() > HISTORY_SIZE) {
+                history.removeFirst();
+            }
+        }
+        return completed;
+    }
+
+    private boolean checkpoint(Connection conn, long idleSince) throws SQLException {
+        return slice(conn, idleSince, "PRAGMA wal_checkpoint(PASSIVE)");
+    }
+
+    private boolean analyze(Connection conn, long idleSince) throws SQLException {
+        if (!slice(conn, idleSince, "PRAGMA analysis_limit = " + ANALYSIS_LIMIT)) {
+            return false;
+        }
+        List<String> tables = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table' " +
+                     "AND name NOT LIKE 'sqlite_%' AND sql NOT LIKE 'CREATE VIRTUAL TABLE%'")) {
+            while (rs.next()) {
+                tables.add(rs.getString(1));
+            }
+        }
+        for (String table : tables) {
+            if (!slice(conn, idleSince, "ANALYZE \"" + table.replace("\"", "\"\"") + "\"")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean vacuum(Connection conn, long idleSince) throws SQLException {
+        while (queryLong(conn, "PRAGMA freelist_count") > 0) {
+            if (!vacuumSlice(conn, idleSince)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Frees up to VACUUM_PAGES_PER_SLICE pages in one transaction, so they
+     * cost one commit. If traffic resumes part way, the transaction is rolled
+     * back and the pages stay free for the next idle period.
+     *
+     * @return true if the slice committed
+     * @throws SQLException If a statement failed for a reason other than an interruption
+     */
+    private boolean vacuumSlice(Connection conn, long idleSince) throws SQLException {
+        if (!slice(conn, idleSince, "BEGIN IMMEDIATE")) {
+            return false;
+        }
+        boolean committed = false;
+        try {
+            for (int page = 0; page < VACUUM_PAGES_PER_SLICE; page++) {
+                if (!slice(conn, idleSince, "PRAGMA incremental_vacuum(1)")) {
+                    return false;
+                }
+            }
+            committed = slice(conn, idleSince, "COMMIT");
+            return committed;
+        } finally {
+            if (!committed) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ROLLBACK");
+                } catch (SQLException e) {
+                    // The interrupted statement already ended the transaction
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one maintenance statement, unless traffic has resumed. A DAO call
+     * made while it runs interrupts it.
+     *
+     * @return true if the statement ran to completion
+     * @throws SQLException If the statement failed for another reason
+     */
+    private boolean slice(Connection conn, long idleSince, String sql) throws SQLException {
+        if (trafficResumed(idleSince)) {
+            return false;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            runningStatement = stmt;
+            // A DAO call between the check above and publishing the statement would not have cancelled it
+            if (trafficResumed(idleSince)) {
+                return false;
+            }
+            stmt.execute(sql);
+            return true;
+        } catch (SQLException e) {
+            if (trafficResumed(idleSince)) {
+                return false;
+            }
+            throw e;
+        } finally {
+            runningStatement = null;
+        }
+    }
+
+    private static boolean trafficResumed(long idleSince) {
+        return lastActivityNanos != idleSince || Thread.currentThread().isInterrupted();
+    }
+
+    private static FileStats readStats(Connection conn, int shard) throws SQLException {
+        // The write-ahead log next to the database file
+        Path walFile = Paths.get(ShardMap.getInstance().getFile(shard) + "-wal");
+        long walBytes = 0;
+        try {
+            walBytes = Files.exists(walFile) ? Files.size(walFile) : 0;
+        } catch (IOException e) {
+            // The log was removed by a checkpoint in another process
+        }
+        return new FileStats(queryLong(conn, "PRAGMA page_size"), queryLong(conn, "PRAGMA page_count"),
+                queryLong(conn, "PRAGMA freelist_count"), walBytes);
+    }
+
+    private static long queryLong(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package edu.virginia.sde.reviews.dao;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries database writes that fail because another connection holds the lock.
+ *
+ * Every DAO connection is opened with a busy_timeout, so SQLite itself waits
+ * up to BUSY_TIMEOUT_MILLIS for a lock before reporting SQLITE_BUSY. Some lock
+ * conflicts are reported at once without waiting, such as a WAL read snapshot
+ * that went stale before its write. When a write still fails with SQLITE_BUSY
+ * or SQLITE_LOCKED, it is run again after an exponential backoff with jitter,
+ * up to MAX_ATTEMPTS times. The jitter keeps clients that collided once from
+ * colliding again on the same schedule.
+ *
+ * A write can therefore block its thread for several seconds, so screens
+ * start writes through BackgroundWrites rather than on the JavaFX
+ * application thread.
+ *
+ * Each busy error, retry and final failure is counted per operation in
+ * ContentionMetrics.
+ *
+ * The limits can be changed with system properties, for example
+ * -Dreviews.db.busyTimeoutMillis=5000:
+ * - reviews.db.busyTimeoutMillis: SQLite's own lock wait (default 2000)
+ * - reviews.db.writeAttempts: attempts per write, including the first (default 5)
+ * - reviews.db.retryBaseMillis: backoff before the first retry (default 25)
+ * - reviews.db.retryMaxMillis: longest backoff between attempts (default 1000)
+ */
+public final class RetryPolicy {
+    /** How long SQLite waits for a lock before reporting SQLITE_BUSY */
+    static final int BUSY_TIMEOUT_MILLIS = Integer.getInteger("reviews.db.busyTimeoutMillis", 2000);
+
+    /** Maximum number of attempts per write, including the first */
+    private static final int MAX_ATTEMPTS = Math.max(1, Integer.getInteger("reviews.db.writeAttempts", 5));
+
+    /** Backoff before the first retry; doubled for each further retry */
+    private static final long BASE_DELAY_MILLIS = Long.getLong("reviews.db.retryBaseMillis", 25);
+
+    /** Upper bound on the backoff between two attempts */
+    private static final long MAX_DELAY_MILLIS = Long.getLong("reviews.db.retryMaxMillis", 1000);
+
+    /** SQLite primary result code for a database file locked by another connection */
+    private static final int SQLITE_BUSY = 5;
+
+    /** SQLite primary result code for a table locked within a shared cache */
+    private static final int SQLITE_LOCKED = 6;
+
+    private RetryPolicy() {
+    }
+
+    /**
+     * Runs a write, retrying it while the database is busy.
+     *
+     * Inside a UnitOfWork the write runs once: its transaction already holds
+     * the write lock, and one statement cannot be retried apart from the rest
+     * of the transaction.
+     *
+     * @param operation The name the write is counted under in ContentionMetrics
+     * @param write The write to run; it must be safe to run again after a busy error
+     * @param <T> The type of the write's result
+     * @return The write's result
+     * @throws SQLException The last error, if the write failed for another
+     *                      reason or was still busy after MAX_ATTEMPTS attempts
+     */
+    static <T> T run(String operation, UnitOfWork.Work<T> write) throws SQLException {
+        if (UnitOfWork.isActive()) {
+            return write.run();
+        }
+
+        ContentionMetrics metrics = ContentionMetrics.getInstance();
+        metrics.recordCall(operation);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return write.run();
+            } catch (SQLException e) {
+                if (!isBusy(e)) {
+                    throw e;
+                }
+                metrics.recordBusy(operation);
+                if (attempt >= MAX_ATTEMPTS) {
+                    metrics.recordFailure(operation);
+                    throw e;
+                }
+
+                long delay = backoff(attempt);
+                metrics.recordRetry(operation, delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    metrics.recordFailure(operation);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether an error means the database was locked by another connection.
+     *
+     * @param e The error to check
+     * @return true for SQLITE_BUSY and SQLITE_LOCKED, including their extended codes
+     */
+    static boolean isBusy(SQLException e) {
+        int primaryCode = e.getErrorCode() & 0xff;
+        if (primaryCode == SQLITE_BUSY || primaryCode == SQLITE_LOCKED) {
+            return true;
+        }
+        String message = e.getMessage();
+        return message != null && (message.contains("SQLITE_BUSY") || message.contains("database is locked"));
+    }
+
+    /**
+     * Picks the wait before the next attempt: half of the exponential delay,
+     * plus a random share of the other half.
+     *
+     * @param attempt The number of attempts made so far
+     * @return The wait in milliseconds
+     */
+    private static long backoff(int attempt) {
+        long delay = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempt - 1, 20));
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+}
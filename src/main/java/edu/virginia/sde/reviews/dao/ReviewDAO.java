@@ -1,25 +1,33 @@
 package edu.virginia.sde.reviews.dao;
 
+import edu.virginia.sde.reviews.event.ReviewCreated;
+import edu.virginia.sde.reviews.event.ReviewDeleted;
+import edu.virginia.sde.reviews.event.ReviewUpdated;
 import edu.virginia.sde.reviews.model.Review;
+import edu.virginia.sde.reviews.model.ReviewSearchResult;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 /**
  * Data Access Object (DAO) for handling all database operations related to reviews.
  * This class provides methods to create, read, update, and delete review records in the database.
  * It encapsulates all SQL operations and database access logic for the Review entity.
+ * Successful writes are published on the EventBus; inside a UnitOfWork they
+ * share its transaction and are published once it commits. Writes that find
+ * the database locked by another client are retried (see RetryPolicy).
+ * With sharded storage, reviews live in the shard of their course: calls
+ * naming a course or review go to that shard, and reads by user or by search
+ * words query every shard in parallel (see ShardMap and ShardFanOut).
  */
 public class ReviewDAO {
-    /** The database URL for connecting to the SQLite database */
-    private static final String DB_URL = "jdbc:sqlite:course_reviews.db";
-
     /**
      * Retrieves all reviews for a specific course from the database.
      *
@@ -32,7 +40,7 @@ public class ReviewDAO {
         
         List<Review> reviews = new ArrayList<>();
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = UnitOfWork.getConnection(ShardMap.getInstance().shardForId(courseId));
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setInt(1, courseId);
@@ -44,7 +52,7 @@ public class ReviewDAO {
             }
             
         } catch (SQLException e) {
-            System.out.println("Error retrieving reviews: " + e.getMessage());
+            UnitOfWork.report("Error retrieving reviews", e);
         }
         
         return reviews;
@@ -62,7 +70,7 @@ public class ReviewDAO {
         String sql = "SELECT id, user_id, course_id, rating, comment, timestamp " +
                      "FROM reviews WHERE user_id = ? AND course_id = ?";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = UnitOfWork.getConnection(ShardMap.getInstance().shardForId(courseId));
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setInt(1, userId);
@@ -74,7 +82,7 @@ public class ReviewDAO {
             }
             
         } catch (SQLException e) {
-            System.out.println("Error retrieving user review: " + e.getMessage());
+            UnitOfWork.report("Error retrieving user review", e);
         }
         
         return null;
@@ -82,28 +90,42 @@ public class ReviewDAO {
 
     /**
      * Creates a new review in the database.
+     * On success the review's ID is set to the database-assigned value.
      *
      * @param review The Review object to be saved to the database
      * @return true if the review was successfully created, false otherwise
+     * @throws DataAccessException If the course's shard has used up its review IDs (see ShardMap)
      */
     public boolean createReview(Review review) {
         String sql = "INSERT INTO reviews(user_id, course_id, rating, comment, timestamp) " +
                      "VALUES(?, ?, ?, ?, ?)";
+        int shard = ShardMap.getInstance().shardForId(review.getCourseId());
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setInt(1, review.getUserId());
-            pstmt.setInt(2, review.getCourseId());
-            pstmt.setInt(3, review.getRating());
-            pstmt.setString(4, review.getComment());
-            pstmt.setTimestamp(5, review.getTimestamp());
-            
-            pstmt.executeUpdate();
-            return true;
-            
+        try {
+            return RetryPolicy.run("createReview", () -> {
+                try (Connection conn = UnitOfWork.getWriteConnection(shard);
+                     PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+                    pstmt.setInt(1, review.getUserId());
+                    pstmt.setInt(2, review.getCourseId());
+                    pstmt.setInt(3, review.getRating());
+                    pstmt.setString(4, review.getComment());
+                    pstmt.setTimestamp(5, review.getTimestamp());
+
+                    pstmt.executeUpdate();
+
+                    ResultSet keys = pstmt.getGeneratedKeys();
+                    if (keys.next()) {
+                        review.setId(keys.getInt(1));
+                    }
+                    ShardMap.getInstance().checkNewId(conn, shard, "reviews", review.getId());
+
+                    UnitOfWork.publish(new ReviewCreated(review));
+                    return true;
+                }
+            });
         } catch (SQLException e) {
-            System.out.println("Error creating review: " + e.getMessage());
+            UnitOfWork.report("Error creating review", e);
             return false;
         }
     }
@@ -117,20 +139,31 @@ public class ReviewDAO {
     public boolean updateReview(Review review) {
         String sql = "UPDATE reviews SET rating = ?, comment = ?, timestamp = ? " +
                      "WHERE id = ?";
+        int shard = ShardMap.getInstance().shardForId(review.getId());
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setInt(1, review.getRating());
-            pstmt.setString(2, review.getComment());
-            pstmt.setTimestamp(3, review.getTimestamp());
-            pstmt.setInt(4, review.getId());
-            
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-            
+        try {
+            return RetryPolicy.run("updateReview", () -> {
+                try (Connection conn = UnitOfWork.getWriteConnection(shard);
+                     PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+                    Review before = findReviewById(conn, review.getId());
+
+                    pstmt.setInt(1, review.getRating());
+                    pstmt.setString(2, review.getComment());
+                    pstmt.setTimestamp(3, review.getTimestamp());
+                    pstmt.setInt(4, review.getId());
+
+                    int rowsAffected = pstmt.executeUpdate();
+                    if (rowsAffected > 0 && before != null) {
+                        Review after = new Review(before.getId(), before.getUserId(), before.getCourseId(),
+                                review.getRating(), review.getComment(), review.getTimestamp());
+                        UnitOfWork.publish(new ReviewUpdated(before, after));
+                    }
+                    return rowsAffected > 0;
+                }
+            });
         } catch (SQLException e) {
-            System.out.println("Error updating review: " + e.getMessage());
+            UnitOfWork.report("Error updating review", e);
             return false;
         }
     }
@@ -143,17 +176,26 @@ public class ReviewDAO {
      */
     public boolean deleteReview(int reviewId) {
         String sql = "DELETE FROM reviews WHERE id = ?";
+        int shard = ShardMap.getInstance().shardForId(reviewId);
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setInt(1, reviewId);
-            
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-            
+        try {
+            return RetryPolicy.run("deleteReview", () -> {
+                try (Connection conn = UnitOfWork.getWriteConnection(shard);
+                     PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+                    Review before = findReviewById(conn, reviewId);
+
+                    pstmt.setInt(1, reviewId);
+
+                    int rowsAffected = pstmt.executeUpdate();
+                    if (rowsAffected > 0 && before != null) {
+                        UnitOfWork.publish(new ReviewDeleted(before));
+                    }
+                    return rowsAffected > 0;
+                }
+            });
         } catch (SQLException e) {
-            System.out.println("Error deleting review: " + e.getMessage());
+            UnitOfWork.report("Error deleting review", e);
             return false;
         }
     }
@@ -162,30 +204,148 @@ public class ReviewDAO {
      * Retrieves all reviews submitted by a specific user.
      *
      * @param userId The ID of the user to get reviews for
-     * @return A list of Review objects created by the specified user
+     * @return A list of Review objects created by the specified user, or null if the query failed
      */
     public List<Review> getReviewsByUser(int userId) {
         String sql = "SELECT id, user_id, course_id, rating, comment, timestamp " +
                      "FROM reviews WHERE user_id = ?";
         
-        List<Review> reviews = new ArrayList<>();
-        
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setInt(1, userId);
+        return ShardFanOut.queryAll("Error retrieving user reviews", conn -> {
+            List<Review> reviews = new ArrayList<>();
+
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+                pstmt.setInt(1, userId);
+                ResultSet rs = pstmt.executeQuery();
+
+                while (rs.next()) {
+                    Review review = extractReviewFromResultSet(rs);
+                    reviews.add(review);
+                }
+            }
+
+            return reviews;
+        });
+    }
+
+    /**
+     * Searches review comments for all of the given words, best matches first.
+     *
+     * Results are ordered by BM25 rank and then review ID, and are paged by
+     * keyset: pass the last result of one page as "after" to get the next page.
+     * Unlike OFFSET paging, this never builds snippets for rows it skips.
+     * Each word is matched literally (with stemming), so user input cannot
+     * inject FTS5 query syntax.
+     *
+     * With sharded storage every shard returns its best limit matches and the
+     * merged rows are cut to limit. BM25 weighs words by how rare they are in
+     * each shard, so ranks from different shards are close but not exactly
+     * comparable.
+     *
+     * @param query The words to search for, separated by whitespace
+     * @param after The last result of the previous page, or null for the first page
+     * @param limit The maximum number of results to return
+     * @return A list of matching reviews with highlighted snippets
+     */
+    public List<ReviewSearchResult> searchComments(String query, ReviewSearchResult after, int limit) {
+        String match = toMatchExpression(query);
+        if (match.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String sql = "SELECT f.rowid AS id, r.course_id, r.rating, " +
+                     "snippet(reviews_fts, 0, '[', ']', '...', 12) AS snippet, f.rank AS rank " +
+                     "FROM reviews_fts f " +
+                     "JOIN reviews r ON r.id = f.rowid " +
+                     "WHERE reviews_fts MATCH ? " +
+                     (after != null ? "AND (f.rank > ? OR (f.rank = ? AND f.rowid > ?)) " : "") +
+                     "ORDER BY f.rank, f.rowid LIMIT ?";
+
+        List<ReviewSearchResult> results = ShardFanOut.query("Error searching reviews", conn -> {
+            List<ReviewSearchResult> shardResults = new ArrayList<>();
+
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+                int index = 1;
+                pstmt.setString(index++, match);
+                if (after != null) {
+                    pstmt.setDouble(index++, after.getRank());
+                    pstmt.setDouble(index++, after.getRank());
+                    pstmt.setInt(index++, after.getReviewId());
+                }
+                pstmt.setInt(index, limit);
+                ResultSet rs = pstmt.executeQuery();
+
+                while (rs.next()) {
+                    shardResults.add(new ReviewSearchResult(
+                            rs.getInt("id"),
+                            rs.getInt("course_id"),
+                            rs.getInt("rating"),
+                            rs.getString("snippet"),
+                            rs.getDouble("rank")
+                    ));
+                }
+            }
+
+            return shardResults;
+        });
+
+        if (ShardMap.getInstance().isEnabled()) {
+            // Same order as the query's ORDER BY, so keyset paging carries on across shards
+            results.sort(Comparator.comparingDouble(ReviewSearchResult::getRank)
+                    .thenComparingInt(ReviewSearchResult::getReviewId));
+            results = new ArrayList<>(results.subList(0, Math.min(limit, results.size())));
+        }
+        return results;
+    }
+
+    /**
+     * Helper method to turn free text into an FTS5 query matching every word.
+     * Each word is quoted, so operators and punctuation are treated as text.
+     *
+     * @param query The user's search text
+     * @return The FTS5 match expression, or an empty string if there are no words
+     */
+    private String toMatchExpression(String query) {
+        if (query == null) {
+            return "";
+        }
+        StringBuilder match = new StringBuilder();
+        for (String word : query.trim().split("\\s+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(word.replace("\"", "\"\"")).append('"');
+        }
+        return match.toString();
+    }
+
+    /**
+     * Helper method to look up a review by ID on an already open connection.
+     * Used by the write paths to capture a review's state before it changes.
+     *
+     * @param conn The connection to query on
+     * @param reviewId The ID of the review
+     * @return The Review if found, or null otherwise
+     * @throws SQLException If a database access error occurs
+     */
+    private Review findReviewById(Connection conn, int reviewId) throws SQLException {
+        String sql = "SELECT id, user_id, course_id, rating, comment, timestamp " +
+                     "FROM reviews WHERE id = ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, reviewId);
             ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                Review review = extractReviewFromResultSet(rs);
-                reviews.add(review);
+
+            if (rs.next()) {
+                return extractReviewFromResultSet(rs);
             }
-            
-        } catch (SQLException e) {
-            System.out.println("Error retrieving user reviews: " + e.getMessage());
         }
-        
-        return reviews;
+
+        return null;
     }
 
     /**
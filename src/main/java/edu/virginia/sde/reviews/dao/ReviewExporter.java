@@ -0,0 +1,363 @@
+package edu.virginia.sde.reviews.dao;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the reviews table to a CSV or JSON Lines file for offline analysis.
+ *
+ * Unlike ReviewDAO, which collects results into a List, the exporter reads
+ * rows from a forward-only ResultSet and writes each one straight to a
+ * buffered (and optionally gzip-compressed) file, so memory use stays
+ * constant no matter how many reviews there are.
+ *
+ * The whole export runs inside a single read transaction. With the database
+ * in WAL mode this gives a consistent snapshot of the table while other
+ * connections keep writing.
+ *
+ * With sharded storage (see ShardMap) the reviews are read from the shard
+ * files, not from the pre-migration copy left in course_reviews.db. A course
+ * or subject filter reads only the shard holding it. Otherwise every shard
+ * is queried, each in a read transaction of its own that is opened before
+ * any row is written, and the shards' rows are merged by review ID. The
+ * snapshots of different files are taken one after another, so a review
+ * written to one shard while the others are opened may be left out.
+ *
+ * Rows are written to a temporary file next to the output, which replaces
+ * the output only once the export is complete. A failed export deletes the
+ * temporary file and leaves any earlier output as it was, rather than a
+ * truncated CSV or an unterminated gzip stream.
+ */
+public class ReviewExporter {
+    /** Number of rows the driver is asked to fetch per round trip */
+    private static final int FETCH_SIZE = 1000;
+
+    /** Size of the output buffer in characters */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Supported output formats.
+     */
+    public enum Format {
+        /** Comma-separated values with a header row */
+        CSV,
+        /** One JSON object per line */
+        JSON_LINES
+    }
+
+    /**
+     * Exports reviews matching the provided criteria to a file.
+     * All filters are optional - if null/empty, that filter is not applied.
+     *
+     * @param output The file to write to (created or replaced)
+     * @param format The output format
+     * @param gzip Whether to gzip-compress the output
+     * @param courseIdFilter Only export reviews for this course
+     * @param subjectFilter Only export reviews for courses with this subject (case-insensitive)
+     * @param from Only export reviews posted at or after this time
+     * @param to Only export reviews posted before this time
+     * @return The number of reviews written, or -1 if the export failed
+     */
+    public long export(Path output, Format format, boolean gzip,
+                       Integer courseIdFilter, String subjectFilter, Timestamp from, Timestamp to) {
+        StringBuilder sqlBuilder = new StringBuilder(
+                "SELECT r.id, r.user_id, r.course_id, c.subject, c.number, " +
+                "r.rating, r.comment, r.timestamp " +
+                "FROM reviews r " +
+                "JOIN courses c ON c.id = r.course_id WHERE 1=1");
+
+        List<Object> params = new ArrayList<>();
+
+        if (courseIdFilter != null) {
+            sqlBuilder.append(" AND r.course_id = ?");
+            params.add(courseIdFilter);
+        }
+
+        if (subjectFilter != null && !subjectFilter.isEmpty()) {
+            sqlBuilder.append(" AND UPPER(c.subject) = UPPER(?)");
+            params.add(subjectFilter);
+        }
+
+        if (from != null) {
+            sqlBuilder.append(" AND r.timestamp >= ?");
+            params.add(from);
+        }
+
+        if (to != null) {
+            sqlBuilder.append(" AND r.timestamp < ?");
+            params.add(to);
+        }
+
+        sqlBuilder.append(" ORDER BY r.id");
+        String sql = sqlBuilder.toString();
+
+        Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+        long count = 0;
+        List<Connection> connections = new ArrayList<>();
+        try (Writer writer = openWriter(temp, gzip)) {
+
+            // Cursors positioned on their next unwritten row, one per file that has any
+            List<ResultSet> cursors = new ArrayList<>();
+            for (int shard : shardsToExport(courseIdFilter, subjectFilter)) {
+                Connection conn = Database.connect(shard);
+                connections.add(conn);
+
+                // Hold one read transaction for the whole export so every row
+                // from this file comes from the same snapshot
+                conn.setAutoCommit(false);
+
+                PreparedStatement pstmt = conn.prepareStatement(sql,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                pstmt.setFetchSize(FETCH_SIZE);
+                for (int i = 0; i < params.size(); i++) {
+                    Object param = params.get(i);
+                    if (param instanceof String) {
+                        pstmt.setString(i + 1, (String) param);
+                    } else if (param instanceof Integer) {
+                        pstmt.setInt(i + 1, (Integer) param);
+                    } else if (param instanceof Timestamp) {
+                        pstmt.setTimestamp(i + 1, (Timestamp) param);
+                    }
+                }
+
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    cursors.add(rs);
+                }
+            }
+
+            if (format == Format.CSV) {
+                writer.write("id,user_id,course_id,subject,number,rating,comment,timestamp\n");
+            }
+
+            while (!cursors.isEmpty()) {
+                // Each file's rows come in ID order, so the lowest current ID is next overall
+                int next = 0;
+                for (int i = 1; i < cursors.size(); i++) {
+                    if (cursors.get(i).getInt("id") < cursors.get(next).getInt("id")) {
+                        next = i;
+                    }
+                }
+                ResultSet rs = cursors.get(next);
+                if (format == Format.CSV) {
+                    writeCsvRow(writer, rs);
+                } else {
+                    writeJsonRow(writer, rs);
+                }
+                count++;
+                if (!rs.next()) {
+                    cursors.remove(next);
+                }
+            }
+
+            for (Connection conn : connections) {
+                conn.commit();
+            }
+
+        } catch (SQLException | IOException e) {
+            System.out.println("Error exporting reviews: " + e.getMessage());
+            deleteTemp(temp);
+            return -1;
+        } finally {
+            // Closing a connection also closes its statement and result set
+            for (Connection conn : connections) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    System.out.println("Error closing export connection: " + e.getMessage());
+                }
+            }
+        }
+
+        // Closing the writer above finished the gzip stream, so the file is complete
+        try {
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+            return count;
+        } catch (IOException e) {
+            System.out.println("Error exporting reviews: " + e.getMessage());
+            deleteTemp(temp);
+            return -1;
+        }
+    }
+
+    /**
+     * Lists the files holding the reviews an export can match: the shard of
+     * the course or subject filtered on, or else every shard. With sharding
+     * off that is always the shared file.
+     */
+    private static List<Integer> shardsToExport(Integer courseIdFilter, String subjectFilter) {
+        ShardMap shards = ShardMap.getInstance();
+        if (courseIdFilter != null) {
+            return List.of(shards.shardForId(courseIdFilter));
+        }
+        if (subjectFilter != null && !subjectFilter.isEmpty()) {
+            return List.of(shards.shardForSubject(subjectFilter));
+        }
+        if (!shards.isEnabled()) {
+            return List.of(ShardMap.SHARED);
+        }
+        List<Integer> all = new ArrayList<>();
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            all.add(shard);
+        }
+        return all;
+    }
+
+    private static void deleteTemp(Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            System.out.println("Error deleting " + temp + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens a buffered UTF-8 writer on the output file, wrapping it in a
+     * gzip stream if requested.
+     */
+    private Writer openWriter(Path output, boolean gzip) throws IOException {
+        OutputStream out = Files.newOutputStream(output);
+        if (gzip) {
+            out = new GZIPOutputStream(out, WRITE_BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+    }
+
+    /**
+     * Writes the current row as a CSV record.
+     */
+    private void writeCsvRow(Writer writer, ResultSet rs) throws SQLException, IOException {
+        writer.write(Integer.toString(rs.getInt("id")));
+        writer.write(',');
+        writer.write(Integer.toString(rs.getInt("user_id")));
+        writer.write(',');
+        writer.write(Integer.toString(rs.getInt("course_id")));
+        writer.write(',');
+        writeCsvField(writer, rs.getString("subject"));
+        writer.write(',');
+        writer.write(Integer.toString(rs.getInt("number")));
+        writer.write(',');
+        writer.write(Integer.toString(rs.getInt("rating")));
+        writer.write(',');
+        writeCsvField(writer, rs.getString("comment"));
+        writer.write(',');
+        writer.write(rs.getTimestamp("timestamp").toInstant().toString());
+        writer.write('\n');
+    }
+
+    /**
+     * Writes a CSV field, quoting it if it contains a delimiter, quote or line break.
+     */
+    private void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean needsQuotes = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!needsQuotes) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"') {
+                writer.write('"');
+            }
+            writer.write(ch);
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Writes the current row as a single-line JSON object.
+     */
+    private void writeJsonRow(Writer writer, ResultSet rs) throws SQLException, IOException {
+        writer.write("{\"id\":");
+        writer.write(Integer.toString(rs.getInt("id")));
+        writer.write(",\"user_id\":");
+        writer.write(Integer.toString(rs.getInt("user_id")));
+        writer.write(",\"course_id\":");
+        writer.write(Integer.toString(rs.getInt("course_id")));
+        writer.write(",\"subject\":");
+        writeJsonString(writer, rs.getString("subject"));
+        writer.write(",\"number\":");
+        writer.write(Integer.toString(rs.getInt("number")));
+        writer.write(",\"rating\":");
+        writer.write(Integer.toString(rs.getInt("rating")));
+        writer.write(",\"comment\":");
+        writeJsonString(writer, rs.getString("comment"));
+        writer.write(",\"timestamp\":");
+        writeJsonString(writer, rs.getTimestamp("timestamp").toInstant().toString());
+        writer.write("}\n");
+    }
+
+    /**
+     * Writes a JSON string literal, escaping characters as required by RFC 8259.
+     */
+    private void writeJsonString(Writer writer, String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"': writer.write("\\\""); break;
+                case '\\': writer.write("\\\\"); break;
+                case '\n': writer.write("\\n"); break;
+                case '\r': writer.write("\\r"); break;
+                case '\t': writer.write("\\t"); break;
+                default:
+                    if (ch < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) ch));
+                    } else {
+                        writer.write(ch);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Command-line entry point for scheduled exports.
+     * Usage: ReviewExporter &lt;output-file&gt; [csv|jsonl] [subject]
+     * The output is gzip-compressed when the file name ends in ".gz".
+     *
+     * @param args Command-line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: ReviewExporter <output-file> [csv|jsonl] [subject]");
+            System.exit(1);
+        }
+
+        Path output = Paths.get(args[0]);
+        Format format = args.length > 1 && args[1].equalsIgnoreCase("jsonl") ? Format.JSON_LINES : Format.CSV;
+        String subject = args.length > 2 ? args[2] : null;
+        boolean gzip = args[0].endsWith(".gz");
+
+        long count = new ReviewExporter().export(output, format, gzip, null, subject, null, null);
+        if (count < 0) {
+            System.exit(1);
+        }
+        System.out.println("Exported " + count + " reviews to " + output);
+    }
+}
@@ -0,0 +1,149 @@
+package edu.virginia.sde.reviews.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a DAO read on every shard at once and collects the rows.
+ *
+ * Reads that are not limited to one subject, such as listing every course,
+ * have to look at every shard file. Each shard is queried on its own
+ * connection on a shared pool of daemon threads, so the read takes about as
+ * long as the slowest shard rather than the sum of all of them. The rows come
+ * back concatenated in shard order; callers that need an order sort them.
+ *
+ * A shard with a unit of work open on the calling thread is queried on the
+ * calling thread, through the unit of work's connection, so the read sees its
+ * uncommitted writes. With sharding off the query simply runs once on the
+ * shared database, exactly as a DAO method would run it itself.
+ */
+final class ShardFanOut {
+    /** Threads querying shards, created on first use */
+    private static ExecutorService executor;
+
+    /**
+     * A read to run against one database file.
+     *
+     * @param <T> The type of the rows read
+     */
+    @FunctionalInterface
+    interface ShardQuery<T> {
+        /**
+         * Reads rows from one file.
+         *
+         * @param conn A connection to the file; the fan-out closes it
+         * @return The rows read
+         * @throws SQLException If the query fails
+         */
+        List<T> run(Connection conn) throws SQLException;
+    }
+
+    private ShardFanOut() {
+    }
+
+    /**
+     * Runs a read on every shard and concatenates the rows. A shard whose
+     * read fails is reported through UnitOfWork.report() and the rows of the
+     * other shards are still returned.
+     *
+     * @param errorMessage The description of the read used when reporting a failure
+     * @param query The read to run on each shard
+     * @param <T> The type of the rows read
+     * @return The rows of all shards that were read successfully
+     */
+    static <T> List<T> query(String errorMessage, ShardQuery<T> query) {
+        return run(errorMessage, query, new boolean[1]);
+    }
+
+    /**
+     * Runs a read on every shard and concatenates the rows, for callers that
+     * must tell "no rows" apart from "could not read".
+     *
+     * @param errorMessage The description of the read used when reporting a failure
+     * @param query The read to run on each shard
+     * @param <T> The type of the rows read
+     * @return The rows of all shards, or null if any shard's read failed
+     */
+    static <T> List<T> queryAll(String errorMessage, ShardQuery<T> query) {
+        boolean[] failed = new boolean[1];
+        List<T> rows = run(errorMessage, query, failed);
+        return failed[0] ? null : rows;
+    }
+
+    private static <T> List<T> run(String errorMessage, ShardQuery<T> query, boolean[] failed) {
+        List<T> rows = new ArrayList<>();
+        ShardMap shards = ShardMap.getInstance();
+        if (!shards.isEnabled()) {
+            try (Connection conn = UnitOfWork.getConnection()) {
+                rows.addAll(query.run(conn));
+            } catch (SQLException e) {
+                failed[0] = true;
+                UnitOfWork.report(errorMessage, e);
+            }
+            return rows;
+        }
+
+        MaintenanceScheduler.recordActivity();
+        List<Future<List<T>>> results = new ArrayList<>();
+        int localShard = ShardMap.SHARED;
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            if (UnitOfWork.isActiveOn(shard)) {
+                localShard = shard;
+                results.add(null);
+                continue;
+            }
+            int target = shard;
+            results.add(getExecutor().submit(() -> {
+                try (Connection conn = Database.connect(target)) {
+                    return query.run(conn);
+                }
+            }));
+        }
+
+        for (int shard = 0; shard < results.size(); shard++) {
+            try {
+                if (shard == localShard) {
+                    try (Connection conn = UnitOfWork.getConnection(shard)) {
+                        rows.addAll(query.run(conn));
+                    }
+                } else {
+                    rows.addAll(results.get(shard).get());
+                }
+            } catch (SQLException e) {
+                failed[0] = true;
+                UnitOfWork.report(errorMessage + " from " + shards.getFile(shard), e);
+            } catch (ExecutionException e) {
+                failed[0] = true;
+                SQLException cause = e.getCause() instanceof SQLException
+                        ? (SQLException) e.getCause()
+                        : new SQLException(e.getCause());
+                UnitOfWork.report(errorMessage + " from " + shards.getFile(shard), cause);
+            } catch (InterruptedException e) {
+                failed[0] = true;
+                Thread.currentThread().interrupt();
+                UnitOfWork.report(errorMessage, new SQLException("Interrupted while reading shards", e));
+                break;
+            }
+        }
+        return rows;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(ShardMap.getInstance().getShardCount(), runnable -> {
+                Thread thread = new Thread(runnable, "shard-query-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,278 @@
+package edu.virginia.sde.reviews.dao;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Maps courses and reviews to the database files of sharded storage.
+ *
+ * A single SQLite file has a single write lock, so every review written
+ * anywhere in the university waits for the one before it. In sharded storage
+ * each group of subjects gets its own file, course_reviews-NAME.db, holding
+ * the group's courses, their reviews and the rating aggregates kept by
+ * triggers. Writes to different groups then never wait for each other. Users
+ * stay in the shared course_reviews.db.
+ *
+ * Sharding is off unless the reviews.shardMap system property names a
+ * properties file listing the groups by index:
+ *
+ *     shard.0.name=stem
+ *     shard.0.subjects=CS,DS,MATH,PHYS
+ *     shard.1.name=humanities
+ *     shard.1.subjects=ENGL,HIST,PHIL
+ *     shard.2.name=other
+ *     shard.2.subjects=*
+ *
+ * The group listing * receives every subject not listed elsewhere. Indexes
+ * must never be renumbered once data is written, because each shard hands
+ * out course and review IDs from its own range: shard N uses IDs from
+ * N * 2^24, so an ID alone says which file holds the row. That allows up to
+ * MAX_SHARDS shards of about 16 million courses and 16 million reviews each.
+ * The limit is per shard and per table: once a shard has handed out all
+ * 2^24 course IDs, or all 2^24 review IDs, creating another one there fails
+ * with a DataAccessException rather than taking an ID from the next shard's
+ * range. Deleted rows do not give their IDs back. A full shard's subjects
+ * have to move to a new shard, with a new index, by migrating their data.
+ *
+ * With sharding off, every subject and ID maps to SHARED, the one file that
+ * holds everything.
+ */
+public final class ShardMap {
+    /** The shard number of the shared file, which holds users and, when sharding is off, everything else */
+    public static final int SHARED = -1;
+
+    /** Maximum number of shards */
+    public static final int MAX_SHARDS = 128;
+
+    /** Bits of each ID numbering rows within a shard; the bits above select the shard */
+    private static final int ID_BITS = 24;
+
+    /** Subject pattern of the group that receives unlisted subjects */
+    private static final String OTHER_SUBJECTS = "*";
+
+    /** The map given by reviews.shardMap, loaded on first use */
+    private static ShardMap instance;
+
+    private final List<String> names;
+    private final Map<String, Integer> shardBySubject;
+    private final int otherShard;
+
+    private ShardMap(List<String> names, Map<String, Integer> shardBySubject, int otherShard) {
+        this.names = names;
+        this.shardBySubject = shardBySubject;
+        this.otherShard = otherShard;
+    }
+
+    /**
+     * Gets the shard map this process was started with.
+     *
+     * @return The map from the reviews.shardMap file, or a disabled map if the property is not set
+     * @throws IllegalStateException If the file cannot be read or is not a valid shard map
+     */
+    public static synchronized ShardMap getInstance() {
+        if (instance == null) {
+            String file = System.getProperty("reviews.shardMap");
+            instance = file == null ? new ShardMap(List.of(), Map.of(), SHARED) : load(Paths.get(file));
+        }
+        return instance;
+    }
+
+    /**
+     * Reads a shard map from a properties file.
+     *
+     * @param file The shard map file
+     * @return The shard map
+     * @throws IllegalStateException If the file cannot be read or is not a valid shard map
+     */
+    public static ShardMap load(Path file) {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read shard map " + file + ": " + e.getMessage(), e);
+        }
+
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> shardBySubject = new HashMap<>();
+        int otherShard = SHARED;
+        for (int shard = 0; properties.containsKey("shard." + shard + ".name"); shard++) {
+            if (shard == MAX_SHARDS) {
+                throw new IllegalStateException("Shard map " + file + " has more than " + MAX_SHARDS + " shards");
+            }
+            String name = properties.getProperty("shard." + shard + ".name").trim();
+            if (!name.matches("[A-Za-z0-9_-]+") || names.contains(name)) {
+                throw new IllegalStateException("Shard " + shard + " in " + file + " needs a unique name "
+                        + "of letters, digits, '-' and '_'");
+            }
+            names.add(name);
+
+            for (String subject : properties.getProperty("shard." + shard + ".subjects", "").split(",")) {
+                subject = subject.trim().toUpperCase(Locale.ROOT);
+                if (subject.isEmpty()) {
+                    continue;
+                }
+                boolean duplicate;
+                if (subject.equals(OTHER_SUBJECTS)) {
+                    duplicate = otherShard != SHARED;
+                    otherShard = shard;
+                } else {
+                    duplicate = shardBySubject.put(subject, shard) != null;
+                }
+                if (duplicate) {
+                    throw new IllegalStateException("Subject " + subject + " is in more than one shard in " + file);
+                }
+            }
+        }
+
+        if (names.isEmpty()) {
+            throw new IllegalStateException("Shard map " + file + " defines no shards; expected shard.0.name");
+        }
+        if (otherShard == SHARED) {
+            throw new IllegalStateException("Shard map " + file + " has no shard for subjects '*'");
+        }
+        return new ShardMap(List.copyOf(names), shardBySubject, otherShard);
+    }
+
+    /**
+     * Checks whether courses and reviews are split across shard files.
+     *
+     * @return true if sharding is on
+     */
+    public boolean isEnabled() {
+        return !names.isEmpty();
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return The number of shard files, or 0 if sharding is off
+     */
+    public int getShardCount() {
+        return names.size();
+    }
+
+    /**
+     * Gets the name a shard is given in the shard map.
+     *
+     * @param shard A shard number
+     * @return The shard's name
+     */
+    public String getName(int shard) {
+        return names.get(shard);
+    }
+
+    /**
+     * Gets the database file of a shard.
+     *
+     * @param shard A shard number, or SHARED
+     * @return The file name, relative to the working directory
+     */
+    public String getFile(int shard) {
+        return shard == SHARED ? Database.DB_FILE : "course_reviews-" + names.get(shard) + ".db";
+    }
+
+    /**
+     * Finds the shard holding courses of a subject.
+     *
+     * @param subject A subject mnemonic, in any case
+     * @return The subject's shard, or SHARED if sharding is off
+     */
+    public int shardForSubject(String subject) {
+        if (!isEnabled()) {
+            return SHARED;
+        }
+        return shardBySubject.getOrDefault(subject.trim().toUpperCase(Locale.ROOT), otherShard);
+    }
+
+    /**
+     * Finds the shard holding a course or review by its ID.
+     *
+     * @param id A course or review ID
+     * @return The row's shard, or SHARED if sharding is off
+     */
+    public int shardForId(int id) {
+        if (!isEnabled()) {
+            return SHARED;
+        }
+        return Math.min(id >>> ID_BITS, names.size() - 1);
+    }
+
+    /**
+     * Gets the lowest course and review ID a shard hands out.
+     *
+     * @param shard A shard number
+     * @return The first ID of the shard's range
+     */
+    public int firstId(int shard) {
+        return shard << ID_BITS;
+    }
+
+    /**
+     * Gets the number of IDs in each shard's range.
+     *
+     * @return The number of courses, or of reviews, a shard can hold
+     */
+    public int idsPerShard() {
+        return 1 << ID_BITS;
+    }
+
+    /**
+     * Checks that a row just inserted into a shard got an ID from the shard's
+     * own range. Outside a unit of work the insert has already committed, so
+     * the row is deleted again; inside one, the exception rolls it back.
+     *
+     * @param conn The connection the row was inserted on
+     * @param shard The shard number, or SHARED
+     * @param table "courses" or "reviews"
+     * @param id The ID the row was given
+     * @throws SQLException If the row cannot be deleted again
+     * @throws DataAccessException If the shard has used up its IDs for the table
+     */
+    void checkNewId(Connection conn, int shard, String table, int id) throws SQLException {
+        // Subtracting first keeps the last shard's bound from overflowing an int
+        if (shard == SHARED || (id >= firstId(shard) && id - firstId(shard) < idsPerShard())) {
+            return;
+        }
+        if (!UnitOfWork.isActive()) {
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM " + table + " WHERE id = ?")) {
+                pstmt.setInt(1, id);
+                pstmt.executeUpdate();
+            }
+        }
+        throw new DataAccessException(getFile(shard) + " has used up its " + idsPerShard() + " " + table
+                + " IDs; move some of its subjects to a new shard", null);
+    }
+
+    /**
+     * Makes a shard's AUTOINCREMENT tables start numbering at its first ID.
+     * Has no effect on a table that has already handed out IDs.
+     *
+     * @param conn A connection to the shard's file, with the schema created
+     * @param shard The shard number
+     * @throws SQLException If the sequence cannot be set
+     */
+    public void reserveIds(Connection conn, int shard) throws SQLException {
+        String sql = "INSERT INTO sqlite_sequence(name, seq) SELECT ?, ? " +
+                     "WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (String table : new String[] {"courses", "reviews"}) {
+                pstmt.setString(1, table);
+                pstmt.setInt(2, firstId(shard));
+                pstmt.setString(3, table);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package edu.virginia.sde.reviews.dao;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Splits an existing course_reviews.db into the shard files of a shard map.
+ *
+ * Run it with the application stopped:
+ *
+ *     java edu.virginia.sde.reviews.dao.ShardMigration shards.properties
+ *
+ * and then start the application with -Dreviews.shardMap=shards.properties.
+ *
+ * Each shard file is built from the schema stored in course_reviews.db, so
+ * it matches the source exactly. Then it gets the shard's courses, their
+ * reviews and their rating aggregates. Courses and reviews keep their IDs
+ * plus the shard's first ID (see ShardMap), so shard 0 keeps the original
+ * IDs and no ID is used twice. Triggers are created only after the rows are
+ * copied, so they do not count the copied reviews into the aggregates a
+ * second time. The review search index is rebuilt from the copied reviews.
+ * Tables that the background analytics derive are created empty. The change
+ * log and its triggers are left out: only the analytics services read it,
+ * and they do not run on shards, so a shard's log would only grow.
+ *
+ * Every shard is written to a temporary file that is renamed only when it is
+ * complete, and the tool refuses to overwrite existing shard files.
+ * course_reviews.db itself is not changed. It keeps the users, and its
+ * unsharded courses and reviews stay as a fallback. Starting without
+ * reviews.shardMap goes back to them, without the writes made since the
+ * migration.
+ */
+public final class ShardMigration {
+    private ShardMigration() {
+    }
+
+    /**
+     * Runs the migration from the command line.
+     *
+     * @param args The shard map file; defaults to the reviews.shardMap system property
+     */
+    public static void main(String[] args) {
+        ShardMap shards = args.length > 0 ? ShardMap.load(Paths.get(args[0])) : ShardMap.getInstance();
+        if (!shards.isEnabled()) {
+            System.out.println("Usage: ShardMigration <shard map file>");
+            return;
+        }
+        System.out.println(migrate(shards) ? "Migration complete" : "Migration failed");
+    }
+
+    /**
+     * Splits course_reviews.db into the files of a shard map.
+     *
+     * @param shards The shard map to split by
+     * @return true if every shard file was written
+     */
+    public static boolean migrate(ShardMap shards) {
+        long start = System.nanoTime();
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            if (Files.exists(Paths.get(shards.getFile(shard)))) {
+                System.out.println("Error migrating to shards: " + shards.getFile(shard) + " already exists");
+                return false;
+            }
+        }
+
+        try (Connection source = Database.connect()) {
+            long maxId = queryLong(source, "SELECT MAX(IFNULL((SELECT MAX(id) FROM courses), 0), " +
+                    "IFNULL((SELECT MAX(id) FROM reviews), 0))");
+            if (maxId >= shards.idsPerShard()) {
+                System.out.println("Error migrating to shards: IDs up to " + maxId
+                        + " do not fit in a shard's range of " + shards.idsPerShard());
+                return false;
+            }
+
+            List<String> schema = new ArrayList<>();
+            List<String> triggers = new ArrayList<>();
+            readSchema(source, schema, triggers);
+            Map<Integer, List<String>> subjects = subjectsByShard(source, shards);
+            long sourceCourses = queryLong(source, "SELECT COUNT(*) FROM courses");
+            long sourceReviews = queryLong(source, "SELECT COUNT(*) FROM reviews");
+
+            long courses = 0;
+            long reviews = 0;
+            for (int shard = 0; shard < shards.getShardCount(); shard++) {
+                long[] copied = writeShard(shards, shard, subjects.getOrDefault(shard, List.of()), schema, triggers);
+                courses += copied[0];
+                reviews += copied[1];
+                System.out.println(shards.getFile(shard) + ": " + copied[0] + " courses, " + copied[1] + " reviews");
+            }
+
+            System.out.println("Copied " + courses + " of " + sourceCourses + " courses and " + reviews + " of "
+                    + sourceReviews + " reviews in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            if (reviews != sourceReviews) {
+                System.out.println((sourceReviews - reviews) + " reviews of courses that no longer exist were left out");
+            }
+            return courses == sourceCourses;
+
+        } catch (SQLException | IOException e) {
+            System.out.println("Error migrating to shards: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Reads the CREATE statements of course_reviews.db, in the order they were
+     * run, leaving out SQLite's internal tables, the tables FTS5 creates for
+     * its own virtual tables, and the change log with its triggers.
+     */
+    private static void readSchema(Connection source, List<String> schema, List<String> triggers)
+            throws SQLException {
+        String sql = "SELECT type, name, sql FROM sqlite_master " +
+                     "WHERE sql IS NOT NULL AND name NOT LIKE 'sqlite_%' ORDER BY rowid";
+        List<String> virtualTables = new ArrayList<>();
+
+        try (Statement stmt = source.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                String type = rs.getString("type");
+                String name = rs.getString("name");
+                String create = rs.getString("sql");
+                if (name.equals("change_log")
+                        || create.toLowerCase(Locale.ROOT).contains("insert into change_log")) {
+                    continue;
+                }
+                if (type.equals("trigger")) {
+                    triggers.add(create);
+                    continue;
+                }
+                if (create.toUpperCase(Locale.ROOT).startsWith("CREATE VIRTUAL TABLE")) {
+                    virtualTables.add(name);
+                } else if (virtualTables.stream().anyMatch(table -> name.startsWith(table + "_"))) {
+                    continue;
+                }
+                schema.add(create);
+            }
+        }
+    }
+
+    private static Map<Integer, List<String>> subjectsByShard(Connection source, ShardMap shards)
+            throws SQLException {
+        Map<Integer, List<String>> subjects = new HashMap<>();
+        try (Statement stmt = source.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DISTINCT subject FROM courses")) {
+            while (rs.next()) {
+                String subject = rs.getString(1);
+                subjects.computeIfAbsent(shards.shardForSubject(subject), shard -> new ArrayList<>()).add(subject);
+            }
+        }
+        return subjects;
+    }
+
+    /**
+     * Builds one shard file.
+     *
+     * @return The number of courses and of reviews copied
+     */
+    private static long[] writeShard(ShardMap shards, int shard, List<String> subjects, List<String> schema,
+                                     List<String> triggers) throws SQLException, IOException {
+        Path file = Paths.get(shards.getFile(shard));
+        Path temp = Paths.get(file + ".tmp");
+        Files.deleteIfExists(temp);
+        int offset = shards.firstId(shard);
+        long[] copied = new long[2];
+
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + temp);
+             Statement stmt = conn.createStatement()) {
+
+            // Must be set before the first table is created
+            stmt.execute("PRAGMA auto_vacuum=INCREMENTAL");
+            try (PreparedStatement attach = conn.prepareStatement("ATTACH DATABASE ? AS src")) {
+                attach.setString(1, Database.DB_FILE);
+                attach.execute();
+            }
+
+            stmt.execute("BEGIN");
+            for (String create : schema) {
+                stmt.execute(create);
+            }
+
+            stmt.execute("CREATE TEMP TABLE shard_subjects(subject TEXT PRIMARY KEY)");
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO shard_subjects VALUES(?)")) {
+                for (String subject : subjects) {
+                    insert.setString(1, subject);
+                    insert.executeUpdate();
+                }
+            }
+
+            String inShard = "(SELECT subject FROM shard_subjects)";
+            copied[0] = copy(conn, offset,
+                    "INSERT INTO main.courses(id, subject, number, title) " +
+                    "SELECT id + ?, subject, number, title FROM src.courses WHERE subject IN " + inShard);
+            copied[1] = copy(conn, offset,
+                    "INSERT INTO main.reviews(id, user_id, course_id, rating, comment, timestamp) " +
+                    "SELECT r.id + ?1, r.user_id, r.course_id + ?1, r.rating, r.comment, r.timestamp " +
+                    "FROM src.reviews r JOIN src.courses c ON c.id = r.course_id WHERE c.subject IN " + inShard);
+            copy(conn, offset,
+                    "INSERT INTO main.course_rating_stats(course_id, review_count, count1, count2, count3, " +
+                    "count4, count5, mean, m2) " +
+                    "SELECT s.course_id + ?, s.review_count, s.count1, s.count2, s.count3, s.count4, s.count5, " +
+                    "s.mean, s.m2 FROM src.course_rating_stats s JOIN src.courses c ON c.id = s.course_id " +
+                    "WHERE c.subject IN " + inShard);
+            copy(conn, offset,
+                    "INSERT INTO main.course_rating_months(course_id, month, review_count, rating_sum) " +
+                    "SELECT m.course_id + ?, m.month, m.review_count, m.rating_sum " +
+                    "FROM src.course_rating_months m JOIN src.courses c ON c.id = m.course_id " +
+                    "WHERE c.subject IN " + inShard);
+            stmt.execute("INSERT INTO reviews_fts(reviews_fts) VALUES('rebuild')");
+
+            shards.reserveIds(conn, shard);
+            for (String trigger : triggers) {
+                stmt.execute(trigger);
+            }
+            stmt.execute("COMMIT");
+
+            stmt.execute("DETACH DATABASE src");
+            stmt.execute("PRAGMA journal_mode=WAL");
+        }
+
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        return copied;
+    }
+
+    /**
+     * Runs an INSERT ... SELECT whose only parameter is the shard's ID offset.
+     *
+     * @return The number of rows copied
+     */
+    private static int copy(Connection conn, int offset, String sql) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, offset);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    private static long queryLong(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package edu.virginia.sde.reviews.dao;
+
+import edu.virginia.sde.reviews.event.ChangeEvent;
+import edu.virginia.sde.reviews.event.EventBus;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs several DAO calls as one database transaction.
+ *
+ * Normally each CourseDAO, ReviewDAO and UserDAO method opens its own
+ * connection and commits on its own. Inside inTransaction(), every DAO call
+ * on the same thread shares one connection instead, and nothing is committed
+ * until the work returns:
+ *
+ *     UnitOfWork.inTransaction(() -> {
+ *         courseDAO.createCourse(course);
+ *         for (Review review : reviews) {
+ *             review.setCourseId(course.getId());
+ *             reviewDAO.createReview(review);
+ *         }
+ *         return null;
+ *     });
+ *
+ * If the work throws, everything it wrote is rolled back and the exception is
+ * rethrown. A DAO call that fails inside a unit of work throws a
+ * DataAccessException rather than printing the error and returning false, so
+ * a failed step cannot be committed alongside the steps that succeeded.
+ *
+ * A unit of work started inside another becomes a savepoint. If the inner
+ * work throws, only its own writes are undone and the outer work can catch
+ * the exception and carry on.
+ *
+ * The outer transaction begins with BEGIN IMMEDIATE, which takes the write
+ * lock up front, so a check followed by a write cannot be overtaken by another
+ * writer in between. Change events from the DAOs are held back until the
+ * commit and are dropped on rollback, so subscribers never see a write that
+ * did not happen. Waiting for the write lock follows RetryPolicy.
+ *
+ * A transaction covers one database file. With sharded storage (see
+ * ShardMap), work that writes courses or reviews runs in
+ * inTransaction(shard, work) for the shard holding them. Reads from other
+ * files inside it use their own connections, and a write to another file
+ * throws a DataAccessException, since SQLite cannot commit two files
+ * atomically.
+ */
+public final class UnitOfWork {
+    /** The transaction open on each thread, or null outside a unit of work */
+    private static final ThreadLocal<Scope> current = new ThreadLocal<>();
+
+    /**
+     * Work to run in a transaction.
+     *
+     * @param <T> The type of the work's result
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        /**
+         * Performs the work.
+         *
+         * @return The result to hand back from inTransaction()
+         * @throws SQLException If the work runs SQL of its own and it fails
+         */
+        T run() throws SQLException;
+    }
+
+    /**
+     * State of the transaction open on one thread.
+     */
+    private static class Scope {
+        /** The shared connection, which DAO calls cannot close */
+        private final Connection connection;
+
+        /** The real connection, closed when the outermost unit of work ends */
+        private final Connection target;
+
+        /** Events to publish once the outermost unit of work commits */
+        private final List<ChangeEvent> pendingEvents = new ArrayList<>();
+
+        /** The shard whose file the transaction is open on, or ShardMap.SHARED */
+        private final int shard;
+
+        /** Number of savepoints currently open */
+        private int depth;
+
+        private Scope(Connection target, int shard) {
+            this.target = target;
+            this.shard = shard;
+            this.connection = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("close")) {
+                            return null;
+                        }
+                        try {
+                            return method.invoke(target, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+
+    private UnitOfWork() {
+    }
+
+    /**
+     * Runs work in a transaction on the shared database, or in a savepoint if
+     * a transaction is already open.
+     *
+     * @param work The work to run
+     * @param <T> The type of the work's result
+     * @return The work's result
+     * @throws DataAccessException If a database error occurs, including one
+     *                             inside the work; the work has been rolled back
+     * @throws RuntimeException Any other exception thrown by the work, after rolling back
+     */
+    public static <T> T inTransaction(Work<T> work) {
+        return inTransaction(ShardMap.SHARED, work);
+    }
+
+    /**
+     * Runs work in a transaction on one shard's database file, or in a
+     * savepoint if a transaction is already open on that file.
+     *
+     * @param shard The shard the work writes to, from ShardMap, or ShardMap.SHARED
+     * @param work The work to run
+     * @param <T> The type of the work's result
+     * @return The work's result
+     * @throws DataAccessException If a database error occurs, including one
+     *                             inside the work; the work has been rolled back
+     * @throws RuntimeException Any other exception thrown by the work, after rolling back
+     */
+    public static <T> T inTransaction(int shard, Work<T> work) {
+        Scope scope = current.get();
+        if (scope != null) {
+            checkSameFile(scope, shard);
+            return inSavepoint(scope, work);
+        }
+
+        try (Connection conn = Database.connect(shard)) {
+            scope = new Scope(conn, shard);
+            // Only the BEGIN waits for the write lock, so it is the step worth retrying
+            RetryPolicy.run("beginTransaction", () -> {
+                execute(conn, "BEGIN IMMEDIATE");
+                return null;
+            });
+            current.set(scope);
+
+            T result;
+            try {
+                result = work.run();
+                execute(conn, "COMMIT");
+            } catch (SQLException | RuntimeException | Error e) {
+                rollback(conn, "ROLLBACK");
+                throw e;
+            } finally {
+                current.remove();
+            }
+
+            // Publish only what is now committed
+            for (ChangeEvent event : scope.pendingEvents) {
+                EventBus.getInstance().publish(event);
+            }
+            return result;
+
+        } catch (SQLException e) {
+            throw new DataAccessException("Error in transaction: " + e.getMessage(), e);
+        }
+    }
+
+    private static <T> T inSavepoint(Scope scope, Work<T> work) {
+        String savepoint = "uow_" + (++scope.depth);
+        int eventMark = scope.pendingEvents.size();
+        try {
+            execute(scope.target, "SAVEPOINT " + savepoint);
+            T result;
+            try {
+                result = work.run();
+            } catch (SQLException | RuntimeException | Error e) {
+                rollback(scope.target, "ROLLBACK TO " + savepoint);
+                execute(scope.target, "RELEASE " + savepoint);
+                scope.pendingEvents.subList(eventMark, scope.pendingEvents.size()).clear();
+                throw e;
+            }
+            execute(scope.target, "RELEASE " + savepoint);
+            return result;
+
+        } catch (SQLException e) {
+            throw new DataAccessException("Error in transaction: " + e.getMessage(), e);
+        } finally {
+            scope.depth--;
+        }
+    }
+
+    /**
+     * Checks whether the current thread is inside a unit of work.
+     *
+     * @return true if DAO calls on this thread share a transaction
+     */
+    public static boolean isActive() {
+        return current.get() != null;
+    }
+
+    /**
+     * Checks whether the current thread is inside a unit of work on a shard's file.
+     *
+     * @param shard A shard number, or ShardMap.SHARED
+     * @return true if DAO calls on this shard share the thread's transaction
+     */
+    static boolean isActiveOn(int shard) {
+        Scope scope = current.get();
+        return scope != null && scope.shard == shard;
+    }
+
+    /**
+     * Gets a connection to the shared database for one DAO call.
+     *
+     * @return A connection to the database
+     * @throws SQLException If a new connection cannot be opened
+     * @see #getConnection(int)
+     */
+    static Connection getConnection() throws SQLException {
+        return getConnection(ShardMap.SHARED);
+    }
+
+    /**
+     * Gets a connection to a shard's file for one DAO call: the shared
+     * connection inside a unit of work on that file, or a new autocommit
+     * connection otherwise. Either way the caller closes it when done; closing
+     * the shared connection has no effect. Each call also tells
+     * MaintenanceScheduler that the database is in use.
+     *
+     * @param shard A shard number, or ShardMap.SHARED
+     * @return A connection to the shard's database
+     * @throws SQLException If a new connection cannot be opened
+     */
+    static Connection getConnection(int shard) throws SQLException {
+        MaintenanceScheduler.recordActivity();
+        Scope scope = current.get();
+        return scope != null && scope.shard == shard ? scope.connection : Database.connect(shard);
+    }
+
+    /**
+     * Gets a connection for a DAO write to a shard's file. Unlike a read, a
+     * write inside a unit of work must go to the file the work's transaction
+     * is open on.
+     *
+     * @param shard A shard number, or ShardMap.SHARED
+     * @return A connection to the shard's database
+     * @throws SQLException If a new connection cannot be opened
+     * @throws DataAccessException If a unit of work is open on another file
+     */
+    static Connection getWriteConnection(int shard) throws SQLException {
+        Scope scope = current.get();
+        if (scope != null) {
+            checkSameFile(scope, shard);
+        }
+        return getConnection(shard);
+    }
+
+    /**
+     * Publishes a DAO change event, after the commit if inside a unit of work.
+     *
+     * @param event The event describing a successful write
+     */
+    static void publish(ChangeEvent event) {
+        Scope scope = current.get();
+        if (scope != null) {
+            scope.pendingEvents.add(event);
+        } else {
+            EventBus.getInstance().publish(event);
+        }
+    }
+
+    /**
+     * Reports a failed DAO call. Inside a unit of work the error is thrown so
+     * the work rolls back; otherwise it is printed and the DAO carries on to
+     * return its failure value.
+     *
+     * @param message A description of the failed operation
+     * @param e The database error
+     * @throws DataAccessException If the current thread is inside a unit of work
+     */
+    static void report(String message, SQLException e) {
+        if (isActive()) {
+            throw new DataAccessException(message + ": " + e.getMessage(), e);
+        }
+        System.out.println(message + ": " + e.getMessage());
+    }
+
+    private static void checkSameFile(Scope scope, int shard) {
+        if (scope.shard != shard) {
+            ShardMap shards = ShardMap.getInstance();
+            throw new DataAccessException("A unit of work on " + shards.getFile(scope.shard)
+                    + " cannot also write to " + shards.getFile(shard), null);
+        }
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Rolls back after a failure without hiding the original error.
+     */
+    private static void rollback(Connection conn, String sql) {
+        try {
+            execute(conn, sql);
+        } catch (SQLException e) {
+            System.out.println("Error rolling back transaction: " + e.getMessage());
+        }
+    }
+}
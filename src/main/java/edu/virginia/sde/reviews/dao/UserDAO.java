@@ -1,9 +1,10 @@
 package edu.virginia.sde.reviews.dao;
 
 import edu.virginia.sde.reviews.model.User;
+import edu.virginia.sde.reviews.util.HitCounter;
+import edu.virginia.sde.reviews.util.IntObjectMap;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -18,10 +19,17 @@ import java.sql.SQLException;
  * - Delete: (not implemented in this version)
  * 
  * It also handles user authentication for the login process.
+ * Calls made inside a UnitOfWork share its transaction.
  */
 public class UserDAO {
-    /** SQLite database connection URL */
-    private static final String DB_URL = "jdbc:sqlite:course_reviews.db";
+    /**
+     * Users loaded by ID, shared by all UserDAO instances.
+     * Users are never updated or deleted, so entries never go stale.
+     */
+    private static final IntObjectMap<User> userCache = new IntObjectMap<>();
+
+    /** Hits and misses of getUserById lookups in userCache */
+    private static final HitCounter cacheHits = new HitCounter();
 
     /**
      * Retrieves a user by username.
@@ -32,7 +40,7 @@ public class UserDAO {
     public User getUserByUsername(String username) {
         String sql = "SELECT id, username, password FROM users WHERE username = ?";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setString(1, username);
@@ -41,10 +49,11 @@ public class UserDAO {
             if (rs.next()) {
                 int id = rs.getInt("id");
                 String password = rs.getString("password");
+                cacheUser(new User(id, username, password));
                 return new User(id, username, password);
             }
         } catch (SQLException e) {
-            System.out.println("Error retrieving user: " + e.getMessage());
+            UnitOfWork.report("Error retrieving user", e);
         }
 
         return null;
@@ -59,16 +68,20 @@ public class UserDAO {
     public boolean createUser(User user) {
         String sql = "INSERT INTO users(username, password) VALUES(?, ?)";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try {
+            return RetryPolicy.run("createUser", () -> {
+                try (Connection conn = UnitOfWork.getWriteConnection(ShardMap.SHARED);
+                     PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+                    pstmt.setString(1, user.getUsername());
+                    pstmt.setString(2, user.getPassword());
 
-            pstmt.setString(1, user.getUsername());
-            pstmt.setString(2, user.getPassword());
-            
-            pstmt.executeUpdate();
-            return true;
+                    pstmt.executeUpdate();
+                    return true;
+                }
+            });
         } catch (SQLException e) {
-            System.out.println("Error creating user: " + e.getMessage());
+            UnitOfWork.report("Error creating user", e);
             return false;
         }
     }
@@ -90,6 +103,15 @@ public class UserDAO {
         return false;
     }
 
+    /**
+     * Gets the hit rate of getUserById lookups since startup.
+     *
+     * @return The cache's hit and miss counts
+     */
+    public static HitCounter getCacheHits() {
+        return cacheHits;
+    }
+
     /**
      * Retrieves a user by ID.
      *
@@ -97,9 +119,18 @@ public class UserDAO {
      * @return User object if found, null otherwise
      */
     public User getUserById(int id) {
+        synchronized (userCache) {
+            User cached = userCache.get(id);
+            if (cached != null) {
+                cacheHits.hit();
+                return new User(cached.getId(), cached.getUsername(), cached.getPassword());
+            }
+        }
+        cacheHits.miss();
+
         String sql = "SELECT id, username, password FROM users WHERE id = ?";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, id);
@@ -108,12 +139,29 @@ public class UserDAO {
             if (rs.next()) {
                 String username = rs.getString("username");
                 String password = rs.getString("password");
+                cacheUser(new User(id, username, password));
                 return new User(id, username, password);
             }
         } catch (SQLException e) {
-            System.out.println("Error retrieving user: " + e.getMessage());
+            UnitOfWork.report("Error retrieving user", e);
         }
 
         return null;
     }
-} 
\ No newline at end of file
+
+    /**
+     * Helper method to cache a loaded user. Inside a unit of work the user
+     * may have just been created and could still be rolled back, so it is
+     * not cached until it has been read outside one.
+     *
+     * @param user The user read from the database
+     */
+    private void cacheUser(User user) {
+        if (UnitOfWork.isActive()) {
+            return;
+        }
+        synchronized (userCache) {
+            userCache.put(user.getId(), new User(user.getId(), user.getUsername(), user.getPassword()));
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package edu.virginia.sde.reviews.event;
+
+/**
+ * Marker interface for events describing a change to stored data.
+ * Events are published on the EventBus by the DAO write paths after the
+ * change has been committed.
+ */
+public interface ChangeEvent {
+}
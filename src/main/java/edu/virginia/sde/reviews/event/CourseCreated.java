@@ -0,0 +1,29 @@
+package edu.virginia.sde.reviews.event;
+
+import edu.virginia.sde.reviews.model.Course;
+
+/**
+ * Published after a new course has been inserted.
+ */
+public final class CourseCreated implements ChangeEvent {
+    /** The new course, including its database-assigned ID */
+    private final Course course;
+
+    /**
+     * Creates the event.
+     *
+     * @param course The new course
+     */
+    public CourseCreated(Course course) {
+        this.course = course;
+    }
+
+    /**
+     * Gets the new course.
+     *
+     * @return The course, including its database-assigned ID
+     */
+    public Course getCourse() {
+        return course;
+    }
+}
@@ -0,0 +1,151 @@
+package edu.virginia.sde.reviews.event;
+
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * In-process publish/subscribe hub for data change events.
+ *
+ * DAO write paths publish a ChangeEvent after each successful write.
+ * There are two kinds of subscribers:
+ * - Synchronous subscribers (caches, analytics) are called on the writing
+ *   thread before publish() returns, so they are current as soon as the
+ *   DAO call completes.
+ * - FX subscribers (open screens) receive events in batches on the JavaFX
+ *   application thread. Events published before a batch is delivered are
+ *   coalesced into it, so a burst of writes causes a single UI update.
+ */
+public class EventBus {
+    /** Singleton instance of the bus */
+    private static EventBus instance;
+
+    /** Active subscriptions, in registration order */
+    private final List<Consumer<ChangeEvent>> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Handle returned by subscribe methods, used to stop receiving events.
+     */
+    public interface Subscription {
+        /**
+         * Stops delivery of events to the subscriber.
+         * Calling it more than once has no effect.
+         */
+        void unsubscribe();
+    }
+
+    /**
+     * Private constructor to enforce singleton pattern.
+     * Use getInstance() to access the bus.
+     */
+    private EventBus() {
+    }
+
+    /**
+     * Gets the singleton event bus.
+     *
+     * @return The singleton EventBus instance
+     */
+    public static synchronized EventBus getInstance() {
+        if (instance == null) {
+            instance = new EventBus();
+        }
+        return instance;
+    }
+
+    /**
+     * Subscribes to events of one type, delivered synchronously on the publishing thread.
+     *
+     * @param type The event class to receive (subclasses included)
+     * @param handler The handler to call for each event
+     * @param <T> The event type
+     * @return A subscription that can be used to unsubscribe
+     */
+    public <T extends ChangeEvent> Subscription subscribe(Class<T> type, Consumer<? super T> handler) {
+        Consumer<ChangeEvent> subscriber = event -> {
+            if (type.isInstance(event)) {
+                handler.accept(type.cast(event));
+            }
+        };
+        subscribers.add(subscriber);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    /**
+     * Subscribes to all events, delivered in batches on the JavaFX application thread.
+     * Each batch holds every event published since the previous batch, in order.
+     *
+     * @param handler The handler to call with each batch
+     * @return A subscription that can be used to unsubscribe
+     */
+    public Subscription subscribeOnFxThread(Consumer<List<ChangeEvent>> handler) {
+        FxBatcher batcher = new FxBatcher(handler);
+        subscribers.add(batcher);
+        return () -> {
+            subscribers.remove(batcher);
+            batcher.active = false;
+        };
+    }
+
+    /**
+     * Publishes an event to all subscribers.
+     * A failing subscriber is reported and skipped so it cannot affect the
+     * write that published the event or the other subscribers.
+     *
+     * @param event The event to publish
+     */
+    public void publish(ChangeEvent event) {
+        for (Consumer<ChangeEvent> subscriber : subscribers) {
+            try {
+                subscriber.accept(event);
+            } catch (RuntimeException e) {
+                System.err.println("Event subscriber failed for " + event.getClass().getSimpleName()
+                        + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Queues events and hands them to an FX-thread handler in one batch per
+     * Platform.runLater round.
+     */
+    private static class FxBatcher implements Consumer<ChangeEvent> {
+        private final Consumer<List<ChangeEvent>> handler;
+        private final ConcurrentLinkedQueue<ChangeEvent> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean active = true;
+
+        private FxBatcher(Consumer<List<ChangeEvent>> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void accept(ChangeEvent event) {
+            queue.add(event);
+            if (scheduled.compareAndSet(false, true)) {
+                Platform.runLater(this::drain);
+            }
+        }
+
+        private void drain() {
+            // Clear the flag first so events queued while draining schedule another batch
+            scheduled.set(false);
+
+            List<ChangeEvent> batch = new ArrayList<>();
+            ChangeEvent event;
+            while ((event = queue.poll()) != null) {
+                batch.add(event);
+            }
+
+            if (active && !batch.isEmpty()) {
+                handler.accept(batch);
+            }
+        }
+    }
+}
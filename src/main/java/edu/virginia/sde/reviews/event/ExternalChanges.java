@@ -0,0 +1,75 @@
+package edu.virginia.sde.reviews.event;
+
+/**
+ * Published by ChangeWatcher when the database has been changed by another
+ * connection, typically another process sharing the same database file.
+ *
+ * Only IDs are known for such changes, so subscribers reload or invalidate
+ * the affected entries. The watcher skips this process's own writes, but
+ * can still report one whose DAO event it has not yet seen, so handling
+ * must be idempotent.
+ */
+public final class ExternalChanges implements ChangeEvent {
+    /** IDs of newly inserted courses */
+    private final int[] createdCourseIds;
+
+    /** IDs of courses whose reviews were inserted, updated or deleted */
+    private final int[] reviewedCourseIds;
+
+    /** IDs of reviews that were inserted, updated or deleted */
+    private final int[] reviewIds;
+
+    /** IDs of users whose reviews were inserted, updated or deleted */
+    private final int[] userIds;
+
+    /**
+     * Creates the event.
+     *
+     * @param createdCourseIds IDs of newly inserted courses
+     * @param reviewedCourseIds IDs of courses whose reviews changed
+     * @param reviewIds IDs of reviews that changed
+     * @param userIds IDs of users whose reviews changed
+     */
+    public ExternalChanges(int[] createdCourseIds, int[] reviewedCourseIds, int[] reviewIds, int[] userIds) {
+        this.createdCourseIds = createdCourseIds;
+        this.reviewedCourseIds = reviewedCourseIds;
+        this.reviewIds = reviewIds;
+        this.userIds = userIds;
+    }
+
+    /**
+     * Gets the IDs of newly inserted courses.
+     *
+     * @return The course IDs
+     */
+    public int[] getCreatedCourseIds() {
+        return createdCourseIds;
+    }
+
+    /**
+     * Gets the IDs of courses whose reviews were inserted, updated or deleted.
+     *
+     * @return The course IDs
+     */
+    public int[] getReviewedCourseIds() {
+        return reviewedCourseIds;
+    }
+
+    /**
+     * Gets the IDs of reviews that were inserted, updated or deleted.
+     *
+     * @return The review IDs
+     */
+    public int[] getReviewIds() {
+        return reviewIds;
+    }
+
+    /**
+     * Gets the IDs of users whose reviews were inserted, updated or deleted.
+     *
+     * @return The user IDs
+     */
+    public int[] getUserIds() {
+        return userIds;
+    }
+}
@@ -0,0 +1,30 @@
+package edu.virginia.sde.reviews.event;
+
+/**
+ * Published by the in-memory analytics indexes after they have re-read the
+ * rating totals of changed courses. Those reloads run on a thread of their
+ * own, after the review event that asked for them, so screens showing
+ * leaderboards or facet counts refresh again on this event.
+ */
+public final class RatingsReloaded implements ChangeEvent {
+    /** IDs of the courses whose totals were re-read */
+    private final int[] courseIds;
+
+    /**
+     * Creates the event.
+     *
+     * @param courseIds IDs of the courses whose totals were re-read
+     */
+    public RatingsReloaded(int[] courseIds) {
+        this.courseIds = courseIds;
+    }
+
+    /**
+     * Gets the courses whose totals were re-read.
+     *
+     * @return The course IDs
+     */
+    public int[] getCourseIds() {
+        return courseIds;
+    }
+}
@@ -0,0 +1,29 @@
+package edu.virginia.sde.reviews.event;
+
+import edu.virginia.sde.reviews.model.Review;
+
+/**
+ * Published after a new review has been inserted.
+ */
+public final class ReviewCreated implements ChangeEvent {
+    /** The new review, including its database-assigned ID */
+    private final Review review;
+
+    /**
+     * Creates the event.
+     *
+     * @param review The new review
+     */
+    public ReviewCreated(Review review) {
+        this.review = review;
+    }
+
+    /**
+     * Gets the new review.
+     *
+     * @return The review, including its database-assigned ID
+     */
+    public Review getReview() {
+        return review;
+    }
+}
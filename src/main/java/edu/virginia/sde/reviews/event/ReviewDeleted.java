@@ -0,0 +1,29 @@
+package edu.virginia.sde.reviews.event;
+
+import edu.virginia.sde.reviews.model.Review;
+
+/**
+ * Published after a review has been deleted.
+ */
+public final class ReviewDeleted implements ChangeEvent {
+    /** The review as it was before it was deleted */
+    private final Review review;
+
+    /**
+     * Creates the event.
+     *
+     * @param review The deleted review
+     */
+    public ReviewDeleted(Review review) {
+        this.review = review;
+    }
+
+    /**
+     * Gets the deleted review.
+     *
+     * @return The review as it was before it was deleted
+     */
+    public Review getReview() {
+        return review;
+    }
+}
@@ -0,0 +1,43 @@
+package edu.virginia.sde.reviews.event;
+
+import edu.virginia.sde.reviews.model.Review;
+
+/**
+ * Published after an existing review has been changed.
+ */
+public final class ReviewUpdated implements ChangeEvent {
+    /** The review as it was before the update */
+    private final Review before;
+
+    /** The review as it is after the update */
+    private final Review after;
+
+    /**
+     * Creates the event.
+     *
+     * @param before The review before the update
+     * @param after The review after the update
+     */
+    public ReviewUpdated(Review before, Review after) {
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * Gets the review as it was before the update.
+     *
+     * @return The previous state of the review
+     */
+    public Review getBefore() {
+        return before;
+    }
+
+    /**
+     * Gets the review as it is after the update.
+     *
+     * @return The new state of the review
+     */
+    public Review getAfter() {
+        return after;
+    }
+}
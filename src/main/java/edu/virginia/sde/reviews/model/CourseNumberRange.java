@@ -0,0 +1,144 @@
+package edu.virginia.sde.reviews.model;
+
+/**
+ * Model class representing an inclusive range of course numbers, used to
+ * search by level (all 3000-level courses) as well as by exact number.
+ *
+ * Ranges are parsed from what a student types in the number field:
+ * an exact number ("2130"), an explicit range ("3000-3999"), or a pattern
+ * with trailing wildcard digits ("2xxx", "21xx").
+ */
+public class CourseNumberRange {
+    /** Width of a course level; 3000 to 3999 is the 3000 level */
+    public static final int LEVEL_SIZE = 1000;
+
+    /** Lowest course number in the range */
+    private final int from;
+
+    /** Highest course number in the range */
+    private final int to;
+
+    /**
+     * Creates a range of course numbers.
+     *
+     * @param from The lowest course number in the range
+     * @param to The highest course number in the range
+     * @throws IllegalArgumentException if from is greater than to
+     */
+    public CourseNumberRange(int from, int to) {
+        if (from > to) {
+            throw new IllegalArgumentException("Range start " + from + " is after its end " + to);
+        }
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Creates a range holding a single course number.
+     *
+     * @param number The course number
+     * @return The range containing only that number
+     */
+    public static CourseNumberRange exactly(int number) {
+        return new CourseNumberRange(number, number);
+    }
+
+    /**
+     * Creates the range covering one course level.
+     *
+     * @param level The first number of the level, e.g. 3000
+     * @return The range from level to level + 999
+     */
+    public static CourseNumberRange level(int level) {
+        return new CourseNumberRange(level, level + LEVEL_SIZE - 1);
+    }
+
+    /**
+     * Parses a course number, range or wildcard pattern.
+     * Accepted forms are "2130", "3000-3999" and "2xxx" (case-insensitive).
+     * Course numbers cannot be negative, and a pattern whose range does not
+     * fit in an int, such as "999999999x", is rejected rather than wrapped.
+     *
+     * @param text The text to parse
+     * @return The parsed range
+     * @throws NumberFormatException if the text is not in one of the accepted forms
+     */
+    public static CourseNumberRange parse(String text) {
+        String trimmed = text.trim().toLowerCase();
+
+        int dash = trimmed.indexOf('-', 1);
+        if (dash > 0) {
+            int from = parseNumber(trimmed.substring(0, dash).trim(), text);
+            int to = parseNumber(trimmed.substring(dash + 1).trim(), text);
+            if (from > to) {
+                throw new NumberFormatException("Range start is after its end: " + text);
+            }
+            return new CourseNumberRange(from, to);
+        }
+
+        int wildcard = trimmed.indexOf('x');
+        if (wildcard < 0) {
+            return exactly(parseNumber(trimmed, text));
+        }
+        // Only trailing wildcards are allowed, so "2x3x" is rejected
+        for (int i = wildcard; i < trimmed.length(); i++) {
+            if (trimmed.charAt(i) != 'x') {
+                throw new NumberFormatException("Wildcards must come last: " + text);
+            }
+        }
+        int prefix = wildcard == 0 ? 0 : parseNumber(trimmed.substring(0, wildcard), text);
+        try {
+            int width = 1;
+            for (int i = wildcard; i < trimmed.length(); i++) {
+                width = Math.multiplyExact(width, 10);
+            }
+            int from = Math.multiplyExact(prefix, width);
+            return new CourseNumberRange(from, Math.addExact(from, width - 1));
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Course number pattern is too long: " + text);
+        }
+    }
+
+    private static int parseNumber(String number, String text) {
+        int value = Integer.parseInt(number);
+        if (value < 0) {
+            throw new NumberFormatException("Course numbers cannot be negative: " + text);
+        }
+        return value;
+    }
+
+    /**
+     * Gets the lowest course number in the range.
+     * @return The start of the range
+     */
+    public int getFrom() {
+        return from;
+    }
+
+    /**
+     * Gets the highest course number in the range.
+     * @return The end of the range
+     */
+    public int getTo() {
+        return to;
+    }
+
+    /**
+     * Checks whether a course number falls in the range.
+     *
+     * @param number The course number to check
+     * @return true if from <= number <= to
+     */
+    public boolean contains(int number) {
+        return number >= from && number <= to;
+    }
+
+    /**
+     * Provides the range in the form it is typed, e.g. "2130" or "3000-3999".
+     * @return The range as text
+     */
+    @Override
+    public String toString() {
+        return from == to ? String.valueOf(from) : from + "-" + to;
+    }
+}
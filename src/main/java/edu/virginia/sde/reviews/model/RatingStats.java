@@ -0,0 +1,96 @@
+package edu.virginia.sde.reviews.model;
+
+/**
+ * Model class representing the rating distribution of one course.
+ * Holds the number of reviews for each star rating, along with the running
+ * mean and sum of squared deviations (Welford's M2) kept in course_rating_stats.
+ */
+public class RatingStats {
+    /** Number of reviews per star rating; index 0 is unused */
+    private final int[] counts;
+
+    /** Total number of reviews */
+    private final int reviewCount;
+
+    /** Mean rating, or 0 if there are no reviews */
+    private final double mean;
+
+    /** Sum of squared deviations from the mean */
+    private final double m2;
+
+    /**
+     * Creates rating statistics for a course.
+     *
+     * @param counts Number of reviews per star rating, an array of length 6 indexed by rating
+     * @param reviewCount Total number of reviews
+     * @param mean Mean rating
+     * @param m2 Sum of squared deviations from the mean
+     */
+    public RatingStats(int[] counts, int reviewCount, double mean, double m2) {
+        this.counts = counts.clone();
+        this.reviewCount = reviewCount;
+        this.mean = mean;
+        this.m2 = m2;
+    }
+
+    /**
+     * Creates statistics for a course with no reviews.
+     *
+     * @return Empty rating statistics
+     */
+    public static RatingStats empty() {
+        return new RatingStats(new int[6], 0, 0.0, 0.0);
+    }
+
+    /**
+     * Gets the number of reviews with a given star rating.
+     *
+     * @param rating The star rating, 1 to 5
+     * @return The number of reviews with that rating
+     */
+    public int getCount(int rating) {
+        return counts[rating];
+    }
+
+    /**
+     * Gets the total number of reviews.
+     * @return The review count
+     */
+    public int getReviewCount() {
+        return reviewCount;
+    }
+
+    /**
+     * Gets the mean rating.
+     * @return The mean, or 0 if there are no reviews
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Gets the sample variance of the ratings.
+     * @return The variance, or 0 if there are fewer than two reviews
+     */
+    public double getVariance() {
+        return reviewCount < 2 ? 0.0 : m2 / (reviewCount - 1);
+    }
+
+    /**
+     * Gets the sample standard deviation of the ratings, i.e. how much reviewers disagree.
+     * @return The standard deviation, or 0 if there are fewer than two reviews
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Gets the share of reviews with a given star rating.
+     *
+     * @param rating The star rating, 1 to 5
+     * @return The fraction of reviews with that rating, or 0 if there are no reviews
+     */
+    public double getShare(int rating) {
+        return reviewCount == 0 ? 0.0 : (double) counts[rating] / reviewCount;
+    }
+}
@@ -0,0 +1,127 @@
+package edu.virginia.sde.reviews.model;
+
+/**
+ * Model class representing a course's ratings over time, as one entry per
+ * calendar month that has reviews. Months are written as yyyymm integers
+ * (202409 is September 2024) and are in ascending order.
+ *
+ * Only review counts and rating sums are kept per month, so averages over
+ * any span of months can be combined exactly.
+ */
+public class RatingTrend {
+    /** Months with reviews, as yyyymm, ascending */
+    private final int[] months;
+
+    /** Number of reviews in each month */
+    private final int[] counts;
+
+    /** Sum of the ratings given in each month */
+    private final long[] sums;
+
+    /**
+     * Creates a rating trend.
+     *
+     * @param months Months with reviews, as yyyymm, ascending
+     * @param counts Number of reviews in each month
+     * @param sums Sum of the ratings given in each month
+     */
+    public RatingTrend(int[] months, int[] counts, long[] sums) {
+        this.months = months;
+        this.counts = counts;
+        this.sums = sums;
+    }
+
+    /**
+     * Gets the number of months with reviews.
+     * @return The number of entries in the series
+     */
+    public int size() {
+        return months.length;
+    }
+
+    /**
+     * Gets the month of an entry.
+     *
+     * @param index The entry index
+     * @return The month as yyyymm
+     */
+    public int getMonth(int index) {
+        return months[index];
+    }
+
+    /**
+     * Gets the number of reviews in an entry's month.
+     *
+     * @param index The entry index
+     * @return The review count
+     */
+    public int getCount(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Gets the average rating in an entry's month.
+     *
+     * @param index The entry index
+     * @return The average rating
+     */
+    public double getAverage(int index) {
+        return (double) sums[index] / counts[index];
+    }
+
+    /**
+     * Counts the reviews given in or after a month.
+     *
+     * @param fromMonth The first month to include, as yyyymm
+     * @return The number of reviews
+     */
+    public int countSince(int fromMonth) {
+        int count = 0;
+        for (int i = firstIndexFrom(fromMonth); i < months.length; i++) {
+            count += counts[i];
+        }
+        return count;
+    }
+
+    /**
+     * Computes the average rating of the reviews given in or after a month.
+     *
+     * @param fromMonth The first month to include, as yyyymm
+     * @return The average rating, or 0 if there are no such reviews
+     */
+    public double averageSince(int fromMonth) {
+        long sum = 0;
+        int count = 0;
+        for (int i = firstIndexFrom(fromMonth); i < months.length; i++) {
+            sum += sums[i];
+            count += counts[i];
+        }
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * Gets the yyyymm month a number of months before another.
+     *
+     * @param month The month to count back from, as yyyymm
+     * @param monthsBack How many months to go back
+     * @return The earlier month as yyyymm
+     */
+    public static int monthsBefore(int month, int monthsBack) {
+        int index = (month / 100) * 12 + (month % 100 - 1) - monthsBack;
+        return (index / 12) * 100 + index % 12 + 1;
+    }
+
+    private int firstIndexFrom(int fromMonth) {
+        int low = 0;
+        int high = months.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (months[mid] < fromMonth) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
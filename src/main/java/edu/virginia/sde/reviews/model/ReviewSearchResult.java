@@ -0,0 +1,92 @@
+package edu.virginia.sde.reviews.model;
+
+/**
+ * Model class representing one match of a full-text search over review comments.
+ * Holds a highlighted snippet of the comment rather than the whole text,
+ * along with the IDs needed to open the review's course.
+ *
+ * The rank and review ID together identify the result's position in the
+ * ranked list, and are used as the key for fetching the next page.
+ */
+public class ReviewSearchResult {
+    /** ID of the matching review */
+    private final int reviewId;
+
+    /** ID of the course the review belongs to */
+    private final int courseId;
+
+    /** Numerical rating given in the review */
+    private final int rating;
+
+    /** Excerpt of the comment with matched terms highlighted */
+    private final String snippet;
+
+    /** BM25 relevance score; lower values are better matches */
+    private final double rank;
+
+    /**
+     * Creates a search result.
+     *
+     * @param reviewId The ID of the matching review
+     * @param courseId The ID of the course the review belongs to
+     * @param rating The rating given in the review
+     * @param snippet The highlighted excerpt of the comment
+     * @param rank The BM25 relevance score (lower is better)
+     */
+    public ReviewSearchResult(int reviewId, int courseId, int rating, String snippet, double rank) {
+        this.reviewId = reviewId;
+        this.courseId = courseId;
+        this.rating = rating;
+        this.snippet = snippet;
+        this.rank = rank;
+    }
+
+    /**
+     * Gets the ID of the matching review.
+     * @return The review ID
+     */
+    public int getReviewId() {
+        return reviewId;
+    }
+
+    /**
+     * Gets the ID of the course the review belongs to.
+     * @return The course ID
+     */
+    public int getCourseId() {
+        return courseId;
+    }
+
+    /**
+     * Gets the rating given in the review.
+     * @return The rating value
+     */
+    public int getRating() {
+        return rating;
+    }
+
+    /**
+     * Gets the excerpt of the comment, with matched terms wrapped in [brackets].
+     * @return The snippet text
+     */
+    public String getSnippet() {
+        return snippet;
+    }
+
+    /**
+     * Gets the BM25 relevance score. Lower values are better matches.
+     * @return The rank
+     */
+    public double getRank() {
+        return rank;
+    }
+
+    /**
+     * Provides a string representation of this result, showing its rating and snippet.
+     * @return A string containing the rating and snippet
+     */
+    @Override
+    public String toString() {
+        return "Rating: " + rating + " - " + snippet;
+    }
+}
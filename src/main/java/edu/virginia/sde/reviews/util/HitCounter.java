@@ -0,0 +1,62 @@
+package edu.virginia.sde.reviews.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts hits and misses of an in-memory cache.
+ *
+ * Counting is a LongAdder increment, so it is cheap enough to leave on in
+ * every lookup and safe to call from any thread.
+ */
+public class HitCounter {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Records a lookup answered from the cache.
+     */
+    public void hit() {
+        hits.increment();
+    }
+
+    /**
+     * Records a lookup that had to go to the database.
+     */
+    public void miss() {
+        misses.increment();
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     * @return The hit count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the total number of lookups.
+     * @return Hits plus misses
+     */
+    public long getLookups() {
+        return hits.sum() + misses.sum();
+    }
+
+    /**
+     * Gets the share of lookups answered from the cache.
+     * @return The hit rate between 0 and 1, or 0 if there were no lookups
+     */
+    public double getHitRate() {
+        long lookups = getLookups();
+        return lookups == 0 ? 0.0 : (double) getHits() / lookups;
+    }
+
+    /**
+     * Formats the hit rate for reports, such as "97.5% of 1200 lookups".
+     * @return The formatted hit rate
+     */
+    @Override
+    public String toString() {
+        return String.format("%.1f%% of %d lookups", getHitRate() * 100, getLookups());
+    }
+}
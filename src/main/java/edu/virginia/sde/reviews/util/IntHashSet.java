@@ -0,0 +1,194 @@
+package edu.virginia.sde.reviews.util;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive int values.
+ *
+ * Uses open addressing with linear probing over a single int array, so
+ * members are never boxed and need no per-entry node objects. Value 0 is
+ * used internally to mark empty slots and is tracked separately when present.
+ *
+ * This class is not thread-safe; callers that share an instance across
+ * threads must synchronize externally.
+ */
+public class IntHashSet {
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] slots;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    private boolean hasZero;
+
+    /**
+     * Creates an empty set.
+     */
+    public IntHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an empty set sized to hold the expected number of values without resizing.
+     *
+     * @param expectedSize The expected number of values
+     */
+    public IntHashSet(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Checks whether a value is in the set.
+     *
+     * @param value The value to check
+     * @return true if the value is present, false otherwise
+     */
+    public boolean contains(int value) {
+        if (value == 0) {
+            return hasZero;
+        }
+        return slots[findSlot(value)] != 0;
+    }
+
+    /**
+     * Adds a value to the set.
+     *
+     * @param value The value to add
+     * @return true if the value was added, false if it was already present
+     */
+    public boolean add(int value) {
+        if (value == 0) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+
+        int slot = findSlot(value);
+        if (slots[slot] != 0) {
+            return false;
+        }
+        slots[slot] = value;
+        if (++size > resizeAt) {
+            rehash(slots.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a value from the set.
+     *
+     * @param value The value to remove
+     * @return true if the value was removed, false if it was not present
+     */
+    public boolean remove(int value) {
+        if (value == 0) {
+            if (!hasZero) {
+                return false;
+            }
+            hasZero = false;
+            size--;
+            return true;
+        }
+
+        int slot = findSlot(value);
+        if (slots[slot] == 0) {
+            return false;
+        }
+        shiftBack(slot);
+        size--;
+        return true;
+    }
+
+    /**
+     * Gets the number of values in the set.
+     *
+     * @return The number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the set has no values.
+     *
+     * @return true if the set is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        hasZero = false;
+        size = 0;
+    }
+
+    /**
+     * Copies the values into a new array, in no particular order.
+     *
+     * @return The values in the set
+     */
+    public int[] toArray() {
+        int[] result = new int[size];
+        int n = 0;
+        if (hasZero) {
+            result[n++] = 0;
+        }
+        for (int value : slots) {
+            if (value != 0) {
+                result[n++] = value;
+            }
+        }
+        return result;
+    }
+
+    private int findSlot(int value) {
+        int slot = IntHashing.mix(value) & mask;
+        while (slots[slot] != 0 && slots[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void shiftBack(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (slots[next] != 0) {
+            int home = IntHashing.mix(slots[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                slots[gap] = slots[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[gap] = 0;
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldSlots = slots;
+        allocate(newCapacity);
+        for (int value : oldSlots) {
+            if (value != 0) {
+                slots[findSlot(value)] = value;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        slots = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int required = (int) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR);
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit(required - 1) << 1);
+    }
+}
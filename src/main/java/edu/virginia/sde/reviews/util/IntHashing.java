@@ -0,0 +1,31 @@
+package edu.virginia.sde.reviews.util;
+
+/**
+ * Hash mixing shared by the primitive-keyed collections.
+ *
+ * Database ids are small, sequential integers, which would cluster badly in
+ * a power-of-two open-addressing table if used directly. Mixing spreads
+ * them across the table.
+ */
+final class IntHashing {
+
+    private IntHashing() {
+        // Static utility class
+    }
+
+    /**
+     * Scrambles the bits of a key (the MurmurHash3 32-bit finalizer).
+     *
+     * @param key The key to hash
+     * @return The mixed hash
+     */
+    static int mix(int key) {
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,217 @@
+package edu.virginia.sde.reviews.util;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from primitive int keys to primitive int values, intended for counters.
+ *
+ * Uses the same layout as IntObjectMap: open addressing with linear probing
+ * over parallel key/value arrays, so neither keys nor values are boxed.
+ * Key 0 is used internally to mark empty slots and is stored separately when
+ * present. Absent keys read as 0, so there is no remove operation; counts
+ * are only ever added to.
+ *
+ * This class is not thread-safe; callers that share an instance across
+ * threads must synchronize externally.
+ */
+public class IntIntMap {
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    /**
+     * Creates an empty map.
+     */
+    public IntIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an empty map sized to hold the expected number of entries without resizing.
+     *
+     * @param expectedSize The expected number of entries
+     */
+    public IntIntMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Gets the value mapped to a key.
+     *
+     * @param key The key to look up
+     * @return The mapped value, or 0 if the key is not present
+     */
+    public int get(int key) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : 0;
+        }
+        int slot = findSlot(key);
+        return keys[slot] == 0 ? 0 : values[slot];
+    }
+
+    /**
+     * Maps a key to a value, replacing any previous mapping.
+     *
+     * @param key The key
+     * @param value The value
+     */
+    public void put(int key, int value) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+
+        int slot = findSlot(key);
+        if (keys[slot] == 0) {
+            keys[slot] = key;
+            if (++size > resizeAt) {
+                values[slot] = value;
+                rehash(keys.length * 2);
+                return;
+            }
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Adds to the value mapped to a key, treating an absent key as 0.
+     *
+     * @param key The key
+     * @param delta The amount to add
+     * @return The new value
+     */
+    public int addTo(int key, int delta) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue += delta;
+            return zeroValue;
+        }
+
+        int slot = findSlot(key);
+        if (keys[slot] != 0) {
+            values[slot] += delta;
+            return values[slot];
+        }
+
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size > resizeAt) {
+            rehash(keys.length * 2);
+        }
+        return delta;
+    }
+
+    /**
+     * Adds every entry of another map to this one.
+     *
+     * @param other The map whose values are added
+     */
+    public void addAll(IntIntMap other) {
+        other.forEach(this::addTo);
+    }
+
+    /**
+     * Gets the number of entries in the map.
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the map has no entries.
+     *
+     * @return true if the map is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, 0);
+        hasZeroKey = false;
+        zeroValue = 0;
+        size = 0;
+    }
+
+    /**
+     * Performs an action for every entry in the map, in no particular order.
+     *
+     * @param action The action to perform
+     */
+    public void forEach(Entry action) {
+        if (hasZeroKey) {
+            action.accept(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Callback for forEach that receives the key and value as primitive ints.
+     */
+    @FunctionalInterface
+    public interface Entry {
+        void accept(int key, int value);
+    }
+
+    /**
+     * Finds the slot holding the key, or the empty slot where it would be inserted.
+     */
+    private int findSlot(int key) {
+        int slot = IntHashing.mix(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != 0) {
+                int slot = findSlot(key);
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int required = (int) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR);
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit(required - 1) << 1);
+    }
+}
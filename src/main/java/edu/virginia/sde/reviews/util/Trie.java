@@ -0,0 +1,234 @@
+package edu.virginia.sde.reviews.util;
+
+import java.util.Arrays;
+
+/**
+ * Counted set of words stored as a character trie, searchable by prefix and
+ * by edit distance.
+ *
+ * Each word carries a count of how many times it was added, so the trie can
+ * also act as a small multiset (for example, courses per subject).
+ *
+ * A prefix completion walks down to the prefix's node and then enumerates
+ * words below it in sorted order, stopping after the requested number. Its
+ * cost depends on the prefix length and the limit, not on the vocabulary size.
+ *
+ * A fuzzy search walks the trie depth-first while computing one row of the
+ * Levenshtein table per character, so words with a common prefix share the
+ * work for that prefix. This simulates a Levenshtein automaton over the
+ * trie. A subtree is skipped as soon as every entry in the current row
+ * exceeds the allowed distance, since no word below can get closer. For
+ * small distances only a thin band of the trie near the query is visited.
+ *
+ * Children are kept in small sorted arrays rather than maps, which keeps
+ * nodes compact for vocabularies of many short words.
+ *
+ * This class is not thread-safe; callers that share an instance across
+ * threads must synchronize externally.
+ */
+public class Trie {
+    private final Node root = new Node();
+    private int size;
+    private int maxLength;
+
+    /**
+     * Callback for search that receives each match with its distance.
+     */
+    @FunctionalInterface
+    public interface Match {
+        void accept(String word, int distance);
+    }
+
+    /**
+     * Callback for complete that receives each word with its count.
+     */
+    @FunctionalInterface
+    public interface Completion {
+        void accept(String word, int count);
+    }
+
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        /** The word ending at this node, or null if none does */
+        private String word;
+        /** Number of times the word was added */
+        private int count;
+
+        private Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node addChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -(index + 1);
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            Node child = new Node();
+            newKeys[insertAt] = c;
+            newChildren[insertAt] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+
+    /**
+     * Adds a word to the trie, or increments its count if it is already present.
+     *
+     * @param word The word to add
+     * @return true if the word was new, false if it was already present
+     */
+    public boolean add(String word) {
+        Node node = root;
+        for (int i = 0; i < word.length(); i++) {
+            node = node.addChild(word.charAt(i));
+        }
+        node.count++;
+        if (node.word != null) {
+            return false;
+        }
+        node.word = word;
+        size++;
+        maxLength = Math.max(maxLength, word.length());
+        return true;
+    }
+
+    /**
+     * Checks whether a word is in the trie.
+     *
+     * @param word The word to look for
+     * @return true if the word is present, false otherwise
+     */
+    public boolean contains(String word) {
+        Node node = find(word);
+        return node != null && node.word != null;
+    }
+
+    /**
+     * Gets the number of times a word was added.
+     *
+     * @param word The word to look up
+     * @return The word's count, or 0 if it is not present
+     */
+    public int count(String word) {
+        Node node = find(word);
+        return node == null ? 0 : node.count;
+    }
+
+    /**
+     * Lists words starting with a prefix, in sorted order.
+     *
+     * @param prefix The prefix to complete
+     * @param limit The maximum number of words to report
+     * @param completion Called for each word found, with its count
+     */
+    public void complete(String prefix, int limit, Completion completion) {
+        Node start = find(prefix);
+        if (start == null || limit <= 0) {
+            return;
+        }
+
+        Node[] stack = new Node[Math.max(16, maxLength + 1)];
+        int[] next = new int[stack.length];
+        int top = 0;
+        stack[0] = start;
+        next[0] = -1;
+        int reported = 0;
+        // Pre-order walk: a node's own word comes before those of its children
+        while (top >= 0) {
+            Node node = stack[top];
+            if (next[top] == -1) {
+                next[top] = 0;
+                if (node.word != null) {
+                    completion.accept(node.word, node.count);
+                    if (++reported == limit) {
+                        return;
+                    }
+                }
+            }
+            if (next[top] < node.keys.length) {
+                Node child = node.children[next[top]++];
+                top++;
+                stack[top] = child;
+                next[top] = -1;
+            } else {
+                top--;
+            }
+        }
+    }
+
+    private Node find(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * Finds every word within a maximum edit distance of a query, in no particular order.
+     *
+     * @param query The word to search for
+     * @param maxDistance The largest Levenshtein distance to accept
+     * @param match Called for each word found
+     */
+    public void search(String query, int maxDistance, Match match) {
+        // One row per trie depth; a word longer than query + maxDistance can never match
+        int depth = Math.min(maxLength, query.length() + maxDistance) + 1;
+        int[][] rows = new int[depth][query.length() + 1];
+        for (int j = 0; j <= query.length(); j++) {
+            rows[0][j] = j;
+        }
+        if (root.word != null && query.length() <= maxDistance) {
+            match.accept(root.word, query.length());
+        }
+        for (int i = 0; i < root.keys.length; i++) {
+            search(root.children[i], root.keys[i], 1, query, maxDistance, rows, match);
+        }
+    }
+
+    private static void search(Node node, char c, int level, String query, int maxDistance,
+                               int[][] rows, Match match) {
+        if (level >= rows.length) {
+            return;
+        }
+        int[] previous = rows[level - 1];
+        int[] row = rows[level];
+        row[0] = level;
+        int rowMin = row[0];
+        for (int j = 1; j < row.length; j++) {
+            int substitution = previous[j - 1] + (query.charAt(j - 1) == c ? 0 : 1);
+            row[j] = Math.min(substitution, Math.min(previous[j], row[j - 1]) + 1);
+            rowMin = Math.min(rowMin, row[j]);
+        }
+
+        int distance = row[row.length - 1];
+        if (node.word != null && distance <= maxDistance) {
+            match.accept(node.word, distance);
+        }
+        if (rowMin > maxDistance) {
+            return;
+        }
+        for (int i = 0; i < node.keys.length; i++) {
+            search(node.children[i], node.keys[i], level + 1, query, maxDistance, rows, match);
+        }
+    }
+
+    /**
+     * Gets the number of words in the trie.
+     *
+     * @return The number of words
+     */
+    public int size() {
+        return size;
+    }
+}
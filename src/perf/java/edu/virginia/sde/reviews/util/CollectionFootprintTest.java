@@ -0,0 +1,67 @@
+package edu.virginia.sde.reviews.util;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures with JOL how much heap the primitive collections save over their
+ * boxed java.util equivalents for the caches' typical key shape: sequential
+ * database ids.
+ */
+class CollectionFootprintTest {
+    /** Entries per collection, about the size of a large course catalog */
+    private static final int SIZE = 100_000;
+
+    /** Shared value, so only the collections themselves are measured */
+    private static final Object VALUE = new Object();
+
+    @Test
+    void intObjectMapUsesLessThanHalfOfHashMap() {
+        IntObjectMap<Object> primitive = new IntObjectMap<>();
+        Map<Integer, Object> boxed = new HashMap<>();
+        for (int id = 1; id <= SIZE; id++) {
+            primitive.put(id, VALUE);
+            boxed.put(id, VALUE);
+        }
+        assertSmaller("IntObjectMap", primitive, "HashMap<Integer, Object>", boxed, 0.5);
+    }
+
+    @Test
+    void intHashSetUsesLessThanAQuarterOfHashSet() {
+        IntHashSet primitive = new IntHashSet();
+        Set<Integer> boxed = new HashSet<>();
+        for (int id = 1; id <= SIZE; id++) {
+            primitive.add(id);
+            boxed.add(id);
+        }
+        assertSmaller("IntHashSet", primitive, "HashSet<Integer>", boxed, 0.25);
+    }
+
+    @Test
+    void intIntMapUsesLessThanHalfOfHashMap() {
+        IntIntMap primitive = new IntIntMap();
+        Map<Integer, Integer> boxed = new HashMap<>();
+        for (int id = 1; id <= SIZE; id++) {
+            primitive.put(id, id * 7);
+            boxed.put(id, id * 7);
+        }
+        assertSmaller("IntIntMap", primitive, "HashMap<Integer, Integer>", boxed, 0.5);
+    }
+
+    private static void assertSmaller(String primitiveName, Object primitive, String boxedName, Object boxed,
+                                      double maxRatio) {
+        long primitiveBytes = GraphLayout.parseInstance(primitive).totalSize();
+        long boxedBytes = GraphLayout.parseInstance(boxed).totalSize();
+        double ratio = (double) primitiveBytes / boxedBytes;
+        System.out.printf("%s: %,d bytes, %s: %,d bytes (%.2fx)%n",
+                primitiveName, primitiveBytes, boxedName, boxedBytes, ratio);
+        assertTrue(ratio < maxRatio, primitiveName + " should use less than " + maxRatio + " of " + boxedName);
+    }
+}
@@ -0,0 +1,115 @@
+package edu.virginia.sde.reviews.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares lookups by database id in the primitive collections with the
+ * boxed java.util collections a cache would otherwise use. Half of the
+ * probed ids are present, as with a cache that is partly warm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdLookupBenchmark {
+    /** Number of ids probed per benchmark invocation */
+    private static final int PROBES = 1024;
+
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    private int[] probes;
+    private IntObjectMap<Object> intObjectMap;
+    private Map<Integer, Object> hashMap;
+    private IntHashSet intHashSet;
+    private Set<Integer> hashSet;
+
+    @Setup
+    public void setUp() {
+        Object value = new Object();
+        intObjectMap = new IntObjectMap<>();
+        hashMap = new HashMap<>();
+        intHashSet = new IntHashSet();
+        hashSet = new HashSet<>();
+        for (int id = 1; id <= size; id++) {
+            intObjectMap.put(id, value);
+            hashMap.put(id, value);
+            intHashSet.add(id);
+            hashSet.add(id);
+        }
+
+        Random random = new Random(28);
+        probes = new int[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = 1 + random.nextInt(2 * size);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public int intObjectMapGet() {
+        int found = 0;
+        for (int id : probes) {
+            if (intObjectMap.get(id) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public int hashMapGet() {
+        int found = 0;
+        for (int id : probes) {
+            if (hashMap.get(id) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public int intHashSetContains() {
+        int found = 0;
+        for (int id : probes) {
+            if (intHashSet.contains(id)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public int hashSetContains() {
+        int found = 0;
+        for (int id : probes) {
+            if (hashSet.contains(id)) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
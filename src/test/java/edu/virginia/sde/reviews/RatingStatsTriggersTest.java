@@ -0,0 +1,188 @@
+package edu.virginia.sde.reviews;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the course_rating_stats triggers against aggregates computed
+ * directly from the reviews table, on an in-memory database.
+ */
+class RatingStatsTriggersTest {
+    private static final double TOLERANCE = 1e-9;
+
+    private Connection conn;
+    private Statement stmt;
+
+    @BeforeEach
+    void createSchema() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE reviews (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "user_id INTEGER NOT NULL," +
+                "course_id INTEGER NOT NULL," +
+                "rating INTEGER NOT NULL," +
+                "comment TEXT," +
+                "timestamp TIMESTAMP NOT NULL)");
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    void insertsUpdatesAndDeletesKeepTheStatisticsExact() throws SQLException {
+        CourseReviewsApplication.createRatingStats(stmt);
+
+        insert(1, 5);
+        insert(1, 3);
+        insert(1, 4);
+        insert(2, 1);
+        assertMatchesReviews();
+
+        stmt.executeUpdate("UPDATE reviews SET rating = 1 WHERE id = 1");
+        assertMatchesReviews();
+
+        // Moving a review to another course updates both courses
+        stmt.executeUpdate("UPDATE reviews SET course_id = 2 WHERE id = 2");
+        assertMatchesReviews();
+
+        stmt.executeUpdate("DELETE FROM reviews WHERE id = 3");
+        stmt.executeUpdate("DELETE FROM reviews WHERE id = 1");
+        assertMatchesReviews();
+    }
+
+    @Test
+    void removingTheLastReviewResetsMeanAndM2() throws SQLException {
+        CourseReviewsApplication.createRatingStats(stmt);
+
+        insert(1, 2);
+        insert(1, 5);
+        stmt.executeUpdate("DELETE FROM reviews");
+
+        ResultSet rs = stmt.executeQuery("SELECT review_count, mean, m2 FROM course_rating_stats WHERE course_id = 1");
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        assertEquals(0.0, rs.getDouble(2));
+        assertEquals(0.0, rs.getDouble(3));
+    }
+
+    @Test
+    void randomWritesMatchDirectAggregates() throws SQLException {
+        CourseReviewsApplication.createRatingStats(stmt);
+        Random random = new Random(41);
+        List<Integer> ids = new ArrayList<>();
+
+        for (int i = 0; i < 2_000; i++) {
+            int operation = random.nextInt(10);
+            if (ids.isEmpty() || operation < 5) {
+                ids.add(insert(1 + random.nextInt(5), 1 + random.nextInt(5)));
+            } else if (operation < 8) {
+                int id = ids.get(random.nextInt(ids.size()));
+                stmt.executeUpdate("UPDATE reviews SET rating = " + (1 + random.nextInt(5))
+                        + ", course_id = " + (1 + random.nextInt(5)) + " WHERE id = " + id);
+            } else {
+                int id = ids.remove(random.nextInt(ids.size()));
+                stmt.executeUpdate("DELETE FROM reviews WHERE id = " + id);
+            }
+            if (i % 100 == 0) {
+                assertMatchesReviews();
+            }
+        }
+        assertMatchesReviews();
+    }
+
+    @Test
+    void creatingTheTableFillsItFromExistingReviews() throws SQLException {
+        insert(1, 4);
+        insert(1, 2);
+        insert(3, 5);
+
+        CourseReviewsApplication.createRatingStats(stmt);
+
+        assertMatchesReviews();
+    }
+
+    private int insert(int courseId, int rating) throws SQLException {
+        String sql = "INSERT INTO reviews(user_id, course_id, rating, comment, timestamp) VALUES(1, ?, ?, '', 0)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setInt(1, courseId);
+            pstmt.setInt(2, rating);
+            pstmt.executeUpdate();
+            ResultSet keys = pstmt.getGeneratedKeys();
+            assertTrue(keys.next());
+            return keys.getInt(1);
+        }
+    }
+
+    /**
+     * Compares every course's statistics with COUNT, per-star SUM, the mean and
+     * the sum of squared deviations computed from reviews in two passes.
+     */
+    private void assertMatchesReviews() throws SQLException {
+        String sql = "SELECT s.course_id, s.review_count, s.count1, s.count2, s.count3, s.count4, s.count5, " +
+                     "s.mean, s.m2, " +
+                     "(SELECT COUNT(*) FROM reviews r WHERE r.course_id = s.course_id), " +
+                     "(SELECT IFNULL(AVG(rating), 0) FROM reviews r WHERE r.course_id = s.course_id) " +
+                     "FROM course_rating_stats s ORDER BY s.course_id";
+        try (Statement query = conn.createStatement();
+             ResultSet rs = query.executeQuery(sql)) {
+            while (rs.next()) {
+                int courseId = rs.getInt(1);
+                assertEquals(rs.getInt(10), rs.getInt(2), "review_count of course " + courseId);
+                for (int star = 1; star <= 5; star++) {
+                    assertEquals(countRatings(courseId, star), rs.getInt(2 + star),
+                            "count" + star + " of course " + courseId);
+                }
+                double mean = rs.getDouble(11);
+                assertEquals(mean, rs.getDouble(8), TOLERANCE, "mean of course " + courseId);
+                assertEquals(sumOfSquaredDeviations(courseId, mean), rs.getDouble(9), 1e-6,
+                        "m2 of course " + courseId);
+            }
+        }
+
+        // Every reviewed course has a row
+        ResultSet missing = stmt.executeQuery("SELECT COUNT(*) FROM reviews " +
+                "WHERE course_id NOT IN (SELECT course_id FROM course_rating_stats)");
+        assertTrue(missing.next());
+        assertEquals(0, missing.getInt(1));
+    }
+
+    private int countRatings(int courseId, int rating) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT COUNT(*) FROM reviews WHERE course_id = ? AND rating = ?")) {
+            pstmt.setInt(1, courseId);
+            pstmt.setInt(2, rating);
+            ResultSet rs = pstmt.executeQuery();
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+
+    private double sumOfSquaredDeviations(int courseId, double mean) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT IFNULL(SUM((rating - ?) * (rating - ?)), 0) FROM reviews WHERE course_id = ?")) {
+            pstmt.setDouble(1, mean);
+            pstmt.setDouble(2, mean);
+            pstmt.setInt(3, courseId);
+            ResultSet rs = pstmt.executeQuery();
+            assertTrue(rs.next());
+            return rs.getDouble(1);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package edu.virginia.sde.reviews.analytics;
+
+import edu.virginia.sde.reviews.model.Course;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogSnapshotTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void writtenSnapshotLoadsBackUnchanged() throws IOException {
+        List<Course> courses = List.of(
+                new Course(7, "CS", 2130, "Computer Systems and Organization 1"),
+                new Course(3, "MATH", 3351, "Elementary Linear Algebra"),
+                new Course(12, "CS", 3100, "Data Structures and Algorithms 2"),
+                new Course(40, "FREN", 1010, "Élémentaire – Français ✓"),
+                new Course(41, "ENGL", 1000, ""));
+        int[] reviewCounts = {4, 0, 2, 1, 0};
+        long[] ratingSums = {17, 0, 9, 5, 0};
+        Path file = directory.resolve("course_catalog.snapshot");
+
+        assertTrue(CatalogSnapshot.writeFile(file, CatalogSnapshot.encode(1234, courses, reviewCounts, ratingSums)));
+        assertFalse(Files.exists(directory.resolve("course_catalog.snapshot.tmp")));
+        CatalogSnapshot.Contents contents = CatalogSnapshot.readFile(file);
+
+        assertNotNull(contents);
+        assertEquals(1234, contents.sequence);
+        assertArrayEquals(reviewCounts, contents.reviewCounts);
+        assertArrayEquals(ratingSums, contents.ratingSums);
+        assertEquals(courses.size(), contents.courses.size());
+        for (int i = 0; i < courses.size(); i++) {
+            Course expected = courses.get(i);
+            Course actual = contents.courses.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getSubject(), actual.getSubject());
+            assertEquals(expected.getNumber(), actual.getNumber());
+            assertEquals(expected.getTitle(), actual.getTitle());
+        }
+        assertEquals(17 / 4.0, contents.courses.get(0).getAverageRating(), 1e-12);
+        assertEquals(0.0, contents.courses.get(1).getAverageRating(), 1e-12);
+    }
+
+    @Test
+    void emptyCatalogRoundTrips() throws IOException {
+        Path file = directory.resolve("empty.snapshot");
+
+        assertTrue(CatalogSnapshot.writeFile(file, CatalogSnapshot.encode(0, List.of(), new int[0], new long[0])));
+        CatalogSnapshot.Contents contents = CatalogSnapshot.readFile(file);
+
+        assertNotNull(contents);
+        assertTrue(contents.courses.isEmpty());
+    }
+
+    @Test
+    void largeCatalogRoundTrips() throws IOException {
+        List<Course> courses = new ArrayList<>();
+        int[] reviewCounts = new int[20_000];
+        long[] ratingSums = new long[20_000];
+        for (int i = 0; i < 20_000; i++) {
+            courses.add(new Course(i + 1, "S" + (i % 300), 1000 + i % 9000, "Course title " + i));
+            reviewCounts[i] = i % 7;
+            ratingSums[i] = 3L * (i % 7);
+        }
+        Path file = directory.resolve("large.snapshot");
+
+        assertTrue(CatalogSnapshot.writeFile(file, CatalogSnapshot.encode(99, courses, reviewCounts, ratingSums)));
+        CatalogSnapshot.Contents contents = CatalogSnapshot.readFile(file);
+
+        assertNotNull(contents);
+        assertEquals(20_000, contents.courses.size());
+        Course last = contents.courses.get(19_999);
+        assertEquals(20_000, last.getId());
+        assertEquals("S" + (19_999 % 300), last.getSubject());
+        assertEquals("Course title 19999", last.getTitle());
+        assertArrayEquals(ratingSums, contents.ratingSums);
+    }
+
+    @Test
+    void corruptedByteIsRejectedByTheChecksum() throws IOException {
+        Path file = writeSample("corrupt.snapshot");
+        byte[] bytes = Files.readAllBytes(file);
+
+        // Flip one bit inside a title, leaving the layout intact
+        bytes[bytes.length - 10] ^= 0x01;
+        Files.write(file, bytes);
+
+        assertNull(CatalogSnapshot.readFile(file));
+    }
+
+    @Test
+    void corruptedChecksumIsRejected() throws IOException {
+        Path file = writeSample("checksum.snapshot");
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 0x01;
+        Files.write(file, bytes);
+
+        assertNull(CatalogSnapshot.readFile(file));
+    }
+
+    @Test
+    void otherFormatVersionIsRejected() {
+        ByteBuffer buffer = CatalogSnapshot.encode(5, List.of(new Course(1, "CS", 1110, "Introduction to Programming")),
+                new int[] {1}, new long[] {4});
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+
+        // The version follows the four-byte magic number; the checksum is recomputed to match
+        bytes[7] = 2;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Integer.BYTES);
+        ByteBuffer.wrap(bytes).putInt(bytes.length - Integer.BYTES, (int) crc.getValue());
+
+        assertNull(CatalogSnapshot.decode(ByteBuffer.wrap(bytes)));
+    }
+
+    private Path writeSample(String name) {
+        Path file = directory.resolve(name);
+        List<Course> courses = List.of(
+                new Course(1, "CS", 1110, "Introduction to Programming"),
+                new Course(2, "CS", 2100, "Data Structures and Algorithms 1"));
+        assertTrue(CatalogSnapshot.writeFile(file,
+                CatalogSnapshot.encode(10, courses, new int[] {3, 1}, new long[] {12, 5})));
+        return file;
+    }
+}
@@ -0,0 +1,64 @@
+package edu.virginia.sde.reviews.dao;
+
+import edu.virginia.sde.reviews.model.Course;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CourseSortTest {
+    @Test
+    void keysetConditionBoundsTheFirstTermThenComparesTheWholeKey() {
+        assertEquals(" AND c.title COLLATE NOCASE >= ? "
+                        + "AND (c.title COLLATE NOCASE, c.subject, c.number, c.id) > (?, ?, ?, ?)",
+                CourseSort.TITLE.toKeysetCondition(true));
+        assertEquals(" AND avg_rating <= ? AND (avg_rating, c.id) < (?, ?)",
+                CourseSort.RATING.toKeysetCondition(false));
+    }
+
+    @Test
+    void keyListsTheFirstTermThenEveryTermInOrder() {
+        Course course = new Course(42, "CS", 2130, "Computer Systems");
+        course.setAverageRating(3.5);
+
+        assertEquals(List.of("Computer Systems", "Computer Systems", "CS", 2130, 42), CourseSort.TITLE.keyOf(course));
+        assertEquals(List.of("CS", "CS", 2130, "Computer Systems", 42), CourseSort.SUBJECT_NUMBER.keyOf(course));
+        assertEquals(List.of(3.5, 3.5, 42), CourseSort.RATING.keyOf(course));
+    }
+
+    @Test
+    void everyOrderBreaksTiesByIdSoNoTwoCoursesCompareEqual() {
+        // Each pair ties on every column of its order except the ID; the
+        // NOCASE column differs only in case
+        Map<CourseSort, List<Course>> ties = Map.of(
+                CourseSort.TITLE, List.of(new Course(7, "CS", 1110, "intro"), new Course(3, "CS", 1110, "INTRO")),
+                CourseSort.SUBJECT_NUMBER, List.of(new Course(7, "cs", 1110, "Intro"), new Course(3, "CS", 1110, "Intro")),
+                CourseSort.RATING, List.of(new Course(7, "CS", 1110, "Intro"), new Course(3, "MATH", 3100, "Proofs")));
+        ties.get(CourseSort.RATING).forEach(course -> course.setAverageRating(4.0));
+
+        for (CourseSort sort : CourseSort.values()) {
+            List<Course> courses = new ArrayList<>(ties.get(sort));
+            courses.sort(sort.comparator(true));
+            assertEquals(3, courses.get(0).getId(), sort.name());
+            courses.sort(sort.comparator(false));
+            assertEquals(7, courses.get(0).getId(), sort.name());
+        }
+    }
+
+    @Test
+    void comparatorFoldsOnlyAsciiLettersLikeNocase() {
+        // NOCASE orders U+00C9 before U+00E9 rather than treating them as equal
+        Course upper = new Course(7, "CS", 1110, "\u00c9cole");
+        Course lower = new Course(3, "CS", 1110, "\u00e9cole");
+        List<Course> courses = new ArrayList<>(List.of(lower, upper));
+        courses.sort(CourseSort.TITLE.comparator(true));
+        assertEquals(7, courses.get(0).getId());
+
+        // ASCII letters still fold, so "apple" sorts before "Banana"
+        assertEquals(-1, Integer.signum(CourseSort.TITLE.comparator(true).compare(
+                new Course(1, "CS", 1110, "apple"), new Course(2, "CS", 1110, "Banana"))));
+    }
+}
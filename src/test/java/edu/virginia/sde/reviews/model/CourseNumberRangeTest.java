@@ -0,0 +1,76 @@
+package edu.virginia.sde.reviews.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CourseNumberRangeTest {
+    @Test
+    void parsesAnExactNumber() {
+        assertRange(2130, 2130, CourseNumberRange.parse("2130"));
+        assertRange(2130, 2130, CourseNumberRange.parse("  2130 "));
+    }
+
+    @Test
+    void parsesAnExplicitRange() {
+        assertRange(3000, 3999, CourseNumberRange.parse("3000-3999"));
+        assertRange(3000, 3999, CourseNumberRange.parse("3000 - 3999"));
+        assertRange(2130, 2130, CourseNumberRange.parse("2130-2130"));
+    }
+
+    @Test
+    void parsesTrailingWildcards() {
+        assertRange(2000, 2999, CourseNumberRange.parse("2xxx"));
+        assertRange(2100, 2199, CourseNumberRange.parse("21XX"));
+        assertRange(0, 9999, CourseNumberRange.parse("xxxx"));
+    }
+
+    @Test
+    void rejectsWildcardsBeforeDigits() {
+        assertThrows(NumberFormatException.class, () -> CourseNumberRange.parse("2x3x"));
+        assertThrows(NumberFormatException.class, () -> CourseNumberRange.parse("x1"));
+    }
+
+    @Test
+    void rejectsNegativeNumbers() {
+        assertThrows(NumberFormatException.class, () -> CourseNumberRange.parse("-5"));
+        assertThrows(NumberFormatException.class, () -> CourseNumberRange.parse("-5xx"));
+        assertThrows(NumberFormatException.class, () -> CourseNumberRange.parse("3000--5"));
+    }
+
+    @Test
+    void rejectsBackwardRangesAndText() {
+        assertThrows(NumberFormatException.class, () -> CourseNumberRange.parse("3999-3000"));
+        assertThrows(NumberFormatException.class, () -> CourseNumberRange.parse("cs2130"));
+        assertThrows(NumberFormatException.class, () -> CourseNumberRange.parse(""));
+        assertThrows(NumberFormatException.class, () -> CourseNumberRange.parse("3000-"));
+    }
+
+    @Test
+    void rejectsPatternsThatOverflow() {
+        assertThrows(NumberFormatException.class, () -> CourseNumberRange.parse("xxxxxxxxxxxx"));
+        assertThrows(NumberFormatException.class, () -> CourseNumberRange.parse("999999999x"));
+        assertThrows(NumberFormatException.class, () -> CourseNumberRange.parse("99999999999"));
+        assertRange(0, 999_999_999, CourseNumberRange.parse("xxxxxxxxx"));
+    }
+
+    @Test
+    void containsIsInclusive() {
+        CourseNumberRange range = CourseNumberRange.level(3000);
+
+        assertTrue(range.contains(3000));
+        assertTrue(range.contains(3999));
+        assertFalse(range.contains(2999));
+        assertFalse(range.contains(4000));
+        assertEquals("3000-3999", range.toString());
+        assertEquals("2130", CourseNumberRange.exactly(2130).toString());
+    }
+
+    private static void assertRange(int from, int to, CourseNumberRange range) {
+        assertEquals(from, range.getFrom());
+        assertEquals(to, range.getTo());
+    }
+}
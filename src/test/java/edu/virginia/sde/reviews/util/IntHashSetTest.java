@@ -0,0 +1,92 @@
+package edu.virginia.sde.reviews.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntHashSetTest {
+    @Test
+    void zeroIsStoredLikeAnyOtherValue() {
+        IntHashSet set = new IntHashSet();
+        assertFalse(set.contains(0));
+
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+        assertArrayEquals(new int[] {0}, set.toArray());
+
+        assertTrue(set.remove(0));
+        assertFalse(set.remove(0));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    void removalShiftsCollidingValuesBack() {
+        int[] values = IntObjectMapTest.keysWithHomeSlot(7, 4);
+        IntHashSet set = new IntHashSet();
+        for (int value : values) {
+            set.add(value);
+        }
+
+        assertTrue(set.remove(values[0]));
+        assertTrue(set.contains(values[1]));
+        assertTrue(set.contains(values[2]));
+        assertTrue(set.contains(values[3]));
+
+        assertTrue(set.remove(values[2]));
+        assertTrue(set.contains(values[1]));
+        assertTrue(set.contains(values[3]));
+        assertFalse(set.contains(values[0]));
+        assertFalse(set.contains(values[2]));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    void resizingKeepsEveryValue() {
+        IntHashSet set = new IntHashSet();
+        for (int value = -5_000; value <= 5_000; value++) {
+            assertTrue(set.add(value));
+        }
+        assertEquals(10_001, set.size());
+        for (int value = -5_000; value <= 5_000; value++) {
+            assertTrue(set.contains(value));
+        }
+        assertFalse(set.contains(5_001));
+    }
+
+    @Test
+    void behavesLikeHashSetUnderRandomOperations() {
+        Random random = new Random(28);
+        IntHashSet set = new IntHashSet();
+        Set<Integer> expected = new HashSet<>();
+
+        for (int step = 0; step < 200_000; step++) {
+            int value = random.nextInt(2_000) - 1_000;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.add(value), set.add(value));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(value), set.remove(value));
+                    break;
+                default:
+                    assertEquals(expected.contains(value), set.contains(value));
+                    break;
+            }
+            assertEquals(expected.size(), set.size());
+        }
+
+        int[] actual = set.toArray();
+        Arrays.sort(actual);
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).sorted().toArray(), actual);
+    }
+}
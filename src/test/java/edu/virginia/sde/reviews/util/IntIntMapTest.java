@@ -0,0 +1,110 @@
+package edu.virginia.sde.reviews.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntIntMapTest {
+    @Test
+    void zeroKeyIsStoredLikeAnyOtherKey() {
+        IntIntMap map = new IntIntMap();
+        assertEquals(0, map.get(0));
+
+        assertEquals(5, map.addTo(0, 5));
+        assertEquals(7, map.addTo(0, 2));
+        assertEquals(7, map.get(0));
+        assertEquals(1, map.size());
+
+        map.put(0, 1);
+        assertEquals(1, map.get(0));
+        assertEquals(1, map.size());
+
+        Map<Integer, Integer> seen = new HashMap<>();
+        map.forEach(seen::put);
+        assertEquals(Map.of(0, 1), seen);
+    }
+
+    @Test
+    void collidingKeysKeepSeparateCounts() {
+        int[] keys = IntObjectMapTest.keysWithHomeSlot(11, 4);
+        IntIntMap map = new IntIntMap();
+        for (int i = 0; i < keys.length; i++) {
+            map.addTo(keys[i], i + 1);
+            map.addTo(keys[i], i + 1);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(2 * (i + 1), map.get(keys[i]));
+        }
+        assertEquals(keys.length, map.size());
+    }
+
+    @Test
+    void resizingKeepsEveryEntry() {
+        IntIntMap map = new IntIntMap();
+        for (int key = -5_000; key <= 5_000; key++) {
+            if (key % 2 == 0) {
+                map.put(key, key * 3);
+            } else {
+                map.addTo(key, key * 3);
+            }
+        }
+        assertEquals(10_001, map.size());
+        for (int key = -5_000; key <= 5_000; key++) {
+            assertEquals(key * 3, map.get(key));
+        }
+    }
+
+    @Test
+    void behavesLikeHashMapUnderRandomOperations() {
+        Random random = new Random(28);
+        IntIntMap map = new IntIntMap();
+        Map<Integer, Integer> expected = new HashMap<>();
+
+        for (int step = 0; step < 200_000; step++) {
+            int key = random.nextInt(2_000) - 1_000;
+            int value = random.nextInt(100) - 50;
+            switch (random.nextInt(3)) {
+                case 0:
+                    map.put(key, value);
+                    expected.put(key, value);
+                    break;
+                case 1:
+                    assertEquals((int) expected.merge(key, value, Integer::sum), map.addTo(key, value));
+                    break;
+                default:
+                    assertEquals((int) expected.getOrDefault(key, 0), map.get(key));
+                    break;
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        Map<Integer, Integer> contents = new HashMap<>();
+        map.forEach(contents::put);
+        assertEquals(expected, contents);
+    }
+
+    @Test
+    void addAllSumsMatchingKeys() {
+        IntIntMap first = new IntIntMap();
+        first.addTo(0, 1);
+        first.addTo(10, 2);
+        IntIntMap second = new IntIntMap();
+        second.addTo(10, 3);
+        second.addTo(20, 4);
+
+        first.addAll(second);
+        assertEquals(1, first.get(0));
+        assertEquals(5, first.get(10));
+        assertEquals(4, first.get(20));
+        assertEquals(3, first.size());
+
+        first.clear();
+        assertTrue(first.isEmpty());
+        assertEquals(0, first.get(10));
+    }
+}
@@ -0,0 +1,145 @@
+package edu.virginia.sde.reviews.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntObjectMapTest {
+    /** Capacity of a map created with the default constructor */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    @Test
+    void zeroKeyIsStoredLikeAnyOtherKey() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        assertNull(map.get(0));
+        assertFalse(map.containsKey(0));
+
+        assertNull(map.put(0, "zero"));
+        assertEquals("zero", map.get(0));
+        assertTrue(map.containsKey(0));
+        assertEquals(1, map.size());
+
+        assertEquals("zero", map.put(0, "again"));
+        assertEquals(1, map.size());
+
+        Map<Integer, String> seen = new HashMap<>();
+        map.forEach(seen::put);
+        assertEquals(Map.of(0, "again"), seen);
+
+        assertEquals("again", map.remove(0));
+        assertNull(map.remove(0));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void removalShiftsCollidingKeysBack() {
+        int[] keys = keysWithHomeSlot(3, 4);
+        IntObjectMap<String> map = new IntObjectMap<>();
+        for (int key : keys) {
+            map.put(key, "v" + key);
+        }
+
+        // Removing the head of the probe run must leave the rest reachable
+        assertEquals("v" + keys[0], map.remove(keys[0]));
+        for (int i = 1; i < keys.length; i++) {
+            assertEquals("v" + keys[i], map.get(keys[i]));
+        }
+
+        assertEquals("v" + keys[2], map.remove(keys[2]));
+        assertEquals("v" + keys[1], map.get(keys[1]));
+        assertEquals("v" + keys[3], map.get(keys[3]));
+        assertNull(map.get(keys[0]));
+        assertNull(map.get(keys[2]));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void removalShiftsBackAcrossTheEndOfTheTable() {
+        // The run starting in the last slot wraps around to slot 0
+        int[] wrapping = keysWithHomeSlot(DEFAULT_CAPACITY - 1, 3);
+        int[] atStart = keysWithHomeSlot(0, 1);
+        IntObjectMap<String> map = new IntObjectMap<>();
+        for (int key : wrapping) {
+            map.put(key, "v" + key);
+        }
+        map.put(atStart[0], "start");
+
+        map.remove(wrapping[0]);
+        assertEquals("v" + wrapping[1], map.get(wrapping[1]));
+        assertEquals("v" + wrapping[2], map.get(wrapping[2]));
+        assertEquals("start", map.get(atStart[0]));
+
+        map.remove(wrapping[1]);
+        map.remove(wrapping[2]);
+        assertEquals("start", map.get(atStart[0]));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void resizingKeepsEveryEntry() {
+        IntObjectMap<Integer> map = new IntObjectMap<>();
+        for (int key = -5_000; key <= 5_000; key++) {
+            map.put(key, key * 2);
+        }
+        assertEquals(10_001, map.size());
+        for (int key = -5_000; key <= 5_000; key++) {
+            assertEquals(Integer.valueOf(key * 2), map.get(key));
+        }
+        assertNull(map.get(5_001));
+    }
+
+    @Test
+    void behavesLikeHashMapUnderRandomOperations() {
+        Random random = new Random(28);
+        IntObjectMap<Integer> map = new IntObjectMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+
+        for (int step = 0; step < 200_000; step++) {
+            // A small key range, including 0 and negatives, forces collisions, removals and re-inserts
+            int key = random.nextInt(2_000) - 1_000;
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    assertEquals(expected.put(key, step), map.put(key, step));
+                    break;
+                case 2:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), map.get(key));
+                    assertEquals(expected.containsKey(key), map.containsKey(key));
+                    break;
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        Map<Integer, Integer> contents = new HashMap<>();
+        map.forEach(contents::put);
+        assertEquals(expected, contents);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(expected.keySet().iterator().next()));
+    }
+
+    /**
+     * Finds nonzero keys whose hash puts them in the same slot of a default-sized table.
+     */
+    static int[] keysWithHomeSlot(int slot, int count) {
+        int[] keys = new int[count];
+        int found = 0;
+        for (int key = 1; found < count; key++) {
+            if ((IntHashing.mix(key) & (DEFAULT_CAPACITY - 1)) == slot) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,191 @@
+package edu.virginia.sde.reviews.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrieTest {
+    private static final List<String> WORDS = List.of(
+            "algorithms", "algebra", "analysis", "calculus", "compilers", "computer",
+            "computing", "data", "database", "databases", "date", "design", "program", "programming");
+
+    @Test
+    void searchReportsEachWordWithItsEditDistance() {
+        Trie trie = trieOf(WORDS);
+
+        Map<String, Integer> matches = search(trie, "progam", 2);
+
+        // "program" is one insertion away; "programming" needs five edits
+        assertEquals(Map.of("program", 1), matches);
+    }
+
+    @Test
+    void searchCountsSubstitutionsInsertionsAndDeletions() {
+        Trie trie = trieOf(WORDS);
+
+        assertEquals(Map.of("data", 0, "date", 1), search(trie, "data", 1));
+        assertEquals(Map.of("database", 1, "databases", 2), search(trie, "databse", 2));
+        assertEquals(Map.of("computer", 1), search(trie, "conputer", 2));
+        assertEquals(Map.of("data", 1, "date", 1), search(trie, "dat", 1));
+    }
+
+    @Test
+    void searchWithZeroDistanceFindsOnlyExactWords() {
+        Trie trie = trieOf(WORDS);
+
+        assertEquals(Map.of("compilers", 0), search(trie, "compilers", 0));
+        assertTrue(search(trie, "compiler", 0).isEmpty());
+    }
+
+    @Test
+    void searchMatchesTheEmptyWordWithinDistance() {
+        Trie trie = trieOf(List.of("", "a", "ab"));
+
+        assertEquals(Map.of("", 0, "a", 1), search(trie, "", 1));
+        assertEquals(Map.of("", 2, "a", 1, "ab", 0), search(trie, "ab", 2));
+    }
+
+    @Test
+    void searchAgreesWithDirectEditDistance() {
+        Random random = new Random(37);
+        List<String> vocabulary = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            vocabulary.add(randomWord(random));
+        }
+        Trie trie = trieOf(vocabulary);
+
+        for (int i = 0; i < 200; i++) {
+            String query = randomWord(random);
+            int maxDistance = random.nextInt(4);
+            Map<String, Integer> expected = new HashMap<>();
+            for (String word : vocabulary) {
+                int distance = levenshtein(query, word);
+                if (distance <= maxDistance) {
+                    expected.put(word, distance);
+                }
+            }
+            assertEquals(expected, search(trie, query, maxDistance), "query " + query);
+        }
+    }
+
+    @Test
+    void completeListsWordsWithThePrefixInSortedOrder() {
+        Trie trie = trieOf(WORDS);
+
+        assertEquals(List.of("computer", "computing"), complete(trie, "comput", 10));
+        assertEquals(List.of("data", "database", "databases", "date"), complete(trie, "dat", 10));
+        assertEquals(List.of("compilers", "computer", "computing"), complete(trie, "com", 10));
+        assertTrue(complete(trie, "x", 10).isEmpty());
+    }
+
+    @Test
+    void completeStopsAtTheLimit() {
+        Trie trie = trieOf(WORDS);
+
+        assertEquals(List.of("data", "database"), complete(trie, "d", 2));
+        assertEquals(List.of("algebra"), complete(trie, "", 1));
+        assertTrue(complete(trie, "d", 0).isEmpty());
+        assertEquals(WORDS.size(), complete(trie, "", 100).size());
+    }
+
+    @Test
+    void completeIncludesThePrefixItselfAndReportsCounts() {
+        Trie trie = trieOf(List.of("CS", "CS 2100", "CS 2130", "CS 2100", "CE"));
+
+        List<String> reported = new ArrayList<>();
+        trie.complete("CS", 10, (word, count) -> reported.add(word + "=" + count));
+
+        assertEquals(List.of("CS=1", "CS 2100=2", "CS 2130=1"), reported);
+    }
+
+    @Test
+    void completeAgreesWithASortedScan() {
+        Random random = new Random(38);
+        TreeSet<String> vocabulary = new TreeSet<>();
+        for (int i = 0; i < 500; i++) {
+            vocabulary.add(randomWord(random));
+        }
+        Trie trie = trieOf(new ArrayList<>(vocabulary));
+
+        for (int i = 0; i < 200; i++) {
+            String query = randomWord(random);
+            String prefix = query.substring(0, Math.min(query.length(), 1 + random.nextInt(2)));
+            int limit = 1 + random.nextInt(20);
+            List<String> expected = new ArrayList<>();
+            for (String word : vocabulary.tailSet(prefix)) {
+                if (!word.startsWith(prefix) || expected.size() == limit) {
+                    break;
+                }
+                expected.add(word);
+            }
+            assertEquals(expected, complete(trie, prefix, limit), "prefix " + prefix);
+        }
+    }
+
+    @Test
+    void addCountsRepeatedWords() {
+        Trie trie = new Trie();
+        assertTrue(trie.add("cs"));
+        assertFalse(trie.add("cs"));
+        assertTrue(trie.add("c"));
+
+        assertEquals(2, trie.count("cs"));
+        assertEquals(1, trie.count("c"));
+        assertEquals(0, trie.count("math"));
+        assertEquals(2, trie.size());
+    }
+
+    private static Trie trieOf(List<String> words) {
+        Trie trie = new Trie();
+        for (String word : words) {
+            trie.add(word);
+        }
+        return trie;
+    }
+
+    private static Map<String, Integer> search(Trie trie, String query, int maxDistance) {
+        Map<String, Integer> matches = new HashMap<>();
+        trie.search(query, maxDistance, (word, distance) ->
+                assertEquals(null, matches.put(word, distance), "reported twice: " + word));
+        return matches;
+    }
+
+    private static List<String> complete(Trie trie, String prefix, int limit) {
+        List<String> words = new ArrayList<>();
+        trie.complete(prefix, limit, (word, count) -> words.add(word));
+        return words;
+    }
+
+    private static String randomWord(Random random) {
+        // A small alphabet so that many words are within a few edits of each other
+        char[] chars = new char[1 + random.nextInt(7)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(4));
+        }
+        return new String(chars);
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[][] table = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    table[i][j] = i + j;
+                } else {
+                    int substitution = table[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                    table[i][j] = Math.min(substitution, Math.min(table[i - 1][j], table[i][j - 1]) + 1);
+                }
+            }
+        }
+        return table[a.length()][b.length()];
+    }
+}